@@ -0,0 +1,26 @@
+package com.wyb.common.exception;
+
+/**
+ * <pre>
+ * 包装{@link WxErrorException}的非受检异常.
+ * 用于Iterator、Stream等不能抛出受检异常的场景，原异常可通过{@link #getWxErrorException()}取回。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxRuntimeException extends RuntimeException {
+
+    private static final long serialVersionUID = 4881698471192264412L;
+
+    public WxRuntimeException(WxErrorException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    public WxErrorException getWxErrorException() {
+        return (WxErrorException) this.getCause();
+    }
+
+    public WxError getError() {
+        return this.getWxErrorException().getError();
+    }
+}
@@ -1,17 +1,61 @@
 package com.wyb.common.util;
 
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 随机字符串，用于签名的nonce等.
+ * 每次取一个64位随机数，按6位一组查62个字符的表，落在表外的组丢弃，保证每个字符等概率.
+ */
 public class RandomUtils {
 
-  private static final String RANDOM_STR = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+  private static final char[] SYMBOLS =
+      "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+  private static final int DEFAULT_LENGTH = 16;
 
-  private static final java.util.Random RANDOM = new java.util.Random();
+  /**
+   * 每个线程一个SecureRandom，避免多线程竞争同一个实例的锁
+   */
+  private static final ThreadLocal<SecureRandom> SECURE_RANDOM = ThreadLocal.withInitial(SecureRandom::new);
 
+  /**
+   * 16位随机字符串，使用ThreadLocalRandom，不可用于需要防预测的场景
+   */
   public static String getRandomStr() {
-    StringBuilder sb = new StringBuilder();
-    for (int i = 0; i < 16; i++) {
-      sb.append(RANDOM_STR.charAt(RANDOM.nextInt(RANDOM_STR.length())));
+    return getRandomStr(DEFAULT_LENGTH);
+  }
+
+  public static String getRandomStr(int length) {
+    return randomStr(ThreadLocalRandom.current(), length);
+  }
+
+  /**
+   * 16位随机字符串，使用SecureRandom，用于需要防预测的nonce、state等
+   */
+  public static String getSecureRandomStr() {
+    return getSecureRandomStr(DEFAULT_LENGTH);
+  }
+
+  public static String getSecureRandomStr(int length) {
+    return randomStr(SECURE_RANDOM.get(), length);
+  }
+
+  private static String randomStr(Random random, int length) {
+    char[] chars = new char[length];
+    int i = 0;
+    while (i < length) {
+      long bits = random.nextLong();
+      // 64位可切出10组6位
+      for (int j = 0; j < 10 && i < length; j++, bits >>>= 6) {
+        int index = (int) (bits & 0x3F);
+        if (index < SYMBOLS.length) {
+          chars[i++] = SYMBOLS[index];
+        }
+      }
     }
-    return sb.toString();
+    return new String(chars);
   }
 
 }
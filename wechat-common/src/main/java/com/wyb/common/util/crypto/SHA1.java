@@ -1,8 +1,10 @@
 package com.wyb.common.util.crypto;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -10,6 +12,19 @@ import org.apache.commons.lang3.StringUtils;
  */
 public class SHA1 {
 
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * 每个线程复用一个MessageDigest，避免每次签名都查找算法提供者
+   */
+  private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  });
+
   /**
    * 串接arr参数，生成sha1 digest
    */
@@ -23,7 +38,7 @@ public class SHA1 {
     for (String a : arr) {
       sb.append(a);
     }
-    return DigestUtils.sha1Hex(sb.toString());
+    return sha1Hex(sb);
   }
 
   /**
@@ -43,6 +58,21 @@ public class SHA1 {
         sb.append('&');
       }
     }
-    return DigestUtils.sha1Hex(sb.toString());
+    return sha1Hex(sb);
+  }
+
+  /**
+   * 按UTF-8编码计算sha1，返回小写16进制字符串，与DigestUtils.sha1Hex结果相同
+   */
+  public static String sha1Hex(CharSequence content) {
+    MessageDigest digest = DIGEST.get();
+    digest.reset();
+    byte[] bytes = digest.digest(content.toString().getBytes(StandardCharsets.UTF_8));
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+      hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+    }
+    return new String(hex);
   }
 }
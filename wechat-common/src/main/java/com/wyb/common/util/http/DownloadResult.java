@@ -0,0 +1,41 @@
+package com.wyb.common.util.http;
+
+import java.io.Serializable;
+
+import lombok.Data;
+
+/**
+ * <pre>
+ * 下载结果.
+ * 微信接口出错时仍返回200，响应体为json，此时内容不会写入目标通道，而是放在jsonBody中由调用方判断。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class DownloadResult implements Serializable {
+    private static final long serialVersionUID = -2811623410452166507L;
+
+    private int statusCode;
+    private String contentType;
+    /**
+     * Content-Disposition中的文件名，没有时为null.
+     */
+    private String fileName;
+    /**
+     * 本次写入目标的字节数，断点续传时不含已有部分.
+     */
+    private long bytesWritten;
+    /**
+     * 是否从断点处续传(206).
+     */
+    private boolean resumed;
+    /**
+     * 响应体为json时的内容，正常下载时为null.
+     */
+    private String jsonBody;
+
+    public boolean isJson() {
+        return this.jsonBody != null;
+    }
+}
@@ -3,17 +3,33 @@ package com.wyb.common.util.http;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import com.alibaba.fastjson.JSONObject;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
@@ -21,18 +37,39 @@ import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 
+import lombok.extern.slf4j.Slf4j;
+
 /**
+ * <pre>
+ * http请求工具类.
+ * 请求失败时返回空字符串并记录日志，调用方据此判断是否拿到了响应。
+ * 带CloseableHttpClient参数的方法使用传入的client并且不关闭它，client为null时与不带该参数的方法相同，每次新建。
+ * </pre>
+ *
  * @author Kunzite
  */
+@Slf4j
 public class HttpClientUtil {
 
+    private static final JsonParser JSON_PARSER = new JsonParser();
+    private static final int DOWNLOAD_BUFFER_SIZE = 8192;
+    /**
+     * 写入FileChannel时每次transferFrom的最大字节数.
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
     public static String doGet(String url, Map<String, String> param) {
+        return doGet(null, url, param);
+    }
+
+    public static String doGet(CloseableHttpClient client, String url, Map<String, String> param) {
 
         // 创建Httpclient对象
-        CloseableHttpClient httpclient = HttpClients.createDefault();
+        CloseableHttpClient httpclient = client != null ? client : HttpClients.createDefault();
 
         String resultString = "";
         CloseableHttpResponse response = null;
@@ -55,20 +92,15 @@ public class HttpClientUtil {
             if (response.getStatusLine().getStatusCode() == 200) {
                 resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
             }
+            else {
+                log.warn("GET {} 返回状态 {}", stripQuery(url), response.getStatusLine().getStatusCode());
+            }
         }
         catch (Exception e) {
-            e.printStackTrace();
+            log.error("GET {} 请求异常", stripQuery(url), e);
         }
         finally {
-            try {
-                if (response != null) {
-                    response.close();
-                }
-                httpclient.close();
-            }
-            catch (IOException e) {
-                e.printStackTrace();
-            }
+            closeQuietly(response, client != null ? null : httpclient);
         }
         return resultString;
     }
@@ -86,8 +118,12 @@ public class HttpClientUtil {
     }
 
     public static String doPost(String url, Map<String, String> param) {
+        return doPost(null, url, param);
+    }
+
+    public static String doPost(CloseableHttpClient client, String url, Map<String, String> param) {
         // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        CloseableHttpClient httpClient = client != null ? client : HttpClients.createDefault();
         CloseableHttpResponse response = null;
         String resultString = "";
         try {
@@ -108,16 +144,10 @@ public class HttpClientUtil {
             resultString = EntityUtils.toString(response.getEntity(), "utf-8");
         }
         catch (Exception e) {
-            e.printStackTrace();
+            log.error("POST {} 请求异常", stripQuery(url), e);
         }
         finally {
-            try {
-                response.close();
-            }
-            catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
+            closeQuietly(response, client != null ? null : httpClient);
         }
 
         return resultString;
@@ -136,8 +166,12 @@ public class HttpClientUtil {
     }
 
     public static String doPostJson(String url, String json) {
+        return doPostJson(null, url, json);
+    }
+
+    public static String doPostJson(CloseableHttpClient client, String url, String json) {
         // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        CloseableHttpClient httpClient = client != null ? client : HttpClients.createDefault();
         CloseableHttpResponse response = null;
         String resultString = "";
         try {
@@ -151,24 +185,22 @@ public class HttpClientUtil {
             resultString = EntityUtils.toString(response.getEntity(), "utf-8");
         }
         catch (Exception e) {
-            e.printStackTrace();
+            log.error("POST {} 请求异常", stripQuery(url), e);
         }
         finally {
-            try {
-                response.close();
-            }
-            catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
+            closeQuietly(response, client != null ? null : httpClient);
         }
 
         return resultString;
     }
 
     public static String doPostFile(String url, File file) {
+        return doPostFile(null, url, file);
+    }
+
+    public static String doPostFile(CloseableHttpClient client, String url, File file) {
         // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        CloseableHttpClient httpClient = client != null ? client : HttpClients.createDefault();
         CloseableHttpResponse response = null;
         String resultString = "";
         try {
@@ -178,25 +210,292 @@ public class HttpClientUtil {
             HttpEntity entity = MultipartEntityBuilder.create().addBinaryBody("media", file)
                     .setMode(HttpMultipartMode.RFC6532).build();
             httpPost.setEntity(entity);
-            httpPost.setHeader("Content-Type", ContentType.MULTIPART_FORM_DATA.toString());
 
             // 执行http请求
             response = httpClient.execute(httpPost);
             resultString = EntityUtils.toString(response.getEntity(), "utf-8");
         }
         catch (Exception e) {
-            e.printStackTrace();
+            log.error("POST {} 请求异常", stripQuery(url), e);
+        }
+        finally {
+            closeQuietly(response, client != null ? null : httpClient);
+        }
+
+        return resultString;
+    }
+
+    /**
+     * 以给定的请求体发送POST请求，用于{@link StreamingMultipartEntity}等流式上传.
+     */
+    public static String doPostEntity(String url, HttpEntity entity) {
+        return doPostEntity(null, url, entity);
+    }
+
+    public static String doPostEntity(CloseableHttpClient client, String url, HttpEntity entity) {
+        // 创建Httpclient对象
+        CloseableHttpClient httpClient = client != null ? client : HttpClients.createDefault();
+        CloseableHttpResponse response = null;
+        String resultString = "";
+        try {
+            // 创建Http Post请求
+            HttpPost httpPost = new HttpPost(url);
+            httpPost.setEntity(entity);
+            // 执行http请求
+            response = httpClient.execute(httpPost);
+            resultString = EntityUtils.toString(response.getEntity(), "utf-8");
+        }
+        catch (Exception e) {
+            log.error("POST {} 请求异常", stripQuery(url), e);
+        }
+        finally {
+            closeQuietly(response, client != null ? null : httpClient);
+        }
+
+        return resultString;
+    }
+
+    /**
+     * <pre>
+     * GET下载，响应体直接写入目标通道.
+     * 响应体为json(微信接口出错)时不写入目标，内容放在{@link DownloadResult#getJsonBody()}中。
+     * </pre>
+     */
+    public static DownloadResult doGetDownload(String url, Map<String, String> param, WritableByteChannel target)
+            throws IOException {
+        return doGetDownload(null, url, param, target);
+    }
+
+    public static DownloadResult doGetDownload(CloseableHttpClient client, String url, Map<String, String> param,
+            WritableByteChannel target) throws IOException {
+        return download(client, new HttpGet(buildUri(url, param)), target, 0);
+    }
+
+    /**
+     * POST json后下载，如获取永久素材.
+     */
+    public static DownloadResult doPostJsonDownload(String url, String json, WritableByteChannel target)
+            throws IOException {
+        return doPostJsonDownload(null, url, json, target);
+    }
+
+    public static DownloadResult doPostJsonDownload(CloseableHttpClient client, String url, String json,
+            WritableByteChannel target) throws IOException {
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
+        return download(client, httpPost, target, 0);
+    }
+
+    /**
+     * <pre>
+     * GET下载到文件，经FileChannel.transferFrom写入，不经过整块的字节数组.
+     * resume为true且文件已存在时，从文件末尾以Range请求续传；服务端不支持Range时从头下载。
+     * </pre>
+     */
+    public static DownloadResult doDownloadToFile(String url, File file, boolean resume) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            long offset = resume ? channel.size() : 0;
+            if (!resume) {
+                channel.truncate(0);
+            }
+            HttpGet httpGet = new HttpGet(url);
+            if (offset > 0) {
+                httpGet.setHeader(HttpHeaders.RANGE, "bytes=" + offset + "-");
+                channel.position(offset);
+            }
+            return download(null, httpGet, channel, offset);
+        }
+    }
+
+    /**
+     * 目标为FileChannel时从其当前位置起经transferFrom写入，写完后位置移到末尾.
+     *
+     * @param client 为null时新建并在下载完成后关闭
+     * @param offset 续传时已有的字节数，此时目标位置应已在offset处
+     */
+    private static DownloadResult download(CloseableHttpClient client, HttpUriRequest request,
+            WritableByteChannel target, long offset) throws IOException {
+        CloseableHttpClient httpClient = client != null ? client : HttpClients.createDefault();
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            DownloadResult result = new DownloadResult();
+            int status = response.getStatusLine().getStatusCode();
+            result.setStatusCode(status);
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                return result;
+            }
+            if (entity.getContentType() != null) {
+                result.setContentType(entity.getContentType().getValue());
+            }
+            result.setFileName(fileNameOf(response.getFirstHeader("Content-Disposition")));
+            if (status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT) {
+                // 续传时416表示本地文件已完整
+                if (status != HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE || offset == 0) {
+                    log.warn("下载 {} 返回状态 {}", stripQuery(request.getURI().toString()), status);
+                }
+                EntityUtils.consume(entity);
+                return result;
+            }
+
+            ReadableByteChannel source = Channels.newChannel(entity.getContent());
+            ByteBuffer buffer = ByteBuffer.allocate(DOWNLOAD_BUFFER_SIZE);
+            boolean eof = fill(source, buffer);
+            buffer.flip();
+            // 错误信息都很短，只有整个响应体落在首个缓冲区内时才可能是json
+            if (eof && isJsonResponse(result.getContentType(), buffer)) {
+                result.setJsonBody(StandardCharsets.UTF_8.decode(buffer).toString());
+                return result;
+            }
+
+            long written = buffer.remaining();
+            if (target instanceof FileChannel) {
+                FileChannel file = (FileChannel) target;
+                long position = file.position();
+                if (status == HttpStatus.SC_PARTIAL_CONTENT) {
+                    result.setResumed(true);
+                }
+                else if (offset > 0) {
+                    // 服务端忽略了Range，从头写
+                    file.truncate(0);
+                    position = 0;
+                }
+                while (buffer.hasRemaining()) {
+                    position += file.write(buffer, position);
+                }
+                long n;
+                while (!eof && (n = file.transferFrom(source, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                    position += n;
+                    written += n;
+                }
+                file.position(position);
+            }
+            else {
+                writeFully(target, buffer);
+                while (!eof) {
+                    buffer.clear();
+                    eof = fill(source, buffer);
+                    buffer.flip();
+                    written += buffer.remaining();
+                    writeFully(target, buffer);
+                }
+            }
+            result.setBytesWritten(written);
+            return result;
         }
         finally {
-            try {
+            if (client == null) {
+                httpClient.close();
+            }
+        }
+    }
+
+    /**
+     * 读满缓冲区，返回是否已读到流末尾.
+     */
+    private static boolean fill(ReadableByteChannel source, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeFully(WritableByteChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    /**
+     * Content-Type为application/json，或响应体能解析为带errcode字段的json对象时视为json响应；
+     * text/*的文件、内容恰好以{开头的文件照常下载.
+     */
+    private static boolean isJsonResponse(String contentType, ByteBuffer buffer) {
+        if (contentType != null) {
+            int separator = contentType.indexOf(';');
+            String mimeType = (separator < 0 ? contentType : contentType.substring(0, separator)).trim();
+            if (ContentType.APPLICATION_JSON.getMimeType().equalsIgnoreCase(mimeType)) {
+                return true;
+            }
+        }
+        String body = StandardCharsets.UTF_8.decode(buffer.duplicate()).toString().trim();
+        if (!body.startsWith("{")) {
+            return false;
+        }
+        try {
+            JsonElement json = JSON_PARSER.parse(body);
+            return json.isJsonObject() && json.getAsJsonObject().has("errcode");
+        }
+        catch (JsonParseException e) {
+            return false;
+        }
+    }
+
+    private static String fileNameOf(Header contentDisposition) {
+        if (contentDisposition == null) {
+            return null;
+        }
+        for (HeaderElement element : contentDisposition.getElements()) {
+            NameValuePair fileName = element.getParameterByName("filename");
+            if (fileName != null) {
+                return fileName.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static URI buildUri(String url, Map<String, String> param) throws IOException {
+        try {
+            URIBuilder builder = new URIBuilder(url);
+            if (param != null) {
+                for (Map.Entry<String, String> entry : param.entrySet()) {
+                    builder.addParameter(entry.getKey(), entry.getValue());
+                }
+            }
+            return builder.build();
+        }
+        catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * <pre>
+     * 创建带连接池的httpClient，可在多次请求间复用连接，由调用方负责关闭.
+     * 多公众号时每个公众号一个，避免某个公众号的慢请求占满其他公众号的连接。
+     * </pre>
+     */
+    public static CloseableHttpClient createPooledClient(int maxTotal, int maxPerRoute) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        return HttpClients.custom().setConnectionManager(connectionManager).build();
+    }
+
+    /**
+     * httpClient为null时只关闭response.
+     */
+    private static void closeQuietly(CloseableHttpResponse response, CloseableHttpClient httpClient) {
+        try {
+            if (response != null) {
                 response.close();
             }
-            catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+            if (httpClient != null) {
+                httpClient.close();
             }
         }
+        catch (IOException e) {
+            log.warn("关闭http连接失败", e);
+        }
+    }
 
-        return resultString;
+    /**
+     * 日志中去掉查询串，避免access_token等敏感参数落盘.
+     */
+    private static String stripQuery(String url) {
+        int idx = url == null ? -1 : url.indexOf('?');
+        return idx < 0 ? url : url.substring(0, idx);
     }
 }
@@ -0,0 +1,250 @@
+package com.wyb.common.util.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * <pre>
+ * 边读边写的multipart/form-data请求体.
+ * 文件部分通过FileChannel.transferTo直接写到输出流，输入流部分用固定8K缓冲区转发，
+ * 不落临时文件、不在内存中拼装整个请求体，上传大视频素材时内存占用恒定。
+ * 请求体总是带Content-Length发送，微信的上传接口不接受chunked编码，因此输入流部分必须给出长度。
+ * 含输入流部分的实体只能写出一次。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class StreamingMultipartEntity extends AbstractHttpEntity {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final char[] BOUNDARY_CHARS = "-_1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
+            .toCharArray();
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] DASHES = {'-', '-'};
+
+    private final String boundary;
+    private final List<Part> parts = new ArrayList<>();
+    private boolean consumed;
+
+    public StreamingMultipartEntity() {
+        char[] chars = new char[30];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)];
+        }
+        this.boundary = new String(chars);
+        setContentType("multipart/form-data; boundary=" + this.boundary);
+    }
+
+    /**
+     * 普通表单字段，如上传视频素材时的description.
+     */
+    public StreamingMultipartEntity addText(String name, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        this.parts.add(new Part(name, null, ContentType.TEXT_PLAIN.withCharset(StandardCharsets.UTF_8).toString(),
+                bytes, null, null, bytes.length));
+        return this;
+    }
+
+    /**
+     * 文件字段，Content-Type根据文件名推断.
+     */
+    public StreamingMultipartEntity addFile(String name, File file) {
+        return addFile(name, file.getName(), file);
+    }
+
+    public StreamingMultipartEntity addFile(String name, String fileName, File file) {
+        this.parts.add(new Part(name, fileName, guessContentType(fileName), null, file, null, file.length()));
+        return this;
+    }
+
+    /**
+     * 输入流字段，流由调用方负责关闭.
+     *
+     * @param length 流的长度，长度未知时应先写入临时文件再用{@link #addFile}
+     */
+    public StreamingMultipartEntity addStream(String name, String fileName, InputStream inputStream, long length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("stream length must be known: " + length);
+        }
+        this.parts.add(new Part(name, fileName, guessContentType(fileName), null, null, inputStream, length));
+        return this;
+    }
+
+    public String getBoundary() {
+        return this.boundary;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        for (Part part : this.parts) {
+            if (part.stream != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return !isRepeatable() && !this.consumed;
+    }
+
+    @Override
+    public long getContentLength() {
+        long length = 0;
+        for (Part part : this.parts) {
+            length += DASHES.length + boundaryLength() + CRLF.length + part.header.length + part.length
+                    + CRLF.length;
+        }
+        return length + DASHES.length + boundaryLength() + DASHES.length + CRLF.length;
+    }
+
+    /**
+     * 按顺序拼接各部分，文件部分在此时打开，读完后关闭返回的流即可释放.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        this.markConsumed();
+        byte[] boundaryBytes = this.boundary.getBytes(StandardCharsets.US_ASCII);
+        List<InputStream> streams = new ArrayList<>(this.parts.size() * 3 + 1);
+        try {
+            for (Part part : this.parts) {
+                streams.add(new ByteArrayInputStream(concat(DASHES, boundaryBytes, CRLF, part.header)));
+                if (part.text != null) {
+                    streams.add(new ByteArrayInputStream(part.text));
+                }
+                else if (part.file != null) {
+                    streams.add(new FileInputStream(part.file));
+                }
+                else {
+                    streams.add(part.stream);
+                }
+                streams.add(new ByteArrayInputStream(CRLF));
+            }
+        }
+        catch (IOException e) {
+            for (InputStream stream : streams) {
+                stream.close();
+            }
+            throw e;
+        }
+        streams.add(new ByteArrayInputStream(concat(DASHES, boundaryBytes, DASHES, CRLF)));
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        this.markConsumed();
+        byte[] boundaryBytes = this.boundary.getBytes(StandardCharsets.US_ASCII);
+        byte[] buffer = null;
+        for (Part part : this.parts) {
+            out.write(DASHES);
+            out.write(boundaryBytes);
+            out.write(CRLF);
+            out.write(part.header);
+            if (part.text != null) {
+                out.write(part.text);
+            }
+            else if (part.file != null) {
+                transferFile(part.file, out);
+            }
+            else {
+                if (buffer == null) {
+                    buffer = new byte[BUFFER_SIZE];
+                }
+                int n;
+                while ((n = part.stream.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            out.write(CRLF);
+        }
+        out.write(DASHES);
+        out.write(boundaryBytes);
+        out.write(DASHES);
+        out.write(CRLF);
+        out.flush();
+    }
+
+    private void markConsumed() {
+        if (this.consumed && !isRepeatable()) {
+            throw new IllegalStateException("multipart entity with stream parts can only be written once");
+        }
+        this.consumed = true;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        int length = 0;
+        for (byte[] array : arrays) {
+            length += array.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] array : arrays) {
+            System.arraycopy(array, 0, result, offset, array.length);
+            offset += array.length;
+        }
+        return result;
+    }
+
+    private static void transferFile(File file, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+        }
+    }
+
+    private int boundaryLength() {
+        return this.boundary.length();
+    }
+
+    private static String guessContentType(String fileName) {
+        String contentType = fileName == null ? null : URLConnection.guessContentTypeFromName(fileName);
+        return contentType == null ? ContentType.APPLICATION_OCTET_STREAM.getMimeType() : contentType;
+    }
+
+    private static class Part {
+        private final byte[] header;
+        private final byte[] text;
+        private final File file;
+        private final InputStream stream;
+        private final long length;
+
+        private Part(String name, String fileName, String contentType, byte[] text, File file, InputStream stream,
+                long length) {
+            StringBuilder sb = new StringBuilder("Content-Disposition: form-data; name=\"").append(name).append('"');
+            if (fileName != null) {
+                sb.append("; filename=\"").append(fileName).append('"');
+            }
+            sb.append("\r\nContent-Type: ").append(contentType).append("\r\n\r\n");
+            this.header = sb.toString().getBytes(StandardCharsets.UTF_8);
+            this.text = text;
+            this.file = file;
+            this.stream = stream;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.wyb.common.util.http;
+
+/**
+ * 在接口地址后追加查询参数，使用当前线程复用的StringBuilder，只在最后生成一次String.
+ * 同一线程上一个UrlBuilder调用build()之前不要再创建新的UrlBuilder。
+ *
+ * <pre>
+ *   String url = UrlBuilder.of(apiUrl).param("access_token", token).build();
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public final class UrlBuilder {
+
+  private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+  private final StringBuilder sb;
+  private boolean hasQuery;
+
+  private UrlBuilder(StringBuilder sb, boolean hasQuery) {
+    this.sb = sb;
+    this.hasQuery = hasQuery;
+  }
+
+  public static UrlBuilder of(String url) {
+    StringBuilder sb = BUFFER.get();
+    sb.setLength(0);
+    sb.append(url);
+    return new UrlBuilder(sb, url.indexOf('?') >= 0);
+  }
+
+  /**
+   * 追加参数，value原样追加，调用方保证只含URL安全字符（如access_token），否则先用URIUtil编码；
+   * 地址中已有'?'时用'&amp;'连接，与原有拼接方式一致
+   */
+  public UrlBuilder param(String name, String value) {
+    this.sb.append(this.hasQuery ? '&' : '?').append(name).append('=').append(value);
+    this.hasQuery = true;
+    return this;
+  }
+
+  public String build() {
+    return this.sb.toString();
+  }
+}
@@ -0,0 +1,40 @@
+package com.wyb.common.util.metrics;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * 接口调用统计快照，用于对外导出.
+ *
+ * @author Kunzite
+ */
+@Data
+public class ApiCallSnapshot implements Serializable {
+    private static final long serialVersionUID = 3358216724458032101L;
+
+    /**
+     * 调用次数.
+     */
+    private long calls;
+    /**
+     * 返回了非0 errcode的次数.
+     */
+    private long errors;
+    /**
+     * 没有拿到响应的次数.
+     */
+    private long failures;
+    private long bytesIn;
+    private long bytesOut;
+    private double meanMillis;
+    private double p50Millis;
+    private double p90Millis;
+    private double p99Millis;
+    private double maxMillis;
+    /**
+     * errcode -> 次数.
+     */
+    private Map<Integer, Long> errorCodes;
+}
@@ -0,0 +1,142 @@
+package com.wyb.common.util.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * 单个接口的调用统计：延迟分布、上下行字节数、errcode分布.
+ * 实例由调用方按接口预先创建并复用，记录路径上不构造Map或其它临时对象。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class ApiCallStats {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    /**
+     * errcode非0时才会写入，正常调用不会触达.
+     */
+    private final ConcurrentMap<Integer, LongAdder> errorCodes = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次拿到了响应的调用.
+     *
+     * @param elapsedNanos 耗时，纳秒
+     * @param errorCode    响应中的errcode，没有errcode字段时传0
+     */
+    public void record(long elapsedNanos, long requestBytes, long responseBytes, int errorCode) {
+        this.latency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        this.calls.increment();
+        this.bytesOut.add(requestBytes);
+        this.bytesIn.add(responseBytes);
+        if (errorCode != 0) {
+            this.errors.increment();
+            LongAdder counter = this.errorCodes.get(errorCode);
+            if (counter == null) {
+                counter = this.errorCodes.computeIfAbsent(errorCode, k -> new LongAdder());
+            }
+            counter.increment();
+        }
+    }
+
+    /**
+     * 记录一次没有拿到响应的调用（网络异常、非200状态等）.
+     */
+    public void recordFailure(long elapsedNanos, long requestBytes) {
+        this.latency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        this.calls.increment();
+        this.failures.increment();
+        this.bytesOut.add(requestBytes);
+    }
+
+    public LatencyHistogram getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * 导出当前统计的快照，延迟单位为毫秒.
+     */
+    public ApiCallSnapshot snapshot() {
+        ApiCallSnapshot snapshot = new ApiCallSnapshot();
+        snapshot.setCalls(this.calls.sum());
+        snapshot.setErrors(this.errors.sum());
+        snapshot.setFailures(this.failures.sum());
+        snapshot.setBytesIn(this.bytesIn.sum());
+        snapshot.setBytesOut(this.bytesOut.sum());
+        snapshot.setMeanMillis(this.latency.getMean() / 1000D);
+        snapshot.setP50Millis(this.latency.getValueAtPercentile(50) / 1000D);
+        snapshot.setP90Millis(this.latency.getValueAtPercentile(90) / 1000D);
+        snapshot.setP99Millis(this.latency.getValueAtPercentile(99) / 1000D);
+        snapshot.setMaxMillis(this.latency.getMax() / 1000D);
+        Map<Integer, Long> codes = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : this.errorCodes.entrySet()) {
+            codes.put(entry.getKey(), entry.getValue().sum());
+        }
+        snapshot.setErrorCodes(codes);
+        return snapshot;
+    }
+
+    /**
+     * 统计字符串按UTF-8编码后的字节数，不做实际编码.
+     */
+    public static long utf8Length(CharSequence s) {
+        if (s == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 从响应中直接扫描出errcode，不解析整个json；没有errcode字段时返回0.
+     */
+    public static int errorCodeOf(String response) {
+        if (response == null) {
+            return 0;
+        }
+        int idx = response.indexOf("\"errcode\"");
+        if (idx < 0) {
+            return 0;
+        }
+        int i = idx + 9;
+        int n = response.length();
+        while (i < n && (response.charAt(i) == ':' || Character.isWhitespace(response.charAt(i)))) {
+            i++;
+        }
+        boolean negative = i < n && response.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        int code = 0;
+        while (i < n && Character.isDigit(response.charAt(i))) {
+            code = code * 10 + (response.charAt(i++) - '0');
+        }
+        return negative ? -code : code;
+    }
+}
@@ -0,0 +1,103 @@
+package com.wyb.common.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <pre>
+ * 对数-线性分桶的延迟直方图（思路同HdrHistogram）.
+ * 小于64的值逐一计数，其后每个2的幂区间再等分32个桶，相对误差约3%。
+ * 记录时只做位运算和一次原子自增，不产生任何对象，可常驻生产环境。
+ * 单位由调用方决定，本项目统一使用微秒。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_LIMIT = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * 最大可区分的指数，2^38微秒约76小时，超出的值落入最后一个桶.
+     */
+    private static final int MAX_EXPONENT = 38;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - 5) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * 记录一个值，负数按0处理.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts.incrementAndGet(indexOf(value));
+        this.totalCount.incrementAndGet();
+        this.totalValue.addAndGet(value);
+        long max;
+        while (value > (max = this.maxValue.get())) {
+            if (this.maxValue.compareAndSet(max, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return this.totalCount.get();
+    }
+
+    public long getMax() {
+        return this.maxValue.get();
+    }
+
+    public double getMean() {
+        long count = this.totalCount.get();
+        return count == 0 ? 0 : (double) this.totalValue.get() / count;
+    }
+
+    /**
+     * 获取百分位上的值（桶的上界），percentile取值0~100.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = this.totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100D) / 100D * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), this.maxValue.get());
+            }
+        }
+        return this.maxValue.get();
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return LINEAR_LIMIT + (exponent - 6) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 6;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,39 @@
+package com.wyb.common.util.page;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分页接口返回的一页数据.
+ *
+ * @param <C> 游标类型，如next_openid或offset
+ * @param <T> 元素类型
+ * @author Kunzite
+ */
+public class WxPage<C, T> {
+
+    private final List<T> items;
+    private final C nextCursor;
+    private final boolean hasMore;
+
+    public WxPage(List<T> items, C nextCursor, boolean hasMore) {
+        this.items = items == null ? Collections.<T>emptyList() : items;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<T> getItems() {
+        return this.items;
+    }
+
+    /**
+     * 获取下一页所用的游标.
+     */
+    public C getNextCursor() {
+        return this.nextCursor;
+    }
+
+    public boolean hasMore() {
+        return this.hasMore;
+    }
+}
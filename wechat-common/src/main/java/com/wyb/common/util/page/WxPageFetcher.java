@@ -0,0 +1,14 @@
+package com.wyb.common.util.page;
+
+import com.wyb.common.exception.WxErrorException;
+
+/**
+ * 按游标获取一页数据.
+ *
+ * @author Kunzite
+ */
+@FunctionalInterface
+public interface WxPageFetcher<C, T> {
+
+    WxPage<C, T> fetch(C cursor) throws WxErrorException;
+}
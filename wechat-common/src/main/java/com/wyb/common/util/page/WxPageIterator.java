@@ -0,0 +1,128 @@
+package com.wyb.common.util.page;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.exception.WxRuntimeException;
+
+/**
+ * <pre>
+ * 分页接口的惰性迭代器，遍历到当前页末尾时才获取下一页.
+ * 指定prefetchExecutor时，开始消费一页的同时在后台获取下一页，内存中最多同时持有两页。
+ * 接口出错时抛出{@link WxRuntimeException}，之后迭代结束。
+ * 非线程安全。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxPageIterator<C, T> implements Iterator<T>, AutoCloseable {
+
+    private final WxPageFetcher<C, T> fetcher;
+    private final Executor prefetchExecutor;
+
+    private Iterator<T> current = Collections.emptyIterator();
+    private C nextCursor;
+    private boolean hasMorePages = true;
+    private CompletableFuture<WxPage<C, T>> prefetched;
+
+    public WxPageIterator(WxPageFetcher<C, T> fetcher, C firstCursor) {
+        this(fetcher, firstCursor, null);
+    }
+
+    /**
+     * @param prefetchExecutor 后台预取下一页的线程池，为null时不预取
+     */
+    public WxPageIterator(WxPageFetcher<C, T> fetcher, C firstCursor, Executor prefetchExecutor) {
+        this.fetcher = fetcher;
+        this.nextCursor = firstCursor;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!this.current.hasNext()) {
+            if (!this.hasMorePages) {
+                return false;
+            }
+            WxPage<C, T> page = this.takePage();
+            this.current = page.getItems().iterator();
+            this.hasMorePages = page.hasMore();
+            this.nextCursor = page.getNextCursor();
+            if (this.hasMorePages && this.prefetchExecutor != null) {
+                final C cursor = this.nextCursor;
+                this.prefetched = CompletableFuture.supplyAsync(() -> this.fetch(cursor), this.prefetchExecutor);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.current.next();
+    }
+
+    /**
+     * 转为顺序流，关闭流时取消未完成的预取.
+     */
+    public Stream<T> stream() {
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * 放弃剩余的页.
+     */
+    @Override
+    public void close() {
+        this.hasMorePages = false;
+        this.current = Collections.emptyIterator();
+        if (this.prefetched != null) {
+            this.prefetched.cancel(false);
+            this.prefetched = null;
+        }
+    }
+
+    private WxPage<C, T> takePage() {
+        CompletableFuture<WxPage<C, T>> future = this.prefetched;
+        this.prefetched = null;
+        try {
+            return future == null ? this.fetch(this.nextCursor) : future.join();
+        }
+        catch (CompletionException e) {
+            this.hasMorePages = false;
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        catch (RuntimeException e) {
+            this.hasMorePages = false;
+            throw e;
+        }
+    }
+
+    /**
+     * 预取时在后台线程执行，不修改迭代器状态.
+     */
+    private WxPage<C, T> fetch(C cursor) {
+        try {
+            return this.fetcher.fetch(cursor);
+        }
+        catch (WxErrorException e) {
+            throw new WxRuntimeException(e);
+        }
+    }
+}
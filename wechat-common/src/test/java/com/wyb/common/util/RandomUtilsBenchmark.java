@@ -0,0 +1,71 @@
+package com.wyb.common.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <pre>
+ * RandomUtils的JMH基准，与改动前共享java.util.Random、逐个charAt拼接的实现对比.
+ * 不是单元测试，surefire不会运行，手动执行：
+ *   mvn test-compile
+ *   java -cp target/test-classes:target/classes:依赖 com.wyb.common.util.RandomUtilsBenchmark [线程数...]
+ * 不传线程数时依次以1、2、4、8、16、32个线程运行。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomUtilsBenchmark {
+
+    private static final String LEGACY_SYMBOLS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final Random LEGACY_RANDOM = new Random();
+
+    @Benchmark
+    public String legacyShared() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            sb.append(LEGACY_SYMBOLS.charAt(LEGACY_RANDOM.nextInt(LEGACY_SYMBOLS.length())));
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public String threadLocal() {
+        return RandomUtils.getRandomStr();
+    }
+
+    @Benchmark
+    public String secure() {
+        return RandomUtils.getSecureRandomStr();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int[] threads = args.length == 0 ? new int[] {1, 2, 4, 8, 16, 32} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            threads[i] = Integer.parseInt(args[i]);
+        }
+        for (int count : threads) {
+            Options options = new OptionsBuilder()
+                    .include(RandomUtilsBenchmark.class.getSimpleName())
+                    .threads(count)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.wyb.common.util;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Kunzite
+ */
+public class RandomUtilsTest {
+    private static final String SYMBOLS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final int PER_SYMBOL = 10000;
+
+    /**
+     * 每个字符期望出现PER_SYMBOL次，标准差约100，偏差超过6个标准差视为分布不均.
+     */
+    private static void assertUniform(IntFunction<String> generator) {
+        int[] counts = new int[SYMBOLS.length()];
+        int length = 62;
+        for (int n = 0; n < PER_SYMBOL; n++) {
+            String str = generator.apply(length);
+            Assert.assertEquals(length, str.length());
+            for (int i = 0; i < length; i++) {
+                int index = SYMBOLS.indexOf(str.charAt(i));
+                Assert.assertTrue("非法字符: " + str.charAt(i), index >= 0);
+                counts[index]++;
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            Assert.assertTrue(SYMBOLS.charAt(i) + "出现" + counts[i] + "次", Math.abs(counts[i] - PER_SYMBOL) < 600);
+        }
+    }
+
+    @Test
+    public void testRandomStrIsUniform() {
+        assertUniform(RandomUtils::getRandomStr);
+    }
+
+    @Test
+    public void testSecureRandomStrIsUniform() {
+        assertUniform(RandomUtils::getSecureRandomStr);
+    }
+
+    @Test
+    public void testLength() {
+        Assert.assertEquals(16, RandomUtils.getRandomStr().length());
+        Assert.assertEquals(16, RandomUtils.getSecureRandomStr().length());
+        Assert.assertEquals("", RandomUtils.getRandomStr(0));
+        // 超过一个long能切出的10个字符
+        Assert.assertEquals(11, RandomUtils.getRandomStr(11).length());
+    }
+
+    @Test
+    public void testNoRepeats() {
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(values.add(RandomUtils.getRandomStr()));
+        }
+    }
+}
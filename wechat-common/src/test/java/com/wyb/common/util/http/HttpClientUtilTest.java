@@ -0,0 +1,142 @@
+package com.wyb.common.util.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 用本地的HttpServer模拟微信的下载接口.
+ *
+ * @author Kunzite
+ */
+public class HttpClientUtilTest {
+
+    private static final byte[] MEDIA = new byte[100_000];
+
+    static {
+        for (int i = 0; i < MEDIA.length; i++) {
+            MEDIA[i] = (byte) i;
+        }
+    }
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicBoolean honorRange = new AtomicBoolean(true);
+
+    @Before
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/media", this::serveMedia);
+        this.server.createContext("/error", exchange -> respond(exchange, 200, "text/plain",
+                "{\"errcode\":40007,\"errmsg\":\"invalid media_id\"}".getBytes(StandardCharsets.UTF_8)));
+        this.server.createContext("/video", exchange -> respond(exchange, 200, "application/json; charset=utf-8",
+                "{\"video_url\":\"http://example.com/v.mp4\"}".getBytes(StandardCharsets.UTF_8)));
+        this.server.createContext("/text", exchange -> respond(exchange, 200, "text/plain",
+                "{\"name\":\"a json document stored as media\"}".getBytes(StandardCharsets.UTF_8)));
+        this.server.start();
+        this.baseUrl = "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        this.server.stop(0);
+    }
+
+    private void serveMedia(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null || !this.honorRange.get()) {
+            exchange.getResponseHeaders().add("Content-Disposition", "attachment; filename=\"a.jpg\"");
+            respond(exchange, 200, "image/jpeg", MEDIA);
+            return;
+        }
+        int from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+        if (from >= MEDIA.length) {
+            respond(exchange, 416, "text/plain", new byte[0]);
+            return;
+        }
+        respond(exchange, 206, "image/jpeg", Arrays.copyOfRange(MEDIA, from, MEDIA.length));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void testDownloadToChannel() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DownloadResult result = HttpClientUtil.doGetDownload(this.baseUrl + "/media", null, Channels.newChannel(out));
+
+        Assert.assertFalse(result.isJson());
+        Assert.assertEquals(MEDIA.length, result.getBytesWritten());
+        Assert.assertEquals("a.jpg", result.getFileName());
+        Assert.assertArrayEquals(MEDIA, out.toByteArray());
+    }
+
+    @Test
+    public void testErrorDetection() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DownloadResult error = HttpClientUtil.doGetDownload(this.baseUrl + "/error", null, Channels.newChannel(out));
+        Assert.assertTrue(error.isJson());
+        Assert.assertTrue(error.getJsonBody().contains("40007"));
+
+        DownloadResult video = HttpClientUtil.doGetDownload(this.baseUrl + "/video", null, Channels.newChannel(out));
+        Assert.assertTrue(video.isJson());
+        Assert.assertEquals(0, out.size());
+
+        // 没有errcode的文本文件按普通文件下载
+        DownloadResult text = HttpClientUtil.doGetDownload(this.baseUrl + "/text", null, Channels.newChannel(out));
+        Assert.assertFalse(text.isJson());
+        Assert.assertEquals("{\"name\":\"a json document stored as media\"}",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        File file = File.createTempFile("wx-download", ".jpg");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.copyOf(MEDIA, 30_000));
+
+        DownloadResult result = HttpClientUtil.doDownloadToFile(this.baseUrl + "/media", file, true);
+        Assert.assertTrue(result.isResumed());
+        Assert.assertEquals(MEDIA.length - 30_000, result.getBytesWritten());
+        Assert.assertArrayEquals(MEDIA, Files.readAllBytes(file.toPath()));
+
+        // 已完整时服务端返回416
+        result = HttpClientUtil.doDownloadToFile(this.baseUrl + "/media", file, true);
+        Assert.assertEquals(416, result.getStatusCode());
+        Assert.assertArrayEquals(MEDIA, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testResumeIgnoredByServerRewritesFile() throws IOException {
+        this.honorRange.set(false);
+        File file = File.createTempFile("wx-download", ".jpg");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[30_000]);
+
+        DownloadResult result = HttpClientUtil.doDownloadToFile(this.baseUrl + "/media", file, true);
+        Assert.assertFalse(result.isResumed());
+        Assert.assertEquals(MEDIA.length, result.getBytesWritten());
+        Assert.assertArrayEquals(MEDIA, Files.readAllBytes(file.toPath()));
+    }
+}
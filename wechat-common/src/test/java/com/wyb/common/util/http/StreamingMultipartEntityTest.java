@@ -0,0 +1,72 @@
+package com.wyb.common.util.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * @author Kunzite
+ */
+public class StreamingMultipartEntityTest {
+
+    @Test
+    public void testContentLengthMatchesBody() throws Exception {
+        File file = File.createTempFile("wx-multipart", ".jpg");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "jpeg-bytes".getBytes(StandardCharsets.UTF_8));
+        byte[] streamBytes = "stream-bytes".getBytes(StandardCharsets.UTF_8);
+
+        StreamingMultipartEntity entity = new StreamingMultipartEntity()
+                .addText("description", "{\"title\":\"标题\"}")
+                .addFile("media", file)
+                .addStream("extra", "extra.amr", new ByteArrayInputStream(streamBytes), streamBytes.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        Assert.assertEquals(out.size(), entity.getContentLength());
+        String body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        Assert.assertTrue(body.contains("filename=\"" + file.getName() + "\"\r\nContent-Type: image/jpeg\r\n\r\njpeg-bytes\r\n"));
+        Assert.assertTrue(body.contains("stream-bytes"));
+        Assert.assertTrue(body.endsWith("--" + entity.getBoundary() + "--\r\n"));
+        Assert.assertFalse(entity.isRepeatable());
+    }
+
+    @Test
+    public void testGetContentEqualsWriteTo() throws Exception {
+        File file = File.createTempFile("wx-multipart", ".mp4");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[100_000]);
+
+        StreamingMultipartEntity entity = new StreamingMultipartEntity().addText("a", "b").addFile("media", file);
+        Assert.assertTrue(entity.isRepeatable());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        byte[] content;
+        try (InputStream in = entity.getContent()) {
+            content = ByteStreams.toByteArray(in);
+        }
+        Assert.assertArrayEquals(out.toByteArray(), content);
+        Assert.assertEquals(content.length, entity.getContentLength());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStreamLengthIsRejected() {
+        new StreamingMultipartEntity().addStream("media", "a.jpg", new ByteArrayInputStream(new byte[1]), -1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStreamPartCanOnlyBeWrittenOnce() throws Exception {
+        StreamingMultipartEntity entity = new StreamingMultipartEntity().addStream("media", "a.jpg",
+                new ByteArrayInputStream(new byte[1]), 1);
+        entity.writeTo(new ByteArrayOutputStream());
+        entity.getContent();
+    }
+}
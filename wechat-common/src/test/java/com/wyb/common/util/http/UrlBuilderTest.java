@@ -0,0 +1,59 @@
+package com.wyb.common.util.http;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Kunzite
+ */
+public class UrlBuilderTest {
+
+    @Test
+    public void testParams() {
+        Assert.assertEquals("https://api.weixin.qq.com/cgi-bin/menu/get",
+                UrlBuilder.of("https://api.weixin.qq.com/cgi-bin/menu/get").build());
+        Assert.assertEquals("https://api.weixin.qq.com/cgi-bin/menu/get?access_token=t1",
+                UrlBuilder.of("https://api.weixin.qq.com/cgi-bin/menu/get").param("access_token", "t1").build());
+        Assert.assertEquals("https://api.weixin.qq.com/cgi-bin/user/get?next_openid=o1&access_token=t1",
+                UrlBuilder.of("https://api.weixin.qq.com/cgi-bin/user/get?next_openid=o1")
+                        .param("access_token", "t1").build());
+        Assert.assertEquals("https://example.com/a?x=1&y=2",
+                UrlBuilder.of("https://example.com/a").param("x", "1").param("y", "2").build());
+    }
+
+    @Test
+    public void testBufferIsResetBetweenUrls() {
+        String first = UrlBuilder.of("https://example.com/a-very-long-path").param("x", "1").build();
+        String second = UrlBuilder.of("https://example.com/b").build();
+        Assert.assertEquals("https://example.com/a-very-long-path?x=1", first);
+        Assert.assertEquals("https://example.com/b", second);
+    }
+
+    @Test
+    public void testThreadsDoNotShareBuffer() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < futures.length; t++) {
+                String base = "https://example.com/" + t;
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        String value = String.valueOf(i);
+                        Assert.assertEquals(base + "?i=" + value, UrlBuilder.of(base).param("i", value).build());
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.wyb.common.util.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Kunzite
+ */
+public class ApiCallStatsTest {
+
+    @Test
+    public void testErrorCodeOf() {
+        Assert.assertEquals(0, ApiCallStats.errorCodeOf(null));
+        Assert.assertEquals(0, ApiCallStats.errorCodeOf(""));
+        Assert.assertEquals(0, ApiCallStats.errorCodeOf("{\"access_token\":\"abc\",\"expires_in\":7200}"));
+        Assert.assertEquals(0, ApiCallStats.errorCodeOf("{\"errcode\":0,\"errmsg\":\"ok\"}"));
+        Assert.assertEquals(40001, ApiCallStats.errorCodeOf("{\"errcode\":40001,\"errmsg\":\"invalid credential\"}"));
+        Assert.assertEquals(45009, ApiCallStats.errorCodeOf("{\"errmsg\":\"reach max api daily quota limit\", \"errcode\" : 45009}"));
+        Assert.assertEquals(-1, ApiCallStats.errorCodeOf("{\"errcode\":-1,\"errmsg\":\"system error\"}"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.wyb.common.util.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Kunzite
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBoundaries() {
+        for (long value = 0; value < 64; value++) {
+            Assert.assertEquals(value, LatencyHistogram.indexOf(value));
+            Assert.assertEquals(value, LatencyHistogram.highestValueOf((int) value));
+        }
+        // 64以后每个桶覆盖的区间包含该值，且相对误差不超过1/32
+        for (long value = 64; value < (1L << 38); value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.indexOf(value);
+            long highest = LatencyHistogram.highestValueOf(index);
+            Assert.assertTrue(value <= highest);
+            Assert.assertTrue(index == 0 || LatencyHistogram.highestValueOf(index - 1) < value);
+            Assert.assertTrue((highest - value) * 32 <= value);
+        }
+        Assert.assertEquals(LatencyHistogram.indexOf(1L << 40), LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5);
+
+        Assert.assertEquals(101, histogram.getCount());
+        Assert.assertEquals(100, histogram.getMax());
+        Assert.assertEquals(5050D / 101, histogram.getMean(), 1e-9);
+        Assert.assertEquals(0, histogram.getValueAtPercentile(0));
+        Assert.assertEquals(50, histogram.getValueAtPercentile(50));
+        // 64以上两个值一个桶，返回桶的上界
+        Assert.assertEquals(97, histogram.getValueAtPercentile(96));
+        Assert.assertEquals(100, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testPercentileNeverExceedsMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        Assert.assertEquals(1000, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+}
@@ -0,0 +1,120 @@
+package com.wyb.common.util.page;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wyb.common.exception.WxError;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.exception.WxRuntimeException;
+
+/**
+ * 游标为偏移量，模拟每页pageSize条、共total条的分页接口.
+ *
+ * @author Kunzite
+ */
+public class WxPageIteratorTest {
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private WxPageFetcher<Integer, Integer> offsetFetcher(int total, int pageSize) {
+        return offset -> {
+            this.fetches.incrementAndGet();
+            List<Integer> items = new ArrayList<>();
+            for (int i = offset; i < Math.min(total, offset + pageSize); i++) {
+                items.add(i);
+            }
+            int next = offset + items.size();
+            return new WxPage<>(items, next, !items.isEmpty() && next < total);
+        };
+    }
+
+    private static List<Integer> range(int n) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    private static <T> List<T> drain(WxPageIterator<?, T> iterator) {
+        List<T> result = new ArrayList<>();
+        iterator.forEachRemaining(result::add);
+        return result;
+    }
+
+    @Test
+    public void testPaging() {
+        List<Integer> items = drain(new WxPageIterator<>(this.offsetFetcher(25, 10), 0));
+        Assert.assertEquals(range(25), items);
+        Assert.assertEquals(3, this.fetches.get());
+    }
+
+    @Test
+    public void testExactMultipleOfPageSize() {
+        List<Integer> items = drain(new WxPageIterator<>(this.offsetFetcher(20, 10), 0));
+        Assert.assertEquals(range(20), items);
+        Assert.assertEquals(2, this.fetches.get());
+    }
+
+    @Test
+    public void testEmptyFirstPage() {
+        WxPageIterator<Integer, Integer> iterator = new WxPageIterator<>(this.offsetFetcher(0, 10), 0);
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(1, this.fetches.get());
+    }
+
+    @Test
+    public void testEmptyPageInTheMiddleIsSkipped() {
+        List<WxPage<String, String>> pages = Arrays.asList(
+                new WxPage<>(Arrays.asList("a", "b"), "1", true),
+                new WxPage<>(Collections.<String>emptyList(), "2", true),
+                new WxPage<>(Collections.singletonList("c"), null, false));
+        WxPageIterator<String, String> iterator = new WxPageIterator<>(
+                cursor -> pages.get(cursor == null ? 0 : Integer.parseInt(cursor)), null);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), drain(iterator));
+    }
+
+    @Test
+    public void testPrefetch() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            WxPageIterator<Integer, Integer> iterator = new WxPageIterator<>(this.offsetFetcher(95, 10), 0,
+                    executor);
+            Assert.assertEquals(range(95), iterator.stream().collect(Collectors.toList()));
+            Assert.assertEquals(10, this.fetches.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testErrorEndsIteration() {
+        WxPageIterator<Integer, Integer> iterator = new WxPageIterator<>(offset -> {
+            if (offset > 0) {
+                throw new WxErrorException(WxError.builder().errorCode(45009).errorMsg("quota").build());
+            }
+            return new WxPage<>(Arrays.asList(1, 2), 2, true);
+        }, 0);
+        Assert.assertEquals(Integer.valueOf(1), iterator.next());
+        Assert.assertEquals(Integer.valueOf(2), iterator.next());
+        try {
+            iterator.hasNext();
+            Assert.fail("expected WxRuntimeException");
+        }
+        catch (WxRuntimeException e) {
+            Assert.assertEquals(45009, e.getError().getErrorCode());
+        }
+        Assert.assertFalse(iterator.hasNext());
+    }
+}
@@ -1,15 +1,26 @@
 package com.wyb.demo.config;
 
 import com.wyb.mp.api.WxMpConfigStorage;
-import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.api.cache.WxMpApiCache;
 import com.wyb.mp.api.impl.WxMpInMemoryConfigStorage;
-import com.wyb.mp.api.impl.WxMpServiceImpl;
+import com.wyb.mp.api.impl.WxMpMultiAccountServiceImpl;
+import com.wyb.mp.api.impl.WxMpSharedConfigStorage;
+import com.wyb.mp.api.impl.WxMpSnapshotConfigStorage;
 import com.wyb.mp.qq.api.QqApiService;
 import com.wyb.mp.qq.api.impl.QqApiServiceImpl;
+import com.wyb.mp.util.jsapi.WxMpJsapiSigner;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
 /**
  * 微信公众号配置
  *
@@ -30,20 +41,55 @@ public class MainConfiguration {
     @Value("${wx.aesKey}")
     private String aesKey;
 
+    /**
+     * 多节点部署时设为true，access_token和ticket保存在redis中由各节点共用
+     */
+    @Value("${wx.sharedTokenStore:false}")
+    private boolean sharedTokenStore;
+
+    /**
+     * 设置后access_token和ticket写入该目录下的快照文件，重启后继续使用仍然有效的token；
+     * 快照只记录本节点写入的值，sharedTokenStore为true时不使用
+     */
+    @Value("${wx.tokenSnapshotDir:}")
+    private String tokenSnapshotDir;
+
     @Bean
-    public WxMpConfigStorage wxMpConfigStorage() {
-        WxMpInMemoryConfigStorage configStorage = new WxMpInMemoryConfigStorage();
+    public WxMpConfigStorage wxMpConfigStorage(ObjectProvider<StringRedisTemplate> redisTemplate)
+            throws IOException {
+        WxMpInMemoryConfigStorage configStorage = this.sharedTokenStore
+                ? new WxMpSharedConfigStorage(new RedisWxMpKeyValueStore(redisTemplate.getObject()))
+                : new WxMpInMemoryConfigStorage();
         configStorage.setAppId(this.appId);
         configStorage.setSecret(this.appSecret);
         configStorage.setToken(this.token);
         configStorage.setAesKey(this.aesKey);
+        if (!this.sharedTokenStore && StringUtils.isNotBlank(this.tokenSnapshotDir)) {
+            return new WxMpSnapshotConfigStorage(configStorage, new File(this.tokenSnapshotDir, this.appId + ".token"));
+        }
         return configStorage;
     }
 
+    /**
+     * 标签、菜单、模板列表的接口缓存，存放在spring cache的wxMpApi缓存中
+     */
     @Bean
-    public WxMpService wxMpService() {
-        WxMpService wxMpService = new WxMpServiceImpl();
-        wxMpService.setWxMpConfigStorage(wxMpConfigStorage());
+    public WxMpApiCache wxMpApiCache(CacheManager cacheManager) {
+        return new WxMpApiCache(cacheManager);
+    }
+
+    /**
+     * 支持多公众号，默认使用配置文件中的公众号；其他公众号通过addConfigStorage注册，
+     * 按请求切换用switchover/withAccount，交给其他线程时用getService(appId)
+     */
+    @Bean(destroyMethod = "close")
+    public WxMpMultiAccountServiceImpl wxMpService(WxMpConfigStorage configStorage, WxMpApiCache wxMpApiCache) {
+        WxMpMultiAccountServiceImpl wxMpService = new WxMpMultiAccountServiceImpl();
+        wxMpService.setWxMpConfigStorage(configStorage);
+        wxMpService.addConfigStorage(configStorage.getAppId(), configStorage);
+        wxMpApiCache.decorate(wxMpService);
+        // 分享页访问量大，同一url一分钟内复用签名
+        wxMpService.setJsapiSigner(new WxMpJsapiSigner(wxMpService, TimeUnit.MINUTES.toMillis(1), 10000));
         return wxMpService;
     }
 
@@ -0,0 +1,72 @@
+package com.wyb.demo.config;
+
+import com.wyb.mp.api.WxMpKeyValueStore;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于redis的共享存储，多个节点共用access_token和ticket
+ *
+ * @author Kunzite
+ */
+public class RedisWxMpKeyValueStore implements WxMpKeyValueStore {
+
+    private static final RedisScript<Long> DELETE_IF_EQUALS = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private static final RedisScript<Long> RENEW_IF_EQUALS = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisWxMpKeyValueStore(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public String get(String key) {
+        return this.redisTemplate.opsForValue().get(key);
+    }
+
+    @Override
+    public void set(String key, String value, long ttlMillis) {
+        this.redisTemplate.opsForValue().set(key, value, ttlMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, long ttlMillis) {
+        // SET key value NX PX ttl，spring-data-redis 2.0的opsForValue还不支持带过期时间的setIfAbsent
+        Boolean result = this.redisTemplate.execute(connection -> connection.set(
+                key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8),
+                Expiration.milliseconds(ttlMillis), RedisStringCommands.SetOption.ifAbsent()), true);
+        return Boolean.TRUE.equals(result);
+    }
+
+    @Override
+    public void delete(String key) {
+        this.redisTemplate.delete(key);
+    }
+
+    @Override
+    public boolean deleteIfEquals(String key, String expected) {
+        Long deleted = this.redisTemplate.execute(DELETE_IF_EQUALS, Collections.singletonList(key), expected);
+        return deleted != null && deleted > 0;
+    }
+
+    @Override
+    public boolean renewIfEquals(String key, String expected, long ttlMillis) {
+        Long renewed = this.redisTemplate.execute(RENEW_IF_EQUALS, Collections.singletonList(key), expected,
+                String.valueOf(ttlMillis));
+        return renewed != null && renewed > 0;
+    }
+}
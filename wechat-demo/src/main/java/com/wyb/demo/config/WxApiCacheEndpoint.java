@@ -0,0 +1,29 @@
+package com.wyb.demo.config;
+
+import com.wyb.mp.api.cache.WxMpApiCache;
+import com.wyb.mp.api.cache.WxMpCacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * 微信接口缓存统计端点，访问 /actuator/wxcache
+ *
+ * @author Kunzite
+ */
+@Component
+@Endpoint(id = "wxcache")
+public class WxApiCacheEndpoint {
+
+    @Autowired
+    private WxMpApiCache wxMpApiCache;
+
+    /**
+     * 命中、未命中、后台刷新、加载失败、失效次数
+     */
+    @ReadOperation
+    public WxMpCacheStats cacheStats() {
+        return this.wxMpApiCache.stats();
+    }
+}
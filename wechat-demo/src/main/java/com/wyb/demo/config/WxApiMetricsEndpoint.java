@@ -0,0 +1,31 @@
+package com.wyb.demo.config;
+
+import java.util.Map;
+
+import com.wyb.common.util.metrics.ApiCallSnapshot;
+import com.wyb.mp.api.WxMpService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * 微信接口调用统计端点，访问 /actuator/wxapi
+ *
+ * @author Kunzite
+ */
+@Component
+@Endpoint(id = "wxapi")
+public class WxApiMetricsEndpoint {
+
+    @Autowired
+    private WxMpService wxMpService;
+
+    /**
+     * appId -> 接口名 -> 调用次数、错误数、字节数、延迟分位数(毫秒)、errcode分布
+     */
+    @ReadOperation
+    public Map<String, Map<String, ApiCallSnapshot>> apiMetrics() {
+        return this.wxMpService.getApiMetrics().snapshot();
+    }
+}
@@ -1,33 +1,45 @@
 package com.wyb.demo.controller;
 
+import javax.annotation.Resource;
+
+import lombok.extern.slf4j.Slf4j;
+
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import com.alibaba.fastjson.JSONObject;
+import com.wyb.common.exception.WxErrorException;
 import com.wyb.common.util.http.HttpClientUtil;
 import com.wyb.demo.utils.MenuUtil;
 import com.wyb.demo.utils.WeixinAuthUtil;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.bean.menu.WxMpMenu;
+import com.wyb.mp.bean.menu.WxMpMenuDeployResult;
+import com.wyb.mp.util.json.WxMpGsonBuilder;
 
 /**
  * @author Kunzite
  */
+@Slf4j
 @Controller
 public class MenuController {
 
+    @Resource
+    private WxMpService wxMpService;
+
     /**
-     * 创建菜单
+     * 发布菜单，与线上菜单相同时不调用创建接口
      */
+    @ResponseBody
     @RequestMapping("/createMenu")
-    public void createMenu() {
-        // 调用UTI执行创建菜单的动作
-        int status = MenuUtil.createMenu(MenuUtil.getMenu());
-        if (status == 0) {
-            System.out.println("菜单创建成功！");
-        }
-        else {
-            System.out.println("菜单创建失败！");
-        }
+    public WxMpMenuDeployResult createMenu() throws WxErrorException {
+        WxMpMenu target = new WxMpMenu();
+        target.setMenu(WxMpGsonBuilder.create().fromJson(JSONObject.toJSONString(MenuUtil.getMenu()),
+                WxMpMenu.WxMpConditionalMenu.class));
+        WxMpMenuDeployResult result = this.wxMpService.getMenuService().menuDeploy(target);
+        log.info(result.isChanged() ? "菜单已更新：{}" : "菜单未变化：{}", result);
+        return result;
     }
 
     /**
@@ -2,6 +2,7 @@ package com.wyb.demo.controller;
 
 import com.wyb.common.bean.WxJsapiSignature;
 import com.wyb.demo.bean.config.WeixinConfig;
+import com.wyb.demo.bean.entity.ReceiveXmlEntity;
 import com.wyb.demo.enums.WeixinAuthEnum;
 import com.wyb.demo.utils.CommonUtils;
 import com.wyb.common.exception.WxErrorException;
@@ -169,6 +170,12 @@ public class WxBaseController {
         if (echostr != null && echostr.length() > 1) {
             result = echostr;
         } else {
+            // 记录用户互动，48小时内可以继续用客服消息回复
+            ReceiveXmlEntity message = WechatMessageUtil.getMsgEntity(xml);
+            if (message != null && StringUtils.isNotBlank(message.getFromUserName())
+                    && !"unsubscribe".equals(message.getEvent())) {
+                this.wxMpService.getKefuService().markInteraction(message.getFromUserName());
+            }
             //正常的微信处理流程
             result = WechatMessageUtil.processWechatMag(xml);
         }
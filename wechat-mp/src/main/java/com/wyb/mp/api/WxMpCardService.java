@@ -0,0 +1,111 @@
+package com.wyb.mp.api;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.bean.card.WxMpCardApiSignature;
+import com.wyb.mp.bean.card.WxMpCardResult;
+
+/**
+ * <pre>
+ * 卡券code相关操作接口
+ * 详情请见：https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1451025239
+ * 门店核销高峰时使用异步接口：解码、查询、核销在线程池上流水执行，调用线程不阻塞；
+ * 同一个code同一时间只允许一个核销在进行，重复提交直接失败；相同的查询合并为一次接口调用。
+ * 核销锁只在本进程内有效，多实例部署时重复核销由微信返回40099拒绝。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public interface WxMpCardService {
+
+    /**
+     * 核销失败：code正在核销或不可核销，与微信"无效code"的错误码一致.
+     */
+    int ERROR_CODE_NOT_CONSUMABLE = 40099;
+
+    /**
+     * <pre>
+     * Code解码接口，把卡券跳转外链中的encrypt_code解码为真实code
+     * 接口url格式：https://api.weixin.qq.com/card/code/decrypt?access_token=TOKEN
+     * </pre>
+     */
+    String decryptCardCode(String encryptCode) throws WxErrorException;
+
+    /**
+     * <pre>
+     * 查询code
+     * 接口url格式：https://api.weixin.qq.com/card/code/get?access_token=TOKEN
+     * 同时进行的相同查询只调用一次接口，共享结果。
+     * </pre>
+     *
+     * @param cardId       卡券ID，自定义code的卡券必填
+     * @param checkConsume 是否校验code核销状态，为true时code不可核销会返回错误
+     */
+    WxMpCardResult queryCardCode(String cardId, String code, boolean checkConsume) throws WxErrorException;
+
+    /**
+     * <pre>
+     * 核销code
+     * 接口url格式：https://api.weixin.qq.com/card/code/consume?access_token=TOKEN
+     * </pre>
+     *
+     * @param cardId 卡券ID，自定义code的卡券必填，其余可为null
+     */
+    WxMpCardResult consumeCardCode(String code, String cardId) throws WxErrorException;
+
+    /**
+     * <pre>
+     * 异步核销：先查询code确认可核销，再核销
+     * 同一code已有核销在进行时立即以{@link #ERROR_CODE_NOT_CONSUMABLE}失败。
+     * 失败时future以{@link java.util.concurrent.CompletionException}结束，cause为WxErrorException。
+     * </pre>
+     */
+    CompletableFuture<WxMpCardResult> consumeCardCodeAsync(String code, String cardId);
+
+    /**
+     * 异步核销加密的code：解码、查询、核销依次执行，其余同{@link #consumeCardCodeAsync}.
+     */
+    CompletableFuture<WxMpCardResult> consumeEncryptedCardCodeAsync(String encryptCode, String cardId);
+
+    /**
+     * <pre>
+     * 接口激活会员卡
+     * 接口url格式：https://api.weixin.qq.com/card/membercard/activate?access_token=TOKEN
+     * </pre>
+     *
+     * @param membershipNumber 会员卡编号，由开发者填入，作为序列号显示在用户的卡包里
+     */
+    void memberCardActivate(String cardId, String code, String membershipNumber) throws WxErrorException;
+
+    /**
+     * <pre>
+     * 获得卡券api_ticket，与jsapi_ticket相同，未过期时不加锁直接返回
+     * </pre>
+     *
+     * @see com.wyb.mp.api.WxMpService#getTicket(com.wyb.mp.enums.TicketType, boolean)
+     */
+    String getCardApiTicket(boolean forceRefresh) throws WxErrorException;
+
+    /**
+     * <pre>
+     * 创建addCard需要的卡券签名
+     * </pre>
+     *
+     * @param code   自定义code的卡券必填，其余为null
+     * @param openId 指定领取者时填写，否则为null
+     */
+    WxMpCardApiSignature createCardApiSignature(String cardId, String code, String openId) throws WxErrorException;
+
+    /**
+     * <pre>
+     * 批量创建卡券签名，用于卡券列表页一次添加多张卡券
+     * 只取一次api_ticket，所有签名使用相同的时间戳，每张卡券使用各自的随机串。
+     * </pre>
+     *
+     * @param openId 指定领取者时填写，否则为null
+     * @return 与cardIds顺序一致
+     */
+    List<WxMpCardApiSignature> createCardApiSignatures(List<String> cardIds, String openId) throws WxErrorException;
+}
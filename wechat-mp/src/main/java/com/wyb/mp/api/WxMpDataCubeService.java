@@ -0,0 +1,40 @@
+package com.wyb.mp.api;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import com.google.gson.JsonObject;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.enums.WxMpApiUrl;
+import com.wyb.mp.util.datacube.WxMpDataCubeTable;
+
+/**
+ * <pre>
+ * 数据统计接口
+ * 详情请见：https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1421141082
+ * 每个接口一次能查询的天数有上限(1~30天)，这里接受任意长度的日期范围，自动拆分成合法的区间并发查询，
+ * 结果按日期顺序合并。end_date最大为昨天。
+ * 需要长期保存、反复查询的数据请使用{@link com.wyb.mp.util.datacube.WxMpDataCubeStore}。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public interface WxMpDataCubeService {
+
+    /**
+     * 接口一次最多能查询的天数.
+     */
+    int getMaxDays(WxMpApiUrl.DataCube api);
+
+    /**
+     * 查询[beginDate, endDate]的数据，返回各次调用结果中list的全部行.
+     */
+    List<JsonObject> getRows(WxMpApiUrl.DataCube api, LocalDate beginDate, LocalDate endDate)
+            throws WxErrorException;
+
+    /**
+     * 查询[beginDate, endDate]的数据并转换为列式的表.
+     */
+    WxMpDataCubeTable getTable(WxMpApiUrl.DataCube api, LocalDate beginDate, LocalDate endDate)
+            throws WxErrorException;
+}
@@ -0,0 +1,20 @@
+package com.wyb.mp.api;
+
+/**
+ * <pre>
+ * 根据微信返回的有效期计算本地认为token、ticket过期（需要刷新）的时间.
+ * 默认实现见{@link com.wyb.mp.api.impl.WxMpDefaultExpiryPolicy}。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@FunctionalInterface
+public interface WxMpExpiryPolicy {
+
+    /**
+     * @param now              获取到token时的时间，毫秒
+     * @param expiresInSeconds 微信返回的expires_in
+     * @return 本地过期时间，毫秒
+     */
+    long expiresAt(long now, int expiresInSeconds);
+}
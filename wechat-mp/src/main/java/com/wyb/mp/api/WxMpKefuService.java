@@ -0,0 +1,89 @@
+package com.wyb.mp.api;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.bean.kefu.WxMpKefuBatchResult;
+import com.wyb.mp.bean.kefu.WxMpKefuMessage;
+import com.wyb.mp.bean.kefu.WxMpKefuStats;
+
+/**
+ * <pre>
+ * 客服消息接口
+ * 用户与公众号互动(发消息、点菜单、关注、扫码等)后48小时内可以向其发送客服消息，
+ * 也是被动回复超过5秒后继续回复用户的唯一方式。
+ * 服务在本地记录每个用户最近一次互动的时间，已知超过48小时的用户不再调用接口，直接返回45015；
+ * 未记录过的用户(如服务重启后)照常发送，收到45015后记下，直到用户再次互动。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public interface WxMpKefuService {
+
+    /**
+     * 正在输入状态.
+     */
+    String TYPING = "Typing";
+    /**
+     * 取消正在输入状态.
+     */
+    String CANCEL_TYPING = "CancelTyping";
+
+    /**
+     * <pre>
+     * 发送客服消息
+     * 详情请见：https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1421140547
+     * 接口url格式：https://api.weixin.qq.com/cgi-bin/message/custom/send?access_token=ACCESS_TOKEN
+     * </pre>
+     */
+    boolean sendKefuMessage(WxMpKefuMessage message) throws WxErrorException;
+
+    /**
+     * <pre>
+     * 异步发送客服消息，立即返回
+     * 同一用户的消息按提交顺序逐条发送，前一条失败不影响后一条；不同用户的消息并发发送。
+     * 失败时future以{@link java.util.concurrent.CompletionException}结束，cause为WxErrorException。
+     * </pre>
+     */
+    CompletableFuture<Boolean> sendKefuMessageAsync(WxMpKefuMessage message);
+
+    /**
+     * <pre>
+     * 批量异步发送客服消息，立即返回，全部消息发送结束后future完成
+     * 顺序规则同{@link #sendKefuMessageAsync}，单条失败记录在结果中，不会使future异常结束。
+     * </pre>
+     */
+    CompletableFuture<WxMpKefuBatchResult> sendKefuMessages(Collection<WxMpKefuMessage> messages);
+
+    /**
+     * <pre>
+     * 客服输入状态
+     * 详情请见：https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1421140547
+     * 接口url格式：https://api.weixin.qq.com/cgi-bin/message/custom/typing?access_token=ACCESS_TOKEN
+     * </pre>
+     *
+     * @param command {@link #TYPING}或{@link #CANCEL_TYPING}
+     */
+    boolean sendKfTypingState(String openid, String command) throws WxErrorException;
+
+    /**
+     * 记录用户的一次互动，收到用户消息或事件推送时调用，48小时互动时限从此刻起算.
+     */
+    void markInteraction(String openid);
+
+    /**
+     * 记录用户在指定时间的一次互动，可传入推送消息中的CreateTime(转换为毫秒).
+     */
+    void markInteraction(String openid, long timeMillis);
+
+    /**
+     * 本地记录表明该用户已超过48小时互动时限，没有记录时返回false.
+     */
+    boolean isOutsideWindow(String openid);
+
+    /**
+     * 发送统计.
+     */
+    WxMpKefuStats getStats();
+}
@@ -0,0 +1,39 @@
+package com.wyb.mp.api;
+
+/**
+ * <pre>
+ * 多个节点共享的键值存储，如redis，供{@link com.wyb.mp.api.impl.WxMpSharedConfigStorage}保存access_token、ticket和刷新锁.
+ * 实现需要是线程安全的，setIfAbsent、deleteIfEquals和renewIfEquals需要是原子操作。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public interface WxMpKeyValueStore {
+
+    /**
+     * 不存在或已过期时返回null.
+     */
+    String get(String key);
+
+    /**
+     * 写入并设置过期时间.
+     */
+    void set(String key, String value, long ttlMillis);
+
+    /**
+     * key不存在时写入，返回是否写入成功，对应redis的SET key value NX PX ttl.
+     */
+    boolean setIfAbsent(String key, String value, long ttlMillis);
+
+    void delete(String key);
+
+    /**
+     * 当前值等于expected时删除，返回是否删除，释放锁时避免删掉其他节点的锁.
+     */
+    boolean deleteIfEquals(String key, String expected);
+
+    /**
+     * 当前值等于expected时把过期时间重新设为ttlMillis，返回是否设置，持有锁的节点续租时使用.
+     */
+    boolean renewIfEquals(String key, String expected, long ttlMillis);
+}
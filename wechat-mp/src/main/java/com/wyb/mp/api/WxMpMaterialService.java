@@ -1,10 +1,13 @@
 package com.wyb.mp.api;
 
 import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.page.WxPageIterator;
 import com.wyb.mp.bean.material.*;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -66,18 +69,34 @@ public interface WxMpMaterialService {
    *
    * @param mediaType   媒体类型, 请看{@link me.chanjar.weixin.common.api.WxConsts}
    * @param fileType    文件类型，请看{@link me.chanjar.weixin.common.api.WxConsts}
-   * @param inputStream 输入流
+   * @param inputStream 输入流，长度未知，不超过2M时读入内存上传，更大时先写入临时文件再上传
    * @throws WxErrorException
    * @see #mediaUpload(String, File)
    */
   WxMediaUploadResult mediaUpload(String mediaType, String fileType, InputStream inputStream) throws WxErrorException;
 
+  /**
+   * <pre>
+   * 新增临时素材，长度已知时直接从输入流读取上传，不落临时文件
+   * 请求总是带Content-Length发送，微信的上传接口不接受chunked编码
+   * </pre>
+   *
+   * @param mediaType   媒体类型, 请看{@link com.wyb.common.api.WxConsts}
+   * @param fileType    文件类型，即文件扩展名，如jpg
+   * @param inputStream 输入流，由调用方关闭
+   * @param length      输入流的字节数，未知时传-1，此时不超过2M的内容读入内存，更大时先写入临时文件再上传
+   * @throws WxErrorException
+   */
+  WxMediaUploadResult mediaUpload(String mediaType, String fileType, InputStream inputStream, long length)
+      throws WxErrorException;
+
   /**
    * <pre>
    * 获取临时素材
    * 公众号可以使用本接口获取临时素材（即下载临时的多媒体文件）。请注意，视频文件不支持https下载，调用该接口需http协议。
    * 本接口即为原“下载多媒体文件”接口。
-   * 根据微信文档，视频文件下载不了，会返回null
+   * 视频文件返回的是下载地址，会自动从该地址下载
+   * 内容经FileChannel直接写入临时文件，文件名后缀取自响应的Content-Disposition
    * 详情请见: <a href="http://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1444738727&token=&lang=zh_CN">获取临时素材</a>
    * 接口url格式：https://api.weixin.qq.com/cgi-bin/media/get?access_token=ACCESS_TOKEN&media_id=MEDIA_ID
    * </pre>
@@ -88,6 +107,19 @@ public interface WxMpMaterialService {
    */
   File mediaDownload(String mediaId) throws WxErrorException;
 
+  /**
+   * <pre>
+   * 获取临时素材，响应体直接写入target，不在内存中缓存整个文件
+   * target为FileChannel时从其当前位置写入，写完后位置移到末尾
+   * </pre>
+   *
+   * @param mediaId 媒体文件Id
+   * @param target  写入的目标通道，由调用方关闭
+   * @return 写入的字节数
+   * @throws WxErrorException
+   */
+  long mediaDownload(String mediaId, WritableByteChannel target) throws WxErrorException;
+
   /**
    * <pre>
    * 上传图文消息内的图片获取URL
@@ -155,8 +187,10 @@ public interface WxMpMaterialService {
    * </pre>
    *
    * @param mediaId 永久素材的id
+   * @param target  写入的目标通道，由调用方关闭
+   * @return 写入的字节数
    */
-//  InputStream materialImageOrVoiceDownload(String mediaId) throws WxErrorException;
+  long materialImageOrVoiceDownload(String mediaId, WritableByteChannel target) throws WxErrorException;
 
   /**
    * <pre>
@@ -168,7 +202,31 @@ public interface WxMpMaterialService {
    *
    * @param mediaId 永久素材的id
    */
-//  WxMpMaterialVideoInfoResult materialVideoInfo(String mediaId) throws WxErrorException;
+  WxMpMaterialVideoInfoResult materialVideoInfo(String mediaId) throws WxErrorException;
+
+  /**
+   * <pre>
+   * 下载视频永久素材到文件
+   * 先获取下载地址再下载，文件已存在时覆盖
+   * </pre>
+   *
+   * @param mediaId 永久素材的id
+   * @param file    保存的文件
+   */
+  File materialVideoDownload(String mediaId, File file) throws WxErrorException;
+
+  /**
+   * <pre>
+   * 下载视频永久素材到文件
+   * resume为true时，已存在的文件被当作同一个视频之前中断的下载，以Range请求从文件末尾续传；
+   * 不校验已有内容是否属于该视频，只有确定是该视频中断的下载时才能传true，否则得到拼接错误的文件
+   * </pre>
+   *
+   * @param mediaId 永久素材的id
+   * @param file    保存的文件
+   * @param resume  是否从已存在的文件末尾续传，为false时覆盖
+   */
+  File materialVideoDownload(String mediaId, File file, boolean resume) throws WxErrorException;
 
   /**
    * <pre>
@@ -236,7 +294,18 @@ public interface WxMpMaterialService {
    * @param offset 从全部素材的该偏移位置开始返回，0表示从第一个素材 返回
    * @param count  返回素材的数量，取值在1到20之间
    */
-//  WxMpMaterialNewsBatchGetResult materialNewsBatchGet(int offset, int count) throws WxErrorException;
+  WxMpMaterialNewsBatchGetResult materialNewsBatchGet(int offset, int count) throws WxErrorException;
+
+  /**
+   * <pre>
+   * 逐页遍历全部图文素材，每页20个，每次只持有一页
+   * 接口出错时抛出{@link com.wyb.common.exception.WxRuntimeException}
+   * </pre>
+   *
+   * @param prefetchExecutor 后台预取下一页的线程池，为null时不预取
+   */
+  WxPageIterator<Integer, WxMpMaterialNewsBatchGetResult.WxMaterialNewsBatchGetNewsItem> materialNewsIterator(
+      Executor prefetchExecutor);
 
   /**
    * <pre>
@@ -250,6 +319,18 @@ public interface WxMpMaterialService {
    * @param offset 从全部素材的该偏移位置开始返回，0表示从第一个素材 返回
    * @param count  返回素材的数量，取值在1到20之间
    */
-//  WxMpMaterialFileBatchGetResult materialFileBatchGet(String type, int offset, int count) throws WxErrorException;
+  WxMpMaterialFileBatchGetResult materialFileBatchGet(String type, int offset, int count) throws WxErrorException;
+
+  /**
+   * <pre>
+   * 逐页遍历某类型的全部媒体素材，每页20个，每次只持有一页
+   * 接口出错时抛出{@link com.wyb.common.exception.WxRuntimeException}
+   * </pre>
+   *
+   * @param type             媒体类型, 请看{@link com.wyb.common.api.WxConsts.MaterialType}
+   * @param prefetchExecutor 后台预取下一页的线程池，为null时不预取
+   */
+  WxPageIterator<Integer, WxMpMaterialFileBatchGetResult.WxMaterialFileBatchGetNewsItem> materialFileIterator(
+      String type, Executor prefetchExecutor);
 
 }
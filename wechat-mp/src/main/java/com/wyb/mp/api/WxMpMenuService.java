@@ -3,6 +3,7 @@ package com.wyb.mp.api;
 import com.wyb.common.bean.menu.WxMenu;
 import com.wyb.common.exception.WxErrorException;
 import com.wyb.mp.bean.menu.WxMpGetSelfMenuInfoResult;
+import com.wyb.mp.bean.menu.WxMpMenuDeployResult;
 import com.wyb.mp.bean.menu.WxMpMenu;
 
 /**
@@ -53,6 +54,21 @@ public interface WxMpMenuService {
    */
   void menuDelete(String menuId) throws WxErrorException;
 
+  /**
+   * <pre>
+   * 按差异发布菜单
+   * 先查询当前菜单，与目标菜单逐个比较规范形式的结构哈希，只调用有变化部分的修改接口：
+   * 默认菜单不变时不重新创建，避免手机端菜单缓存被刷新及浪费每日调用次数；
+   * 个性化菜单以target中的顺序为创建顺序(靠后的优先)，保留与当前菜单相同的最长前缀，
+   * 其后的当前菜单通过delconditional删除，目标菜单通过addconditional依次创建，以保证匹配优先级与目标一致。
+   * 目标中没有默认菜单时删除全部菜单，此时不能有个性化菜单。target中的menuid会被忽略。
+   * 中途失败时已执行的修改不会回滚，再次调用会从当时的状态继续比较。
+   * </pre>
+   *
+   * @param target 目标菜单，个性化菜单都要有matchrule，有个性化菜单时必须有默认菜单
+   */
+  WxMpMenuDeployResult menuDeploy(WxMpMenu target) throws WxErrorException;
+
   /**
    * <pre>
    * 自定义菜单查询接口
@@ -0,0 +1,101 @@
+package com.wyb.mp.api;
+
+import java.io.File;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.http.DownloadResult;
+import com.wyb.mp.bean.result.WxMpQrCodeBatchResult;
+import com.wyb.mp.bean.result.WxMpQrCodeTicket;
+
+/**
+ * <pre>
+ * 二维码相关操作接口
+ * 详情请见：https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1443433542
+ * 生成的ticket按(二维码类型, 场景值, 有效期)缓存：永久二维码同一场景值只生成一次；
+ * 临时二维码在剩余有效期不少于一半时直接返回缓存的ticket。返回的对象与缓存共享，不要修改。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public interface WxMpQrcodeService {
+
+    /**
+     * 临时二维码最长有效期，30天.
+     */
+    int MAX_EXPIRE_SECONDS = 2592000;
+
+    /**
+     * <pre>
+     * 换取临时二维码ticket
+     * 接口url格式：https://api.weixin.qq.com/cgi-bin/qrcode/create?access_token=ACCESS_TOKEN
+     * </pre>
+     *
+     * @param sceneId       场景值ID，临时二维码时为32位非0整型
+     * @param expireSeconds 该二维码有效时间，以秒为单位，最大不超过2592000(即30天)，为null时微信默认为30秒
+     */
+    WxMpQrCodeTicket qrCodeCreateTmpTicket(int sceneId, Integer expireSeconds) throws WxErrorException;
+
+    /**
+     * 换取临时二维码ticket.
+     *
+     * @param sceneStr      场景值ID(字符串形式的ID)，长度限制为1到64
+     * @param expireSeconds 同{@link #qrCodeCreateTmpTicket(int, Integer)}
+     */
+    WxMpQrCodeTicket qrCodeCreateTmpTicket(String sceneStr, Integer expireSeconds) throws WxErrorException;
+
+    /**
+     * 换取永久二维码ticket.
+     *
+     * @param sceneId 场景值ID，目前参数只支持1--100000
+     */
+    WxMpQrCodeTicket qrCodeCreateLastTicket(int sceneId) throws WxErrorException;
+
+    /**
+     * 换取永久字符串二维码ticket.
+     *
+     * @param sceneStr 场景值ID(字符串形式的ID)，长度限制为1到64
+     */
+    WxMpQrCodeTicket qrCodeCreateLastTicket(String sceneStr) throws WxErrorException;
+
+    /**
+     * <pre>
+     * 批量换取字符串场景值的二维码ticket，使用默认的并发数和限速
+     * </pre>
+     *
+     * @see #qrCodeCreateTickets(Collection, Integer, Executor, int, double)
+     */
+    WxMpQrCodeBatchResult qrCodeCreateTickets(Collection<String> sceneStrs, Integer expireSeconds);
+
+    /**
+     * <pre>
+     * 批量换取字符串场景值的二维码ticket
+     * 在executor上并发调用，同时最多parallelism个请求，每秒最多permitsPerSecond个请求，缓存命中的不占用请求数。
+     * 单个失败不影响其余场景值，全部完成后返回。
+     * </pre>
+     *
+     * @param expireSeconds 临时二维码的有效期，为null时生成永久二维码
+     */
+    WxMpQrCodeBatchResult qrCodeCreateTickets(Collection<String> sceneStrs, Integer expireSeconds, Executor executor,
+            int parallelism, double permitsPerSecond);
+
+    /**
+     * <pre>
+     * 换取二维码图片，直接写入target
+     * 接口url格式：https://mp.weixin.qq.com/cgi-bin/showqrcode?ticket=TICKET
+     * </pre>
+     */
+    DownloadResult qrCodePicture(String ticket, WritableByteChannel target) throws WxErrorException;
+
+    /**
+     * 换取二维码图片保存到文件，先写同目录的临时文件，完成后替换，失败时不留下半个文件.
+     */
+    DownloadResult qrCodePicture(String ticket, File file) throws WxErrorException;
+
+    /**
+     * 换取二维码图片的url地址，ticket会做urlencode.
+     */
+    String qrCodePictureUrl(String ticket) throws WxErrorException;
+}
@@ -2,13 +2,21 @@ package com.wyb.mp.api;
 
 import com.wyb.common.bean.WxJsapiSignature;
 import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.http.DownloadResult;
 import com.wyb.mp.bean.result.WxMpOAuth2AccessToken;
 import com.wyb.mp.bean.result.WxMpUser;
 import com.wyb.mp.enums.TicketType;
+import com.wyb.mp.util.jsapi.WxMpJsapiSigner;
+import com.wyb.mp.enums.WxMpApiUrl;
+import com.wyb.mp.util.media.WxMpMediaCache;
+import com.wyb.mp.util.metrics.WxMpApiMetrics;
 
 import java.io.File;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 
+import org.apache.http.HttpEntity;
+
 /**
  * @author Kunzite
  * 微信公众号API的service & 请求地址
@@ -120,6 +128,7 @@ public interface WxMpService {
     /**
      * <pre>
      * 创建调用jsapi时所需要的签名.
+     * 默认每次生成新的签名，可通过{@link #setJsapiSigner}开启按url的短时缓存。
      *
      * 详情请见：http://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1421141115&token=&lang=zh_CN
      * </pre>
@@ -220,6 +229,72 @@ public interface WxMpService {
      */
     public String postFile(String url, File file) throws WxErrorException;
 
+    /**
+     * <pre>
+     * url附加token，按 {@link WxMpApiUrl} 常量记录调用统计
+     * </pre>
+     */
+    String get(WxMpApiUrl url, Map<String, String> params) throws WxErrorException;
+
+    /**
+     * <pre>
+     * url附加token，按 {@link WxMpApiUrl} 常量记录调用统计
+     * </pre>
+     */
+    String post(WxMpApiUrl url, Map<String, String> params) throws WxErrorException;
+
+    /**
+     * <pre>
+     * url附加token，按 {@link WxMpApiUrl} 常量记录调用统计
+     * jsonString
+     * </pre>
+     */
+    String post(WxMpApiUrl url, String jsonString) throws WxErrorException;
+
+    /**
+     * <pre>
+     * url附加token，按 {@link WxMpApiUrl} 常量记录调用统计
+     * 上传文件
+     * </pre>
+     */
+    String postFile(WxMpApiUrl url, File file) throws WxErrorException;
+
+    /**
+     * <pre>
+     * url附加token，按 {@link WxMpApiUrl} 常量记录调用统计
+     * 以流式请求体上传，见 {@link com.wyb.common.util.http.StreamingMultipartEntity}
+     * </pre>
+     *
+     * @param urlArgs 填充url中的%s占位符，如上传素材时的type
+     */
+    String upload(WxMpApiUrl url, HttpEntity entity, Object... urlArgs) throws WxErrorException;
+
+    /**
+     * <pre>
+     * url附加token，GET下载，响应体直接写入target
+     * 返回json(出错或视频的下载地址)时不写入target，见 {@link DownloadResult#getJsonBody()}
+     * </pre>
+     */
+    DownloadResult download(WxMpApiUrl url, Map<String, String> params, WritableByteChannel target)
+            throws WxErrorException;
+
+    /**
+     * <pre>
+     * url附加token，POST json后下载，响应体直接写入target
+     * </pre>
+     */
+    DownloadResult download(WxMpApiUrl url, String jsonString, WritableByteChannel target) throws WxErrorException;
+
+    /**
+     * 获取接口调用统计.
+     */
+    WxMpApiMetrics getApiMetrics();
+
+
+    /**
+     * 获取素材缓存，未设置时返回null，此时上传素材不做缓存.
+     */
+    WxMpMediaCache getMediaCache();
 
     /**
      * 获取微信配置
@@ -239,4 +314,48 @@ public interface WxMpService {
 
     public WxMpMenuService getMenuService();
 
+    public WxMpMaterialService getMaterialService();
+
+    public WxMpUserService getUserService();
+
+    /**
+     * 客服消息接口.
+     */
+    WxMpKefuService getKefuService();
+
+    /**
+     * 数据统计接口.
+     */
+    WxMpDataCubeService getDataCubeService();
+
+    /**
+     * 二维码接口.
+     */
+    WxMpQrcodeService getQrcodeService();
+
+    /**
+     * 卡券接口.
+     */
+    WxMpCardService getCardService();
+
+    /**
+     * 替换模板消息接口的实现，如带缓存的装饰器.
+     */
+    void setWxMpTemplateMsgService(WxMpTemplateMsgService wxMpTemplateMsgService);
+
+    /**
+     * 替换用户标签接口的实现，如带缓存的装饰器.
+     */
+    void setWxMpUserTagService(WxMpUserTagService wxMpUserTagService);
+
+    /**
+     * 替换菜单接口的实现，如带缓存的装饰器.
+     */
+    void setMenuService(WxMpMenuService menuService);
+
+    /**
+     * 替换jsapi签名器，如带url缓存的签名器.
+     */
+    void setJsapiSigner(WxMpJsapiSigner jsapiSigner);
+
 }
@@ -0,0 +1,21 @@
+package com.wyb.mp.api;
+
+/**
+ * <pre>
+ * 配置中判断token、ticket是否过期时使用的时钟，测试时可以换成可控的时钟.
+ * 高并发时可以用{@link com.wyb.mp.api.impl.WxMpCachedClock}，读取时不调用系统时钟。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@FunctionalInterface
+public interface WxMpTimeSource {
+
+    WxMpTimeSource SYSTEM = System::currentTimeMillis;
+
+    /**
+     * 当前时间，毫秒，与System.currentTimeMillis()同一基准.
+     * 共享存储中的过期时间由各节点各自的时钟比较，实现不能与系统时间累积偏差。
+     */
+    long currentTimeMillis();
+}
@@ -0,0 +1,92 @@
+package com.wyb.mp.api;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.page.WxPageIterator;
+import com.wyb.mp.bean.result.WxMpUser;
+import com.wyb.mp.bean.result.WxMpUserList;
+
+/**
+ * <pre>
+ * 用户管理相关接口
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public interface WxMpUserService {
+
+    /**
+     * <pre>
+     * 获取用户列表
+     * 公众号可通过本接口来获取帐号的关注者列表，
+     * 关注者列表由一串OpenID（加密后的微信号，每个用户对每个公众号的OpenID是唯一的）组成。
+     * 一次拉取调用最多拉取10000个关注者的OpenID，可以通过多次拉取的方式来满足需求。
+     * 详情请见: <a href="https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1421140840">获取用户列表</a>
+     * 接口url格式：https://api.weixin.qq.com/cgi-bin/user/get?access_token=ACCESS_TOKEN&next_openid=NEXT_OPENID
+     * </pre>
+     *
+     * @param nextOpenid 可选，第一个拉取的OPENID，null为从头开始拉取
+     */
+    WxMpUserList userList(String nextOpenid) throws WxErrorException;
+
+    /**
+     * <pre>
+     * 逐页遍历全部关注者的openid，每次只持有一页(最多10000个)
+     * 接口出错时抛出{@link com.wyb.common.exception.WxRuntimeException}
+     * </pre>
+     *
+     * @param prefetchExecutor 后台预取下一页的线程池，为null时不预取
+     */
+    WxPageIterator<String, String> userListIterator(Executor prefetchExecutor);
+
+    /**
+     * <pre>
+     * 批量获取用户基本信息
+     * 开发者可通过该接口来批量获取用户基本信息。最多支持一次拉取100条。
+     * 详情请见: <a href="https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1421140839">批量获取用户基本信息</a>
+     * 接口url格式：https://api.weixin.qq.com/cgi-bin/user/info/batchget?access_token=ACCESS_TOKEN
+     * </pre>
+     *
+     * @param openids 用户openid列表，最多100个
+     */
+    List<WxMpUser> userInfoBatchGet(List<String> openids) throws WxErrorException;
+
+    /**
+     * 批量获取用户基本信息.
+     *
+     * @param openids 用户openid列表，最多100个
+     * @param lang    国家地区语言版本，zh_CN 简体，zh_TW 繁体，en 英语，默认为zh_CN
+     */
+    List<WxMpUser> userInfoBatchGet(List<String> openids, String lang) throws WxErrorException;
+
+    /**
+     * <pre>
+     * 按openid顺序流式获取用户基本信息，每100个openid一批，
+     * 使用默认的并发数和限速，每次调用创建一个线程池，遍历到末尾、出错或Stream关闭时关闭；
+     * 用limit、findFirst等提前结束遍历时需要关闭Stream（如try-with-resources），否则线程池空闲30秒后才回收
+     * </pre>
+     *
+     * @see #userInfoStream(Iterator, Executor, int, double)
+     */
+    Stream<WxMpUser> userInfoStream(Iterator<String> openids);
+
+    /**
+     * <pre>
+     * 按openid顺序流式获取用户基本信息.
+     * 每100个openid一批，最多parallelism批同时在途，按批次顺序输出，已输出的批次即可被回收，
+     * 内存占用与关注者总数无关。可直接配合{@link #userListIterator(Executor)}刷新全部关注者资料。
+     * 接口出错时抛出{@link com.wyb.common.exception.WxRuntimeException}，并取消其余在途请求。
+     * </pre>
+     *
+     * @param openids          openid来源，只在调用方线程上读取
+     * @param executor         发起请求的线程池
+     * @param parallelism      同时在途的批次数
+     * @param permitsPerSecond 每秒最多发起的请求数
+     */
+    Stream<WxMpUser> userInfoStream(Iterator<String> openids, Executor executor, int parallelism,
+            double permitsPerSecond);
+}
@@ -1,8 +1,13 @@
 package com.wyb.mp.api;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.page.WxPageIterator;
+import com.wyb.mp.bean.tag.WxMpBatchTaggingResult;
 import com.wyb.mp.bean.tag.WxTagListUser;
 import com.wyb.mp.bean.tag.WxUserTag;
 
@@ -61,6 +66,16 @@ public interface WxMpUserTagService {
      */
     WxTagListUser tagListUser(Long tagId, String nextOpenid) throws WxErrorException;
 
+    /**
+     * <pre>
+     * 逐页遍历标签下全部粉丝的openid，每次只持有一页
+     * 接口出错时抛出{@link com.wyb.common.exception.WxRuntimeException}
+     * </pre>
+     *
+     * @param prefetchExecutor 后台预取下一页的线程池，为null时不预取
+     */
+    WxPageIterator<String, String> tagListUserIterator(Long tagId, Executor prefetchExecutor);
+
     /**
      * <pre>
      * 批量为用户打标签
@@ -79,6 +94,44 @@ public interface WxMpUserTagService {
      */
     boolean batchUntagging(Long tagId, String[] openids) throws WxErrorException;
 
+    /**
+     * <pre>
+     * 为任意数量的用户打标签
+     * 按每次最多50个openid自动分组，使用默认的并发数和限速
+     * </pre>
+     *
+     * @see #batchTagging(Long, Iterator, Executor, int, double)
+     */
+    WxMpBatchTaggingResult batchTagging(Long tagId, Collection<String> openids);
+
+    /**
+     * <pre>
+     * 为任意数量的用户打标签
+     * 按每次最多50个openid自动分组，最多parallelism组同时调用，整体不超过permitsPerSecond次/秒。
+     * 系统繁忙、调用太频繁或网络错误时按指数退避重试，仍失败的组记录在结果中，不会中断其余组。
+     * openid只在调用方线程上按需读取，内存中最多持有parallelism组。
+     * </pre>
+     *
+     * @param executor         发起请求的线程池
+     * @param parallelism      同时在途的组数
+     * @param permitsPerSecond 每秒最多发起的请求数，含重试
+     */
+    WxMpBatchTaggingResult batchTagging(Long tagId, Iterator<String> openids, Executor executor, int parallelism,
+            double permitsPerSecond);
+
+    /**
+     * 为任意数量的用户取消标签，按每次最多50个openid自动分组，使用默认的并发数和限速.
+     *
+     * @see #batchTagging(Long, Iterator, Executor, int, double)
+     */
+    WxMpBatchTaggingResult batchUntagging(Long tagId, Collection<String> openids);
+
+    /**
+     * 为任意数量的用户取消标签，分组、并发与重试方式同{@link #batchTagging(Long, Iterator, Executor, int, double)}.
+     */
+    WxMpBatchTaggingResult batchUntagging(Long tagId, Iterator<String> openids, Executor executor, int parallelism,
+            double permitsPerSecond);
+
     /**
      * <pre>
      * 获取用户身上的标签列表
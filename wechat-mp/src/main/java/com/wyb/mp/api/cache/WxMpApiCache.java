@@ -0,0 +1,223 @@
+package com.wyb.mp.api.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.api.WxMpTimeSource;
+import com.wyb.mp.api.impl.WxMpMultiAccountServiceImpl;
+
+/**
+ * <pre>
+ * 公众号接口结果的读穿透缓存，存储委托给spring cache，可以是本地的ConcurrentMapCache，也可以是redis等.
+ * 每条缓存记录加载时间：
+ * 超过refreshAfter仍直接返回旧值，同时在后台重新加载一次；
+ * 超过ttl视为未命中，同步重新加载。
+ * 修改类接口调用后通过{@link #evict}失效，失效前已经开始的后台加载结果会被丢弃，不会覆盖失效。
+ * 返回的对象与缓存共享，调用方不要修改。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpApiCache {
+    private static final Logger log = LoggerFactory.getLogger(WxMpApiCache.class);
+
+    public static final String DEFAULT_CACHE_NAME = "wxMpApi";
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final long DEFAULT_REFRESH_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Cache cache;
+    private final long ttlMillis;
+    private final long refreshAfterMillis;
+    private final Executor refreshExecutor;
+    private final WxMpTimeSource timeSource;
+
+    /**
+     * key -> 失效次数，用于丢弃失效前开始的加载结果.
+     */
+    private final ConcurrentMap<String, Long> generations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> refreshing = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * 使用名为{@value #DEFAULT_CACHE_NAME}的缓存和默认的过期时间.
+     */
+    public WxMpApiCache(CacheManager cacheManager) {
+        this(cacheManager.getCache(DEFAULT_CACHE_NAME), DEFAULT_TTL_MILLIS, DEFAULT_REFRESH_AFTER_MILLIS,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param ttlMillis          缓存记录的最长使用时间
+     * @param refreshAfterMillis 超过该时间后命中时触发后台刷新，不小于ttlMillis时不做后台刷新
+     * @param refreshExecutor    执行后台刷新的线程池
+     */
+    public WxMpApiCache(Cache cache, long ttlMillis, long refreshAfterMillis, Executor refreshExecutor) {
+        this(cache, ttlMillis, refreshAfterMillis, refreshExecutor, WxMpTimeSource.SYSTEM);
+    }
+
+    /**
+     * @param timeSource 计算缓存记录年龄使用的时钟
+     */
+    public WxMpApiCache(Cache cache, long ttlMillis, long refreshAfterMillis, Executor refreshExecutor,
+            WxMpTimeSource timeSource) {
+        this.cache = cache;
+        this.ttlMillis = ttlMillis;
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.refreshExecutor = refreshExecutor;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * 为标签、菜单、模板消息接口套上缓存装饰器.
+     */
+    public void decorate(WxMpService wxMpService) {
+        wxMpService.setWxMpUserTagService(
+                new WxMpCachedUserTagService(wxMpService, wxMpService.getWxMpUserTagService(), this));
+        wxMpService.setMenuService(new WxMpCachedMenuService(wxMpService, wxMpService.getMenuService(), this));
+        wxMpService.setWxMpTemplateMsgService(
+                new WxMpCachedTemplateMsgService(wxMpService, wxMpService.getWxMpTemplateMsgService(), this));
+    }
+
+    /**
+     * 读取缓存，未命中或已过期时调用loader加载并写入缓存.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Loader<T> loader) throws WxErrorException {
+        Cache.ValueWrapper wrapper = this.cache.get(key);
+        Entry entry = wrapper == null ? null : (Entry) wrapper.get();
+        long now = this.timeSource.currentTimeMillis();
+        if (entry != null && now - entry.loadedAt < this.ttlMillis) {
+            this.hits.incrementAndGet();
+            if (now - entry.loadedAt >= this.refreshAfterMillis) {
+                this.refreshAsync(key, loader);
+            }
+            return (T) entry.value;
+        }
+        this.misses.incrementAndGet();
+        return this.load(key, loader, this.generations.getOrDefault(key, 0L));
+    }
+
+    /**
+     * 失效某个key，正在进行的加载不会再写入.
+     */
+    public void evict(String key) {
+        this.generations.compute(key, (k, current) -> {
+            this.cache.evict(key);
+            return current == null ? 1L : current + 1;
+        });
+        this.evictions.incrementAndGet();
+    }
+
+    public WxMpCacheStats stats() {
+        WxMpCacheStats stats = new WxMpCacheStats();
+        stats.setCacheName(this.cache.getName());
+        stats.setHits(this.hits.get());
+        stats.setMisses(this.misses.get());
+        stats.setRefreshes(this.refreshes.get());
+        stats.setLoadFailures(this.loadFailures.get());
+        stats.setEvictions(this.evictions.get());
+        return stats;
+    }
+
+    private <T> T load(String key, Loader<T> loader, long generation) throws WxErrorException {
+        long loadedAt = this.timeSource.currentTimeMillis();
+        T value;
+        try {
+            value = loader.load();
+        }
+        catch (WxErrorException | RuntimeException e) {
+            this.loadFailures.incrementAndGet();
+            throw e;
+        }
+        // 在key所在的桶锁内比较并写入，与evict中的merge互斥，避免比较之后、写入之前发生的失效被覆盖
+        this.generations.compute(key, (k, current) -> {
+            if ((current == null ? 0L : current) == generation) {
+                this.cache.put(key, new Entry(value, loadedAt));
+            }
+            return current;
+        });
+        return value;
+    }
+
+    /**
+     * 同一个key同时只有一个后台刷新，刷新失败时保留旧值，等到ttl后由调用方同步加载.
+     */
+    private <T> void refreshAsync(String key, Loader<T> loader) {
+        if (this.refreshing.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        long generation = this.generations.getOrDefault(key, 0L);
+        try {
+            this.refreshExecutor.execute(() -> {
+                try {
+                    this.load(key, loader, generation);
+                    this.refreshes.incrementAndGet();
+                }
+                catch (WxErrorException | RuntimeException e) {
+                    log.warn("后台刷新缓存失败: {}", key, e);
+                }
+                finally {
+                    this.refreshing.remove(key);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            this.refreshing.remove(key);
+            log.warn("提交缓存刷新任务失败: {}", key, e);
+        }
+    }
+
+    /**
+     * 多公众号时记下当前线程切换到的公众号，后台刷新在其他线程上也以该公众号加载.
+     */
+    static <T> Loader<T> bindCurrentAccount(WxMpService wxMpService, Loader<T> loader) {
+        if (wxMpService instanceof WxMpMultiAccountServiceImpl) {
+            WxMpMultiAccountServiceImpl multiAccountService = (WxMpMultiAccountServiceImpl) wxMpService;
+            String appId = multiAccountService.getCurrentAppId();
+            if (appId != null) {
+                return () -> multiAccountService.withAccount(appId, service -> loader.load());
+            }
+        }
+        return loader;
+    }
+
+    /**
+     * 缓存未命中时调用的接口.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws WxErrorException;
+    }
+
+    /**
+     * 缓存中实际存放的对象，使用redis等需要序列化的缓存时，value也要可序列化.
+     */
+    static class Entry implements Serializable {
+        private static final long serialVersionUID = 2318063431436406755L;
+
+        private final Object value;
+        private final long loadedAt;
+
+        Entry(Object value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.wyb.mp.api.cache;
+
+import java.io.Serializable;
+
+import lombok.Data;
+
+/**
+ * 接口缓存的命中统计.
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpCacheStats implements Serializable {
+    private static final long serialVersionUID = -3145028370613925460L;
+
+    private String cacheName;
+    private long hits;
+    private long misses;
+    /**
+     * 后台刷新成功的次数.
+     */
+    private long refreshes;
+    /**
+     * 调用接口加载失败的次数，含后台刷新.
+     */
+    private long loadFailures;
+    /**
+     * 因修改类接口调用而失效的次数.
+     */
+    private long evictions;
+
+    public double getHitRate() {
+        long total = this.hits + this.misses;
+        return total == 0 ? 0 : (double) this.hits / total;
+    }
+}
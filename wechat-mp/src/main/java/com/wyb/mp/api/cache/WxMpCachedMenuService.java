@@ -0,0 +1,105 @@
+package com.wyb.mp.api.cache;
+
+import com.wyb.common.bean.menu.WxMenu;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.api.WxMpMenuService;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.bean.menu.WxMpGetSelfMenuInfoResult;
+import com.wyb.mp.bean.menu.WxMpMenuDeployResult;
+import com.wyb.mp.bean.menu.WxMpMenu;
+
+/**
+ * <pre>
+ * 带缓存的菜单接口，缓存menuGet与getSelfMenuInfo，创建或删除菜单后失效
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpCachedMenuService implements WxMpMenuService {
+  private final WxMpService wxMpService;
+  private final WxMpMenuService delegate;
+  private final WxMpApiCache cache;
+
+  public WxMpCachedMenuService(WxMpService wxMpService, WxMpMenuService delegate, WxMpApiCache cache) {
+    this.wxMpService = wxMpService;
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  @Override
+  public String menuCreate(WxMenu menu) throws WxErrorException {
+    try {
+      return this.delegate.menuCreate(menu);
+    } finally {
+      this.invalidate();
+    }
+  }
+
+  @Override
+  public String menuCreate(String json) throws WxErrorException {
+    try {
+      return this.delegate.menuCreate(json);
+    } finally {
+      this.invalidate();
+    }
+  }
+
+  @Override
+  public void menuDelete() throws WxErrorException {
+    try {
+      this.delegate.menuDelete();
+    } finally {
+      this.invalidate();
+    }
+  }
+
+  @Override
+  public void menuDelete(String menuId) throws WxErrorException {
+    try {
+      this.delegate.menuDelete(menuId);
+    } finally {
+      this.invalidate();
+    }
+  }
+
+  /**
+   * 比较时总是查询最新的菜单，不使用缓存.
+   */
+  @Override
+  public WxMpMenuDeployResult menuDeploy(WxMpMenu target) throws WxErrorException {
+    try {
+      return this.delegate.menuDeploy(target);
+    } finally {
+      this.invalidate();
+    }
+  }
+
+  @Override
+  public WxMpMenu menuGet() throws WxErrorException {
+    return this.cache.get(this.key("menuGet"),
+      WxMpApiCache.bindCurrentAccount(this.wxMpService, this.delegate::menuGet));
+  }
+
+  @Override
+  public WxMenu menuTryMatch(String userid) throws WxErrorException {
+    return this.delegate.menuTryMatch(userid);
+  }
+
+  @Override
+  public WxMpGetSelfMenuInfoResult getSelfMenuInfo() throws WxErrorException {
+    return this.cache.get(this.key("getSelfMenuInfo"),
+      WxMpApiCache.bindCurrentAccount(this.wxMpService, this.delegate::getSelfMenuInfo));
+  }
+
+  /**
+   * 接口调用失败时菜单也可能已经部分生效，因此无论成败都失效.
+   */
+  private void invalidate() {
+    this.cache.evict(this.key("menuGet"));
+    this.cache.evict(this.key("getSelfMenuInfo"));
+  }
+
+  private String key(String method) {
+    return this.wxMpService.getWxMpConfigStorage().getAppId() + ":menu:" + method;
+  }
+}
@@ -0,0 +1,54 @@
+package com.wyb.mp.api.cache;
+
+import java.util.List;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.api.WxMpTemplateMsgService;
+import com.wyb.mp.bean.template.WxMpTemplate;
+import com.wyb.mp.bean.template.WxMpTemplateMessage;
+
+/**
+ * <pre>
+ * 带缓存的模板消息接口，缓存getAllPrivateTemplate，添加模板后失效
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpCachedTemplateMsgService implements WxMpTemplateMsgService {
+    private final WxMpService wxMpService;
+    private final WxMpTemplateMsgService delegate;
+    private final WxMpApiCache cache;
+
+    public WxMpCachedTemplateMsgService(WxMpService wxMpService, WxMpTemplateMsgService delegate,
+            WxMpApiCache cache) {
+        this.wxMpService = wxMpService;
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public String addTemplate(String shortTemplateId) throws WxErrorException {
+        try {
+            return this.delegate.addTemplate(shortTemplateId);
+        }
+        finally {
+            this.cache.evict(this.key());
+        }
+    }
+
+    @Override
+    public List<WxMpTemplate> getAllPrivateTemplate() throws WxErrorException {
+        return this.cache.get(this.key(),
+                WxMpApiCache.bindCurrentAccount(this.wxMpService, this.delegate::getAllPrivateTemplate));
+    }
+
+    @Override
+    public String sendTemplateMsg(WxMpTemplateMessage templateMessage) throws WxErrorException {
+        return this.delegate.sendTemplateMsg(templateMessage);
+    }
+
+    private String key() {
+        return this.wxMpService.getWxMpConfigStorage().getAppId() + ":template:getAllPrivateTemplate";
+    }
+}
@@ -0,0 +1,241 @@
+package com.wyb.mp.api.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.page.WxPageIterator;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.api.WxMpUserTagService;
+import com.wyb.mp.bean.tag.WxMpBatchTaggingResult;
+import com.wyb.mp.bean.tag.WxTagListUser;
+import com.wyb.mp.bean.tag.WxUserTag;
+
+/**
+ * <pre>
+ * 带缓存的用户标签接口，缓存tagGet和每个用户身上的标签userTagList.
+ * 标签的增删改会失效tagGet；批量打标签/取消标签会改变标签的粉丝数，也会失效tagGet，
+ * 同时失效涉及的用户的标签缓存。删除标签时清空所有用户的标签缓存。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpCachedUserTagService implements WxMpUserTagService {
+    private final WxMpService wxMpService;
+    private final WxMpUserTagService delegate;
+    private final WxMpApiCache cache;
+    private final WxMpUserTagIdCache userTagIdCache;
+
+    public WxMpCachedUserTagService(WxMpService wxMpService, WxMpUserTagService delegate, WxMpApiCache cache) {
+        this(wxMpService, delegate, cache, new WxMpUserTagIdCache());
+    }
+
+    public WxMpCachedUserTagService(WxMpService wxMpService, WxMpUserTagService delegate, WxMpApiCache cache,
+            WxMpUserTagIdCache userTagIdCache) {
+        this.wxMpService = wxMpService;
+        this.delegate = delegate;
+        this.cache = cache;
+        this.userTagIdCache = userTagIdCache;
+    }
+
+    public WxMpUserTagIdCache getUserTagIdCache() {
+        return this.userTagIdCache;
+    }
+
+    @Override
+    public WxUserTag tagCreate(String name) throws WxErrorException {
+        try {
+            return this.delegate.tagCreate(name);
+        }
+        finally {
+            this.invalidate();
+        }
+    }
+
+    @Override
+    public List<WxUserTag> tagGet() throws WxErrorException {
+        return this.cache.get(this.key(), WxMpApiCache.bindCurrentAccount(this.wxMpService, this.delegate::tagGet));
+    }
+
+    @Override
+    public Boolean tagUpdate(Long tagId, String name) throws WxErrorException {
+        try {
+            return this.delegate.tagUpdate(tagId, name);
+        }
+        finally {
+            this.invalidate();
+        }
+    }
+
+    @Override
+    public Boolean tagDelete(Long tagId) throws WxErrorException {
+        try {
+            return this.delegate.tagDelete(tagId);
+        }
+        finally {
+            this.invalidate();
+            this.userTagIdCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public WxTagListUser tagListUser(Long tagId, String nextOpenid) throws WxErrorException {
+        return this.delegate.tagListUser(tagId, nextOpenid);
+    }
+
+    @Override
+    public WxPageIterator<String, String> tagListUserIterator(Long tagId, Executor prefetchExecutor) {
+        return this.delegate.tagListUserIterator(tagId, prefetchExecutor);
+    }
+
+    @Override
+    public boolean batchTagging(Long tagId, String[] openids) throws WxErrorException {
+        try {
+            return this.delegate.batchTagging(tagId, openids);
+        }
+        finally {
+            this.invalidate(openids);
+        }
+    }
+
+    @Override
+    public boolean batchUntagging(Long tagId, String[] openids) throws WxErrorException {
+        try {
+            return this.delegate.batchUntagging(tagId, openids);
+        }
+        finally {
+            this.invalidate(openids);
+        }
+    }
+
+    @Override
+    public WxMpBatchTaggingResult batchTagging(Long tagId, Collection<String> openids) {
+        try {
+            return this.delegate.batchTagging(tagId, openids);
+        }
+        finally {
+            this.invalidate(openids);
+        }
+    }
+
+    @Override
+    public WxMpBatchTaggingResult batchTagging(Long tagId, Iterator<String> openids, Executor executor,
+            int parallelism, double permitsPerSecond) {
+        List<String> touched = new ArrayList<>();
+        try {
+            return this.delegate.batchTagging(tagId, this.recording(openids, touched), executor, parallelism,
+                    permitsPerSecond);
+        }
+        finally {
+            this.invalidate(touched);
+        }
+    }
+
+    @Override
+    public WxMpBatchTaggingResult batchUntagging(Long tagId, Collection<String> openids) {
+        try {
+            return this.delegate.batchUntagging(tagId, openids);
+        }
+        finally {
+            this.invalidate(openids);
+        }
+    }
+
+    @Override
+    public WxMpBatchTaggingResult batchUntagging(Long tagId, Iterator<String> openids, Executor executor,
+            int parallelism, double permitsPerSecond) {
+        List<String> touched = new ArrayList<>();
+        try {
+            return this.delegate.batchUntagging(tagId, this.recording(openids, touched), executor, parallelism,
+                    permitsPerSecond);
+        }
+        finally {
+            this.invalidate(touched);
+        }
+    }
+
+    @Override
+    public List<Long> userTagList(String openid) throws WxErrorException {
+        long[] tagIds = this.userTagIds(openid);
+        List<Long> result = new ArrayList<>(tagIds.length);
+        for (long tagId : tagIds) {
+            result.add(tagId);
+        }
+        return result;
+    }
+
+    /**
+     * 用户身上的标签id，不产生装箱对象，返回的数组不要修改.
+     */
+    public long[] userTagIds(String openid) throws WxErrorException {
+        return this.userTagIdCache.get(this.appId(), openid, () -> {
+            List<Long> tagIds = this.delegate.userTagList(openid);
+            long[] result = new long[tagIds == null ? 0 : tagIds.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = tagIds.get(i);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 用户是否有某个标签，用于个性化菜单等高频判断.
+     */
+    public boolean hasTag(String openid, long tagId) throws WxErrorException {
+        for (long id : this.userTagIds(openid)) {
+            if (id == tagId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void invalidate() {
+        this.cache.evict(this.key());
+    }
+
+    private void invalidate(String[] openids) {
+        this.invalidate(Arrays.asList(openids));
+    }
+
+    private void invalidate(Collection<String> openids) {
+        this.invalidate();
+        String appId = this.appId();
+        for (String openid : openids) {
+            this.userTagIdCache.invalidate(appId, openid);
+        }
+    }
+
+    /**
+     * 批量接口边读边发，只记下实际读到的openid，调用结束后再失效.
+     */
+    private Iterator<String> recording(Iterator<String> openids, List<String> touched) {
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return openids.hasNext();
+            }
+
+            @Override
+            public String next() {
+                String openid = openids.next();
+                synchronized (touched) {
+                    touched.add(openid);
+                }
+                return openid;
+            }
+        };
+    }
+
+    private String appId() {
+        return this.wxMpService.getWxMpConfigStorage().getAppId();
+    }
+
+    private String key() {
+        return this.appId() + ":tag:tagGet";
+    }
+}
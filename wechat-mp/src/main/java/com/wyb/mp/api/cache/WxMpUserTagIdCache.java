@@ -0,0 +1,139 @@
+package com.wyb.mp.api.cache;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.wyb.common.exception.WxErrorException;
+
+/**
+ * <pre>
+ * 用户身上的标签id缓存：appId + openid -> long[].
+ * 按需加载，数量和存活时间都有上限，每个用户只占一个long数组，没有Long对象和List包装。
+ * 通过本服务打标签/取消标签时失效相关用户；在公众平台后台修改的标签只能等过期。
+ * 与{@link WxMpApiCache}一样按失效次数丢弃失效前开始的加载结果，不会覆盖失效。
+ * 失效次数按key的hash分段记录，同一段其它用户的失效只会让这次加载不写入缓存。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpUserTagIdCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 100000;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final long[] EMPTY = new long[0];
+    private static final int GENERATION_STRIPES = 256;
+
+    private final Cache<String, long[]> cache;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public WxMpUserTagIdCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param maximumSize 最多缓存的用户数，超出时淘汰最近最少使用的
+     * @param ttlMillis   写入后的存活时间
+     */
+    public WxMpUserTagIdCache(long maximumSize, long ttlMillis) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 读取用户的标签id，未命中时调用loader，同一用户的并发加载只调用一次.
+     * 返回的数组与缓存共享，不要修改。
+     */
+    public long[] get(String appId, String openid, WxMpApiCache.Loader<long[]> loader) throws WxErrorException {
+        String key = keyOf(appId, openid);
+        int stripe = stripeOf(key);
+        long[] generation = { -1 };
+        long[] result;
+        try {
+            result = this.cache.get(key, () -> {
+                generation[0] = this.generations.get(stripe);
+                long[] tagIds = loader.load();
+                tagIds = tagIds == null ? EMPTY : tagIds;
+                if (this.generations.get(stripe) != generation[0]) {
+                    // 加载期间被失效，抛出以免写入缓存
+                    throw new StaleLoadException(tagIds);
+                }
+                return tagIds;
+            });
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof StaleLoadException) {
+                return ((StaleLoadException) e.getCause()).tagIds;
+            }
+            if (e.getCause() instanceof WxErrorException) {
+                throw (WxErrorException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        if (generation[0] >= 0 && this.generations.get(stripe) != generation[0]) {
+            // 检查之后、写入之前发生的失效，写入后再移除
+            this.cache.asMap().remove(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * 先增加失效次数再删除，之后写入的加载结果都会被丢弃.
+     */
+    public void invalidate(String appId, String openid) {
+        String key = keyOf(appId, openid);
+        this.generations.incrementAndGet(stripeOf(key));
+        this.cache.invalidate(key);
+    }
+
+    /**
+     * 删除标签会影响所有用户，直接清空.
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            this.generations.incrementAndGet(i);
+        }
+        this.cache.invalidateAll();
+    }
+
+    public long size() {
+        return this.cache.size();
+    }
+
+    public CacheStats stats() {
+        return this.cache.stats();
+    }
+
+    private static String keyOf(String appId, String openid) {
+        return appId + ':' + openid;
+    }
+
+    private static int stripeOf(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    /**
+     * 携带加载结果跳出guava的加载，使其不写入缓存.
+     */
+    private static class StaleLoadException extends RuntimeException {
+        private static final long serialVersionUID = -4016521740264186839L;
+
+        private final transient long[] tagIds;
+
+        StaleLoadException(long[] tagIds) {
+            super(null, null, false, false);
+            this.tagIds = tagIds;
+        }
+    }
+}
@@ -1,27 +1,40 @@
 package com.wyb.mp.api.impl;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.locks.Lock;
 
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.wyb.common.WxType;
 import com.wyb.common.bean.WxJsapiSignature;
+import com.wyb.common.exception.WxError;
 import com.wyb.common.exception.WxErrorException;
-import com.wyb.common.util.RandomUtils;
 import com.wyb.common.util.crypto.SHA1;
+import com.wyb.common.util.http.DownloadResult;
 import com.wyb.common.util.http.HttpClientUtil;
 import com.wyb.common.util.http.URIUtil;
+import com.wyb.common.util.http.UrlBuilder;
+import com.wyb.common.util.metrics.ApiCallStats;
 import com.wyb.mp.api.*;
 import com.wyb.mp.bean.result.WxMpOAuth2AccessToken;
 import com.wyb.mp.bean.result.WxMpUser;
 import com.wyb.mp.enums.TicketType;
+import com.wyb.mp.enums.WxMpApiUrl;
+import com.wyb.mp.util.jsapi.WxMpJsapiSigner;
+import com.wyb.mp.util.media.WxMpMediaCache;
+import com.wyb.mp.util.metrics.WxMpApiMetrics;
 
 /**
  * @author Kunzite
@@ -33,12 +46,25 @@ public abstract class BaseWxMpServiceImpl implements WxMpService {
     // 关联各个微信的api实现
     private WxMpTemplateMsgService wxMpTemplateMsgService = new WxMpTemplateMsgServiceImpl(this);
     private WxMpMassMessageService wxMpMassMessageService = new WxMpMassMessageServiceImpl(this);
-    private WxMpUserTagServiceImpl wxMpUserTagService = new WxMpUserTagServiceImpl(this);
+    private WxMpUserTagService wxMpUserTagService = new WxMpUserTagServiceImpl(this);
     private WxMpMenuService menuService = new WxMpMenuServiceImpl(this);
+    private WxMpMaterialService materialService = new WxMpMaterialServiceImpl(this);
+    private WxMpUserService userService = new WxMpUserServiceImpl(this);
+    private WxMpKefuService kefuService = new WxMpKefuServiceImpl(this);
+    private WxMpDataCubeService dataCubeService = new WxMpDataCubeServiceImpl(this);
+    private WxMpQrcodeService qrcodeService = new WxMpQrcodeServiceImpl(this);
+    private WxMpCardService cardService = new WxMpCardServiceImpl(this);
+    private WxMpJsapiSigner jsapiSigner = new WxMpJsapiSigner(this);
 
     // 微信配置
     protected WxMpConfigStorage wxMpConfigStorage;
 
+    // 接口调用统计
+    protected WxMpApiMetrics apiMetrics = new WxMpApiMetrics();
+
+    // 素材缓存，相同内容的文件不重复上传
+    protected WxMpMediaCache mediaCache;
+
     private int retrySleepMillis = 1000;
     private int maxRetryTimes = 5;
 
@@ -65,15 +91,29 @@ public abstract class BaseWxMpServiceImpl implements WxMpService {
 
     @Override
     public String getTicket(TicketType type, boolean forceRefresh) throws WxErrorException {
+        // ticket未过期时直接返回，不加锁，只有需要刷新时才竞争锁
+        if (!forceRefresh && !this.getWxMpConfigStorage().isTicketExpired(type)) {
+            return this.getWxMpConfigStorage().getTicket(type);
+        }
+        String seen = this.getWxMpConfigStorage().getTicket(type);
         Lock lock = this.getWxMpConfigStorage().getTicketLock(type);
         try {
             lock.lock();
-            if (forceRefresh) {
+            // 等锁期间可能已经被其他线程或节点刷新；强制刷新时ticket已经换过的也不再刷新
+            boolean refreshed = !this.getWxMpConfigStorage().isTicketExpired(type)
+                    && !Objects.equals(seen, this.getWxMpConfigStorage().getTicket(type));
+            if (forceRefresh && !refreshed) {
                 this.getWxMpConfigStorage().expireTicket(type);
             }
 
             if (this.getWxMpConfigStorage().isTicketExpired(type)) {
+                long start = System.nanoTime();
                 String responseContent = this.get(WxMpService.GET_TICKET_URL + type.getCode(), null);
+                this.recordApiCall(WxMpApiUrl.Other.GET_TICKET_URL, start, 0, responseContent);
+                WxError error = WxError.fromJson(responseContent, WxType.MP);
+                if (error.getErrorCode() != 0) {
+                    throw new WxErrorException(error);
+                }
                 JsonObject tmpJsonObject = JSON_PARSER.parse(responseContent).getAsJsonObject();
                 String jsapiTicket = tmpJsonObject.get("ticket").getAsString();
                 int expiresInSeconds = tmpJsonObject.get("expires_in").getAsInt();
@@ -99,18 +139,7 @@ public abstract class BaseWxMpServiceImpl implements WxMpService {
 
     @Override
     public WxJsapiSignature createJsapiSignature(String url) throws WxErrorException {
-        long timestamp = System.currentTimeMillis() / 1000;
-        String randomStr = RandomUtils.getRandomStr();
-        String jsapiTicket = getJsapiTicket(false);
-        String signature = SHA1.genWithAmple("jsapi_ticket=" + jsapiTicket, "noncestr=" + randomStr,
-                "timestamp=" + timestamp, "url=" + url);
-        WxJsapiSignature jsapiSignature = new WxJsapiSignature();
-        jsapiSignature.setAppId(this.getWxMpConfigStorage().getAppId());
-        jsapiSignature.setTimestamp(timestamp);
-        jsapiSignature.setNonceStr(randomStr);
-        jsapiSignature.setUrl(url);
-        jsapiSignature.setSignature(signature);
-        return jsapiSignature;
+        return this.jsapiSigner.sign(url);
     }
 
     @Override
@@ -129,7 +158,7 @@ public abstract class BaseWxMpServiceImpl implements WxMpService {
     }
 
     private WxMpOAuth2AccessToken getOAuth2AccessToken(String url) throws WxErrorException {
-        String response = HttpClientUtil.doGet(url);
+        String response = this.execute(client -> HttpClientUtil.doGet(client, url, null));
         return WxMpOAuth2AccessToken.fromJson(response);
     }
 
@@ -142,13 +171,14 @@ public abstract class BaseWxMpServiceImpl implements WxMpService {
     @Override
     public WxMpUser oauth2getUserInfo(WxMpOAuth2AccessToken token) throws WxErrorException {
         String url = String.format(WxMpService.OAUTH2_USERINFO_URL, token.getAccessToken(), token.getOpenId(), null);
-        String response = HttpClientUtil.doGet(url);
+        String response = this.execute(client -> HttpClientUtil.doGet(client, url, null));
         return WxMpUser.fromJson(response);
     }
 
     @Override
     public String[] getCallbackIP() throws WxErrorException {
-        String responseContent = HttpClientUtil.doGet(WxMpService.GET_CALLBACK_IP_URL, null);
+        String responseContent = this.execute(
+                client -> HttpClientUtil.doGet(client, WxMpService.GET_CALLBACK_IP_URL, null));
         JsonElement tmpJsonElement = JSON_PARSER.parse(responseContent);
         JsonArray ipList = tmpJsonElement.getAsJsonObject().get("ip_list").getAsJsonArray();
         String[] ipArray = new String[ipList.size()];
@@ -160,26 +190,171 @@ public abstract class BaseWxMpServiceImpl implements WxMpService {
 
     @Override
     public String get(String url, Map<String, String> params) throws WxErrorException {
-        url += (url.contains("?") ? "&" : "?") + "access_token=" + getAccessToken(false);
-        return HttpClientUtil.doGet(url, params);
+        String requestUrl = appendAccessToken(url);
+        return this.execute(client -> HttpClientUtil.doGet(client, requestUrl, params));
     }
 
     @Override
     public String post(String url, Map<String, String> params) throws WxErrorException {
-        url += (url.contains("?") ? "&" : "?") + "access_token=" + getAccessToken(false);
-        return HttpClientUtil.doPost(url, params);
+        String requestUrl = appendAccessToken(url);
+        return this.execute(client -> HttpClientUtil.doPost(client, requestUrl, params));
     }
 
     @Override
     public String post(String url, String jsonString) throws WxErrorException {
-        url += (url.contains("?") ? "&" : "?") + "access_token=" + getAccessToken(false);
-        return HttpClientUtil.doPostJson(url, jsonString);
+        String requestUrl = appendAccessToken(url);
+        return this.execute(client -> HttpClientUtil.doPostJson(client, requestUrl, jsonString));
     }
 
     @Override
     public String postFile(String url, File file) throws WxErrorException {
-        url += (url.contains("?") ? "&" : "?") + "access_token=" + getAccessToken(false);
-        return HttpClientUtil.doPostFile(url, file);
+        String requestUrl = appendAccessToken(url);
+        return this.execute(client -> HttpClientUtil.doPostFile(client, requestUrl, file));
+    }
+
+    @Override
+    public String get(WxMpApiUrl url, Map<String, String> params) throws WxErrorException {
+        String requestUrl = appendAccessToken(url.getUrl(this.getWxMpConfigStorage()));
+        long start = System.nanoTime();
+        String response = this.execute(client -> HttpClientUtil.doGet(client, requestUrl, params));
+        this.recordApiCall(url, start, 0, response);
+        return response;
+    }
+
+    @Override
+    public String post(WxMpApiUrl url, Map<String, String> params) throws WxErrorException {
+        String requestUrl = appendAccessToken(url.getUrl(this.getWxMpConfigStorage()));
+        long start = System.nanoTime();
+        String response = this.execute(client -> HttpClientUtil.doPost(client, requestUrl, params));
+        this.recordApiCall(url, start, formLength(params), response);
+        return response;
+    }
+
+    @Override
+    public String post(WxMpApiUrl url, String jsonString) throws WxErrorException {
+        String requestUrl = appendAccessToken(url.getUrl(this.getWxMpConfigStorage()));
+        long start = System.nanoTime();
+        String response = this.execute(client -> HttpClientUtil.doPostJson(client, requestUrl, jsonString));
+        this.recordApiCall(url, start, ApiCallStats.utf8Length(jsonString), response);
+        return response;
+    }
+
+    @Override
+    public String postFile(WxMpApiUrl url, File file) throws WxErrorException {
+        String requestUrl = appendAccessToken(url.getUrl(this.getWxMpConfigStorage()));
+        long start = System.nanoTime();
+        String response = this.execute(client -> HttpClientUtil.doPostFile(client, requestUrl, file));
+        this.recordApiCall(url, start, file.length(), response);
+        return response;
+    }
+
+    @Override
+    public String upload(WxMpApiUrl url, HttpEntity entity, Object... urlArgs) throws WxErrorException {
+        String baseUrl = url.getUrl(this.getWxMpConfigStorage());
+        if (urlArgs != null && urlArgs.length > 0) {
+            baseUrl = String.format(baseUrl, urlArgs);
+        }
+        String requestUrl = appendAccessToken(baseUrl);
+        long start = System.nanoTime();
+        String response = this.execute(client -> HttpClientUtil.doPostEntity(client, requestUrl, entity));
+        this.recordApiCall(url, start, Math.max(entity.getContentLength(), 0), response);
+        return response;
+    }
+
+    @Override
+    public DownloadResult download(WxMpApiUrl url, Map<String, String> params, WritableByteChannel target)
+            throws WxErrorException {
+        String requestUrl = appendAccessToken(url.getUrl(this.getWxMpConfigStorage()));
+        long start = System.nanoTime();
+        try {
+            DownloadResult result = this.execute(
+                    client -> HttpClientUtil.doGetDownload(client, requestUrl, params, target));
+            this.recordDownload(url, start, 0, result);
+            return result;
+        }
+        catch (IOException e) {
+            this.apiMetrics.recordFailure(this.getWxMpConfigStorage().getAppId(), url, System.nanoTime() - start, 0);
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+        }
+    }
+
+    @Override
+    public DownloadResult download(WxMpApiUrl url, String jsonString, WritableByteChannel target)
+            throws WxErrorException {
+        String requestUrl = appendAccessToken(url.getUrl(this.getWxMpConfigStorage()));
+        long requestBytes = ApiCallStats.utf8Length(jsonString);
+        long start = System.nanoTime();
+        try {
+            DownloadResult result = this.execute(
+                    client -> HttpClientUtil.doPostJsonDownload(client, requestUrl, jsonString, target));
+            this.recordDownload(url, start, requestBytes, result);
+            return result;
+        }
+        catch (IOException e) {
+            this.apiMetrics.recordFailure(this.getWxMpConfigStorage().getAppId(), url, System.nanoTime() - start,
+                    requestBytes);
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+        }
+    }
+
+    private void recordDownload(WxMpApiUrl url, long startNanos, long requestBytes, DownloadResult result) {
+        long elapsed = System.nanoTime() - startNanos;
+        String appId = this.getWxMpConfigStorage().getAppId();
+        if (result.isJson()) {
+            this.apiMetrics.record(appId, url, elapsed, requestBytes, result.getJsonBody());
+        }
+        else {
+            this.apiMetrics.stats(appId, url).record(elapsed, requestBytes, result.getBytesWritten(), 0);
+        }
+    }
+
+    private String appendAccessToken(String url) throws WxErrorException {
+        // 先取token：刷新token时会发起请求，不能在UrlBuilder使用中途占用线程的缓冲区
+        String accessToken = getAccessToken(false);
+        return UrlBuilder.of(url).param("access_token", accessToken).build();
+    }
+
+    /**
+     * 记录一次接口调用，HttpClientUtil在请求失败时返回空串.
+     */
+    protected void recordApiCall(WxMpApiUrl url, long startNanos, long requestBytes, String response) {
+        long elapsed = System.nanoTime() - startNanos;
+        String appId = this.getWxMpConfigStorage().getAppId();
+        if (StringUtils.isEmpty(response)) {
+            this.apiMetrics.recordFailure(appId, url, elapsed, requestBytes);
+        }
+        else {
+            this.apiMetrics.record(appId, url, elapsed, requestBytes, response);
+        }
+    }
+
+    private static long formLength(Map<String, String> params) {
+        if (params == null) {
+            return 0;
+        }
+        long length = 0;
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            length += ApiCallStats.utf8Length(entry.getKey()) + ApiCallStats.utf8Length(entry.getValue()) + 2;
+        }
+        return length;
+    }
+
+    @Override
+    public WxMpApiMetrics getApiMetrics() {
+        return apiMetrics;
+    }
+
+    public void setApiMetrics(WxMpApiMetrics apiMetrics) {
+        this.apiMetrics = apiMetrics;
+    }
+
+    @Override
+    public WxMpMediaCache getMediaCache() {
+        return mediaCache;
+    }
+
+    public void setMediaCache(WxMpMediaCache mediaCache) {
+        this.mediaCache = mediaCache;
     }
 
     public void setRetrySleepMillis(int retrySleepMillis) {
@@ -200,6 +375,41 @@ public abstract class BaseWxMpServiceImpl implements WxMpService {
         this.wxMpConfigStorage = wxMpConfigStorage;
     }
 
+    /**
+     * 发送请求使用的httpClient，返回null时每次请求新建连接.
+     * 多公众号实现按当前公众号返回各自的连接池，应通过{@link #execute}使用，请求结束后归还。
+     */
+    protected CloseableHttpClient getHttpClient() {
+        return null;
+    }
+
+    /**
+     * 归还{@link #getHttpClient()}取得的httpClient，多公众号实现据此在请求结束后才关闭被移除公众号的连接池.
+     */
+    protected void releaseHttpClient(CloseableHttpClient httpClient) {
+    }
+
+    /**
+     * 取得httpClient发送一次请求，结束后归还.
+     */
+    protected <T, E extends Exception> T execute(HttpCall<T, E> call) throws E {
+        CloseableHttpClient httpClient = this.getHttpClient();
+        try {
+            return call.call(httpClient);
+        }
+        finally {
+            this.releaseHttpClient(httpClient);
+        }
+    }
+
+    /**
+     * 使用httpClient发送的一次请求.
+     */
+    @FunctionalInterface
+    protected interface HttpCall<T, E extends Exception> {
+        T call(CloseableHttpClient httpClient) throws E;
+    }
+
     @Override
     public WxMpTemplateMsgService getWxMpTemplateMsgService() {
         return wxMpTemplateMsgService;
@@ -219,4 +429,54 @@ public abstract class BaseWxMpServiceImpl implements WxMpService {
     public WxMpMenuService getMenuService() {
         return menuService;
     }
+
+    @Override
+    public WxMpMaterialService getMaterialService() {
+        return materialService;
+    }
+
+    @Override
+    public WxMpUserService getUserService() {
+        return userService;
+    }
+
+    @Override
+    public WxMpKefuService getKefuService() {
+        return kefuService;
+    }
+
+    @Override
+    public WxMpDataCubeService getDataCubeService() {
+        return dataCubeService;
+    }
+
+    @Override
+    public WxMpQrcodeService getQrcodeService() {
+        return qrcodeService;
+    }
+
+    @Override
+    public WxMpCardService getCardService() {
+        return cardService;
+    }
+
+    @Override
+    public void setWxMpTemplateMsgService(WxMpTemplateMsgService wxMpTemplateMsgService) {
+        this.wxMpTemplateMsgService = wxMpTemplateMsgService;
+    }
+
+    @Override
+    public void setWxMpUserTagService(WxMpUserTagService wxMpUserTagService) {
+        this.wxMpUserTagService = wxMpUserTagService;
+    }
+
+    @Override
+    public void setMenuService(WxMpMenuService menuService) {
+        this.menuService = menuService;
+    }
+
+    @Override
+    public void setJsapiSigner(WxMpJsapiSigner jsapiSigner) {
+        this.jsapiSigner = jsapiSigner;
+    }
 }
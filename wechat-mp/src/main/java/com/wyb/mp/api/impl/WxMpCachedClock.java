@@ -0,0 +1,60 @@
+package com.wyb.mp.api.impl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.wyb.mp.api.WxMpTimeSource;
+
+/**
+ * <pre>
+ * 由后台线程定时更新的时钟，读取只是一次volatile读.
+ * 每隔tickMillis读取一次系统时间，因此与System.currentTimeMillis()同一基准，最多落后tickMillis，
+ * 可以和{@link WxMpSharedConfigStorage}一起使用，写入共享存储的过期时间与其他节点的系统时间可比。
+ * 系统时间回拨时保持原值，直到系统时间追上，读到的值单调不减。
+ * 精度为tickMillis，用于判断token过期足够了。不再使用时调用{@link #close()}停止后台线程。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpCachedClock implements WxMpTimeSource, AutoCloseable {
+
+    private final WxMpTimeSource wallClock;
+    private final ScheduledExecutorService ticker;
+    private volatile long now;
+
+    public WxMpCachedClock(long tickMillis) {
+        this(tickMillis, WxMpTimeSource.SYSTEM);
+    }
+
+    /**
+     * 测试时传入可控的系统时钟，再手动调用tick.
+     */
+    WxMpCachedClock(long tickMillis, WxMpTimeSource wallClock) {
+        this.wallClock = wallClock;
+        this.now = wallClock.currentTimeMillis();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "wx-cached-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return this.now;
+    }
+
+    @Override
+    public void close() {
+        this.ticker.shutdownNow();
+    }
+
+    /**
+     * 只在后台线程（测试时在调用线程）上执行，不需要同步.
+     */
+    void tick() {
+        this.now = Math.max(this.now, this.wallClock.currentTimeMillis());
+    }
+}
@@ -0,0 +1,256 @@
+package com.wyb.mp.api.impl;
+
+import static com.wyb.mp.enums.WxMpApiUrl.Card.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.wyb.common.WxType;
+import com.wyb.common.exception.WxError;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.RandomUtils;
+import com.wyb.common.util.crypto.SHA1;
+import com.wyb.mp.api.WxMpCardService;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.bean.card.WxMpCardApiSignature;
+import com.wyb.mp.bean.card.WxMpCardResult;
+import com.wyb.mp.enums.TicketType;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpCardServiceImpl implements WxMpCardService {
+    private static final JsonParser JSON_PARSER = new JsonParser();
+
+    private static final int DEFAULT_THREADS = 16;
+
+    private final WxMpService wxMpService;
+    private final Executor executor;
+
+    /**
+     * appId:code -> 正在进行的核销.
+     */
+    private final ConcurrentMap<String, CompletableFuture<WxMpCardResult>> consuming = new ConcurrentHashMap<>();
+    /**
+     * appId:cardId:code:checkConsume -> 正在进行的查询.
+     */
+    private final ConcurrentMap<String, CompletableFuture<WxMpCardResult>> querying = new ConcurrentHashMap<>();
+
+    public WxMpCardServiceImpl(WxMpService wxMpService) {
+        this(wxMpService, WxMpServiceExecutors.newDaemonPool("wx-card-", DEFAULT_THREADS));
+    }
+
+    /**
+     * @param executor 异步核销使用的线程池
+     */
+    public WxMpCardServiceImpl(WxMpService wxMpService, Executor executor) {
+        this.wxMpService = wxMpService;
+        this.executor = executor;
+    }
+
+    @Override
+    public String decryptCardCode(String encryptCode) throws WxErrorException {
+        JsonObject param = new JsonObject();
+        param.addProperty("encrypt_code", encryptCode);
+        String responseContent = this.post(CARD_CODE_DECRYPT, param);
+        return JSON_PARSER.parse(responseContent).getAsJsonObject().get("code").getAsString();
+    }
+
+    @Override
+    public WxMpCardResult queryCardCode(String cardId, String code, boolean checkConsume) throws WxErrorException {
+        return join(this.queryCardCodeAsync(cardId, code, checkConsume, Runnable::run));
+    }
+
+    @Override
+    public WxMpCardResult consumeCardCode(String code, String cardId) throws WxErrorException {
+        JsonObject param = new JsonObject();
+        param.addProperty("code", code);
+        if (cardId != null) {
+            param.addProperty("card_id", cardId);
+        }
+        return WxMpCardResult.fromJson(this.post(CARD_CODE_CONSUME, param));
+    }
+
+    @Override
+    public CompletableFuture<WxMpCardResult> consumeCardCodeAsync(String code, String cardId) {
+        String lockKey = this.appId() + ':' + code;
+        CompletableFuture<WxMpCardResult> result = new CompletableFuture<>();
+        if (this.consuming.putIfAbsent(lockKey, result) != null) {
+            result.completeExceptionally(notConsumable("code正在核销中: " + code));
+            return result;
+        }
+        Executor boundExecutor = WxMpServiceExecutors.bindCurrentAccount(this.wxMpService, this.executor);
+        this.queryCardCodeAsync(cardId, code, true, boundExecutor)
+                .thenApplyAsync(card -> {
+                    if (Boolean.FALSE.equals(card.getCanConsume())) {
+                        throw notConsumable("code不可核销，状态为" + card.getUserCardStatus());
+                    }
+                    try {
+                        return this.consumeCardCode(code, cardId);
+                    }
+                    catch (WxErrorException e) {
+                        throw new CompletionException(e);
+                    }
+                }, boundExecutor)
+                .whenComplete((r, e) -> {
+                    // 先释放锁再通知调用方，调用方收到结果后可以立即重试
+                    this.consuming.remove(lockKey, result);
+                    if (e != null) {
+                        result.completeExceptionally(e instanceof CompletionException ? e : new CompletionException(e));
+                    }
+                    else {
+                        result.complete(r);
+                    }
+                });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<WxMpCardResult> consumeEncryptedCardCodeAsync(String encryptCode, String cardId) {
+        Executor boundExecutor = WxMpServiceExecutors.bindCurrentAccount(this.wxMpService, this.executor);
+        // 解密在boundExecutor上完成，thenCompose在其任务内或调用线程上执行，都处于同一公众号下
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.decryptCardCode(encryptCode);
+            }
+            catch (WxErrorException e) {
+                throw new CompletionException(e);
+            }
+        }, boundExecutor).thenCompose(code -> this.consumeCardCodeAsync(code, cardId));
+    }
+
+    @Override
+    public void memberCardActivate(String cardId, String code, String membershipNumber) throws WxErrorException {
+        JsonObject param = new JsonObject();
+        param.addProperty("membership_number", membershipNumber);
+        param.addProperty("code", code);
+        param.addProperty("card_id", cardId);
+        this.post(WxMpApiUrl.MemberCard.MEMBER_CARD_ACTIVATE, param);
+    }
+
+    @Override
+    public String getCardApiTicket(boolean forceRefresh) throws WxErrorException {
+        return this.wxMpService.getTicket(TicketType.WX_CARD, forceRefresh);
+    }
+
+    @Override
+    public WxMpCardApiSignature createCardApiSignature(String cardId, String code, String openId)
+            throws WxErrorException {
+        String apiTicket = this.getCardApiTicket(false);
+        return this.sign(apiTicket, System.currentTimeMillis() / 1000, cardId, code, openId);
+    }
+
+    @Override
+    public List<WxMpCardApiSignature> createCardApiSignatures(List<String> cardIds, String openId)
+            throws WxErrorException {
+        String apiTicket = this.getCardApiTicket(false);
+        long timestamp = System.currentTimeMillis() / 1000;
+        List<WxMpCardApiSignature> signatures = new ArrayList<>(cardIds.size());
+        for (String cardId : cardIds) {
+            signatures.add(this.sign(apiTicket, timestamp, cardId, null, openId));
+        }
+        return signatures;
+    }
+
+    /**
+     * 空值排序后位于最前且拼接后不占位置，与不参与签名等价.
+     */
+    private WxMpCardApiSignature sign(String apiTicket, long timestamp, String cardId, String code, String openId) {
+        String nonceStr = RandomUtils.getRandomStr();
+        String[] values = {apiTicket, String.valueOf(timestamp), nonceStr, cardId,
+            code == null ? "" : code, openId == null ? "" : openId};
+        Arrays.sort(values);
+        StringBuilder sb = new StringBuilder(256);
+        for (String value : values) {
+            sb.append(value);
+        }
+        WxMpCardApiSignature signature = new WxMpCardApiSignature();
+        signature.setAppId(this.appId());
+        signature.setCardId(cardId);
+        signature.setCode(code);
+        signature.setOpenId(openId);
+        signature.setTimestamp(timestamp);
+        signature.setNonceStr(nonceStr);
+        signature.setSignature(SHA1.sha1Hex(sb));
+        return signature;
+    }
+
+    /**
+     * 相同的查询正在进行时共享其结果，否则在executor上发起查询，完成后移除.
+     */
+    private CompletableFuture<WxMpCardResult> queryCardCodeAsync(String cardId, String code, boolean checkConsume,
+            Executor executor) {
+        String key = this.appId() + ':' + cardId + ':' + code + ':' + checkConsume;
+        CompletableFuture<WxMpCardResult> query = new CompletableFuture<>();
+        CompletableFuture<WxMpCardResult> existing = this.querying.putIfAbsent(key, query);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    JsonObject param = new JsonObject();
+                    if (cardId != null) {
+                        param.addProperty("card_id", cardId);
+                    }
+                    param.addProperty("code", code);
+                    param.addProperty("check_consume", checkConsume);
+                    WxMpCardResult result = WxMpCardResult.fromJson(this.post(CARD_CODE_GET, param));
+                    this.querying.remove(key, query);
+                    query.complete(result);
+                }
+                catch (WxErrorException | RuntimeException e) {
+                    this.querying.remove(key, query);
+                    query.completeExceptionally(new CompletionException(e));
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            this.querying.remove(key, query);
+            query.completeExceptionally(e);
+        }
+        return query;
+    }
+
+    private String post(WxMpApiUrl url, JsonObject param) throws WxErrorException {
+        String responseContent = this.wxMpService.post(url, param.toString());
+        if (responseContent == null || responseContent.isEmpty()) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg("请求失败，无响应").build());
+        }
+        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
+        if (wxError.getErrorCode() != 0) {
+            throw new WxErrorException(wxError);
+        }
+        return responseContent;
+    }
+
+    private String appId() {
+        return this.wxMpService.getWxMpConfigStorage().getAppId();
+    }
+
+    private static CompletionException notConsumable(String message) {
+        return new CompletionException(new WxErrorException(
+                WxError.builder().errorCode(ERROR_CODE_NOT_CONSUMABLE).errorMsg(message).build()));
+    }
+
+    private static WxMpCardResult join(CompletableFuture<WxMpCardResult> future) throws WxErrorException {
+        try {
+            return future.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof WxErrorException) {
+                throw (WxErrorException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.wyb.mp.api.impl;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.wyb.common.WxType;
+import com.wyb.common.exception.WxError;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.api.WxMpDataCubeService;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.enums.WxMpApiUrl.DataCube;
+import com.wyb.mp.util.datacube.WxMpDataCubeTable;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpDataCubeServiceImpl implements WxMpDataCubeService {
+    private static final JsonParser JSON_PARSER = new JsonParser();
+
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final double DEFAULT_PERMITS_PER_SECOND = 20;
+
+    /**
+     * 各接口文档中的最大时间跨度.
+     */
+    private static final Map<DataCube, Integer> MAX_DAYS = new EnumMap<>(DataCube.class);
+
+    static {
+        MAX_DAYS.put(DataCube.GET_USER_SUMMARY, 7);
+        MAX_DAYS.put(DataCube.GET_USER_CUMULATE, 7);
+        MAX_DAYS.put(DataCube.GET_ARTICLE_SUMMARY, 1);
+        MAX_DAYS.put(DataCube.GET_ARTICLE_TOTAL, 1);
+        MAX_DAYS.put(DataCube.GET_USER_READ, 3);
+        MAX_DAYS.put(DataCube.GET_USER_READ_HOUR, 1);
+        MAX_DAYS.put(DataCube.GET_USER_SHARE, 7);
+        MAX_DAYS.put(DataCube.GET_USER_SHARE_HOUR, 1);
+        MAX_DAYS.put(DataCube.GET_UPSTREAM_MSG, 7);
+        MAX_DAYS.put(DataCube.GET_UPSTREAM_MSG_HOUR, 1);
+        MAX_DAYS.put(DataCube.GET_UPSTREAM_MSG_WEEK, 30);
+        MAX_DAYS.put(DataCube.GET_UPSTREAM_MSG_MONTH, 30);
+        MAX_DAYS.put(DataCube.GET_UPSTREAM_MSG_DIST, 15);
+        MAX_DAYS.put(DataCube.GET_UPSTREAM_MSG_DIST_WEEK, 30);
+        MAX_DAYS.put(DataCube.GET_UPSTREAM_MSG_DIST_MONTH, 30);
+        MAX_DAYS.put(DataCube.GET_INTERFACE_SUMMARY, 30);
+        MAX_DAYS.put(DataCube.GET_INTERFACE_SUMMARY_HOUR, 1);
+    }
+
+    private final WxMpService wxMpService;
+    private final Executor executor;
+    private final RateLimiter rateLimiter;
+
+    public WxMpDataCubeServiceImpl(WxMpService wxMpService) {
+        this(wxMpService, WxMpServiceExecutors.newDaemonPool("wx-datacube-", DEFAULT_PARALLELISM),
+                DEFAULT_PERMITS_PER_SECOND);
+    }
+
+    /**
+     * @param executor         并发查询各区间使用的线程池
+     * @param permitsPerSecond 每秒最多调用接口的次数
+     */
+    public WxMpDataCubeServiceImpl(WxMpService wxMpService, Executor executor, double permitsPerSecond) {
+        this.wxMpService = wxMpService;
+        this.executor = executor;
+        this.rateLimiter = RateLimiter.create(permitsPerSecond);
+    }
+
+    @Override
+    public int getMaxDays(DataCube api) {
+        return MAX_DAYS.get(api);
+    }
+
+    @Override
+    public List<JsonObject> getRows(DataCube api, LocalDate beginDate, LocalDate endDate) throws WxErrorException {
+        if (endDate.isBefore(beginDate)) {
+            throw new IllegalArgumentException("endDate早于beginDate: " + beginDate + "~" + endDate);
+        }
+        List<LocalDate[]> windows = split(beginDate, endDate, this.getMaxDays(api));
+        if (windows.size() == 1) {
+            this.rateLimiter.acquire();
+            return this.fetch(api, beginDate, endDate);
+        }
+
+        List<CompletableFuture<List<JsonObject>>> futures = new ArrayList<>(windows.size());
+        Executor boundExecutor = WxMpServiceExecutors.bindCurrentAccount(this.wxMpService, this.executor);
+        for (LocalDate[] window : windows) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                this.rateLimiter.acquire();
+                try {
+                    return this.fetch(api, window[0], window[1]);
+                }
+                catch (WxErrorException e) {
+                    throw new CompletionException(e);
+                }
+            }, boundExecutor));
+        }
+        List<JsonObject> rows = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<JsonObject>> future : futures) {
+                rows.addAll(future.join());
+            }
+        }
+        catch (CompletionException e) {
+            for (CompletableFuture<List<JsonObject>> future : futures) {
+                future.cancel(false);
+            }
+            if (e.getCause() instanceof WxErrorException) {
+                throw (WxErrorException) e.getCause();
+            }
+            throw e;
+        }
+        return rows;
+    }
+
+    @Override
+    public WxMpDataCubeTable getTable(DataCube api, LocalDate beginDate, LocalDate endDate)
+            throws WxErrorException {
+        return WxMpDataCubeTable.fromRows(this.getRows(api, beginDate, endDate), beginDate, endDate);
+    }
+
+    /**
+     * 把[beginDate, endDate]按每段最多maxDays天依次切分.
+     */
+    static List<LocalDate[]> split(LocalDate beginDate, LocalDate endDate, int maxDays) {
+        List<LocalDate[]> windows = new ArrayList<>();
+        for (LocalDate from = beginDate; !from.isAfter(endDate); from = from.plusDays(maxDays)) {
+            LocalDate to = from.plusDays(maxDays - 1L);
+            windows.add(new LocalDate[]{from, to.isAfter(endDate) ? endDate : to});
+        }
+        return windows;
+    }
+
+    /**
+     * {"begin_date":"2014-12-02","end_date":"2014-12-07"} -> {"list":[{"ref_date":"2014-12-02",...},...]}.
+     */
+    private List<JsonObject> fetch(DataCube api, LocalDate beginDate, LocalDate endDate) throws WxErrorException {
+        JsonObject param = new JsonObject();
+        param.addProperty("begin_date", beginDate.toString());
+        param.addProperty("end_date", endDate.toString());
+        String responseContent = this.wxMpService.post(api, param.toString());
+        if (responseContent == null || responseContent.isEmpty()) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg("请求失败，无响应").build());
+        }
+        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
+        if (wxError.getErrorCode() != 0) {
+            throw new WxErrorException(wxError);
+        }
+        JsonElement list = JSON_PARSER.parse(responseContent).getAsJsonObject().get("list");
+        List<JsonObject> rows = new ArrayList<>();
+        if (list != null && list.isJsonArray()) {
+            JsonArray array = list.getAsJsonArray();
+            for (JsonElement row : array) {
+                rows.add(row.getAsJsonObject());
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,56 @@
+package com.wyb.mp.api.impl;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.wyb.mp.api.WxMpExpiryPolicy;
+
+/**
+ * <pre>
+ * 默认的过期策略：过期时间 = 获取时间 + 有效期 × (1 - earlyRefreshFraction) - safetyMargin - jitter.
+ * jitter在创建时从[0, maxJitterMillis)中随机取一次，同一节点固定不变，不同节点错开，
+ * 多个节点各自持有token（如不共享存储的ticket）时不会在同一时刻集中刷新。
+ * {@link #DEFAULT}只预留200秒，与原来的行为一致。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpDefaultExpiryPolicy implements WxMpExpiryPolicy, Serializable {
+    private static final long serialVersionUID = -3176430924386414466L;
+
+    public static final WxMpDefaultExpiryPolicy DEFAULT =
+            new WxMpDefaultExpiryPolicy(TimeUnit.SECONDS.toMillis(200), 0, 0);
+
+    private final long safetyMarginMillis;
+    private final double earlyRefreshFraction;
+    private final long jitterMillis;
+
+    /**
+     * @param safetyMarginMillis   固定提前的时间
+     * @param earlyRefreshFraction 按有效期的比例提前，取值[0, 1)，如0.1表示7200秒的token提前720秒
+     * @param maxJitterMillis      节点随机提前量的上限，0表示不加随机量
+     */
+    public WxMpDefaultExpiryPolicy(long safetyMarginMillis, double earlyRefreshFraction, long maxJitterMillis) {
+        if (earlyRefreshFraction < 0 || earlyRefreshFraction >= 1) {
+            throw new IllegalArgumentException("earlyRefreshFraction must be in [0, 1): " + earlyRefreshFraction);
+        }
+        this.safetyMarginMillis = safetyMarginMillis;
+        this.earlyRefreshFraction = earlyRefreshFraction;
+        this.jitterMillis = maxJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(maxJitterMillis) : 0;
+    }
+
+    @Override
+    public long expiresAt(long now, int expiresInSeconds) {
+        long lifetime = expiresInSeconds * 1000L;
+        long early = (long) (lifetime * this.earlyRefreshFraction);
+        return now + lifetime - early - this.safetyMarginMillis - this.jitterMillis;
+    }
+
+    /**
+     * 本节点的随机提前量.
+     */
+    public long getJitterMillis() {
+        return this.jitterMillis;
+    }
+}
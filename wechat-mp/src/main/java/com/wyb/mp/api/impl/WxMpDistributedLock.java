@@ -0,0 +1,298 @@
+package com.wyb.mp.api.impl;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.wyb.mp.api.WxMpKeyValueStore;
+
+/**
+ * <pre>
+ * 基于{@link WxMpKeyValueStore#setIfAbsent}的跨节点锁.
+ * 本节点内先用ReentrantLock排队，只有拿到本地锁的线程才去竞争共享存储中的锁，同一线程可重入。
+ * 共享锁带有租期，持有期间每隔三分之一租期续租一次，持有时间可以超过租期；
+ * 持有锁的节点宕机后不再续租，租期到了自动释放。
+ * newCondition返回的Condition只能唤醒本节点的线程，await期间释放共享锁，被唤醒后重新竞争。
+ * 每次拿到共享锁后执行onAcquire，供调用方丢弃等锁期间可能已过时的本地缓存。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+final class WxMpDistributedLock implements Lock {
+
+    private static final long RETRY_INTERVAL_MILLIS = 20;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /**
+     * 所有锁共用的续租线程，续租只是一次共享存储调用，一个线程足够.
+     */
+    private static final ScheduledExecutorService RENEWER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "wx-mp-lock-renewer-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final WxMpKeyValueStore store;
+    private final String key;
+    private final long leaseMillis;
+    private final String owner = UUID.randomUUID().toString();
+    private final ReentrantLock local = new ReentrantLock();
+    private final Runnable onAcquire;
+
+    /**
+     * 只在持有本地锁时读写.
+     */
+    private ScheduledFuture<?> renewal;
+
+    WxMpDistributedLock(WxMpKeyValueStore store, String key, long leaseMillis) {
+        this(store, key, leaseMillis, () -> { });
+    }
+
+    WxMpDistributedLock(WxMpKeyValueStore store, String key, long leaseMillis, Runnable onAcquire) {
+        this.store = store;
+        this.key = key;
+        this.leaseMillis = leaseMillis;
+        this.onAcquire = onAcquire;
+    }
+
+    @Override
+    public void lock() {
+        this.local.lock();
+        if (this.local.getHoldCount() > 1) {
+            return;
+        }
+        try {
+            this.acquireRemoteUninterruptibly();
+        }
+        catch (RuntimeException e) {
+            this.local.unlock();
+            throw e;
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        this.local.lockInterruptibly();
+        this.acquireRemote(false, 0);
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (!this.local.tryLock()) {
+            return false;
+        }
+        if (this.local.getHoldCount() > 1) {
+            return true;
+        }
+        boolean acquired = false;
+        try {
+            acquired = this.tryAcquireRemote();
+            return acquired;
+        }
+        finally {
+            if (!acquired) {
+                this.local.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        if (!this.local.tryLock(time, unit)) {
+            return false;
+        }
+        return this.acquireRemote(true, deadline);
+    }
+
+    @Override
+    public void unlock() {
+        try {
+            if (this.local.getHoldCount() == 1) {
+                this.releaseRemote();
+            }
+        }
+        finally {
+            this.local.unlock();
+        }
+    }
+
+    @Override
+    public Condition newCondition() {
+        return new RemoteReleasingCondition(this.local.newCondition());
+    }
+
+    /**
+     * 已持有本地锁时竞争共享锁，失败或中断时释放本地锁.
+     */
+    private boolean acquireRemote(boolean timed, long deadlineNanos) throws InterruptedException {
+        if (this.local.getHoldCount() > 1) {
+            return true;
+        }
+        boolean acquired = false;
+        try {
+            while (!(acquired = this.tryAcquireRemote())) {
+                long sleepMillis = RETRY_INTERVAL_MILLIS;
+                if (timed) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    sleepMillis = Math.min(sleepMillis, TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+                }
+                Thread.sleep(sleepMillis);
+            }
+            return true;
+        }
+        finally {
+            if (!acquired) {
+                this.local.unlock();
+            }
+        }
+    }
+
+    private void acquireRemoteUninterruptibly() {
+        boolean interrupted = false;
+        try {
+            while (!this.tryAcquireRemote()) {
+                try {
+                    Thread.sleep(RETRY_INTERVAL_MILLIS);
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean tryAcquireRemote() {
+        if (!this.store.setIfAbsent(this.key, this.owner, this.leaseMillis)) {
+            return false;
+        }
+        long period = Math.max(this.leaseMillis / 3, 1);
+        this.renewal = RENEWER.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+        this.onAcquire.run();
+        return true;
+    }
+
+    private void releaseRemote() {
+        ScheduledFuture<?> current = this.renewal;
+        this.renewal = null;
+        if (current != null) {
+            current.cancel(false);
+        }
+        this.store.deleteIfEquals(this.key, this.owner);
+    }
+
+    /**
+     * 共享存储暂时不可用时等下一次续租；锁已经不属于本节点时续租失败，之后的续租都是空操作，unlock时取消.
+     */
+    private void renew() {
+        try {
+            this.store.renewIfEquals(this.key, this.owner, this.leaseMillis);
+        }
+        catch (RuntimeException e) {
+            // 下一次再试
+        }
+    }
+
+    /**
+     * await前释放共享锁，返回前重新拿到共享锁，期间其他节点可以拿到锁.
+     */
+    private final class RemoteReleasingCondition implements Condition {
+        private final Condition condition;
+
+        RemoteReleasingCondition(Condition condition) {
+            this.condition = condition;
+        }
+
+        private void beforeAwait() {
+            if (!WxMpDistributedLock.this.local.isHeldByCurrentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+            WxMpDistributedLock.this.releaseRemote();
+        }
+
+        private void afterAwait() {
+            WxMpDistributedLock.this.acquireRemoteUninterruptibly();
+        }
+
+        @Override
+        public void await() throws InterruptedException {
+            this.beforeAwait();
+            try {
+                this.condition.await();
+            }
+            finally {
+                this.afterAwait();
+            }
+        }
+
+        @Override
+        public void awaitUninterruptibly() {
+            this.beforeAwait();
+            try {
+                this.condition.awaitUninterruptibly();
+            }
+            finally {
+                this.afterAwait();
+            }
+        }
+
+        @Override
+        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+            this.beforeAwait();
+            try {
+                return this.condition.awaitNanos(nanosTimeout);
+            }
+            finally {
+                this.afterAwait();
+            }
+        }
+
+        @Override
+        public boolean await(long time, TimeUnit unit) throws InterruptedException {
+            this.beforeAwait();
+            try {
+                return this.condition.await(time, unit);
+            }
+            finally {
+                this.afterAwait();
+            }
+        }
+
+        @Override
+        public boolean awaitUntil(Date deadline) throws InterruptedException {
+            this.beforeAwait();
+            try {
+                return this.condition.awaitUntil(deadline);
+            }
+            finally {
+                this.afterAwait();
+            }
+        }
+
+        @Override
+        public void signal() {
+            this.condition.signal();
+        }
+
+        @Override
+        public void signalAll() {
+            this.condition.signalAll();
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import com.wyb.common.bean.WxAccessToken;
 import com.wyb.mp.api.WxMpConfigStorage;
+import com.wyb.mp.api.WxMpExpiryPolicy;
+import com.wyb.mp.api.WxMpTimeSource;
 import com.wyb.mp.bean.WxMpHostConfig;
 import com.wyb.mp.enums.TicketType;
 
@@ -39,6 +41,12 @@ public class WxMpInMemoryConfigStorage implements WxMpConfigStorage, Serializabl
     protected Lock sdkTicketLock = new ReentrantLock();
     protected Lock cardApiTicketLock = new ReentrantLock();
 
+    /**
+     * 反序列化后为null，此时使用系统时钟和默认策略.
+     */
+    protected transient volatile WxMpTimeSource timeSource = WxMpTimeSource.SYSTEM;
+    protected transient volatile WxMpExpiryPolicy expiryPolicy = WxMpDefaultExpiryPolicy.DEFAULT;
+
     public WxMpInMemoryConfigStorage() {
     }
 
@@ -54,7 +62,7 @@ public class WxMpInMemoryConfigStorage implements WxMpConfigStorage, Serializabl
 
     @Override
     public boolean isAccessTokenExpired() {
-        return System.currentTimeMillis() > this.expiresTime;
+        return this.currentTimeMillis() > this.expiresTime;
     }
 
     @Override
@@ -70,8 +78,7 @@ public class WxMpInMemoryConfigStorage implements WxMpConfigStorage, Serializabl
     @Override
     public void updateAccessToken(String accessToken, int expiresInSeconds) {
         this.accessToken = accessToken;
-        // 预留200秒时间
-        this.expiresTime = System.currentTimeMillis() + (expiresInSeconds - 200) * 1000L;
+        this.expiresTime = this.expiresAt(expiresInSeconds);
     }
 
     @Override
@@ -121,11 +128,11 @@ public class WxMpInMemoryConfigStorage implements WxMpConfigStorage, Serializabl
     public boolean isTicketExpired(TicketType type) {
         switch (type) {
         case SDK:
-            return System.currentTimeMillis() > this.sdkTicketExpiresTime;
+            return this.currentTimeMillis() > this.sdkTicketExpiresTime;
         case JSAPI:
-            return System.currentTimeMillis() > this.jsapiTicketExpiresTime;
+            return this.currentTimeMillis() > this.jsapiTicketExpiresTime;
         case WX_CARD:
-            return System.currentTimeMillis() > this.cardApiTicketExpiresTime;
+            return this.currentTimeMillis() > this.cardApiTicketExpiresTime;
         default:
             return false;
         }
@@ -136,18 +143,15 @@ public class WxMpInMemoryConfigStorage implements WxMpConfigStorage, Serializabl
         switch (type) {
         case JSAPI:
             this.jsapiTicket = ticket;
-            // 预留200秒的时间
-            this.jsapiTicketExpiresTime = System.currentTimeMillis() + (expiresInSeconds - 200) * 1000L;
+            this.jsapiTicketExpiresTime = this.expiresAt(expiresInSeconds);
             break;
         case WX_CARD:
             this.cardApiTicket = ticket;
-            // 预留200秒的时间
-            this.cardApiTicketExpiresTime = System.currentTimeMillis() + (expiresInSeconds - 200) * 1000L;
+            this.cardApiTicketExpiresTime = this.expiresAt(expiresInSeconds);
             break;
         case SDK:
             this.sdkTicket = ticket;
-            // 预留200秒的时间
-            this.sdkTicketExpiresTime = System.currentTimeMillis() + (expiresInSeconds - 200) * 1000L;
+            this.sdkTicketExpiresTime = this.expiresAt(expiresInSeconds);
             break;
         default:
         }
@@ -240,4 +244,29 @@ public class WxMpInMemoryConfigStorage implements WxMpConfigStorage, Serializabl
     public void setAccessTokenLock(Lock accessTokenLock) {
         this.accessTokenLock = accessTokenLock;
     }
+
+    public void setTimeSource(WxMpTimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * 默认为{@link WxMpDefaultExpiryPolicy#DEFAULT}，只对之后更新的token、ticket生效.
+     */
+    public void setExpiryPolicy(WxMpExpiryPolicy expiryPolicy) {
+        this.expiryPolicy = expiryPolicy;
+    }
+
+    protected long currentTimeMillis() {
+        WxMpTimeSource source = this.timeSource;
+        return source == null ? System.currentTimeMillis() : source.currentTimeMillis();
+    }
+
+    /**
+     * 按过期策略计算从现在起有效期为expiresInSeconds的值的本地过期时间.
+     */
+    protected long expiresAt(int expiresInSeconds) {
+        WxMpExpiryPolicy policy = this.expiryPolicy;
+        return (policy == null ? WxMpDefaultExpiryPolicy.DEFAULT : policy)
+                .expiresAt(this.currentTimeMillis(), expiresInSeconds);
+    }
 }
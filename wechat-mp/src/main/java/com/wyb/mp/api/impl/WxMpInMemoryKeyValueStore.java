@@ -0,0 +1,92 @@
+package com.wyb.mp.api.impl;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.wyb.mp.api.WxMpKeyValueStore;
+
+/**
+ * 进程内的{@link WxMpKeyValueStore}，用于测试和单节点部署，过期的记录在读取时清除.
+ * 可以随{@link WxMpSharedConfigStorage}一起序列化，反序列化得到的是一份独立的副本。
+ *
+ * @author Kunzite
+ */
+public class WxMpInMemoryKeyValueStore implements WxMpKeyValueStore, Serializable {
+
+    private static final long serialVersionUID = 2651370914861249017L;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public String get(String key) {
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            this.entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public void set(String key, String value, long ttlMillis) {
+        this.entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        Entry created = new Entry(value, now + ttlMillis);
+        return this.entries.compute(key, (k, entry) -> entry == null || entry.isExpired(now) ? created : entry)
+                == created;
+    }
+
+    @Override
+    public void delete(String key) {
+        this.entries.remove(key);
+    }
+
+    @Override
+    public boolean deleteIfEquals(String key, String expected) {
+        long now = System.currentTimeMillis();
+        boolean[] deleted = new boolean[1];
+        this.entries.computeIfPresent(key, (k, entry) -> {
+            if (entry.isExpired(now)) {
+                return null;
+            }
+            if (entry.value.equals(expected)) {
+                deleted[0] = true;
+                return null;
+            }
+            return entry;
+        });
+        return deleted[0];
+    }
+
+    @Override
+    public boolean renewIfEquals(String key, String expected, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        Entry renewed = new Entry(expected, now + ttlMillis);
+        return this.entries.computeIfPresent(key,
+                (k, entry) -> entry.isExpired(now) ? null : entry.value.equals(expected) ? renewed : entry) == renewed;
+    }
+
+    private static class Entry implements Serializable {
+        private static final long serialVersionUID = -3392166310862154402L;
+
+        private final String value;
+        private final long expiresAt;
+
+        Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= this.expiresAt;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.wyb.mp.api.impl;
+
+import static com.wyb.mp.enums.WxMpApiUrl.Kefu.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.gson.JsonObject;
+import com.wyb.common.WxType;
+import com.wyb.common.exception.WxError;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.api.WxMpKefuService;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.api.WxMpTimeSource;
+import com.wyb.mp.bean.kefu.WxMpKefuBatchResult;
+import com.wyb.mp.bean.kefu.WxMpKefuMessage;
+import com.wyb.mp.bean.kefu.WxMpKefuStats;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * <pre>
+ * 客服消息接口实现
+ * 异步发送按openid哈希分到固定数量的通道，每个通道内的消息串行执行，通道之间在线程池上并发，
+ * 这样同一用户的消息一定按提交顺序到达，又不需要为每个用户维护队列。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpKefuServiceImpl implements WxMpKefuService {
+
+    /**
+     * 48小时互动时限.
+     */
+    public static final long INTERACTION_WINDOW_MILLIS = TimeUnit.HOURS.toMillis(48);
+
+    private static final int ERROR_OUTSIDE_WINDOW = 45015;
+    private static final int LANES = 64;
+    private static final int DEFAULT_THREADS = 8;
+    private static final double DEFAULT_PERMITS_PER_SECOND = 200;
+    private static final long MAX_TRACKED_USERS = 1000000;
+    /**
+     * 互动记录中表示已收到45015的值.
+     */
+    private static final long CLOSED = -1L;
+
+    private final WxMpService wxMpService;
+    private final Executor executor;
+    private final RateLimiter rateLimiter;
+    private final WxMpTimeSource timeSource;
+
+    /**
+     * appId:openid -> 最近一次互动的时间，或CLOSED.
+     * 记录保留两个时限，超过时限后的一段时间内仍能判断出用户已超时，不会刚好在48小时被淘汰而当作没有记录。
+     */
+    private final Cache<String, Long> interactions = CacheBuilder.newBuilder()
+            .maximumSize(MAX_TRACKED_USERS)
+            .expireAfterWrite(INTERACTION_WINDOW_MILLIS * 2, TimeUnit.MILLISECONDS)
+            .ticker(new Ticker() {
+                @Override
+                public long read() {
+                    return TimeUnit.MILLISECONDS.toNanos(WxMpKefuServiceImpl.this.currentTimeMillis());
+                }
+            })
+            .build();
+
+    private final Object[] laneLocks = new Object[LANES];
+    private final CompletableFuture<?>[] laneTails = new CompletableFuture<?>[LANES];
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong outsideWindow = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+    private final SecondCounter sentPerSecond = new SecondCounter();
+
+    public WxMpKefuServiceImpl(WxMpService wxMpService) {
+        this(wxMpService, WxMpServiceExecutors.newDaemonPool("wx-kefu-", DEFAULT_THREADS),
+                DEFAULT_PERMITS_PER_SECOND);
+    }
+
+    /**
+     * @param executor         异步发送使用的线程池
+     * @param permitsPerSecond 每秒最多调用发送接口的次数
+     */
+    public WxMpKefuServiceImpl(WxMpService wxMpService, Executor executor, double permitsPerSecond) {
+        this(wxMpService, executor, permitsPerSecond, WxMpTimeSource.SYSTEM);
+    }
+
+    /**
+     * @param timeSource 判断48小时互动时限和统计每分钟发送量使用的时钟
+     */
+    public WxMpKefuServiceImpl(WxMpService wxMpService, Executor executor, double permitsPerSecond,
+            WxMpTimeSource timeSource) {
+        this.wxMpService = wxMpService;
+        this.executor = executor;
+        this.rateLimiter = RateLimiter.create(permitsPerSecond);
+        this.timeSource = timeSource;
+        for (int i = 0; i < LANES; i++) {
+            this.laneLocks[i] = new Object();
+            this.laneTails[i] = CompletableFuture.completedFuture(null);
+        }
+    }
+
+    @Override
+    public boolean sendKefuMessage(WxMpKefuMessage message) throws WxErrorException {
+        this.submitted.incrementAndGet();
+        this.rateLimiter.acquire();
+        return this.send(message);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> sendKefuMessageAsync(WxMpKefuMessage message) {
+        this.submitted.incrementAndGet();
+        this.pending.incrementAndGet();
+        int lane = (message.getToUser().hashCode() & Integer.MAX_VALUE) % LANES;
+        // 前一条消息完成时才提交到线程池，此时已不在调用线程上，需先记下当前公众号
+        Executor boundExecutor = WxMpServiceExecutors.bindCurrentAccount(this.wxMpService, this.executor);
+        CompletableFuture<Boolean> future;
+        synchronized (this.laneLocks[lane]) {
+            future = this.laneTails[lane].handle((r, e) -> null).thenApplyAsync(ignored -> {
+                this.rateLimiter.acquire();
+                try {
+                    return this.send(message);
+                }
+                catch (WxErrorException e) {
+                    throw new CompletionException(e);
+                }
+            }, boundExecutor);
+            this.laneTails[lane] = future;
+        }
+        future.whenComplete((r, e) -> this.pending.decrementAndGet());
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<WxMpKefuBatchResult> sendKefuMessages(Collection<WxMpKefuMessage> messages) {
+        List<WxMpKefuMessage> submittedMessages = new ArrayList<>(messages);
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(submittedMessages.size());
+        for (WxMpKefuMessage message : submittedMessages) {
+            futures.add(this.sendKefuMessageAsync(message));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((r, e) -> {
+            WxMpKefuBatchResult result = new WxMpKefuBatchResult();
+            result.setTotal(submittedMessages.size());
+            for (int i = 0; i < futures.size(); i++) {
+                WxError error = errorOf(futures.get(i));
+                if (error == null) {
+                    result.setSucceeded(result.getSucceeded() + 1);
+                }
+                else if (error.getErrorCode() == ERROR_OUTSIDE_WINDOW) {
+                    result.setOutsideWindow(result.getOutsideWindow() + 1);
+                }
+                else {
+                    result.getFailures().add(new WxMpKefuBatchResult.Failure(submittedMessages.get(i), error));
+                }
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public boolean sendKfTypingState(String openid, String command) throws WxErrorException {
+        JsonObject json = new JsonObject();
+        json.addProperty("touser", openid);
+        json.addProperty("command", command);
+        this.post(CUSTOM_TYPING, json.toString());
+        return true;
+    }
+
+    @Override
+    public void markInteraction(String openid) {
+        this.markInteraction(openid, this.currentTimeMillis());
+    }
+
+    @Override
+    public void markInteraction(String openid, long timeMillis) {
+        this.interactions.asMap().merge(this.key(openid), timeMillis, Math::max);
+    }
+
+    @Override
+    public boolean isOutsideWindow(String openid) {
+        Long last = this.interactions.getIfPresent(this.key(openid));
+        return last != null && (last == CLOSED || this.currentTimeMillis() - last >= INTERACTION_WINDOW_MILLIS);
+    }
+
+    @Override
+    public WxMpKefuStats getStats() {
+        WxMpKefuStats stats = new WxMpKefuStats();
+        stats.setSubmitted(this.submitted.get());
+        stats.setSent(this.sent.get());
+        stats.setFailed(this.failed.get());
+        stats.setOutsideWindow(this.outsideWindow.get());
+        stats.setPending(this.pending.get());
+        stats.setSentLastMinute(this.sentPerSecond.sumLastMinute(this.currentTimeMillis()));
+        return stats;
+    }
+
+    private boolean send(WxMpKefuMessage message) throws WxErrorException {
+        if (this.isOutsideWindow(message.getToUser())) {
+            this.outsideWindow.incrementAndGet();
+            throw new WxErrorException(WxError.builder().errorCode(ERROR_OUTSIDE_WINDOW)
+                    .errorMsg("用户超过48小时未与公众号互动，未发送").build());
+        }
+        try {
+            this.post(MESSAGE_CUSTOM_SEND, message.toJson());
+        }
+        catch (WxErrorException e) {
+            if (e.getError().getErrorCode() == ERROR_OUTSIDE_WINDOW) {
+                this.outsideWindow.incrementAndGet();
+                // 期间用户又互动过时保留新的互动时间
+                this.interactions.asMap().merge(this.key(message.getToUser()), CLOSED,
+                        (last, closed) -> this.currentTimeMillis() - last < INTERACTION_WINDOW_MILLIS ? last : closed);
+            }
+            else {
+                this.failed.incrementAndGet();
+            }
+            throw e;
+        }
+        catch (RuntimeException e) {
+            this.failed.incrementAndGet();
+            throw e;
+        }
+        this.sent.incrementAndGet();
+        this.sentPerSecond.increment(this.currentTimeMillis());
+        return true;
+    }
+
+    private void post(WxMpApiUrl url, String json) throws WxErrorException {
+        String responseContent = this.wxMpService.post(url, json);
+        if (responseContent == null || responseContent.isEmpty()) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg("请求失败，无响应").build());
+        }
+        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
+        if (wxError.getErrorCode() != 0) {
+            throw new WxErrorException(wxError);
+        }
+    }
+
+    private static WxError errorOf(CompletableFuture<Boolean> future) {
+        try {
+            future.join();
+            return null;
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof WxErrorException) {
+                return ((WxErrorException) e.getCause()).getError();
+            }
+            return WxError.builder().errorCode(-1).errorMsg(String.valueOf(e.getCause())).build();
+        }
+    }
+
+    private long currentTimeMillis() {
+        return this.timeSource.currentTimeMillis();
+    }
+
+    private String key(String openid) {
+        return this.wxMpService.getWxMpConfigStorage().getAppId() + ':' + openid;
+    }
+
+    /**
+     * 按秒分桶的计数器，保留最近60秒，当前时间由调用方传入.
+     */
+    private static class SecondCounter {
+        private final long[] seconds = new long[60];
+        private final long[] counts = new long[60];
+
+        synchronized void increment(long nowMillis) {
+            long now = nowMillis / 1000;
+            int slot = (int) (now % 60);
+            if (this.seconds[slot] != now) {
+                this.seconds[slot] = now;
+                this.counts[slot] = 0;
+            }
+            this.counts[slot]++;
+        }
+
+        synchronized long sumLastMinute(long nowMillis) {
+            long now = nowMillis / 1000;
+            long sum = 0;
+            for (int i = 0; i < 60; i++) {
+                if (now - this.seconds[i] < 60) {
+                    sum += this.counts[i];
+                }
+            }
+            return sum;
+        }
+    }
+}
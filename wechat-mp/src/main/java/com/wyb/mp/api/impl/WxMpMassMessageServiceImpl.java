@@ -5,7 +5,6 @@ import java.io.File;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.wyb.common.exception.WxError;
 import com.wyb.common.exception.WxErrorException;
 import com.wyb.mp.api.WxMpMassMessageService;
 import com.wyb.mp.api.WxMpService;
@@ -16,6 +15,7 @@ import com.wyb.mp.bean.message.WxMpMassPreviewMessage;
 import com.wyb.mp.bean.message.WxMpMassTagMessage;
 import com.wyb.mp.bean.result.WxMpMassSendResult;
 import com.wyb.mp.bean.result.WxMpMassUploadResult;
+import com.wyb.mp.enums.WxMpApiUrl;
 
 /**
  * <pre>
@@ -34,17 +34,13 @@ public class WxMpMassMessageServiceImpl implements WxMpMassMessageService {
 
     @Override
     public WxMediaImgUploadResult mediaImgUpload(File file) throws WxErrorException {
-        String responseContent = wxMpService.postFile(IMG_UPLOAD_URL, file);
-        WxError error = WxError.fromJson(responseContent);
-        if (error.getErrorCode() != 0) {
-            throw new WxErrorException(error);
-        }
-        return WxMediaImgUploadResult.fromJson(responseContent);
+        // 与素材服务共用上传逻辑及素材缓存
+        return this.wxMpService.getMaterialService().mediaImgUpload(file);
     }
 
     @Override
     public WxMpMassUploadResult massNewsUpload(WxMpMassNews news) throws WxErrorException {
-        String responseContent = this.wxMpService.post(MEDIA_UPLOAD_NEWS_URL, news.toJson());
+        String responseContent = this.wxMpService.post(WxMpApiUrl.MassMessage.MEDIA_UPLOAD_NEWS_URL, news.toJson());
         return WxMpMassUploadResult.fromJson(responseContent);
     }
 
@@ -57,21 +53,22 @@ public class WxMpMassMessageServiceImpl implements WxMpMassMessageService {
 
     @Override
     public WxMpMassSendResult massGroupMessageSend(WxMpMassTagMessage message) throws WxErrorException {
-        String responseContent = this.wxMpService.post(WxMpMassMessageService.MESSAGE_MASS_SENDALL_URL,
+        String responseContent = this.wxMpService.post(WxMpApiUrl.MassMessage.MESSAGE_MASS_SENDALL_URL,
                 message.toJson());
         return WxMpMassSendResult.fromJson(responseContent);
     }
 
     @Override
     public WxMpMassSendResult massOpenIdsMessageSend(WxMpMassOpenIdsMessage message) throws WxErrorException {
-        String responseContent = this.wxMpService.post(MESSAGE_MASS_SEND_URL, message.toJson());
+        String responseContent = this.wxMpService.post(WxMpApiUrl.MassMessage.MESSAGE_MASS_SEND_URL, message.toJson());
         return WxMpMassSendResult.fromJson(responseContent);
     }
 
     @Override
     public WxMpMassSendResult massMessagePreview(WxMpMassPreviewMessage wxMpMassPreviewMessage)
             throws WxErrorException {
-        String responseContent = this.wxMpService.post(MESSAGE_MASS_PREVIEW_URL, wxMpMassPreviewMessage.toJson());
+        String responseContent = this.wxMpService.post(WxMpApiUrl.MassMessage.MESSAGE_MASS_PREVIEW_URL,
+                wxMpMassPreviewMessage.toJson());
         return WxMpMassSendResult.fromJson(responseContent);
     }
 
@@ -1,69 +1,263 @@
 package com.wyb.mp.api.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpStatus;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import com.wyb.common.api.WxConsts;
+import com.wyb.common.WxType;
+import com.wyb.common.exception.WxError;
 import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.http.DownloadResult;
+import com.wyb.common.util.http.HttpClientUtil;
+import com.wyb.common.util.http.StreamingMultipartEntity;
+import com.wyb.common.util.json.WxGsonBuilder;
+import com.wyb.common.util.page.WxPage;
+import com.wyb.common.util.page.WxPageIterator;
 import com.wyb.mp.api.WxMpMaterialService;
 import com.wyb.mp.api.WxMpService;
 import com.wyb.mp.bean.material.*;
+import com.wyb.mp.enums.WxMpApiUrl;
+import com.wyb.mp.util.json.WxMpGsonBuilder;
+import com.wyb.mp.util.media.WxMpMediaCache;
 
 public class WxMpMaterialServiceImpl implements WxMpMaterialService {
 
+    private static final JsonParser JSON_PARSER = new JsonParser();
+    /**
+     * 素材列表每页的最大数量.
+     */
+    private static final int BATCH_GET_PAGE_SIZE = 20;
+    /**
+     * 长度未知的上传在内存中缓冲的上限，覆盖图片、语音、缩略图的大小限制，超过时（视频）才写临时文件.
+     */
+    private static final int IN_MEMORY_UPLOAD_BYTES = 2 * 1024 * 1024;
+
     private WxMpService wxMpService;
 
+    /**
+     * 临时素材下载目录，为null时使用系统临时目录.
+     */
+    private File tmpDirFile;
+
     public WxMpMaterialServiceImpl(WxMpService wxMpService) {
         this.wxMpService = wxMpService;
     }
 
+    public void setTmpDirFile(File tmpDirFile) {
+        this.tmpDirFile = tmpDirFile;
+    }
+
     @Override
     public WxMediaUploadResult mediaUpload(String mediaType, String fileType, InputStream inputStream)
             throws WxErrorException {
-        return new WxMediaUploadResult();
-        // File tmpFile = null;
-        // try {
-        // tmpFile = FileUtils.createTmpFile(inputStream, UUID.randomUUID().toString(), fileType);
-        // return this.mediaUpload(mediaType, tmpFile);
-        // }
-        // catch (IOException e) {
-        // throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
-        // }
-        // finally {
-        // if (tmpFile != null) {
-        // tmpFile.delete();
-        // }
-        // }
+        return this.mediaUpload(mediaType, fileType, inputStream, -1);
+    }
+
+    /**
+     * 上传接口要求请求带Content-Length；长度未知时先读入内存，超过IN_MEMORY_UPLOAD_BYTES时才写入临时文件.
+     */
+    @Override
+    public WxMediaUploadResult mediaUpload(String mediaType, String fileType, InputStream inputStream, long length)
+            throws WxErrorException {
+        if (length >= 0) {
+            StreamingMultipartEntity entity = new StreamingMultipartEntity().addStream("media", "media." + fileType,
+                    inputStream, length);
+            return WxMediaUploadResult.fromJson(this.upload(WxMpApiUrl.Material.MEDIA_UPLOAD_URL, entity, mediaType));
+        }
+
+        byte[] head = new byte[IN_MEMORY_UPLOAD_BYTES + 1];
+        int read;
+        try {
+            read = ByteStreams.read(inputStream, head, 0, head.length);
+        }
+        catch (IOException e) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+        }
+        if (read <= IN_MEMORY_UPLOAD_BYTES) {
+            return this.mediaUpload(mediaType, fileType, new ByteArrayInputStream(head, 0, read), read);
+        }
+
+        File file = null;
+        try {
+            file = File.createTempFile("wx-media-", "." + fileType, this.tmpDirFile);
+            java.nio.file.Files.copy(new SequenceInputStream(new ByteArrayInputStream(head), inputStream),
+                    file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            StreamingMultipartEntity entity = new StreamingMultipartEntity().addFile("media", "media." + fileType,
+                    file);
+            return WxMediaUploadResult.fromJson(this.upload(WxMpApiUrl.Material.MEDIA_UPLOAD_URL, entity, mediaType));
+        }
+        catch (IOException e) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+        }
+        finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
     }
 
     @Override
     public WxMediaUploadResult mediaUpload(String mediaType, File file) throws WxErrorException {
-        return new WxMediaUploadResult();
-        // String url = String.format(MEDIA_UPLOAD_URL, mediaType);
-        // return this.wxMpService.execute(MediaUploadRequestExecutor.create(this.wxMpService.getRequestHttp()), url,
-        // file);
+        WxMpMediaCache cache = this.wxMpService.getMediaCache();
+        String kind = "media:" + mediaType;
+        String digest = cache == null ? null : digestOf(file, null);
+        boolean thumb = WxConsts.MediaFileType.THUMB.equals(mediaType);
+        if (digest != null) {
+            WxMpMediaCache.Entry entry = cache.get(appId(), kind, digest);
+            if (entry != null) {
+                WxMediaUploadResult result = new WxMediaUploadResult();
+                result.setType(mediaType);
+                if (thumb) {
+                    result.setThumbMediaId(entry.getValue());
+                }
+                else {
+                    result.setMediaId(entry.getValue());
+                }
+                result.setCreatedAt((entry.getExpiresAt() - WxMpMediaCache.TEMP_MEDIA_TTL_MILLIS) / 1000);
+                return result;
+            }
+        }
+
+        StreamingMultipartEntity entity = new StreamingMultipartEntity().addFile("media", file);
+        WxMediaUploadResult result = WxMediaUploadResult
+                .fromJson(this.upload(WxMpApiUrl.Material.MEDIA_UPLOAD_URL, entity, mediaType));
+        String mediaId = thumb ? result.getThumbMediaId() : result.getMediaId();
+        if (digest != null && mediaId != null) {
+            long createdAt = result.getCreatedAt() > 0 ? result.getCreatedAt() * 1000 : System.currentTimeMillis();
+            cache.put(appId(), kind, digest, mediaId, null, createdAt + WxMpMediaCache.TEMP_MEDIA_TTL_MILLIS);
+        }
+        return result;
     }
 
     @Override
     public File mediaDownload(String mediaId) throws WxErrorException {
-        return new File("");
-        // return this.wxMpService.execute(BaseMediaDownloadRequestExecutor.create(this.wxMpService.getRequestHttp(),
-        // this.wxMpService.getWxMpConfigStorage().getTmpDirFile()), MEDIA_GET_URL, "media_id=" + mediaId);
+        File file = null;
+        boolean success = false;
+        try {
+            file = File.createTempFile("wx-media-", ".tmp", this.tmpDirFile);
+            DownloadResult result;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                result = this.mediaDownloadTo(mediaId, channel);
+            }
+            success = true;
+            String extension = result.getFileName() == null ? "" : Files.getFileExtension(result.getFileName());
+            if (!extension.isEmpty()) {
+                String name = file.getName();
+                File named = new File(file.getParentFile(), name.substring(0, name.length() - 4) + "." + extension);
+                if (file.renameTo(named)) {
+                    return named;
+                }
+            }
+            return file;
+        }
+        catch (IOException e) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+        }
+        finally {
+            if (!success && file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    public long mediaDownload(String mediaId, WritableByteChannel target) throws WxErrorException {
+        return this.mediaDownloadTo(mediaId, target).getBytesWritten();
+    }
+
+    private DownloadResult mediaDownloadTo(String mediaId, WritableByteChannel target) throws WxErrorException {
+        Map<String, String> params = new HashMap<>();
+        params.put("media_id", mediaId);
+        DownloadResult result = this.wxMpService.download(WxMpApiUrl.Material.MEDIA_GET_URL, params, target);
+        if (result.isJson()) {
+            JsonObject jsonObject = JSON_PARSER.parse(result.getJsonBody()).getAsJsonObject();
+            if (jsonObject.has("video_url")) {
+                // 视频临时素材返回的是下载地址
+                try {
+                    result = HttpClientUtil.doGetDownload(jsonObject.get("video_url").getAsString(), null, target);
+                }
+                catch (IOException e) {
+                    throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+                }
+            }
+        }
+        return checkDownload(result);
     }
 
     @Override
     public WxMediaImgUploadResult mediaImgUpload(File file) throws WxErrorException {
-        return new WxMediaImgUploadResult();
-        // return this.wxMpService.execute(MediaImgUploadRequestExecutor.create(this.wxMpService.getRequestHttp()),
-        // IMG_UPLOAD_URL, file);
+        WxMpMediaCache cache = this.wxMpService.getMediaCache();
+        String digest = cache == null ? null : digestOf(file, null);
+        if (digest != null) {
+            WxMpMediaCache.Entry entry = cache.get(appId(), "uploadimg", digest);
+            if (entry != null) {
+                WxMediaImgUploadResult result = new WxMediaImgUploadResult();
+                result.setUrl(entry.getValue());
+                return result;
+            }
+        }
+
+        StreamingMultipartEntity entity = new StreamingMultipartEntity().addFile("media", file);
+        WxMediaImgUploadResult result = WxMediaImgUploadResult
+                .fromJson(this.upload(WxMpApiUrl.Material.IMG_UPLOAD_URL, entity));
+        if (digest != null && result.getUrl() != null) {
+            // 图文消息内的图片url长期有效
+            cache.put(appId(), "uploadimg", digest, result.getUrl(), null, 0);
+        }
+        return result;
     }
 
     @Override
     public WxMpMaterialUploadResult materialFileUpload(String mediaType, WxMpMaterial material)
             throws WxErrorException {
-        return new WxMpMaterialUploadResult();
-        // String url = String.format(MATERIAL_ADD_URL, mediaType);
-        // return this.wxMpService.execute(MaterialUploadRequestExecutor.create(this.wxMpService.getRequestHttp()), url,
-        // material);
+        File file = material.getFile();
+        if (file == null) {
+            throw new IllegalArgumentException("material file is empty!");
+        }
+        String description = WxConsts.MaterialType.VIDEO.equals(mediaType)
+                ? WxMpGsonBuilder.create().toJson(material.getForm()) : null;
+        WxMpMediaCache cache = this.wxMpService.getMediaCache();
+        String kind = "material:" + mediaType;
+        // 视频素材的描述不同视为不同素材
+        String digest = cache == null ? null : digestOf(file, description);
+        if (digest != null) {
+            WxMpMediaCache.Entry entry = cache.get(appId(), kind, digest);
+            if (entry != null) {
+                WxMpMaterialUploadResult result = new WxMpMaterialUploadResult();
+                result.setMediaId(entry.getValue());
+                result.setUrl(entry.getExtra());
+                return result;
+            }
+        }
+
+        StreamingMultipartEntity entity = new StreamingMultipartEntity().addFile("media", file);
+        if (description != null) {
+            entity.addText("description", description);
+        }
+        WxMpMaterialUploadResult result = WxMpMaterialUploadResult
+                .fromJson(this.upload(WxMpApiUrl.Material.MATERIAL_ADD_URL, entity, mediaType));
+        if (digest != null && result.getMediaId() != null) {
+            cache.put(appId(), kind, digest, result.getMediaId(), result.getUrl(), 0);
+        }
+        return result;
     }
 
     @Override
@@ -75,18 +269,89 @@ public class WxMpMaterialServiceImpl implements WxMpMaterialService {
         return WxMpMaterialUploadResult.fromJson(responseContent);
     }
 
-    // @Override
-    // public InputStream materialImageOrVoiceDownload(String mediaId) throws WxErrorException {
-    // return this.wxMpService.execute(MaterialVoiceAndImageDownloadRequestExecutor
-    // .create(this.wxMpService.getRequestHttp(), this.wxMpService.getWxMpConfigStorage().getTmpDirFile()),
-    // MATERIAL_GET_URL, mediaId);
-    // }
+    /**
+     * 流式上传并校验返回的errcode.
+     */
+    private String upload(WxMpApiUrl url, StreamingMultipartEntity entity, Object... urlArgs)
+            throws WxErrorException {
+        String responseContent = this.wxMpService.upload(url, entity, urlArgs);
+        if (StringUtils.isEmpty(responseContent)) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg("上传素材失败，未获取到响应").build());
+        }
+        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
+        if (wxError.getErrorCode() != 0) {
+            throw new WxErrorException(wxError);
+        }
+        return responseContent;
+    }
 
-    // @Override
-    // public WxMpMaterialVideoInfoResult materialVideoInfo(String mediaId) throws WxErrorException {
-    // return this.wxMpService.execute(MaterialVideoInfoRequestExecutor.create(this.wxMpService.getRequestHttp()),
-    // MATERIAL_GET_URL, mediaId);
-    // }
+    @Override
+    public long materialImageOrVoiceDownload(String mediaId, WritableByteChannel target) throws WxErrorException {
+        DownloadResult result = this.wxMpService.download(WxMpApiUrl.Material.MATERIAL_GET_URL,
+                mediaIdJson(mediaId), target);
+        return checkDownload(result).getBytesWritten();
+    }
+
+    @Override
+    public WxMpMaterialVideoInfoResult materialVideoInfo(String mediaId) throws WxErrorException {
+        String responseContent = this.wxMpService.post(WxMpApiUrl.Material.MATERIAL_GET_URL, mediaIdJson(mediaId));
+        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
+        if (wxError.getErrorCode() != 0) {
+            throw new WxErrorException(wxError);
+        }
+        return WxMpMaterialVideoInfoResult.fromJson(responseContent);
+    }
+
+    @Override
+    public File materialVideoDownload(String mediaId, File file) throws WxErrorException {
+        return this.materialVideoDownload(mediaId, file, false);
+    }
+
+    @Override
+    public File materialVideoDownload(String mediaId, File file, boolean resume) throws WxErrorException {
+        WxMpMaterialVideoInfoResult videoInfo = this.materialVideoInfo(mediaId);
+        try {
+            checkDownload(HttpClientUtil.doDownloadToFile(videoInfo.getDownUrl(), file, resume));
+        }
+        catch (IOException e) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+        }
+        return file;
+    }
+
+    private String appId() {
+        return this.wxMpService.getWxMpConfigStorage().getAppId();
+    }
+
+    private static String digestOf(File file, String extra) throws WxErrorException {
+        try {
+            return WxMpMediaCache.digest(file, extra);
+        }
+        catch (IOException e) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+        }
+    }
+
+    private static String mediaIdJson(String mediaId) {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("media_id", mediaId);
+        return jsonObject.toString();
+    }
+
+    /**
+     * 下载返回json或非2xx状态时抛出异常；续传时的416表示文件已完整.
+     */
+    private static DownloadResult checkDownload(DownloadResult result) throws WxErrorException {
+        if (result.isJson()) {
+            throw new WxErrorException(WxError.fromJson(result.getJsonBody(), WxType.MP));
+        }
+        int status = result.getStatusCode();
+        if (status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT
+                && status != HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg("下载失败，http状态" + status).build());
+        }
+        return result;
+    }
 
     @Override
     public WxMpMaterialNews materialNewsInfo(String mediaId) throws WxErrorException {
@@ -109,9 +374,16 @@ public class WxMpMaterialServiceImpl implements WxMpMaterialService {
 
     @Override
     public boolean materialDelete(String mediaId) throws WxErrorException {
-        // return this.wxMpService.execute(MaterialDeleteRequestExecutor.create(this.wxMpService.getRequestHttp()),
-        // MATERIAL_DEL_URL, mediaId);
-        return false;
+        String responseContent = this.wxMpService.post(WxMpApiUrl.Material.MATERIAL_DEL_URL, mediaIdJson(mediaId));
+        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
+        if (wxError.getErrorCode() != 0) {
+            throw new WxErrorException(wxError);
+        }
+        WxMpMediaCache cache = this.wxMpService.getMediaCache();
+        if (cache != null) {
+            cache.removeByValue(appId(), mediaId);
+        }
+        return true;
     }
     //
     // @Override
@@ -126,37 +398,59 @@ public class WxMpMaterialServiceImpl implements WxMpMaterialService {
     // }
     // }
     //
-    // @Override
-    // public WxMpMaterialNewsBatchGetResult materialNewsBatchGet(int offset, int count) throws WxErrorException {
-    // Map<String, Object> params = new HashMap<>();
-    // params.put("type", WxConsts.MaterialType.NEWS);
-    // params.put("offset", offset);
-    // params.put("count", count);
-    // String responseText = this.wxMpService.post(MATERIAL_BATCHGET_URL, WxGsonBuilder.create().toJson(params));
-    // WxError wxError = WxError.fromJson(responseText, WxType.MP);
-    // if (wxError.getErrorCode() == 0) {
-    // return WxMpGsonBuilder.create().fromJson(responseText, WxMpMaterialNewsBatchGetResult.class);
-    // }
-    // else {
-    // throw new WxErrorException(wxError);
-    // }
-    // }
-    //
-    // @Override
-    // public WxMpMaterialFileBatchGetResult materialFileBatchGet(String type, int offset, int count)
-    // throws WxErrorException {
-    // Map<String, Object> params = new HashMap<>();
-    // params.put("type", type);
-    // params.put("offset", offset);
-    // params.put("count", count);
-    // String responseText = this.wxMpService.post(MATERIAL_BATCHGET_URL, WxGsonBuilder.create().toJson(params));
-    // WxError wxError = WxError.fromJson(responseText, WxType.MP);
-    // if (wxError.getErrorCode() == 0) {
-    // return WxMpGsonBuilder.create().fromJson(responseText, WxMpMaterialFileBatchGetResult.class);
-    // }
-    // else {
-    // throw new WxErrorException(wxError);
-    // }
-    // }
+    @Override
+    public WxMpMaterialNewsBatchGetResult materialNewsBatchGet(int offset, int count) throws WxErrorException {
+        Map<String, Object> params = new HashMap<>();
+        params.put("type", WxConsts.MaterialType.NEWS);
+        params.put("offset", offset);
+        params.put("count", count);
+        String responseText = this.wxMpService.post(WxMpApiUrl.Material.MATERIAL_BATCHGET_URL,
+                WxGsonBuilder.create().toJson(params));
+        WxError wxError = WxError.fromJson(responseText, WxType.MP);
+        if (wxError.getErrorCode() == 0) {
+            return WxMpGsonBuilder.create().fromJson(responseText, WxMpMaterialNewsBatchGetResult.class);
+        }
+        else {
+            throw new WxErrorException(wxError);
+        }
+    }
+
+    @Override
+    public WxPageIterator<Integer, WxMpMaterialNewsBatchGetResult.WxMaterialNewsBatchGetNewsItem> materialNewsIterator(
+            Executor prefetchExecutor) {
+        return new WxPageIterator<>(offset -> {
+            WxMpMaterialNewsBatchGetResult result = this.materialNewsBatchGet(offset, BATCH_GET_PAGE_SIZE);
+            int next = offset + result.getItemCount();
+            return new WxPage<>(result.getItems(), next, result.getItemCount() > 0 && next < result.getTotalCount());
+        }, 0, prefetchExecutor);
+    }
+
+    @Override
+    public WxMpMaterialFileBatchGetResult materialFileBatchGet(String type, int offset, int count)
+            throws WxErrorException {
+        Map<String, Object> params = new HashMap<>();
+        params.put("type", type);
+        params.put("offset", offset);
+        params.put("count", count);
+        String responseText = this.wxMpService.post(WxMpApiUrl.Material.MATERIAL_BATCHGET_URL,
+                WxGsonBuilder.create().toJson(params));
+        WxError wxError = WxError.fromJson(responseText, WxType.MP);
+        if (wxError.getErrorCode() == 0) {
+            return WxMpGsonBuilder.create().fromJson(responseText, WxMpMaterialFileBatchGetResult.class);
+        }
+        else {
+            throw new WxErrorException(wxError);
+        }
+    }
+
+    @Override
+    public WxPageIterator<Integer, WxMpMaterialFileBatchGetResult.WxMaterialFileBatchGetNewsItem> materialFileIterator(
+            String type, Executor prefetchExecutor) {
+        return new WxPageIterator<>(offset -> {
+            WxMpMaterialFileBatchGetResult result = this.materialFileBatchGet(type, offset, BATCH_GET_PAGE_SIZE);
+            int next = offset + result.getItemCount();
+            return new WxPage<>(result.getItems(), next, result.getItemCount() > 0 && next < result.getTotalCount());
+        }, 0, prefetchExecutor);
+    }
 
 }
@@ -1,22 +1,36 @@
 package com.wyb.mp.api.impl;
 
 import com.wyb.common.bean.menu.WxMenu;
+import com.wyb.common.bean.menu.WxMenuButton;
+import com.wyb.common.WxType;
+import com.wyb.common.bean.menu.WxMenuRule;
+import com.wyb.common.exception.WxError;
 import com.wyb.common.exception.WxErrorException;
 import com.wyb.mp.api.WxMpMenuService;
 import com.wyb.mp.api.WxMpService;
 import com.wyb.mp.bean.menu.WxMpGetSelfMenuInfoResult;
 import com.wyb.mp.bean.menu.WxMpMenu;
+import com.wyb.mp.bean.menu.WxMpMenuDeployResult;
+import com.wyb.mp.enums.WxMpApiUrl;
+import com.wyb.mp.util.menu.WxMpMenuCanonicalizer;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.wyb.mp.enums.WxMpApiUrl.Menu.*;
+
 /**
  * Created by Binary Wang on 2016/7/21.
  */
 public class WxMpMenuServiceImpl implements WxMpMenuService {
-  private static final String API_URL_PREFIX = "https://api.weixin.qq.com/cgi-bin/menu";
   private static Logger log = LoggerFactory.getLogger(WxMpMenuServiceImpl.class);
 
   private WxMpService wxMpService;
@@ -28,18 +42,19 @@ public class WxMpMenuServiceImpl implements WxMpMenuService {
   @Override
   public String menuCreate(WxMenu menu) throws WxErrorException {
     String menuJson = menu.toJson();
-    String url = API_URL_PREFIX + "/create";
+    WxMpApiUrl url = MENU_CREATE;
     if (menu.getMatchRule() != null) {
-      url = API_URL_PREFIX + "/addconditional";
+      url = MENU_ADDCONDITIONAL;
     }
 
     log.debug("开始创建菜单：{}", menuJson);
 
     String result = this.wxMpService.post(url, menuJson);
     log.debug("创建菜单：{},结果：{}", menuJson, result);
+    checkResult(result);
 
     if (menu.getMatchRule() != null) {
-      return new JsonParser().parse(result).getAsJsonObject().get("menuid").getAsString();
+      return menuIdOf(result);
     }
 
     return null;
@@ -49,14 +64,15 @@ public class WxMpMenuServiceImpl implements WxMpMenuService {
   public String menuCreate(String json) throws WxErrorException {
     JsonParser jsonParser = new JsonParser();
     JsonObject jsonObject = jsonParser.parse(json).getAsJsonObject();
-    String url = API_URL_PREFIX + "/create";
+    WxMpApiUrl url = MENU_CREATE;
     if (jsonObject.get("matchrule") != null) {
-      url = API_URL_PREFIX + "/addconditional";
+      url = MENU_ADDCONDITIONAL;
     }
 
     String result = this.wxMpService.post(url, json);
+    checkResult(result);
     if (jsonObject.get("matchrule") != null) {
-      return jsonParser.parse(result).getAsJsonObject().get("menuid").getAsString();
+      return menuIdOf(result);
     }
 
     return null;
@@ -64,25 +80,133 @@ public class WxMpMenuServiceImpl implements WxMpMenuService {
 
   @Override
   public void menuDelete() throws WxErrorException {
-    String url = API_URL_PREFIX + "/delete";
-    String result = this.wxMpService.get(url, null);
+    String result = this.wxMpService.get(MENU_DELETE, null);
     log.debug("删除菜单结果：{}", result);
+    checkResult(result);
   }
 
   @Override
   public void menuDelete(String menuId) throws WxErrorException {
-    String url = API_URL_PREFIX + "/delconditional";
     JsonObject jsonObject = new JsonObject();
     jsonObject.addProperty("menuid", menuId);
-    String result = this.wxMpService.post(url, jsonObject.toString());
+    String result = this.wxMpService.post(MENU_DELCONDITIONAL, jsonObject.toString());
     log.debug("根据MeunId({})删除个性化菜单结果：{}", menuId, result);
+    checkResult(result);
+  }
+
+  /**
+   * 创建、删除接口出错时也返回errcode，需要自行检查；网络异常时返回空串.
+   */
+  private static void checkResult(String result) throws WxErrorException {
+    if (StringUtils.isEmpty(result)) {
+      throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg("菜单接口调用失败，未获取到响应").build());
+    }
+    WxError error = WxError.fromJson(result, WxType.MP);
+    if (error.getErrorCode() != 0) {
+      throw new WxErrorException(error);
+    }
+  }
+
+  private static String menuIdOf(String result) throws WxErrorException {
+    JsonElement menuId = new JsonParser().parse(result).getAsJsonObject().get("menuid");
+    if (menuId == null || menuId.isJsonNull()) {
+      throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg("创建个性化菜单未返回menuid")
+        .json(result).build());
+    }
+    return menuId.getAsString();
+  }
+
+  @Override
+  public WxMpMenuDeployResult menuDeploy(WxMpMenu target) throws WxErrorException {
+    List<WxMpMenu.WxMpConditionalMenu> targets = target.getConditionalMenu() == null
+      ? Collections.emptyList() : target.getConditionalMenu();
+    if (target.getMenu() == null && !targets.isEmpty()) {
+      // 没有默认菜单时微信拒绝创建个性化菜单，先删除现有菜单会让公众号没有任何菜单
+      throw new IllegalArgumentException("有个性化菜单时必须有默认菜单");
+    }
+    for (WxMpMenu.WxMpConditionalMenu menu : targets) {
+      if (WxMpMenuCanonicalizer.isEmpty(menu.getRule())) {
+        throw new IllegalArgumentException("个性化菜单缺少matchrule");
+      }
+    }
+
+    WxMpMenuDeployResult result = new WxMpMenuDeployResult();
+    WxMpMenu current = this.menuGet();
+    List<WxMpMenu.WxMpConditionalMenu> currents = conditionalMenusByCreation(current);
+    String currentHash = current == null || current.getMenu() == null
+      ? null : WxMpMenuCanonicalizer.hash(current.getMenu().getButtons(), null);
+
+    if (target.getMenu() == null) {
+      if (currentHash != null || !currents.isEmpty()) {
+        // 删除默认菜单会同时删除全部个性化菜单
+        this.menuDelete();
+        result.setMenuDeleted(true);
+        for (WxMpMenu.WxMpConditionalMenu menu : currents) {
+          result.getDeletedMenuIds().add(menu.getMenuId());
+        }
+        currents = Collections.emptyList();
+      }
+    } else if (!WxMpMenuCanonicalizer.hash(target.getMenu().getButtons(), null).equals(currentHash)) {
+      this.menuCreate(toWxMenu(target.getMenu().getButtons(), null));
+      result.setDefaultMenuChanged(true);
+    }
+
+    int keep = 0;
+    while (keep < currents.size() && keep < targets.size()
+      && hashOf(currents.get(keep)).equals(hashOf(targets.get(keep)))) {
+      result.getUnchangedMenuIds().add(currents.get(keep).getMenuId());
+      keep++;
+    }
+    for (int i = currents.size() - 1; i >= keep; i--) {
+      String menuId = currents.get(i).getMenuId();
+      this.menuDelete(menuId);
+      result.getDeletedMenuIds().add(menuId);
+    }
+    for (int i = keep; i < targets.size(); i++) {
+      WxMpMenu.WxMpConditionalMenu menu = targets.get(i);
+      result.getCreatedMenuIds().add(this.menuCreate(toWxMenu(menu.getButtons(), menu.getRule())));
+    }
+    log.info("发布菜单：默认菜单{}，个性化菜单保留{}个，删除{}个，新建{}个",
+      result.isMenuDeleted() ? "已删除" : result.isDefaultMenuChanged() ? "已更新" : "未变化",
+      keep, result.getDeletedMenuIds().size(), result.getCreatedMenuIds().size());
+    return result;
+  }
+
+  /**
+   * 当前的个性化菜单按创建先后排列，menuid都是数字时按menuid排序.
+   */
+  private static List<WxMpMenu.WxMpConditionalMenu> conditionalMenusByCreation(WxMpMenu menu) {
+    if (menu == null || menu.getConditionalMenu() == null) {
+      return Collections.emptyList();
+    }
+    List<WxMpMenu.WxMpConditionalMenu> menus = new ArrayList<>(menu.getConditionalMenu());
+    boolean numeric = true;
+    for (WxMpMenu.WxMpConditionalMenu conditionalMenu : menus) {
+      numeric &= StringUtils.isNumeric(conditionalMenu.getMenuId());
+    }
+    if (numeric) {
+      menus.sort((a, b) -> Long.compare(Long.parseLong(a.getMenuId()), Long.parseLong(b.getMenuId())));
+    }
+    return menus;
+  }
+
+  private static String hashOf(WxMpMenu.WxMpConditionalMenu menu) {
+    return WxMpMenuCanonicalizer.hash(menu.getButtons(), menu.getRule());
+  }
+
+  private static WxMenu toWxMenu(List<WxMenuButton> buttons, WxMenuRule rule) {
+    WxMenu menu = new WxMenu();
+    if (buttons != null) {
+      menu.setButtons(buttons);
+    }
+    menu.setMatchRule(rule);
+    return menu;
   }
 
   @Override
   public WxMpMenu menuGet() throws WxErrorException {
-    String url = API_URL_PREFIX + "/get";
     try {
-      String resultContent = this.wxMpService.get(url, null);
+      String resultContent = this.wxMpService.get(MENU_GET, null);
       return WxMpMenu.fromJson(resultContent);
     } catch (WxErrorException e) {
       // 46003 不存在的菜单数据
@@ -95,11 +219,10 @@ public class WxMpMenuServiceImpl implements WxMpMenuService {
 
   @Override
   public WxMenu menuTryMatch(String userid) throws WxErrorException {
-    String url = API_URL_PREFIX + "/trymatch";
     JsonObject jsonObject = new JsonObject();
     jsonObject.addProperty("user_id", userid);
     try {
-      String resultContent = this.wxMpService.post(url, jsonObject.toString());
+      String resultContent = this.wxMpService.post(MENU_TRYMATCH, jsonObject.toString());
       return WxMenu.fromJson(resultContent);
     } catch (WxErrorException e) {
       // 46003 不存在的菜单数据；46002 不存在的菜单版本
@@ -113,8 +236,7 @@ public class WxMpMenuServiceImpl implements WxMpMenuService {
 
   @Override
   public WxMpGetSelfMenuInfoResult getSelfMenuInfo() throws WxErrorException {
-    String url = "https://api.weixin.qq.com/cgi-bin/get_current_selfmenu_info";
-    String resultContent = this.wxMpService.get(url, null);
+    String resultContent = this.wxMpService.get(GET_CURRENT_SELFMENU_INFO, null);
     return WxMpGetSelfMenuInfoResult.fromJson(resultContent);
   }
 }
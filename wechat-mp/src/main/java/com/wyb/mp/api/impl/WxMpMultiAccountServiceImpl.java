@@ -0,0 +1,361 @@
+package com.wyb.mp.api.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.http.HttpClientUtil;
+import com.wyb.mp.api.WxMpConfigStorage;
+import com.wyb.mp.api.WxMpService;
+
+/**
+ * <pre>
+ * 多公众号的WxMpService，公众号配置按appId注册.
+ * 注册时可以只给出配置的工厂，第一次用到该公众号时才创建配置和http连接池，不常用的公众号不占资源。
+ *
+ * 两种使用方式：
+ * 1. 线程内切换：switchover(appId)之后，当前线程经本对象调用的接口都使用该公众号，用完调用clearSwitchover()；
+ *    或者用withAccount(appId, call)，调用结束后自动恢复。
+ *    批量打标签、客服消息异步发送、卡券异步核销、批量生成二维码、数据统计分段查询等在线程池上执行的接口，
+ *    在调用时记下当前线程切换到的公众号，线程池中的任务以该公众号执行；
+ *    自己提交到线程池的任务可以用{@link #bindCurrentAccount(Executor)}包装线程池。
+ * 2. 显式传递：getService(appId)返回绑定到该公众号的WxMpService，可以保存或传给其他线程。
+ *
+ * 没有切换时使用setWxMpConfigStorage设置的默认配置。
+ * access_token和ticket在各公众号自己的配置对象上加锁刷新，互不阻塞；每个公众号使用各自的http连接池，
+ * 两种方式下同一公众号共用同一个配置对象和连接池。
+ * 移除或替换公众号时，连接池在其上进行中的请求全部结束后才关闭，之后以该公众号发起的请求每次新建连接。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Slf4j
+public class WxMpMultiAccountServiceImpl extends WxMpServiceImpl {
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 50;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    private final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<>();
+    private final ThreadLocal<Account> current = new ThreadLocal<>();
+
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+
+    public WxMpMultiAccountServiceImpl() {
+        this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    /**
+     * @param maxConnections         每个公众号连接池的最大连接数
+     * @param maxConnectionsPerRoute 每个公众号连接池对同一域名的最大连接数
+     */
+    public WxMpMultiAccountServiceImpl(int maxConnections, int maxConnectionsPerRoute) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public void addConfigStorage(String appId, WxMpConfigStorage configStorage) {
+        this.addConfigStorage(appId, () -> configStorage);
+    }
+
+    /**
+     * 注册公众号，配置在第一次使用时由factory创建；appId已存在时替换，原有的连接池会被关闭.
+     */
+    public void addConfigStorage(String appId, Supplier<? extends WxMpConfigStorage> factory) {
+        Account previous = this.accounts.put(appId, new Account(appId, factory));
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    public void removeConfigStorage(String appId) {
+        Account account = this.accounts.remove(appId);
+        if (account != null) {
+            account.close();
+        }
+    }
+
+    public Set<String> getAppIds() {
+        return Collections.unmodifiableSet(this.accounts.keySet());
+    }
+
+    /**
+     * 当前线程切换到某个公众号.
+     *
+     * @return appId未注册时返回false，当前线程的切换不变
+     */
+    public boolean switchover(String appId) {
+        Account account = this.accounts.get(appId);
+        if (account == null) {
+            return false;
+        }
+        this.current.set(account);
+        return true;
+    }
+
+    /**
+     * 当前线程恢复使用默认配置，线程池中的线程用完后必须调用.
+     */
+    public void clearSwitchover() {
+        this.current.remove();
+    }
+
+    /**
+     * 在当前线程上以某个公众号的身份执行call，结束后恢复原来的切换.
+     *
+     * @throws IllegalArgumentException appId未注册
+     */
+    public <T> T withAccount(String appId, AccountCall<T> call) throws WxErrorException {
+        Account account = this.requireAccount(appId);
+        Account previous = this.current.get();
+        this.current.set(account);
+        try {
+            return call.call(this);
+        }
+        finally {
+            if (previous == null) {
+                this.current.remove();
+            }
+            else {
+                this.current.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 绑定到某个公众号的WxMpService，第一次调用时创建，之后返回同一个对象.
+     * 它的各个子接口是独立的实例，不包含本对象上设置的缓存装饰器。
+     *
+     * @throws IllegalArgumentException appId未注册
+     */
+    public WxMpService getService(String appId) {
+        return this.requireAccount(appId).service();
+    }
+
+    /**
+     * 当前线程切换到的公众号，没有切换时返回null.
+     */
+    public String getCurrentAppId() {
+        Account account = this.current.get();
+        return account == null ? null : account.appId;
+    }
+
+    /**
+     * 包装线程池：记下调用本方法时当前线程切换到的公众号，之后提交的任务在执行期间都切换到该公众号.
+     * 没有切换时原样返回executor。
+     */
+    public Executor bindCurrentAccount(Executor executor) {
+        Account account = this.current.get();
+        if (account == null) {
+            return executor;
+        }
+        return task -> executor.execute(() -> this.runAs(account, task));
+    }
+
+    @Override
+    public WxMpConfigStorage getWxMpConfigStorage() {
+        Account account = this.current.get();
+        return account == null ? super.getWxMpConfigStorage() : account.configStorage();
+    }
+
+    @Override
+    protected CloseableHttpClient getHttpClient() {
+        Account account = this.current.get();
+        return account == null ? super.getHttpClient() : account.acquireHttpClient();
+    }
+
+    @Override
+    protected void releaseHttpClient(CloseableHttpClient httpClient) {
+        Account account = this.current.get();
+        if (account == null) {
+            super.releaseHttpClient(httpClient);
+        }
+        else {
+            account.releaseHttpClient();
+        }
+    }
+
+    /**
+     * 关闭全部公众号的连接池.
+     */
+    public void close() {
+        for (Account account : this.accounts.values()) {
+            account.close();
+        }
+    }
+
+    private void runAs(Account account, Runnable task) {
+        Account previous = this.current.get();
+        this.current.set(account);
+        try {
+            task.run();
+        }
+        finally {
+            if (previous == null) {
+                this.current.remove();
+            }
+            else {
+                this.current.set(previous);
+            }
+        }
+    }
+
+    private Account requireAccount(String appId) {
+        Account account = this.accounts.get(appId);
+        if (account == null) {
+            throw new IllegalArgumentException("未注册的公众号: " + appId);
+        }
+        return account;
+    }
+
+    /**
+     * 以某个公众号身份执行的调用.
+     */
+    @FunctionalInterface
+    public interface AccountCall<T> {
+        T call(WxMpService wxMpService) throws WxErrorException;
+    }
+
+    /**
+     * 一个公众号的配置、连接池和绑定的WxMpService，都在第一次使用时创建.
+     * inFlight记录正在使用连接池的请求数，关闭时不为0则由最后一个结束的请求关闭连接池。
+     */
+    private class Account {
+        private final String appId;
+        private final Supplier<? extends WxMpConfigStorage> factory;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile WxMpConfigStorage configStorage;
+        private volatile CloseableHttpClient httpClient;
+        private volatile WxMpService service;
+        private volatile boolean closed;
+
+        Account(String appId, Supplier<? extends WxMpConfigStorage> factory) {
+            this.appId = appId;
+            this.factory = factory;
+        }
+
+        WxMpConfigStorage configStorage() {
+            WxMpConfigStorage storage = this.configStorage;
+            if (storage == null) {
+                synchronized (this) {
+                    storage = this.configStorage;
+                    if (storage == null) {
+                        storage = this.factory.get();
+                        this.configStorage = storage;
+                    }
+                }
+            }
+            return storage;
+        }
+
+        /**
+         * 取得连接池并计入进行中的请求，必须与{@link #releaseHttpClient()}成对调用.
+         *
+         * @return 已关闭时返回null，请求退回到每次新建连接
+         */
+        CloseableHttpClient acquireHttpClient() {
+            this.inFlight.incrementAndGet();
+            if (this.closed) {
+                return null;
+            }
+            return this.httpClient();
+        }
+
+        void releaseHttpClient() {
+            if (this.inFlight.decrementAndGet() == 0 && this.closed) {
+                this.closeHttpClient();
+            }
+        }
+
+        private CloseableHttpClient httpClient() {
+            CloseableHttpClient client = this.httpClient;
+            if (client == null) {
+                synchronized (this) {
+                    client = this.httpClient;
+                    if (client == null) {
+                        if (this.closed) {
+                            // 已被移除，仍在使用的调用退回到每次新建连接
+                            return null;
+                        }
+                        client = HttpClientUtil.createPooledClient(WxMpMultiAccountServiceImpl.this.maxConnections,
+                                WxMpMultiAccountServiceImpl.this.maxConnectionsPerRoute);
+                        this.httpClient = client;
+                    }
+                }
+            }
+            return client;
+        }
+
+        WxMpService service() {
+            WxMpService result = this.service;
+            if (result == null) {
+                synchronized (this) {
+                    result = this.service;
+                    if (result == null) {
+                        result = new AccountService(this);
+                        this.service = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 先标记为关闭，之后取得的连接池为null；仍有进行中的请求时推迟到它们结束.
+         */
+        void close() {
+            this.closed = true;
+            if (this.inFlight.get() == 0) {
+                this.closeHttpClient();
+            }
+        }
+
+        private synchronized void closeHttpClient() {
+            if (this.httpClient != null) {
+                try {
+                    this.httpClient.close();
+                }
+                catch (IOException e) {
+                    log.warn("关闭公众号连接池失败", e);
+                }
+                this.httpClient = null;
+            }
+        }
+    }
+
+    /**
+     * 绑定到单个公众号的实现.
+     */
+    private static class AccountService extends WxMpServiceImpl {
+        private final Account account;
+
+        AccountService(Account account) {
+            this.account = account;
+        }
+
+        @Override
+        public WxMpConfigStorage getWxMpConfigStorage() {
+            return this.account.configStorage();
+        }
+
+        @Override
+        protected CloseableHttpClient getHttpClient() {
+            return this.account.acquireHttpClient();
+        }
+
+        @Override
+        protected void releaseHttpClient(CloseableHttpClient httpClient) {
+            this.account.releaseHttpClient();
+        }
+    }
+}
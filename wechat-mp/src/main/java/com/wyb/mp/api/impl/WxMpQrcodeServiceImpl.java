@@ -0,0 +1,330 @@
+package com.wyb.mp.api.impl;
+
+import static com.wyb.mp.enums.WxMpApiUrl.Qrcode.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpStatus;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gson.JsonObject;
+import com.wyb.common.WxType;
+import com.wyb.common.exception.WxError;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.http.DownloadResult;
+import com.wyb.mp.api.WxMpQrcodeService;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.api.WxMpTimeSource;
+import com.wyb.mp.bean.result.WxMpQrCodeBatchResult;
+import com.wyb.mp.bean.result.WxMpQrCodeTicket;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpQrcodeServiceImpl implements WxMpQrcodeService {
+
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final double DEFAULT_PERMITS_PER_SECOND = 50;
+    private static final long MAX_CACHED_TICKETS = 1000000;
+    /**
+     * 未指定有效期时微信默认的有效期.
+     */
+    private static final int DEFAULT_EXPIRE_SECONDS = 30;
+
+    private final WxMpService wxMpService;
+    private final WxMpTimeSource timeSource;
+
+    /**
+     * appId:二维码类型:场景值:有效期 -> ticket.
+     */
+    private final Cache<String, CachedTicket> tickets = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_TICKETS)
+            .build();
+
+    public WxMpQrcodeServiceImpl(WxMpService wxMpService) {
+        this(wxMpService, WxMpTimeSource.SYSTEM);
+    }
+
+    /**
+     * @param timeSource 判断缓存的ticket是否过了一半有效期使用的时钟
+     */
+    public WxMpQrcodeServiceImpl(WxMpService wxMpService, WxMpTimeSource timeSource) {
+        this.wxMpService = wxMpService;
+        this.timeSource = timeSource;
+    }
+
+    @Override
+    public WxMpQrCodeTicket qrCodeCreateTmpTicket(int sceneId, Integer expireSeconds) throws WxErrorException {
+        if (sceneId == 0) {
+            throw new IllegalArgumentException("临时二维码场景值不能为0");
+        }
+        return this.ticket("QR_SCENE", "scene_id", String.valueOf(sceneId), checkExpire(expireSeconds), null, null);
+    }
+
+    @Override
+    public WxMpQrCodeTicket qrCodeCreateTmpTicket(String sceneStr, Integer expireSeconds) throws WxErrorException {
+        return this.ticket("QR_STR_SCENE", "scene_str", sceneStr, checkExpire(expireSeconds), null, null);
+    }
+
+    @Override
+    public WxMpQrCodeTicket qrCodeCreateLastTicket(int sceneId) throws WxErrorException {
+        if (sceneId < 1 || sceneId > 100000) {
+            throw new IllegalArgumentException("永久二维码的场景值目前只支持1--100000");
+        }
+        return this.ticket("QR_LIMIT_SCENE", "scene_id", String.valueOf(sceneId), null, null, null);
+    }
+
+    @Override
+    public WxMpQrCodeTicket qrCodeCreateLastTicket(String sceneStr) throws WxErrorException {
+        return this.ticket("QR_LIMIT_STR_SCENE", "scene_str", sceneStr, null, null, null);
+    }
+
+    @Override
+    public WxMpQrCodeBatchResult qrCodeCreateTickets(Collection<String> sceneStrs, Integer expireSeconds) {
+        ThreadPoolExecutor executor = WxMpServiceExecutors.newDaemonPool("wx-qrcode-", DEFAULT_PARALLELISM);
+        try {
+            return this.qrCodeCreateTickets(sceneStrs, expireSeconds, executor, DEFAULT_PARALLELISM,
+                    DEFAULT_PERMITS_PER_SECOND);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 信号量限制在途请求数，全部完成后按提交顺序整理结果.
+     */
+    @Override
+    public WxMpQrCodeBatchResult qrCodeCreateTickets(Collection<String> sceneStrs, Integer expireSeconds,
+            Executor executor, int parallelism, double permitsPerSecond) {
+        String action = expireSeconds == null ? "QR_LIMIT_STR_SCENE" : "QR_STR_SCENE";
+        Integer expire = expireSeconds == null ? null : checkExpire(expireSeconds);
+        Set<String> scenes = new LinkedHashSet<>(sceneStrs);
+        RateLimiter rateLimiter = RateLimiter.create(permitsPerSecond);
+        Semaphore inFlight = new Semaphore(parallelism);
+        AtomicLong requests = new AtomicLong();
+        Map<String, WxMpQrCodeTicket> created = new ConcurrentHashMap<>();
+        Map<String, WxError> failed = new ConcurrentHashMap<>();
+        Executor boundExecutor = WxMpServiceExecutors.bindCurrentAccount(this.wxMpService, executor);
+        try {
+            for (String scene : scenes) {
+                inFlight.acquireUninterruptibly();
+                try {
+                    boundExecutor.execute(() -> {
+                        try {
+                            created.put(scene, this.ticket(action, "scene_str", scene, expire, rateLimiter, requests));
+                        }
+                        catch (WxErrorException e) {
+                            failed.put(scene, e.getError());
+                        }
+                        catch (RuntimeException e) {
+                            failed.put(scene, WxError.builder().errorCode(-1).errorMsg(String.valueOf(e.getMessage()))
+                                    .build());
+                        }
+                        finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+                catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        }
+        finally {
+            // 等待已提交的请求全部完成
+            inFlight.acquireUninterruptibly(parallelism);
+        }
+
+        WxMpQrCodeBatchResult result = new WxMpQrCodeBatchResult();
+        result.setTotal(scenes.size());
+        result.setRequests(requests.get());
+        for (String scene : scenes) {
+            if (created.containsKey(scene)) {
+                result.getTickets().put(scene, created.get(scene));
+            }
+            else if (failed.containsKey(scene)) {
+                result.getFailures().put(scene, failed.get(scene));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public DownloadResult qrCodePicture(String ticket, WritableByteChannel target) throws WxErrorException {
+        Map<String, String> params = new HashMap<>();
+        params.put("ticket", ticket);
+        DownloadResult result = this.wxMpService.download(SHOW_QRCODE, params, target);
+        if (result.isJson()) {
+            throw new WxErrorException(WxError.fromJson(result.getJsonBody(), WxType.MP));
+        }
+        if (result.getStatusCode() != HttpStatus.SC_OK) {
+            throw new WxErrorException(WxError.builder().errorCode(-1)
+                    .errorMsg("下载二维码失败，http状态" + result.getStatusCode()).build());
+        }
+        return result;
+    }
+
+    @Override
+    public DownloadResult qrCodePicture(String ticket, File file) throws WxErrorException {
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        boolean success = false;
+        try {
+            DownloadResult result;
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                result = this.qrCodePicture(ticket, channel);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            success = true;
+            return result;
+        }
+        catch (IOException e) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+        }
+        finally {
+            if (!success) {
+                tmp.delete();
+            }
+        }
+    }
+
+    @Override
+    public String qrCodePictureUrl(String ticket) throws WxErrorException {
+        try {
+            return String.format(SHOW_QRCODE_WITH_TICKET.getUrl(this.wxMpService.getWxMpConfigStorage()),
+                    URLEncoder.encode(ticket, "UTF-8"));
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+        }
+    }
+
+    /**
+     * 先查缓存，过期或没有时调用接口，同一个key的并发请求只调用一次.
+     * 缓存的ticket不可复用时只重新创建一次，新建的ticket直接返回，
+     * 即使有效期很短、接口往返后已不足一半，也不会反复删除重建。
+     *
+     * @param rateLimiter 实际调用接口前获取许可，可为null
+     * @param requests    实际调用接口的次数，可为null
+     */
+    private WxMpQrCodeTicket ticket(String action, String sceneField, String scene, Integer expireSeconds,
+            RateLimiter rateLimiter, AtomicLong requests) throws WxErrorException {
+        String key = this.wxMpService.getWxMpConfigStorage().getAppId() + ':' + action + ':' + scene + ':'
+                + (expireSeconds == null ? "" : expireSeconds);
+        CachedTicket[] created = new CachedTicket[1];
+        Callable<CachedTicket> loader = () -> {
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+            if (requests != null) {
+                requests.incrementAndGet();
+            }
+            created[0] = this.create(action, sceneField, scene, expireSeconds);
+            return created[0];
+        };
+        try {
+            CachedTicket cached = this.tickets.get(key, loader);
+            if (cached != created[0] && !cached.isFreshAt(this.timeSource.currentTimeMillis())) {
+                this.tickets.asMap().remove(key, cached);
+                cached = this.tickets.get(key, loader);
+            }
+            return cached.ticket;
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof WxErrorException) {
+                throw (WxErrorException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * {"expire_seconds":604800,"action_name":"QR_SCENE","action_info":{"scene":{"scene_id":123}}}.
+     */
+    private CachedTicket create(String action, String sceneField, String scene, Integer expireSeconds)
+            throws WxErrorException {
+        JsonObject sceneJson = new JsonObject();
+        if ("scene_id".equals(sceneField)) {
+            sceneJson.addProperty(sceneField, Integer.valueOf(scene));
+        }
+        else {
+            sceneJson.addProperty(sceneField, scene);
+        }
+        JsonObject actionInfo = new JsonObject();
+        actionInfo.add("scene", sceneJson);
+        JsonObject json = new JsonObject();
+        if (expireSeconds != null) {
+            json.addProperty("expire_seconds", expireSeconds);
+        }
+        json.addProperty("action_name", action);
+        json.add("action_info", actionInfo);
+
+        long createdAt = this.timeSource.currentTimeMillis();
+        String responseContent = this.wxMpService.post(QRCODE_CREATE, json.toString());
+        if (responseContent == null || responseContent.isEmpty()) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg("请求失败，无响应").build());
+        }
+        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
+        if (wxError.getErrorCode() != 0) {
+            throw new WxErrorException(wxError);
+        }
+        WxMpQrCodeTicket ticket = WxMpQrCodeTicket.fromJson(responseContent);
+        if (action.startsWith("QR_LIMIT")) {
+            return new CachedTicket(ticket, Long.MAX_VALUE);
+        }
+        int lifetime = ticket.getExpireSeconds() != null ? ticket.getExpireSeconds()
+                : expireSeconds != null ? expireSeconds : DEFAULT_EXPIRE_SECONDS;
+        // 剩余有效期不足一半时不再复用
+        return new CachedTicket(ticket, createdAt + lifetime * 500L);
+    }
+
+    private static Integer checkExpire(Integer expireSeconds) {
+        if (expireSeconds != null && (expireSeconds <= 0 || expireSeconds > MAX_EXPIRE_SECONDS)) {
+            throw new IllegalArgumentException("临时二维码有效期须在1到" + MAX_EXPIRE_SECONDS + "秒之间");
+        }
+        return expireSeconds;
+    }
+
+    private static class CachedTicket {
+        private final WxMpQrCodeTicket ticket;
+        private final long reusableUntil;
+
+        CachedTicket(WxMpQrCodeTicket ticket, long reusableUntil) {
+            this.ticket = ticket;
+            this.reusableUntil = reusableUntil;
+        }
+
+        boolean isFreshAt(long now) {
+            return now < this.reusableUntil;
+        }
+    }
+}
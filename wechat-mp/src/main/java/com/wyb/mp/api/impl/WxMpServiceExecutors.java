@@ -0,0 +1,46 @@
+package com.wyb.mp.api.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.wyb.mp.api.WxMpService;
+
+/**
+ * 批量接口在调用方未指定线程池时使用的默认线程池，以及多公众号时线程池的包装.
+ *
+ * @author Kunzite
+ */
+final class WxMpServiceExecutors {
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private WxMpServiceExecutors() {
+    }
+
+    /**
+     * 固定大小的守护线程池，空闲线程30秒后回收，调用方忘记关闭时也不会遗留线程.
+     */
+    static ThreadPoolExecutor newDaemonPool(String namePrefix, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, namePrefix + THREAD_COUNTER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 多公众号时在提交任务的线程上调用，线程池中的任务以当前切换到的公众号执行.
+     *
+     * @see WxMpMultiAccountServiceImpl#bindCurrentAccount(Executor)
+     */
+    static Executor bindCurrentAccount(WxMpService wxMpService, Executor executor) {
+        return wxMpService instanceof WxMpMultiAccountServiceImpl
+                ? ((WxMpMultiAccountServiceImpl) wxMpService).bindCurrentAccount(executor) : executor;
+    }
+}
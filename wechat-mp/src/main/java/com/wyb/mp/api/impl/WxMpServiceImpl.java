@@ -5,8 +5,11 @@ import com.wyb.common.bean.WxAccessToken;
 import com.wyb.common.exception.WxError;
 import com.wyb.common.exception.WxErrorException;
 import com.wyb.common.util.http.HttpClientUtil;
+import com.wyb.mp.api.WxMpConfigStorage;
 import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.enums.WxMpApiUrl;
 
+import java.util.Objects;
 import java.util.concurrent.locks.Lock;
 
 /**
@@ -16,24 +19,32 @@ public class WxMpServiceImpl extends BaseWxMpServiceImpl {
 
     @Override
     public String getAccessToken(boolean forceRefresh) throws WxErrorException {
-        Lock lock = this.getWxMpConfigStorage().getAccessTokenLock();
+        WxMpConfigStorage storage = this.getWxMpConfigStorage();
+        // token未过期时直接返回，不加锁，只有需要刷新时才竞争锁
+        if (!forceRefresh && !storage.isAccessTokenExpired()) {
+            return storage.getAccessToken();
+        }
+        String seen = storage.getAccessToken();
+        Lock lock = storage.getAccessTokenLock();
         try {
             lock.lock();
-            // 判断accessToken是否过期或者强制要求刷新
-            if (this.getWxMpConfigStorage().isAccessTokenExpired() || forceRefresh) {
-                String url = String.format(WxMpService.GET_ACCESS_TOKEN_URL,
-                        this.getWxMpConfigStorage().getAppId(), this.getWxMpConfigStorage().getSecret());
-                String resultContent = HttpClientUtil.doGet(url);
+            // 等锁期间可能已经被其他线程或节点刷新；强制刷新时token已经换过的也不再刷新
+            boolean refreshed = !storage.isAccessTokenExpired() && !Objects.equals(seen, storage.getAccessToken());
+            if (storage.isAccessTokenExpired() || forceRefresh && !refreshed) {
+                String url = String.format(WxMpService.GET_ACCESS_TOKEN_URL, storage.getAppId(), storage.getSecret());
+                long start = System.nanoTime();
+                String resultContent = this.execute(client -> HttpClientUtil.doGet(client, url, null));
+                this.recordApiCall(WxMpApiUrl.Other.GET_ACCESS_TOKEN_URL, start, 0, resultContent);
                 WxError error = WxError.fromJson(resultContent);
                 if (error.getErrorCode() != 0) {
                     throw new WxErrorException(error);
                 }
                 WxAccessToken wxAccessToken = WxAccessToken.fromJson(resultContent);
-                this.getWxMpConfigStorage().updateAccessToken(wxAccessToken.getAccessToken(), wxAccessToken.getExpiresIn());
+                storage.updateAccessToken(wxAccessToken.getAccessToken(), wxAccessToken.getExpiresIn());
             }
         } finally {
             lock.unlock();
         }
-        return this.getWxMpConfigStorage().getAccessToken();
+        return storage.getAccessToken();
     }
 }
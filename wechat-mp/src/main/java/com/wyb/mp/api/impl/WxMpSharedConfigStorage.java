@@ -0,0 +1,211 @@
+package com.wyb.mp.api.impl;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import com.wyb.mp.api.WxMpKeyValueStore;
+import com.wyb.mp.enums.TicketType;
+
+/**
+ * <pre>
+ * access_token和ticket保存在多个节点共享的{@link WxMpKeyValueStore}中的配置.
+ * 微信同一时间只有一个有效的access_token，各节点各自刷新会互相顶掉，
+ * 这里刷新前先拿共享存储中的锁，拿到锁后丢弃近端缓存重新读取共享存储，已被其他节点刷新过的就不再刷新；
+ * 强制刷新时，等锁期间token已被其他节点换过的同样不再刷新。
+ *
+ * 存储的值为"过期时间:token"，过期时间同时作为版本号。
+ * 每个节点在本地保留一份近端缓存，距上次和共享存储核对不到checkIntervalMillis时直接使用本地值，
+ * 否则读取共享存储，版本号没变时只更新核对时间。本地值已过期时总是读取共享存储。
+ * 某个节点强制刷新后，其他节点最多在checkIntervalMillis后用上新的token。
+ *
+ * appId、secret等其余配置与{@link WxMpInMemoryConfigStorage}相同，只保存在本地；
+ * 继承来的setAccessToken、setTicket等方法不写共享存储。
+ *
+ * 序列化时连同store一起序列化，store的实现不支持序列化时抛出NotSerializableException；
+ * 反序列化后近端缓存为空，锁重新创建。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpSharedConfigStorage extends WxMpInMemoryConfigStorage {
+
+    private static final long serialVersionUID = 4215474389104338611L;
+
+    public static final String DEFAULT_KEY_PREFIX = "wx:mp:";
+    public static final long DEFAULT_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    public static final long DEFAULT_LOCK_LEASE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final WxMpKeyValueStore store;
+    private final String keyPrefix;
+    private final long checkIntervalMillis;
+    private final long lockLeaseMillis;
+
+    private transient ConcurrentMap<String, Cached> nearCache = new ConcurrentHashMap<>();
+    private transient ConcurrentMap<String, Lock> locks = new ConcurrentHashMap<>();
+
+    public WxMpSharedConfigStorage(WxMpKeyValueStore store) {
+        this(store, DEFAULT_KEY_PREFIX, DEFAULT_CHECK_INTERVAL_MILLIS, DEFAULT_LOCK_LEASE_MILLIS);
+    }
+
+    /**
+     * @param keyPrefix           共享存储中key的前缀，后面是appId
+     * @param checkIntervalMillis 近端缓存与共享存储核对的间隔，0表示每次都读共享存储
+     * @param lockLeaseMillis     刷新锁的租期，持有期间自动续租，持有锁的节点宕机后最多经过这么久锁被释放
+     */
+    public WxMpSharedConfigStorage(WxMpKeyValueStore store, String keyPrefix, long checkIntervalMillis,
+            long lockLeaseMillis) {
+        this.store = store;
+        this.keyPrefix = keyPrefix;
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.lockLeaseMillis = lockLeaseMillis;
+    }
+
+    @Override
+    public String getAccessToken() {
+        Cached cached = this.read(this.accessTokenKey());
+        return cached == null ? null : cached.value;
+    }
+
+    @Override
+    public boolean isAccessTokenExpired() {
+        return this.isExpired(this.accessTokenKey());
+    }
+
+    @Override
+    public void expireAccessToken() {
+        this.expire(this.accessTokenKey());
+    }
+
+    @Override
+    public void updateAccessToken(String accessToken, int expiresInSeconds) {
+        this.write(this.accessTokenKey(), accessToken, expiresInSeconds);
+    }
+
+    @Override
+    public Lock getAccessTokenLock() {
+        return this.lockOf(this.accessTokenKey());
+    }
+
+    @Override
+    public String getTicket(TicketType type) {
+        Cached cached = this.read(this.ticketKey(type));
+        return cached == null ? null : cached.value;
+    }
+
+    @Override
+    public Lock getTicketLock(TicketType type) {
+        return this.lockOf(this.ticketKey(type));
+    }
+
+    @Override
+    public boolean isTicketExpired(TicketType type) {
+        return this.isExpired(this.ticketKey(type));
+    }
+
+    @Override
+    public void updateTicket(TicketType type, String ticket, int expiresInSeconds) {
+        this.write(this.ticketKey(type), ticket, expiresInSeconds);
+    }
+
+    @Override
+    public void expireTicket(TicketType type) {
+        this.expire(this.ticketKey(type));
+    }
+
+    private String accessTokenKey() {
+        return this.keyPrefix + this.appId + ":access_token";
+    }
+
+    private String ticketKey(TicketType type) {
+        return this.keyPrefix + this.appId + ":ticket:" + type.getCode();
+    }
+
+    private boolean isExpired(String key) {
+        Cached cached = this.read(key);
+        return cached == null || this.currentTimeMillis() >= cached.expiresAt;
+    }
+
+    private Cached read(String key) {
+        long now = this.currentTimeMillis();
+        Cached local = this.nearCache.get(key);
+        if (local != null && now < local.expiresAt && now - local.checkedAt < this.checkIntervalMillis) {
+            return local;
+        }
+        String raw = this.store.get(key);
+        if (raw == null) {
+            this.nearCache.remove(key);
+            return null;
+        }
+        long version = parseVersion(raw);
+        if (version < 0) {
+            // 不是本类写入的值，当作不存在，下次刷新时覆盖
+            this.nearCache.remove(key);
+            return null;
+        }
+        int separator = raw.indexOf(':');
+        Cached fresh = local != null && local.expiresAt == version
+                ? new Cached(local.value, version, now)
+                : new Cached(raw.substring(separator + 1), version, now);
+        this.nearCache.put(key, fresh);
+        return fresh;
+    }
+
+    /**
+     * 本地过期时间按继承来的过期策略计算，写入共享存储后各节点使用同一个值；共享存储中的记录在微信给出的有效期后删除.
+     */
+    private void write(String key, String value, int expiresInSeconds) {
+        long now = this.currentTimeMillis();
+        long expiresAt = this.expiresAt(expiresInSeconds);
+        this.store.set(key, expiresAt + ":" + value, expiresInSeconds * 1000L);
+        this.nearCache.put(key, new Cached(value, expiresAt, now));
+    }
+
+    private void expire(String key) {
+        this.store.delete(key);
+        this.nearCache.remove(key);
+    }
+
+    private Lock lockOf(String key) {
+        // 拿到锁后丢弃近端缓存，下次读取直接核对共享存储，看到等锁期间其他节点的刷新
+        return this.locks.computeIfAbsent(key, k -> new WxMpDistributedLock(this.store, k + ":lock",
+                this.lockLeaseMillis, () -> this.nearCache.remove(k)));
+    }
+
+    /**
+     * 返回"过期时间:token"中的过期时间，格式不对时返回-1.
+     */
+    private static long parseVersion(String raw) {
+        int separator = raw.indexOf(':');
+        if (separator <= 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(raw.substring(0, separator));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.nearCache = new ConcurrentHashMap<>();
+        this.locks = new ConcurrentHashMap<>();
+    }
+
+    private static class Cached {
+        private final String value;
+        private final long expiresAt;
+        private final long checkedAt;
+
+        Cached(String value, long expiresAt, long checkedAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.wyb.mp.api.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.wyb.common.bean.WxAccessToken;
+import com.wyb.mp.api.WxMpConfigStorage;
+import com.wyb.mp.bean.WxMpHostConfig;
+import com.wyb.mp.enums.TicketType;
+
+/**
+ * <pre>
+ * 把access_token和ticket同步写入一个内存映射文件的配置装饰器，进程重启后读回仍然有效的值，
+ * 启动时不必先请求/cgi-bin/token，也不会顶掉其他节点还在用的token.
+ *
+ *  WxMpConfigStorage storage = new WxMpSnapshotConfigStorage(inMemoryStorage, new File("/data/wx/appid.token"));
+ *
+ * 文件按公众号各用一个，appId不一致时忽略文件内容。
+ * 每个值一个定长槽位：过期时间(毫秒，微信给出的原始有效期) + 长度 + 内容 + CRC32，写到一半时进程退出的槽位读回时被丢弃。
+ * 写入只修改映射内存，由操作系统落盘，进程退出不丢数据；需要防断电时用force参数每次强制刷盘。
+ * 只在被装饰的配置中没有有效值时恢复，装饰{@link WxMpSharedConfigStorage}时不会覆盖共享存储中更新的值。
+ *
+ * 快照文件只能被一个进程（同一进程内也只能被一个实例）打开，打开时对文件加排他锁，已被占用时构造方法抛出IOException；
+ * 多个进程各自需要快照时使用不同的文件。用完后调用close释放文件锁，映射内存在对象被回收后释放，close之后的更新不再写入快照。
+ *
+ * 快照只记录本进程写入的值。被装饰的是多个节点共享的配置时，其他节点刷新后快照中仍是旧token，
+ * 而启动时的恢复只在共享存储中没有有效值时发生，这时恢复的可能是已经被其他节点顶掉的token，
+ * 要到它的本地过期时间或被expireAccessToken后才会重新获取。因此共享存储的场景不建议再加快照，快照适合单节点部署。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Slf4j
+public class WxMpSnapshotConfigStorage implements WxMpConfigStorage, Closeable {
+
+    private static final int MAGIC = 0x57585453;
+    private static final int FORMAT_VERSION = 1;
+    private static final int APP_ID_BYTES = 64;
+    private static final int HEADER_BYTES = 4 + 4 + 2 + APP_ID_BYTES;
+    private static final int VALUE_BYTES = 1024;
+    /**
+     * 过期时间8 + 长度2 + 内容 + CRC4.
+     */
+    private static final int SLOT_BYTES = 8 + 2 + VALUE_BYTES + 4;
+    /**
+     * 槽位0为access_token，其余按TicketType的顺序.
+     */
+    private static final int SLOTS = 1 + TicketType.values().length;
+
+    private final WxMpConfigStorage delegate;
+    private final FileChannel channel;
+    private final FileLock fileLock;
+    private final boolean force;
+    /**
+     * close后置为null，不再引用映射内存.
+     */
+    private MappedByteBuffer buffer;
+
+    public WxMpSnapshotConfigStorage(WxMpConfigStorage delegate, File file) throws IOException {
+        this(delegate, file, false);
+    }
+
+    /**
+     * 打开或创建快照文件，恢复其中仍然有效的access_token和ticket，delegate需已设置appId.
+     *
+     * @param force 每次写入后是否强制刷盘
+     * @throws IOException 文件无法打开，或已被其他进程或实例打开
+     */
+    public WxMpSnapshotConfigStorage(WxMpConfigStorage delegate, File file, boolean force) throws IOException {
+        this.delegate = delegate;
+        this.force = force;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.fileLock = lockExclusively(this.channel, file);
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + (long) SLOTS * SLOT_BYTES);
+            if (this.headerMatches()) {
+                this.restore();
+            }
+            else {
+                this.resetFile();
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            // 关闭通道时文件锁随之释放
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getAccessToken() {
+        return this.delegate.getAccessToken();
+    }
+
+    @Override
+    public boolean isAccessTokenExpired() {
+        return this.delegate.isAccessTokenExpired();
+    }
+
+    @Override
+    public void expireAccessToken() {
+        this.delegate.expireAccessToken();
+        this.clearSlot(0);
+    }
+
+    @Override
+    public void updateAccessToken(WxAccessToken accessToken) {
+        this.updateAccessToken(accessToken.getAccessToken(), accessToken.getExpiresIn());
+    }
+
+    @Override
+    public void updateAccessToken(String accessToken, int expiresInSeconds) {
+        this.delegate.updateAccessToken(accessToken, expiresInSeconds);
+        this.writeSlot(0, accessToken, expiresInSeconds);
+    }
+
+    @Override
+    public String getTicket(TicketType type) {
+        return this.delegate.getTicket(type);
+    }
+
+    @Override
+    public Lock getTicketLock(TicketType type) {
+        return this.delegate.getTicketLock(type);
+    }
+
+    @Override
+    public boolean isTicketExpired(TicketType type) {
+        return this.delegate.isTicketExpired(type);
+    }
+
+    @Override
+    public void expireTicket(TicketType type) {
+        this.delegate.expireTicket(type);
+        this.clearSlot(slotOf(type));
+    }
+
+    @Override
+    public void updateTicket(TicketType type, String ticket, int expiresInSeconds) {
+        this.delegate.updateTicket(type, ticket, expiresInSeconds);
+        this.writeSlot(slotOf(type), ticket, expiresInSeconds);
+    }
+
+    @Override
+    public String getAppId() {
+        return this.delegate.getAppId();
+    }
+
+    @Override
+    public String getSecret() {
+        return this.delegate.getSecret();
+    }
+
+    @Override
+    public String getToken() {
+        return this.delegate.getToken();
+    }
+
+    @Override
+    public String getAesKey() {
+        return this.delegate.getAesKey();
+    }
+
+    @Override
+    public long getExpiresTime() {
+        return this.delegate.getExpiresTime();
+    }
+
+    @Override
+    public boolean getAutoRefreshToken() {
+        return this.delegate.getAutoRefreshToken();
+    }
+
+    @Override
+    public Lock getAccessTokenLock() {
+        return this.delegate.getAccessTokenLock();
+    }
+
+    @Override
+    public WxMpHostConfig getHostConfig() {
+        return this.delegate.getHostConfig();
+    }
+
+    /**
+     * 释放文件锁并关闭文件，之后的更新只写入被装饰的配置.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.buffer == null) {
+            return;
+        }
+        this.buffer.force();
+        this.buffer = null;
+        try {
+            this.fileLock.release();
+        }
+        finally {
+            this.channel.close();
+        }
+    }
+
+    private static FileLock lockExclusively(FileChannel channel, File file) throws IOException {
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        }
+        catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            throw new IOException("token snapshot file is in use: " + file);
+        }
+        return lock;
+    }
+
+    private static int slotOf(TicketType type) {
+        return 1 + type.ordinal();
+    }
+
+    private synchronized boolean headerMatches() {
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != FORMAT_VERSION) {
+            return false;
+        }
+        byte[] appId = this.appIdBytes();
+        int length = this.buffer.getShort(8);
+        if (length != appId.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (this.buffer.get(10 + i) != appId[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void resetFile() {
+        for (int i = 0; i < this.buffer.capacity(); i++) {
+            this.buffer.put(i, (byte) 0);
+        }
+        byte[] appId = this.appIdBytes();
+        this.buffer.putInt(0, MAGIC);
+        this.buffer.putInt(4, FORMAT_VERSION);
+        this.buffer.putShort(8, (short) appId.length);
+        for (int i = 0; i < appId.length; i++) {
+            this.buffer.put(10 + i, appId[i]);
+        }
+        this.flush();
+    }
+
+    private void restore() {
+        long now = System.currentTimeMillis();
+        String accessToken = this.readSlot(0);
+        int remaining = this.remainingSeconds(0, now);
+        if (accessToken != null && remaining > 0 && this.delegate.isAccessTokenExpired()) {
+            this.delegate.updateAccessToken(accessToken, remaining);
+        }
+        for (TicketType type : TicketType.values()) {
+            String ticket = this.readSlot(slotOf(type));
+            remaining = this.remainingSeconds(slotOf(type), now);
+            if (ticket != null && remaining > 0 && this.delegate.isTicketExpired(type)) {
+                this.delegate.updateTicket(type, ticket, remaining);
+            }
+        }
+    }
+
+    private synchronized int remainingSeconds(int slot, long now) {
+        long expiresAt = this.buffer.getLong(HEADER_BYTES + slot * SLOT_BYTES);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, (expiresAt - now) / 1000));
+    }
+
+    /**
+     * @return 槽位为空或CRC不符时返回null
+     */
+    private synchronized String readSlot(int slot) {
+        int offset = HEADER_BYTES + slot * SLOT_BYTES;
+        int length = this.buffer.getShort(offset + 8);
+        if (length <= 0 || length > VALUE_BYTES) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(offset + 10);
+        view.get(bytes);
+        if (this.crcOf(offset, bytes) != this.buffer.getInt(offset + 10 + VALUE_BYTES)) {
+            log.warn("token快照槽位{}校验失败，忽略", slot);
+            return null;
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private synchronized void writeSlot(int slot, String value, int expiresInSeconds) {
+        if (this.buffer == null) {
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > VALUE_BYTES) {
+            log.warn("token长度{}超过快照槽位，不写入快照", bytes.length);
+            return;
+        }
+        int offset = HEADER_BYTES + slot * SLOT_BYTES;
+        this.buffer.putLong(offset, System.currentTimeMillis() + expiresInSeconds * 1000L);
+        this.buffer.putShort(offset + 8, (short) bytes.length);
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(offset + 10);
+        view.put(bytes);
+        this.buffer.putInt(offset + 10 + VALUE_BYTES, this.crcOf(offset, bytes));
+        this.flush();
+    }
+
+    private synchronized void clearSlot(int slot) {
+        if (this.buffer == null) {
+            return;
+        }
+        int offset = HEADER_BYTES + slot * SLOT_BYTES;
+        this.buffer.putLong(offset, 0);
+        this.buffer.putShort(offset + 8, (short) 0);
+        this.flush();
+    }
+
+    /**
+     * CRC覆盖过期时间、长度和内容.
+     */
+    private int crcOf(int offset, byte[] bytes) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < 10; i++) {
+            crc.update(this.buffer.get(offset + i));
+        }
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private void flush() {
+        if (this.force) {
+            this.buffer.force();
+        }
+    }
+
+    private byte[] appIdBytes() {
+        String appId = this.delegate.getAppId();
+        byte[] bytes = (appId == null ? "" : appId).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > APP_ID_BYTES) {
+            throw new IllegalArgumentException("appId too long: " + appId);
+        }
+        return bytes;
+    }
+}
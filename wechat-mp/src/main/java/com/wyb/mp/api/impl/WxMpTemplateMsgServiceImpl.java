@@ -13,6 +13,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static com.wyb.mp.enums.WxMpApiUrl.TemplateMsg.*;
+
 /**
  * 微信模板消息推送
  *
@@ -31,10 +33,9 @@ public class WxMpTemplateMsgServiceImpl implements WxMpTemplateMsgService {
 
     @Override
     public String addTemplate(String shortTemplateId) throws WxErrorException {
-        String url = API_URL_PREFIX + "/api_add_template";
         Map<String, String> map = new HashMap<>();
         map.put("template_id_short", shortTemplateId);
-        String responseContent = wxMpService.post(url, map);
+        String responseContent = wxMpService.post(TEMPLATE_API_ADD_TEMPLATE, map);
         final JsonObject result = JSON_PARSER.parse(responseContent).getAsJsonObject();
         if (result.get("errcode").getAsInt() == 0) {
             return result.get("template_id").getAsString();
@@ -44,14 +45,12 @@ public class WxMpTemplateMsgServiceImpl implements WxMpTemplateMsgService {
 
     @Override
     public List<WxMpTemplate> getAllPrivateTemplate() throws WxErrorException {
-        String url = API_URL_PREFIX + "/get_all_private_template";
-        return WxMpTemplate.fromJson(this.wxMpService.get(url, null));
+        return WxMpTemplate.fromJson(this.wxMpService.get(TEMPLATE_GET_ALL_PRIVATE_TEMPLATE, null));
     }
 
     @Override
     public String sendTemplateMsg(WxMpTemplateMessage templateMessage) throws WxErrorException {
-        String url = "https://api.weixin.qq.com/cgi-bin/message/template/send";
-        String responseContent = this.wxMpService.post(url, templateMessage.toJson());
+        String responseContent = this.wxMpService.post(MESSAGE_TEMPLATE_SEND, templateMessage.toJson());
         final JsonObject jsonObject = JSON_PARSER.parse(responseContent).getAsJsonObject();
         if (jsonObject.get("errcode").getAsInt() == 0) {
             return jsonObject.get("msgid").getAsString();
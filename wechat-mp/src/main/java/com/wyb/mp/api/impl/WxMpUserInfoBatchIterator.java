@@ -0,0 +1,138 @@
+package com.wyb.mp.api.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.exception.WxRuntimeException;
+import com.wyb.mp.api.WxMpUserService;
+import com.wyb.mp.bean.result.WxMpUser;
+
+/**
+ * <pre>
+ * 批量获取用户信息的有序窗口：从openid迭代器中每次切出一批，最多parallelism批同时在途，
+ * 按提交顺序逐批返回结果。取走一批后立即补位，窗口外的openid不会被提前读取。
+ * 遍历结束、出错或close时执行一次onFinish，用于释放专门为本次遍历创建的线程池。
+ * 非线程安全。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+class WxMpUserInfoBatchIterator implements Iterator<List<WxMpUser>>, AutoCloseable {
+
+    static final int BATCH_SIZE = 100;
+
+    private final WxMpUserService userService;
+    private final Iterator<String> openids;
+    private final Executor executor;
+    private final int parallelism;
+    private final RateLimiter rateLimiter;
+    private final Runnable onFinish;
+    private final Deque<CompletableFuture<List<WxMpUser>>> window = new ArrayDeque<>();
+    private volatile boolean closed;
+    private boolean finished;
+
+    WxMpUserInfoBatchIterator(WxMpUserService userService, Iterator<String> openids, Executor executor,
+            int parallelism, double permitsPerSecond) {
+        this(userService, openids, executor, parallelism, permitsPerSecond, () -> { });
+    }
+
+    WxMpUserInfoBatchIterator(WxMpUserService userService, Iterator<String> openids, Executor executor,
+            int parallelism, double permitsPerSecond, Runnable onFinish) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.userService = userService;
+        this.openids = openids;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.rateLimiter = RateLimiter.create(permitsPerSecond);
+        this.onFinish = onFinish;
+    }
+
+    @Override
+    public boolean hasNext() {
+        this.fill();
+        if (this.window.isEmpty()) {
+            this.finish();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public List<WxMpUser> next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        CompletableFuture<List<WxMpUser>> head = this.window.poll();
+        try {
+            List<WxMpUser> users = head.join();
+            this.fill();
+            return users;
+        }
+        catch (CompletionException e) {
+            this.close();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        catch (CancellationException e) {
+            this.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 取消所有在途批次，已发出的请求无法撤回，但其结果会被丢弃.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        for (CompletableFuture<List<WxMpUser>> future : this.window) {
+            future.cancel(false);
+        }
+        this.window.clear();
+        this.finish();
+    }
+
+    private void finish() {
+        if (!this.finished) {
+            this.finished = true;
+            this.onFinish.run();
+        }
+    }
+
+    private void fill() {
+        while (!this.closed && this.window.size() < this.parallelism && this.openids.hasNext()) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            while (batch.size() < BATCH_SIZE && this.openids.hasNext()) {
+                batch.add(this.openids.next());
+            }
+            this.window.add(CompletableFuture.supplyAsync(() -> this.fetch(batch), this.executor));
+        }
+    }
+
+    private List<WxMpUser> fetch(List<String> batch) {
+        if (this.closed) {
+            throw new CancellationException();
+        }
+        this.rateLimiter.acquire();
+        try {
+            return this.userService.userInfoBatchGet(batch);
+        }
+        catch (WxErrorException e) {
+            throw new WxRuntimeException(e);
+        }
+    }
+}
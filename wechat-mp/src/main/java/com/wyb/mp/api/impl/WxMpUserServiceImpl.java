@@ -0,0 +1,172 @@
+package com.wyb.mp.api.impl;
+
+import static com.wyb.mp.enums.WxMpApiUrl.User.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import lombok.RequiredArgsConstructor;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.wyb.common.WxType;
+import com.wyb.common.exception.WxError;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.metrics.ApiCallStats;
+import com.wyb.common.util.page.WxPage;
+import com.wyb.common.util.page.WxPageIterator;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.api.WxMpUserService;
+import com.wyb.mp.bean.result.WxMpUser;
+import com.wyb.mp.bean.result.WxMpUserList;
+import com.wyb.mp.util.json.WxMpGsonBuilder;
+
+/**
+ * @author Kunzite
+ */
+@RequiredArgsConstructor
+public class WxMpUserServiceImpl implements WxMpUserService {
+    private static final Gson GSON = WxMpGsonBuilder.create();
+    private static final String DEFAULT_LANG = "zh_CN";
+    /**
+     * userInfoStream默认同时在途的批次数.
+     */
+    private static final int DEFAULT_PARALLELISM = 8;
+    /**
+     * userInfoStream默认每秒最多发起的请求数.
+     */
+    private static final double DEFAULT_PERMITS_PER_SECOND = 50;
+
+    private final WxMpService wxMpService;
+
+    @Override
+    public WxMpUserList userList(String nextOpenid) throws WxErrorException {
+        Map<String, String> params = new HashMap<>();
+        if (StringUtils.isNotBlank(nextOpenid)) {
+            params.put("next_openid", nextOpenid);
+        }
+        String responseContent = this.wxMpService.get(USER_GET_URL, params);
+        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
+        if (wxError.getErrorCode() != 0) {
+            throw new WxErrorException(wxError);
+        }
+        return WxMpUserList.fromJson(responseContent);
+    }
+
+    @Override
+    public WxPageIterator<String, String> userListIterator(Executor prefetchExecutor) {
+        return new WxPageIterator<>(cursor -> {
+            WxMpUserList userList = this.userList(cursor);
+            // 拉取完毕时count为0，next_openid为空
+            return new WxPage<>(userList.getOpenids(), userList.getNextOpenid(),
+                    userList.getCount() > 0 && StringUtils.isNotBlank(userList.getNextOpenid()));
+        }, null, prefetchExecutor);
+    }
+
+    @Override
+    public List<WxMpUser> userInfoBatchGet(List<String> openids) throws WxErrorException {
+        return this.userInfoBatchGet(openids, DEFAULT_LANG);
+    }
+
+    @Override
+    public List<WxMpUser> userInfoBatchGet(List<String> openids, String lang) throws WxErrorException {
+        if (openids.size() > WxMpUserInfoBatchIterator.BATCH_SIZE) {
+            throw new IllegalArgumentException("openids size must not exceed " + WxMpUserInfoBatchIterator.BATCH_SIZE);
+        }
+        if (openids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String responseContent = this.wxMpService.post(USER_INFO_BATCH_GET_URL, toBatchGetJson(openids, lang));
+        if (ApiCallStats.errorCodeOf(responseContent) != 0) {
+            throw new WxErrorException(WxError.fromJson(responseContent, WxType.MP));
+        }
+        try {
+            return parseUserInfoList(responseContent, openids.size());
+        }
+        catch (IOException e) {
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg(e.getMessage()).build(), e);
+        }
+    }
+
+    @Override
+    public Stream<WxMpUser> userInfoStream(Iterator<String> openids) {
+        ThreadPoolExecutor executor = WxMpServiceExecutors.newDaemonPool("wx-user-info-", DEFAULT_PARALLELISM);
+        return this.userInfoStream(openids, executor, DEFAULT_PARALLELISM, DEFAULT_PERMITS_PER_SECOND,
+                executor::shutdownNow);
+    }
+
+    @Override
+    public Stream<WxMpUser> userInfoStream(Iterator<String> openids, Executor executor, int parallelism,
+            double permitsPerSecond) {
+        return this.userInfoStream(openids, executor, parallelism, permitsPerSecond, () -> { });
+    }
+
+    private Stream<WxMpUser> userInfoStream(Iterator<String> openids, Executor executor, int parallelism,
+            double permitsPerSecond, Runnable onFinish) {
+        WxMpUserInfoBatchIterator batches = new WxMpUserInfoBatchIterator(this, openids,
+                WxMpServiceExecutors.bindCurrentAccount(this.wxMpService, executor), parallelism, permitsPerSecond,
+                onFinish);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED), false)
+                .onClose(batches::close)
+                .flatMap(List::stream);
+    }
+
+    /**
+     * {"user_list":[{"openid":"...","lang":"zh_CN"},...]}.
+     */
+    private static String toBatchGetJson(List<String> openids, String lang) {
+        StringWriter out = new StringWriter(openids.size() * 56 + 16);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject().name("user_list").beginArray();
+            for (String openid : openids) {
+                writer.beginObject().name("openid").value(openid).name("lang").value(lang).endObject();
+            }
+            writer.endArray().endObject();
+        }
+        catch (IOException e) {
+            // StringWriter不会抛出IOException
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * 流式解析user_info_list，逐个用户交给WxMpUserGsonAdapter，不构建整个响应的json树.
+     */
+    private static List<WxMpUser> parseUserInfoList(String responseContent, int expectedSize) throws IOException {
+        List<WxMpUser> users = new ArrayList<>(expectedSize);
+        try (JsonReader reader = new JsonReader(new StringReader(responseContent))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("user_info_list".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        users.add(GSON.fromJson(reader, WxMpUser.class));
+                    }
+                    reader.endArray();
+                }
+                else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return users;
+    }
+}
@@ -2,27 +2,63 @@ package com.wyb.mp.api.impl;
 
 import static com.wyb.mp.enums.WxMpApiUrl.UserTag.*;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.lang3.StringUtils;
 
-import com.google.gson.JsonArray;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import com.wyb.common.WxType;
 import com.wyb.common.exception.WxError;
 import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.page.WxPage;
+import com.wyb.common.util.page.WxPageIterator;
 import com.wyb.mp.api.WxMpService;
 import com.wyb.mp.api.WxMpUserTagService;
+import com.wyb.mp.enums.WxMpApiUrl;
+import com.wyb.mp.bean.tag.WxMpBatchTaggingResult;
 import com.wyb.mp.bean.tag.WxTagListUser;
 import com.wyb.mp.bean.tag.WxUserTag;
 import com.wyb.mp.util.json.WxMpGsonBuilder;
 
+@Slf4j
 @RequiredArgsConstructor
 public class WxMpUserTagServiceImpl implements WxMpUserTagService {
+    /**
+     * 批量打标签/取消标签每次最多的openid个数.
+     */
+    private static final int MEMBERS_BATCH_SIZE = 50;
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final double DEFAULT_PERMITS_PER_SECOND = 50;
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+    /**
+     * 可以重试的错误：系统繁忙、调用太频繁、网络错误(-1).
+     */
+    private static final Set<Integer> RETRYABLE_ERROR_CODES = new HashSet<>(Arrays.asList(-1, 45011));
+
     private final WxMpService wxMpService;
 
     @Override
@@ -32,14 +68,13 @@ public class WxMpUserTagServiceImpl implements WxMpUserTagService {
         tagJson.addProperty("name", name);
         json.add("tag", tagJson);
 
-        String responseContent = this.wxMpService.post(TAGS_CREATE.getUrl(wxMpService.getWxMpConfigStorage()),
-                json.toString());
+        String responseContent = this.wxMpService.post(TAGS_CREATE, json.toString());
         return WxUserTag.fromJson(responseContent);
     }
 
     @Override
     public List<WxUserTag> tagGet() throws WxErrorException {
-        String responseContent = this.wxMpService.get(TAGS_GET.getUrl(wxMpService.getWxMpConfigStorage()), null);
+        String responseContent = this.wxMpService.get(TAGS_GET, null);
         return WxUserTag.listFromJson(responseContent);
     }
 
@@ -51,8 +86,7 @@ public class WxMpUserTagServiceImpl implements WxMpUserTagService {
         tagJson.addProperty("name", name);
         json.add("tag", tagJson);
 
-        String responseContent = this.wxMpService.post(TAGS_UPDATE.getUrl(wxMpService.getWxMpConfigStorage()),
-                json.toString());
+        String responseContent = this.wxMpService.post(TAGS_UPDATE, json.toString());
         WxError wxError = WxError.fromJson(responseContent, WxType.MP);
         if (wxError.getErrorCode() == 0) {
             return true;
@@ -68,8 +102,7 @@ public class WxMpUserTagServiceImpl implements WxMpUserTagService {
         tagJson.addProperty("id", id);
         json.add("tag", tagJson);
 
-        String responseContent = this.wxMpService.post(TAGS_DELETE.getUrl(wxMpService.getWxMpConfigStorage()),
-                json.toString());
+        String responseContent = this.wxMpService.post(TAGS_DELETE, json.toString());
         WxError wxError = WxError.fromJson(responseContent, WxType.MP);
         if (wxError.getErrorCode() == 0) {
             return true;
@@ -84,49 +117,58 @@ public class WxMpUserTagServiceImpl implements WxMpUserTagService {
         json.addProperty("tagid", tagId);
         json.addProperty("next_openid", StringUtils.trimToEmpty(nextOpenid));
 
-        String responseContent = this.wxMpService.post(TAG_GET.getUrl(wxMpService.getWxMpConfigStorage()),
-                json.toString());
+        String responseContent = this.wxMpService.post(TAG_GET, json.toString());
+        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
+        if (wxError.getErrorCode() != 0) {
+            throw new WxErrorException(wxError);
+        }
         return WxTagListUser.fromJson(responseContent);
     }
 
+    @Override
+    public WxPageIterator<String, String> tagListUserIterator(Long tagId, Executor prefetchExecutor) {
+        return new WxPageIterator<>(cursor -> {
+            WxTagListUser listUser = this.tagListUser(tagId, cursor);
+            List<String> openids = listUser.getData() == null ? Collections.<String>emptyList()
+                    : listUser.getData().getOpenidList();
+            int count = listUser.getCount() == null ? 0 : listUser.getCount();
+            return new WxPage<>(openids, listUser.getNextOpenid(),
+                    count > 0 && StringUtils.isNotBlank(listUser.getNextOpenid()));
+        }, null, prefetchExecutor);
+    }
+
     @Override
     public boolean batchTagging(Long tagId, String[] openids) throws WxErrorException {
-        JsonObject json = new JsonObject();
-        json.addProperty("tagid", tagId);
-        JsonArray openidArrayJson = new JsonArray();
-        for (String openid : openids) {
-            openidArrayJson.add(openid);
-        }
-        json.add("openid_list", openidArrayJson);
+        this.membersBatch(TAGS_MEMBERS_BATCHTAGGING, tagId, Arrays.asList(openids));
+        return true;
+    }
 
-        String responseContent = this.wxMpService
-                .post(TAGS_MEMBERS_BATCHTAGGING.getUrl(wxMpService.getWxMpConfigStorage()), json.toString());
-        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
-        if (wxError.getErrorCode() == 0) {
-            return true;
-        }
+    @Override
+    public boolean batchUntagging(Long tagId, String[] openids) throws WxErrorException {
+        this.membersBatch(TAGS_MEMBERS_BATCHUNTAGGING, tagId, Arrays.asList(openids));
+        return true;
+    }
 
-        throw new WxErrorException(wxError);
+    @Override
+    public WxMpBatchTaggingResult batchTagging(Long tagId, Collection<String> openids) {
+        return this.dispatchWithDefaults(TAGS_MEMBERS_BATCHTAGGING, tagId, openids);
     }
 
     @Override
-    public boolean batchUntagging(Long tagId, String[] openids) throws WxErrorException {
-        JsonObject json = new JsonObject();
-        json.addProperty("tagid", tagId);
-        JsonArray openidArrayJson = new JsonArray();
-        for (String openid : openids) {
-            openidArrayJson.add(openid);
-        }
-        json.add("openid_list", openidArrayJson);
+    public WxMpBatchTaggingResult batchTagging(Long tagId, Iterator<String> openids, Executor executor,
+            int parallelism, double permitsPerSecond) {
+        return this.dispatch(TAGS_MEMBERS_BATCHTAGGING, tagId, openids, executor, parallelism, permitsPerSecond);
+    }
 
-        String responseContent = this.wxMpService
-                .post(TAGS_MEMBERS_BATCHUNTAGGING.getUrl(wxMpService.getWxMpConfigStorage()), json.toString());
-        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
-        if (wxError.getErrorCode() == 0) {
-            return true;
-        }
+    @Override
+    public WxMpBatchTaggingResult batchUntagging(Long tagId, Collection<String> openids) {
+        return this.dispatchWithDefaults(TAGS_MEMBERS_BATCHUNTAGGING, tagId, openids);
+    }
 
-        throw new WxErrorException(wxError);
+    @Override
+    public WxMpBatchTaggingResult batchUntagging(Long tagId, Iterator<String> openids, Executor executor,
+            int parallelism, double permitsPerSecond) {
+        return this.dispatch(TAGS_MEMBERS_BATCHUNTAGGING, tagId, openids, executor, parallelism, permitsPerSecond);
     }
 
     @Override
@@ -134,12 +176,135 @@ public class WxMpUserTagServiceImpl implements WxMpUserTagService {
         JsonObject json = new JsonObject();
         json.addProperty("openid", openid);
 
-        String responseContent = this.wxMpService.post(TAGS_GETIDLIST.getUrl(wxMpService.getWxMpConfigStorage()),
-                json.toString());
+        String responseContent = this.wxMpService.post(TAGS_GETIDLIST, json.toString());
 
         return WxMpGsonBuilder.create().fromJson(
                 new JsonParser().parse(responseContent).getAsJsonObject().get("tagid_list"),
                 new TypeToken<List<Long>>() {
                 }.getType());
     }
+
+    /**
+     * {"tagid":134,"openid_list":["ocYxcuAEy30bX0NXmGn4ypqx3tI0",...]}.
+     */
+    private void membersBatch(WxMpApiUrl url, Long tagId, Collection<String> openids) throws WxErrorException {
+        StringWriter out = new StringWriter(openids.size() * 32 + 32);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject().name("tagid").value(tagId).name("openid_list").beginArray();
+            for (String openid : openids) {
+                writer.value(openid);
+            }
+            writer.endArray().endObject();
+        }
+        catch (IOException e) {
+            // StringWriter不会抛出IOException
+            throw new IllegalStateException(e);
+        }
+        String responseContent = this.wxMpService.post(url, out.toString());
+        if (StringUtils.isEmpty(responseContent)) {
+            // 网络异常时返回空串，按-1处理以便重试
+            throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg("批量修改标签失败，未获取到响应").build());
+        }
+        WxError wxError = WxError.fromJson(responseContent, WxType.MP);
+        if (wxError.getErrorCode() != 0) {
+            throw new WxErrorException(wxError);
+        }
+    }
+
+    private WxMpBatchTaggingResult dispatchWithDefaults(WxMpApiUrl url, Long tagId, Collection<String> openids) {
+        ThreadPoolExecutor executor = WxMpServiceExecutors.newDaemonPool("wx-batch-tagging-", DEFAULT_PARALLELISM);
+        try {
+            return this.dispatch(url, tagId, openids.iterator(), executor, DEFAULT_PARALLELISM,
+                    DEFAULT_PERMITS_PER_SECOND);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 按50个一组切分，信号量限制在途组数，全部完成后返回.
+     */
+    private WxMpBatchTaggingResult dispatch(WxMpApiUrl url, Long tagId, Iterator<String> openids, Executor executor,
+            int parallelism, double permitsPerSecond) {
+        Executor boundExecutor = WxMpServiceExecutors.bindCurrentAccount(this.wxMpService, executor);
+        RateLimiter rateLimiter = RateLimiter.create(permitsPerSecond);
+        Semaphore inFlight = new Semaphore(parallelism);
+        AtomicLong succeeded = new AtomicLong();
+        AtomicLong requests = new AtomicLong();
+        Queue<WxMpBatchTaggingResult.FailedChunk> failures = new ConcurrentLinkedQueue<>();
+        long total = 0;
+        try {
+            while (openids.hasNext()) {
+                List<String> chunk = new ArrayList<>(MEMBERS_BATCH_SIZE);
+                while (chunk.size() < MEMBERS_BATCH_SIZE && openids.hasNext()) {
+                    chunk.add(openids.next());
+                }
+                total += chunk.size();
+                inFlight.acquireUninterruptibly();
+                try {
+                    boundExecutor.execute(() -> {
+                        try {
+                            WxError error = this.membersBatchWithRetry(url, tagId, chunk, rateLimiter, requests);
+                            if (error == null) {
+                                succeeded.addAndGet(chunk.size());
+                            }
+                            else {
+                                failures.add(new WxMpBatchTaggingResult.FailedChunk(chunk, error));
+                            }
+                        }
+                        finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+                catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        }
+        finally {
+            // 等待已提交的组全部完成
+            inFlight.acquireUninterruptibly(parallelism);
+        }
+
+        WxMpBatchTaggingResult result = new WxMpBatchTaggingResult();
+        result.setTotal(total);
+        result.setSucceeded(succeeded.get());
+        result.setRequests(requests.get());
+        result.getFailures().addAll(failures);
+        return result;
+    }
+
+    /**
+     * @return 成功时返回null，否则返回最后一次的错误
+     */
+    private WxError membersBatchWithRetry(WxMpApiUrl url, Long tagId, List<String> chunk, RateLimiter rateLimiter,
+            AtomicLong requests) {
+        for (int attempt = 0; ; attempt++) {
+            rateLimiter.acquire();
+            requests.incrementAndGet();
+            try {
+                this.membersBatch(url, tagId, chunk);
+                return null;
+            }
+            catch (WxErrorException e) {
+                if (attempt >= MAX_RETRIES || !RETRYABLE_ERROR_CODES.contains(e.getError().getErrorCode())) {
+                    return e.getError();
+                }
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MILLIS << attempt);
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return e.getError();
+                }
+            }
+            catch (RuntimeException e) {
+                log.warn("批量{}标签失败，tagId={}", url == TAGS_MEMBERS_BATCHTAGGING ? "打" : "取消", tagId, e);
+                return WxError.builder().errorCode(-1).errorMsg(String.valueOf(e.getMessage())).build();
+            }
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package com.wyb.mp.bean.card;
+
+import java.io.Serializable;
+
+import com.google.gson.JsonObject;
+
+import lombok.Data;
+
+/**
+ * <pre>
+ * 卡券签名，用于JS-SDK的addCard/chooseCard
+ * 签名参数：api_ticket、timestamp、nonce_str、card_id、code、openid的值按字典序排序后直接拼接，再做sha1
+ * 详情请见：https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1421141115 附录4
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpCardApiSignature implements Serializable {
+    private static final long serialVersionUID = 2396474413604553513L;
+
+    private String appId;
+
+    private String cardId;
+
+    /**
+     * 指定的卡券code，非自定义code的卡券为null.
+     */
+    private String code;
+
+    /**
+     * 指定领取者的openid，不指定时为null.
+     */
+    private String openId;
+
+    private long timestamp;
+
+    private String nonceStr;
+
+    private String signature;
+
+    /**
+     * addCard接口cardList中的cardExt，是一个JSON字符串.
+     */
+    public String toCardExt() {
+        JsonObject cardExt = new JsonObject();
+        if (this.code != null) {
+            cardExt.addProperty("code", this.code);
+        }
+        if (this.openId != null) {
+            cardExt.addProperty("openid", this.openId);
+        }
+        cardExt.addProperty("timestamp", String.valueOf(this.timestamp));
+        cardExt.addProperty("nonce_str", this.nonceStr);
+        cardExt.addProperty("signature", this.signature);
+        return cardExt.toString();
+    }
+}
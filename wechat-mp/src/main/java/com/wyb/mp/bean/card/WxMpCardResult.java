@@ -0,0 +1,70 @@
+package com.wyb.mp.bean.card;
+
+import java.io.Serializable;
+
+import com.google.gson.annotations.SerializedName;
+import com.wyb.mp.util.json.WxMpGsonBuilder;
+
+import lombok.Data;
+
+/**
+ * <pre>
+ * 查询code和核销code接口的返回结果
+ * 核销接口只返回openid和card.card_id
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpCardResult implements Serializable {
+    private static final long serialVersionUID = -7950878428289035637L;
+
+    /**
+     * 用户openid.
+     */
+    @SerializedName("openid")
+    private String openId;
+
+    @SerializedName("card")
+    private WxMpCard card;
+
+    /**
+     * 是否可以核销，true为可以核销，false为不可核销.
+     */
+    @SerializedName("can_consume")
+    private Boolean canConsume;
+
+    /**
+     * 当前code对应卡券的状态：NORMAL 正常，CONSUMED 已核销，EXPIRE 已过期，GIFTING 转赠中，
+     * GIFT_TIMEOUT 转赠超时，DELETE 已删除，UNAVAILABLE 已失效.
+     */
+    @SerializedName("user_card_status")
+    private String userCardStatus;
+
+    public static WxMpCardResult fromJson(String json) {
+        return WxMpGsonBuilder.create().fromJson(json, WxMpCardResult.class);
+    }
+
+    @Override
+    public String toString() {
+        return WxMpGsonBuilder.create().toJson(this);
+    }
+
+    @Data
+    public static class WxMpCard implements Serializable {
+        private static final long serialVersionUID = 9084815406402393447L;
+
+        @SerializedName("card_id")
+        private String cardId;
+        /**
+         * 起始使用时间，unix秒.
+         */
+        @SerializedName("begin_time")
+        private Long beginTime;
+        /**
+         * 结束时间，unix秒.
+         */
+        @SerializedName("end_time")
+        private Long endTime;
+    }
+}
@@ -0,0 +1,46 @@
+package com.wyb.mp.bean.kefu;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import com.wyb.common.exception.WxError;
+
+/**
+ * <pre>
+ * 批量发送客服消息的结果
+ * 超过48小时互动时限的消息计入outsideWindow，不计入failures
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpKefuBatchResult implements Serializable {
+    private static final long serialVersionUID = -6154043541208167391L;
+
+    private long total;
+    private long succeeded;
+    /**
+     * 因用户超过48小时未互动而未发送或发送被拒的消息数.
+     */
+    private long outsideWindow;
+    private List<Failure> failures = new ArrayList<>();
+
+    public boolean isSuccess() {
+        return this.failures.isEmpty() && this.outsideWindow == 0;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Failure implements Serializable {
+        private static final long serialVersionUID = 2270518356632406021L;
+
+        private WxMpKefuMessage message;
+        private WxError error;
+    }
+}
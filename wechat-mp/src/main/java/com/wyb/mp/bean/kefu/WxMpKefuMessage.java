@@ -0,0 +1,261 @@
+package com.wyb.mp.bean.kefu;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Data;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.wyb.common.api.WxConsts;
+
+/**
+ * <pre>
+ * 客服消息
+ * 详情请见：https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1421140547
+ * 用对应类型的构造器创建：
+ *  WxMpKefuMessage.TEXT().toUser(openid).content("你好").build();
+ *  WxMpKefuMessage.IMAGE().toUser(openid).mediaId(mediaId).build();
+ *  WxMpKefuMessage.NEWS().toUser(openid).addArticle(article).build();
+ *  WxMpKefuMessage.MINIPROGRAMPAGE().toUser(openid).title("标题").appId(appId).pagePath(path)
+ *    .thumbMediaId(thumbMediaId).build();
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpKefuMessage implements Serializable {
+    private static final long serialVersionUID = -3627435180928374157L;
+
+    private String toUser;
+    private String msgType;
+    private String content;
+    private String mediaId;
+    private List<WxArticle> articles = new ArrayList<>();
+    private String title;
+    private String appId;
+    private String pagePath;
+    private String thumbMediaId;
+    /**
+     * 以某个客服帐号发送，为空时不指定.
+     */
+    private String kfAccount;
+
+    public static TextBuilder TEXT() {
+        return new TextBuilder();
+    }
+
+    public static ImageBuilder IMAGE() {
+        return new ImageBuilder();
+    }
+
+    public static NewsBuilder NEWS() {
+        return new NewsBuilder();
+    }
+
+    public static MiniProgramPageBuilder MINIPROGRAMPAGE() {
+        return new MiniProgramPageBuilder();
+    }
+
+    /**
+     * <pre>
+     * 请求报文，如：
+     * {"touser":"OPENID","msgtype":"text","text":{"content":"Hello World"},"customservice":{"kf_account":"test1@kftest"}}
+     * </pre>
+     */
+    public String toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("touser", this.toUser);
+        json.addProperty("msgtype", this.msgType);
+        JsonObject body = new JsonObject();
+        switch (this.msgType) {
+            case WxConsts.KefuMsgType.TEXT:
+                body.addProperty("content", this.content);
+                break;
+            case WxConsts.KefuMsgType.IMAGE:
+                body.addProperty("media_id", this.mediaId);
+                break;
+            case WxConsts.KefuMsgType.NEWS:
+                JsonArray articles = new JsonArray();
+                for (WxArticle article : this.articles) {
+                    JsonObject item = new JsonObject();
+                    item.addProperty("title", article.getTitle());
+                    item.addProperty("description", article.getDescription());
+                    item.addProperty("url", article.getUrl());
+                    item.addProperty("picurl", article.getPicUrl());
+                    articles.add(item);
+                }
+                body.add("articles", articles);
+                break;
+            case WxConsts.KefuMsgType.MINIPROGRAMPAGE:
+                body.addProperty("title", this.title);
+                body.addProperty("appid", this.appId);
+                body.addProperty("pagepath", this.pagePath);
+                body.addProperty("thumb_media_id", this.thumbMediaId);
+                break;
+            default:
+                throw new IllegalStateException("不支持的客服消息类型: " + this.msgType);
+        }
+        json.add(this.msgType, body);
+        if (StringUtils.isNotBlank(this.kfAccount)) {
+            JsonObject customService = new JsonObject();
+            customService.addProperty("kf_account", this.kfAccount);
+            json.add("customservice", customService);
+        }
+        return json.toString();
+    }
+
+    /**
+     * 图文消息中的文章，点击跳转到外链.
+     */
+    @Data
+    public static class WxArticle implements Serializable {
+        private static final long serialVersionUID = 5145137235440507379L;
+
+        private String title;
+        private String description;
+        private String url;
+        private String picUrl;
+    }
+
+    /**
+     * 各类型构造器的公共部分.
+     */
+    @SuppressWarnings("unchecked")
+    public abstract static class BaseBuilder<T extends BaseBuilder<T>> {
+        protected String msgType;
+        protected String toUser;
+        protected String kfAccount;
+
+        public T toUser(String toUser) {
+            this.toUser = toUser;
+            return (T) this;
+        }
+
+        public T kfAccount(String kfAccount) {
+            this.kfAccount = kfAccount;
+            return (T) this;
+        }
+
+        public WxMpKefuMessage build() {
+            if (StringUtils.isBlank(this.toUser)) {
+                throw new IllegalArgumentException("客服消息缺少touser");
+            }
+            WxMpKefuMessage message = new WxMpKefuMessage();
+            message.setMsgType(this.msgType);
+            message.setToUser(this.toUser);
+            message.setKfAccount(this.kfAccount);
+            return message;
+        }
+    }
+
+    public static final class TextBuilder extends BaseBuilder<TextBuilder> {
+        private String content;
+
+        private TextBuilder() {
+            this.msgType = WxConsts.KefuMsgType.TEXT;
+        }
+
+        public TextBuilder content(String content) {
+            this.content = content;
+            return this;
+        }
+
+        @Override
+        public WxMpKefuMessage build() {
+            WxMpKefuMessage message = super.build();
+            message.setContent(this.content);
+            return message;
+        }
+    }
+
+    public static final class ImageBuilder extends BaseBuilder<ImageBuilder> {
+        private String mediaId;
+
+        private ImageBuilder() {
+            this.msgType = WxConsts.KefuMsgType.IMAGE;
+        }
+
+        public ImageBuilder mediaId(String mediaId) {
+            this.mediaId = mediaId;
+            return this;
+        }
+
+        @Override
+        public WxMpKefuMessage build() {
+            WxMpKefuMessage message = super.build();
+            message.setMediaId(this.mediaId);
+            return message;
+        }
+    }
+
+    /**
+     * 目前微信只允许发送1条图文，多于1条时接口会报错.
+     */
+    public static final class NewsBuilder extends BaseBuilder<NewsBuilder> {
+        private final List<WxArticle> articles = new ArrayList<>();
+
+        private NewsBuilder() {
+            this.msgType = WxConsts.KefuMsgType.NEWS;
+        }
+
+        public NewsBuilder addArticle(WxArticle article) {
+            this.articles.add(article);
+            return this;
+        }
+
+        @Override
+        public WxMpKefuMessage build() {
+            WxMpKefuMessage message = super.build();
+            message.setArticles(new ArrayList<>(this.articles));
+            return message;
+        }
+    }
+
+    /**
+     * 小程序卡片，要求小程序与公众号已关联.
+     */
+    public static final class MiniProgramPageBuilder extends BaseBuilder<MiniProgramPageBuilder> {
+        private String title;
+        private String appId;
+        private String pagePath;
+        private String thumbMediaId;
+
+        private MiniProgramPageBuilder() {
+            this.msgType = WxConsts.KefuMsgType.MINIPROGRAMPAGE;
+        }
+
+        public MiniProgramPageBuilder title(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public MiniProgramPageBuilder appId(String appId) {
+            this.appId = appId;
+            return this;
+        }
+
+        public MiniProgramPageBuilder pagePath(String pagePath) {
+            this.pagePath = pagePath;
+            return this;
+        }
+
+        public MiniProgramPageBuilder thumbMediaId(String thumbMediaId) {
+            this.thumbMediaId = thumbMediaId;
+            return this;
+        }
+
+        @Override
+        public WxMpKefuMessage build() {
+            WxMpKefuMessage message = super.build();
+            message.setTitle(this.title);
+            message.setAppId(this.appId);
+            message.setPagePath(this.pagePath);
+            message.setThumbMediaId(this.thumbMediaId);
+            return message;
+        }
+    }
+}
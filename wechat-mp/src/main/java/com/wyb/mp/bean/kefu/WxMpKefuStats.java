@@ -0,0 +1,40 @@
+package com.wyb.mp.bean.kefu;
+
+import java.io.Serializable;
+
+import lombok.Data;
+
+/**
+ * <pre>
+ * 客服消息发送统计，自服务创建起累计
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpKefuStats implements Serializable {
+    private static final long serialVersionUID = 8851003917260341702L;
+
+    /**
+     * 提交的消息数.
+     */
+    private long submitted;
+    private long sent;
+    private long failed;
+    /**
+     * 超过48小时互动时限的消息数，含本地拦截的和微信返回45015的.
+     */
+    private long outsideWindow;
+    /**
+     * 已提交但还未发送完成的消息数.
+     */
+    private long pending;
+    /**
+     * 最近60秒发送成功的消息数.
+     */
+    private long sentLastMinute;
+
+    public double getSentPerSecond() {
+        return this.sentLastMinute / 60.0;
+    }
+}
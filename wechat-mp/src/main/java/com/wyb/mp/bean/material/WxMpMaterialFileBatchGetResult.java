@@ -0,0 +1,55 @@
+package com.wyb.mp.bean.material;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+import lombok.Data;
+
+import com.wyb.mp.util.json.WxMpGsonBuilder;
+
+/**
+ * <pre>
+ * 分页获取图片、语音、视频素材列表的结果
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpMaterialFileBatchGetResult implements Serializable {
+    private static final long serialVersionUID = -560388368297267884L;
+
+    /**
+     * 该类型的素材的总数.
+     */
+    private int totalCount;
+    /**
+     * 本次调用获取的素材的数量.
+     */
+    private int itemCount;
+    private List<WxMaterialFileBatchGetNewsItem> items;
+
+    public static WxMpMaterialFileBatchGetResult fromJson(String json) {
+        return WxMpGsonBuilder.create().fromJson(json, WxMpMaterialFileBatchGetResult.class);
+    }
+
+    @Override
+    public String toString() {
+        return WxMpGsonBuilder.create().toJson(this);
+    }
+
+    @Data
+    public static class WxMaterialFileBatchGetNewsItem implements Serializable {
+        private static final long serialVersionUID = -2482475442017889402L;
+
+        private String mediaId;
+        private Date updateTime;
+        private String name;
+        private String url;
+
+        @Override
+        public String toString() {
+            return WxMpGsonBuilder.create().toJson(this);
+        }
+    }
+}
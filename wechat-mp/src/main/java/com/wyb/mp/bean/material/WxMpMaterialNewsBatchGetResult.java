@@ -0,0 +1,54 @@
+package com.wyb.mp.bean.material;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+import lombok.Data;
+
+import com.wyb.mp.util.json.WxMpGsonBuilder;
+
+/**
+ * <pre>
+ * 分页获取图文素材列表的结果
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpMaterialNewsBatchGetResult implements Serializable {
+    private static final long serialVersionUID = -1617952797921001666L;
+
+    /**
+     * 图文素材的总数.
+     */
+    private int totalCount;
+    /**
+     * 本次调用获取的素材的数量.
+     */
+    private int itemCount;
+    private List<WxMaterialNewsBatchGetNewsItem> items;
+
+    public static WxMpMaterialNewsBatchGetResult fromJson(String json) {
+        return WxMpGsonBuilder.create().fromJson(json, WxMpMaterialNewsBatchGetResult.class);
+    }
+
+    @Override
+    public String toString() {
+        return WxMpGsonBuilder.create().toJson(this);
+    }
+
+    @Data
+    public static class WxMaterialNewsBatchGetNewsItem implements Serializable {
+        private static final long serialVersionUID = -6226834917405541618L;
+
+        private String mediaId;
+        private Date updateTime;
+        private WxMpMaterialNews content;
+
+        @Override
+        public String toString() {
+            return WxMpGsonBuilder.create().toJson(this);
+        }
+    }
+}
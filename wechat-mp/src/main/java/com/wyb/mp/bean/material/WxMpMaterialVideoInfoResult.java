@@ -0,0 +1,39 @@
+package com.wyb.mp.bean.material;
+
+import java.io.Serializable;
+
+import lombok.Data;
+
+import com.google.gson.annotations.SerializedName;
+import com.wyb.mp.util.json.WxMpGsonBuilder;
+
+/**
+ * <pre>
+ * 视频永久素材的信息和下载地址
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpMaterialVideoInfoResult implements Serializable {
+    private static final long serialVersionUID = 1269131745333792202L;
+
+    @SerializedName("title")
+    private String title;
+    @SerializedName("description")
+    private String description;
+    /**
+     * 视频下载地址，不需要access_token.
+     */
+    @SerializedName("down_url")
+    private String downUrl;
+
+    public static WxMpMaterialVideoInfoResult fromJson(String json) {
+        return WxMpGsonBuilder.create().fromJson(json, WxMpMaterialVideoInfoResult.class);
+    }
+
+    @Override
+    public String toString() {
+        return WxMpGsonBuilder.create().toJson(this);
+    }
+}
@@ -0,0 +1,45 @@
+package com.wyb.mp.bean.menu;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * <pre>
+ * 菜单发布的结果，记录实际调用了哪些修改接口
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpMenuDeployResult implements Serializable {
+  private static final long serialVersionUID = 3650527493178025519L;
+
+  /**
+   * 是否重新创建了默认菜单.
+   */
+  private boolean defaultMenuChanged;
+  /**
+   * 目标中没有默认菜单时删除了全部菜单，此时原有个性化菜单也都在deletedMenuIds中.
+   */
+  private boolean menuDeleted;
+  /**
+   * 保留不变的个性化菜单的menuid.
+   */
+  private List<String> unchangedMenuIds = new ArrayList<>();
+  /**
+   * 删除的个性化菜单的menuid.
+   */
+  private List<String> deletedMenuIds = new ArrayList<>();
+  /**
+   * 新建的个性化菜单的menuid，与目标中需要新建的个性化菜单顺序一致.
+   */
+  private List<String> createdMenuIds = new ArrayList<>();
+
+  public boolean isChanged() {
+    return this.defaultMenuChanged || this.menuDeleted || !this.deletedMenuIds.isEmpty()
+      || !this.createdMenuIds.isEmpty();
+  }
+}
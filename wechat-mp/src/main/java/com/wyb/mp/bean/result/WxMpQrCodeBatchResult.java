@@ -0,0 +1,37 @@
+package com.wyb.mp.bean.result;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.wyb.common.exception.WxError;
+
+import lombok.Data;
+
+/**
+ * <pre>
+ * 批量生成二维码ticket的结果
+ * tickets按提交的场景值顺序排列，失败的场景值及其错误记录在failures中，可据此单独重做
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpQrCodeBatchResult implements Serializable {
+    private static final long serialVersionUID = -1406913874553402125L;
+
+    /**
+     * 提交的场景值个数，重复的只算一次.
+     */
+    private long total;
+    /**
+     * 实际调用接口的次数，其余来自缓存.
+     */
+    private long requests;
+    private Map<String, WxMpQrCodeTicket> tickets = new LinkedHashMap<>();
+    private Map<String, WxError> failures = new LinkedHashMap<>();
+
+    public boolean isSuccess() {
+        return this.failures.isEmpty();
+    }
+}
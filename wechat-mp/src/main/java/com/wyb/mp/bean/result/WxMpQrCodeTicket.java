@@ -0,0 +1,46 @@
+package com.wyb.mp.bean.result;
+
+import java.io.Serializable;
+
+import com.google.gson.annotations.SerializedName;
+import com.wyb.mp.util.json.WxMpGsonBuilder;
+
+import lombok.Data;
+
+/**
+ * <pre>
+ * 二维码ticket
+ * 详情请见：https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1443433542
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpQrCodeTicket implements Serializable {
+    private static final long serialVersionUID = 5777119669111011584L;
+
+    /**
+     * 获取的二维码ticket，凭借此ticket可以在有效时间内换取二维码.
+     */
+    @SerializedName("ticket")
+    private String ticket;
+    /**
+     * 二维码的有效时间，以秒为单位，永久二维码为null.
+     */
+    @SerializedName("expire_seconds")
+    private Integer expireSeconds;
+    /**
+     * 二维码图片解析后的地址，开发者可根据该地址自行生成需要的二维码图片.
+     */
+    @SerializedName("url")
+    private String url;
+
+    public static WxMpQrCodeTicket fromJson(String json) {
+        return WxMpGsonBuilder.create().fromJson(json, WxMpQrCodeTicket.class);
+    }
+
+    @Override
+    public String toString() {
+        return WxMpGsonBuilder.create().toJson(this);
+    }
+}
@@ -0,0 +1,44 @@
+package com.wyb.mp.bean.result;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+import com.wyb.mp.util.json.WxMpGsonBuilder;
+
+/**
+ * <pre>
+ * 关注者列表
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpUserList implements Serializable {
+    private static final long serialVersionUID = 1389073042674901032L;
+
+    /**
+     * 关注该公众账号的总用户数.
+     */
+    private long total = -1;
+    /**
+     * 拉取的openid个数，最大值为10000.
+     */
+    private int count = -1;
+    private List<String> openids = new ArrayList<>();
+    /**
+     * 拉取列表的最后一个用户的openid.
+     */
+    private String nextOpenid;
+
+    public static WxMpUserList fromJson(String json) {
+        return WxMpGsonBuilder.create().fromJson(json, WxMpUserList.class);
+    }
+
+    @Override
+    public String toString() {
+        return WxMpGsonBuilder.create().toJson(this);
+    }
+}
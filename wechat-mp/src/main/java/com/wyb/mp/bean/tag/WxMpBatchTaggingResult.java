@@ -0,0 +1,52 @@
+package com.wyb.mp.bean.tag;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import com.wyb.common.exception.WxError;
+
+/**
+ * <pre>
+ * 大批量打标签/取消标签的结果
+ * 按50个openid一组调用接口，重试后仍失败的组及其错误记录在failures中，可据此单独重做
+ * </pre>
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpBatchTaggingResult implements Serializable {
+    private static final long serialVersionUID = 5471526813349081215L;
+
+    /**
+     * 提交的openid总数.
+     */
+    private long total;
+    /**
+     * 成功的openid数.
+     */
+    private long succeeded;
+    /**
+     * 接口调用次数，含重试.
+     */
+    private long requests;
+    private List<FailedChunk> failures = new ArrayList<>();
+
+    public boolean isSuccess() {
+        return this.failures.isEmpty();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FailedChunk implements Serializable {
+        private static final long serialVersionUID = -1978343325170863146L;
+
+        private List<String> openids;
+        private WxError error;
+    }
+}
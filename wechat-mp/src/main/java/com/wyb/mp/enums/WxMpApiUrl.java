@@ -61,7 +61,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
 
     }
@@ -121,7 +121,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -146,7 +146,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -180,7 +180,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -202,7 +202,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -227,7 +227,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -247,7 +247,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -278,7 +278,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -300,7 +300,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -337,7 +337,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -363,7 +363,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -386,7 +386,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -403,10 +403,10 @@ public interface WxMpApiUrl {
         @Override
         public String getUrl(WxMpConfigStorage config) {
             if (config == null) {
-                return buildUrl(null, prefix, path);
+                return WxMpApiUrlResolver.resolve(this, null, prefix, path);
             }
 
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -455,7 +455,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -519,7 +519,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -578,7 +578,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -609,7 +609,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -652,7 +652,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -691,7 +691,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -722,7 +722,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -750,7 +750,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 
@@ -766,7 +766,7 @@ public interface WxMpApiUrl {
 
         @Override
         public String getUrl(WxMpConfigStorage config) {
-            return buildUrl(config.getHostConfig(), prefix, path);
+            return WxMpApiUrlResolver.resolve(this, config.getHostConfig(), prefix, path);
         }
     }
 }
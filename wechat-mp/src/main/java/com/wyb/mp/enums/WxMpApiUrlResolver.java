@@ -0,0 +1,75 @@
+package com.wyb.mp.enums;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.wyb.mp.bean.WxMpHostConfig;
+
+/**
+ * <pre>
+ * 缓存每个接口地址常量解析后的完整地址，避免每次请求都比较前缀、拼接字符串.
+ * 按WxMpHostConfig实例分别缓存，不同公众号使用不同的WxMpHostConfig时互不覆盖；
+ * 以弱引用持有WxMpHostConfig，不再使用的配置连同其缓存一起回收。
+ * WxMpHostConfig是可变对象，每条缓存记录保存解析时的三个域名，域名被修改后下次调用会重新解析。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+final class WxMpApiUrlResolver {
+
+    /**
+     * 未设置WxMpHostConfig时使用默认域名，解析结果不会变化.
+     */
+    private static final ConcurrentMap<WxMpApiUrl, String> DEFAULT_HOSTS = new ConcurrentHashMap<>();
+
+    /**
+     * weakKeys按引用比较，与WxMpHostConfig的equals无关；value不能引用key，否则key不会被回收.
+     */
+    private static final LoadingCache<WxMpHostConfig, ConcurrentMap<WxMpApiUrl, Resolved>> BY_HOST_CONFIG =
+            CacheBuilder.newBuilder().weakKeys()
+                    .build(new CacheLoader<WxMpHostConfig, ConcurrentMap<WxMpApiUrl, Resolved>>() {
+                        @Override
+                        public ConcurrentMap<WxMpApiUrl, Resolved> load(WxMpHostConfig hostConfig) {
+                            return new ConcurrentHashMap<>();
+                        }
+                    });
+
+    private WxMpApiUrlResolver() {
+    }
+
+    static String resolve(WxMpApiUrl url, WxMpHostConfig hostConfig, String prefix, String path) {
+        if (hostConfig == null) {
+            return DEFAULT_HOSTS.computeIfAbsent(url, k -> WxMpHostConfig.buildUrl(null, prefix, path));
+        }
+        ConcurrentMap<WxMpApiUrl, Resolved> resolvedUrls = BY_HOST_CONFIG.getUnchecked(hostConfig);
+        Resolved resolved = resolvedUrls.get(url);
+        if (resolved != null && resolved.matches(hostConfig)) {
+            return resolved.url;
+        }
+        resolved = new Resolved(hostConfig, WxMpHostConfig.buildUrl(hostConfig, prefix, path));
+        resolvedUrls.put(url, resolved);
+        return resolved.url;
+    }
+
+    private static final class Resolved {
+        private final String apiHost;
+        private final String mpHost;
+        private final String openHost;
+        private final String url;
+
+        Resolved(WxMpHostConfig hostConfig, String url) {
+            this.apiHost = hostConfig.getApiHost();
+            this.mpHost = hostConfig.getMpHost();
+            this.openHost = hostConfig.getOpenHost();
+            this.url = url;
+        }
+
+        boolean matches(WxMpHostConfig hostConfig) {
+            return hostConfig.getApiHost() == this.apiHost && hostConfig.getMpHost() == this.mpHost
+                    && hostConfig.getOpenHost() == this.openHost;
+        }
+    }
+}
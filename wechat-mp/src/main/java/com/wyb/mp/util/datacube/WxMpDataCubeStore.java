@@ -0,0 +1,93 @@
+package com.wyb.mp.util.datacube;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Locale;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.api.WxMpDataCubeService;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * <pre>
+ * 数据统计的本地存储，每个接口一个{@link WxMpDataCubeTable}文件.
+ * {@link #sync}只查询本地还没有的日期，与已有数据合并后写回，之后的查询直接读本地文件，不再调用接口。
+ *
+ *  WxMpDataCubeStore store = new WxMpDataCubeStore(wxMpService.getDataCubeService(), new File("datacube"));
+ *  WxMpDataCubeTable table = store.sync(DataCube.GET_USER_SUMMARY, LocalDate.now().minusYears(1), LocalDate.now());
+ *  long newUsers = table.sum("new_user|user_source=0", from, to);
+ *
+ * 每个公众号使用单独的目录。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpDataCubeStore {
+
+    private final WxMpDataCubeService dataCubeService;
+    private final File dir;
+
+    public WxMpDataCubeStore(WxMpDataCubeService dataCubeService, File dir) {
+        this.dataCubeService = dataCubeService;
+        this.dir = dir;
+    }
+
+    public File fileOf(WxMpApiUrl.DataCube api) {
+        return new File(this.dir, api.name().toLowerCase(Locale.ROOT) + ".dat");
+    }
+
+    /**
+     * 读取本地已有的数据，没有时返回null.
+     */
+    public WxMpDataCubeTable load(WxMpApiUrl.DataCube api) throws IOException {
+        File file = this.fileOf(api);
+        return file.exists() ? WxMpDataCubeTable.readFrom(file) : null;
+    }
+
+    /**
+     * <pre>
+     * 保证本地数据覆盖[beginDate, endDate]，返回本地的全部数据.
+     * 只查询本地数据之前和之后缺少的日期；endDate最多取到昨天。
+     * </pre>
+     */
+    public synchronized WxMpDataCubeTable sync(WxMpApiUrl.DataCube api, LocalDate beginDate, LocalDate endDate)
+            throws WxErrorException, IOException {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate end = endDate.isAfter(yesterday) ? yesterday : endDate;
+        WxMpDataCubeTable stored = this.load(api);
+        if (end.isBefore(beginDate)) {
+            return stored != null ? stored : WxMpDataCubeTable.empty(beginDate, beginDate.minusDays(1));
+        }
+
+        WxMpDataCubeTable table = stored;
+        if (table == null) {
+            table = this.dataCubeService.getTable(api, beginDate, end);
+        }
+        else {
+            if (beginDate.isBefore(table.getStartDate())) {
+                table = this.dataCubeService.getTable(api, beginDate, table.getStartDate().minusDays(1)).merge(table);
+            }
+            if (end.isAfter(table.getEndDate())) {
+                table = table.merge(this.dataCubeService.getTable(api, table.getEndDate().plusDays(1), end));
+            }
+        }
+        if (table != stored) {
+            this.save(api, table);
+        }
+        return table;
+    }
+
+    /**
+     * 先写临时文件再原子替换.
+     */
+    public void save(WxMpApiUrl.DataCube api, WxMpDataCubeTable table) throws IOException {
+        Files.createDirectories(this.dir.toPath());
+        File file = this.fileOf(api);
+        File tmp = new File(this.dir, file.getName() + ".tmp");
+        table.writeTo(tmp);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
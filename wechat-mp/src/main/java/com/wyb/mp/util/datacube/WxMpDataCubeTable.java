@@ -0,0 +1,269 @@
+package com.wyb.mp.util.datacube;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * <pre>
+ * 数据统计接口结果的列式存储：连续的一段日期，每个指标一列，每列是按天排列的long数组.
+ * 列名为 指标名|维度=取值...，如 new_user|user_source=0、int_page_read_count|ref_hour=1300，
+ * 没有维度的接口列名就是指标名。同一天同一列的多行数据求和。
+ * 未出现数据的日期为{@link #ABSENT}，与指标值为0区分。
+ *
+ * 文件格式(大端)：
+ * int 魔数 "WXDC" | int 版本 | long 起始日期的epochDay | int 天数 | int 列数
+ * 每列：UTF 列名 | long[天数] 数据
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpDataCubeTable {
+
+    /**
+     * 没有数据.
+     */
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    private static final int MAGIC = 0x57584443;
+    private static final int VERSION = 1;
+
+    /**
+     * 作为维度的字段，其余数值字段都视为指标.
+     */
+    private static final Set<String> DIMENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "user_source", "ref_hour", "msg_type", "count_interval", "share_scene", "msgid")));
+    /**
+     * 既不是维度也不是指标的字段.
+     */
+    private static final Set<String> IGNORED = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "ref_date", "title", "stat_date")));
+
+    private final LocalDate startDate;
+    private final int days;
+    private final Map<String, long[]> columns;
+
+    private WxMpDataCubeTable(LocalDate startDate, int days, Map<String, long[]> columns) {
+        this.startDate = startDate;
+        this.days = days;
+        this.columns = columns;
+    }
+
+    /**
+     * 空表，覆盖[beginDate, endDate].
+     */
+    public static WxMpDataCubeTable empty(LocalDate beginDate, LocalDate endDate) {
+        return new WxMpDataCubeTable(beginDate, daysBetween(beginDate, endDate), new TreeMap<>());
+    }
+
+    /**
+     * <pre>
+     * 把接口返回的list中的各行转换为列.
+     * ref_date不在[beginDate, endDate]内的行被忽略；嵌套的对象和数组(如getarticletotal的details)不支持，被忽略。
+     * </pre>
+     */
+    public static WxMpDataCubeTable fromRows(List<JsonObject> rows, LocalDate beginDate, LocalDate endDate) {
+        WxMpDataCubeTable table = empty(beginDate, endDate);
+        StringBuilder dimensions = new StringBuilder();
+        for (JsonObject row : rows) {
+            if (!row.has("ref_date")) {
+                continue;
+            }
+            int day = table.indexOf(LocalDate.parse(row.get("ref_date").getAsString()));
+            if (day < 0) {
+                continue;
+            }
+            dimensions.setLength(0);
+            for (Map.Entry<String, JsonElement> field : toMap(row).entrySet()) {
+                if (DIMENSIONS.contains(field.getKey()) && field.getValue().isJsonPrimitive()) {
+                    dimensions.append('|').append(field.getKey()).append('=')
+                            .append(field.getValue().getAsString());
+                }
+            }
+            for (Map.Entry<String, JsonElement> field : row.entrySet()) {
+                if (DIMENSIONS.contains(field.getKey()) || IGNORED.contains(field.getKey())
+                        || !field.getValue().isJsonPrimitive() || !field.getValue().getAsJsonPrimitive().isNumber()) {
+                    continue;
+                }
+                long[] column = table.columns.computeIfAbsent(field.getKey() + dimensions, k -> table.newColumn());
+                long value = field.getValue().getAsLong();
+                column[day] = column[day] == ABSENT ? value : column[day] + value;
+            }
+        }
+        return table;
+    }
+
+    public static WxMpDataCubeTable readFrom(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a datacube table: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported datacube table version " + version + ": " + file);
+            }
+            LocalDate startDate = LocalDate.ofEpochDay(in.readLong());
+            int days = in.readInt();
+            int count = in.readInt();
+            Map<String, long[]> columns = new TreeMap<>();
+            for (int c = 0; c < count; c++) {
+                String name = in.readUTF();
+                long[] values = new long[days];
+                for (int d = 0; d < days; d++) {
+                    values[d] = in.readLong();
+                }
+                columns.put(name, values);
+            }
+            return new WxMpDataCubeTable(startDate, days, columns);
+        }
+    }
+
+    public void writeTo(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(this.startDate.toEpochDay());
+            out.writeInt(this.days);
+            out.writeInt(this.columns.size());
+            for (Map.Entry<String, long[]> column : this.columns.entrySet()) {
+                out.writeUTF(column.getKey());
+                for (long value : column.getValue()) {
+                    out.writeLong(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 合并两个表，覆盖两者日期的并集，中间不能有空缺；other覆盖的日期以other为准.
+     */
+    public WxMpDataCubeTable merge(WxMpDataCubeTable other) {
+        if (this.getEndDate().plusDays(1).isBefore(other.startDate)
+                || other.getEndDate().plusDays(1).isBefore(this.startDate)) {
+            throw new IllegalArgumentException("日期不连续: " + this.startDate + "~" + this.getEndDate() + ", "
+                    + other.startDate + "~" + other.getEndDate());
+        }
+        WxMpDataCubeTable merged = empty(min(this.startDate, other.startDate), max(this.getEndDate(),
+                other.getEndDate()));
+        merged.copyFrom(this);
+        int offset = merged.indexOf(other.startDate);
+        for (long[] column : merged.columns.values()) {
+            Arrays.fill(column, offset, offset + other.days, ABSENT);
+        }
+        merged.copyFrom(other);
+        return merged;
+    }
+
+    public LocalDate getStartDate() {
+        return this.startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return this.startDate.plusDays(this.days - 1L);
+    }
+
+    public int getDays() {
+        return this.days;
+    }
+
+    public boolean covers(LocalDate date) {
+        return this.indexOf(date) >= 0;
+    }
+
+    public Set<String> getColumns() {
+        return Collections.unmodifiableSet(this.columns.keySet());
+    }
+
+    /**
+     * 某列某天的值，没有数据时返回{@link #ABSENT}.
+     */
+    public long get(String column, LocalDate date) {
+        long[] values = this.columns.get(column);
+        int day = this.indexOf(date);
+        return values == null || day < 0 ? ABSENT : values[day];
+    }
+
+    /**
+     * 某列在[from, to]内有数据的各天之和.
+     */
+    public long sum(String column, LocalDate from, LocalDate to) {
+        long[] values = this.columns.get(column);
+        if (values == null) {
+            return 0;
+        }
+        int begin = (int) Math.max(from.toEpochDay() - this.startDate.toEpochDay(), 0);
+        int end = (int) Math.min(to.toEpochDay() - this.startDate.toEpochDay() + 1, this.days);
+        long sum = 0;
+        for (int d = begin; d < end; d++) {
+            if (values[d] != ABSENT) {
+                sum += values[d];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 某列的全部数据，下标为距起始日期的天数，不要修改返回的数组.
+     */
+    public long[] column(String column) {
+        return this.columns.get(column);
+    }
+
+    private void copyFrom(WxMpDataCubeTable source) {
+        int offset = this.indexOf(source.startDate);
+        for (Map.Entry<String, long[]> column : source.columns.entrySet()) {
+            long[] target = this.columns.computeIfAbsent(column.getKey(), k -> this.newColumn());
+            System.arraycopy(column.getValue(), 0, target, offset, source.days);
+        }
+    }
+
+    private long[] newColumn() {
+        long[] column = new long[this.days];
+        Arrays.fill(column, ABSENT);
+        return column;
+    }
+
+    private int indexOf(LocalDate date) {
+        long day = date.toEpochDay() - this.startDate.toEpochDay();
+        return day < 0 || day >= this.days ? -1 : (int) day;
+    }
+
+    /**
+     * [begin, end]包含的天数.
+     */
+    private static int daysBetween(LocalDate begin, LocalDate end) {
+        return (int) (end.toEpochDay() - begin.toEpochDay() + 1);
+    }
+
+    private static Map<String, JsonElement> toMap(JsonObject row) {
+        Map<String, JsonElement> map = new TreeMap<>();
+        for (Map.Entry<String, JsonElement> field : row.entrySet()) {
+            map.put(field.getKey(), field.getValue());
+        }
+        return map;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
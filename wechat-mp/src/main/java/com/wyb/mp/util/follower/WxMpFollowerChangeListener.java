@@ -0,0 +1,22 @@
+package com.wyb.mp.util.follower;
+
+/**
+ * <pre>
+ * 关注者同步时与上一次快照比较得到的变化，按openid升序回调.
+ * 同步在回调阶段中断后重新执行时，已回调过的变化会再次回调，实现需要幂等。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public interface WxMpFollowerChangeListener {
+
+    /**
+     * 本次快照中新出现的openid.
+     */
+    void onFollow(String openid);
+
+    /**
+     * 上次快照中有、本次快照中没有的openid.
+     */
+    void onUnfollow(String openid);
+}
@@ -0,0 +1,194 @@
+package com.wyb.mp.util.follower;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <pre>
+ * 关注者快照文件：按字节序升序排列、去重的定长openid记录，每条32字节，不足部分补0.
+ * 文件没有头部，记录数即文件长度/32，本类只提供顺序流式读取。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpFollowerSnapshot implements Iterator<String>, Closeable {
+
+    /**
+     * 每条openid记录的字节数，公众号openid为28个ASCII字符.
+     */
+    public static final int RECORD_SIZE = 32;
+
+    private static final int BUFFER_SIZE = RECORD_SIZE * 2048;
+
+    private final RecordReader reader;
+    private boolean ready;
+
+    private WxMpFollowerSnapshot(File file) throws IOException {
+        this.reader = new RecordReader(file);
+    }
+
+    /**
+     * 顺序读取快照文件，用完需关闭.
+     */
+    public static WxMpFollowerSnapshot open(File file) throws IOException {
+        return new WxMpFollowerSnapshot(file);
+    }
+
+    /**
+     * 快照中的openid个数，文件不存在时为0.
+     */
+    public static long count(File file) {
+        return file.length() / RECORD_SIZE;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!this.ready) {
+            try {
+                this.ready = this.reader.next();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this.ready;
+    }
+
+    @Override
+    public String next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        this.ready = false;
+        return decode(this.reader.record);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    static void encode(String openid, byte[] record) {
+        int length = openid.length();
+        if (length > RECORD_SIZE) {
+            throw new IllegalArgumentException("openid longer than " + RECORD_SIZE + ": " + openid);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = openid.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                throw new IllegalArgumentException("openid is not ascii: " + openid);
+            }
+            record[i] = (byte) c;
+        }
+        for (int i = length; i < RECORD_SIZE; i++) {
+            record[i] = 0;
+        }
+    }
+
+    static String decode(byte[] record) {
+        int length = 0;
+        while (length < RECORD_SIZE && record[length] != 0) {
+            length++;
+        }
+        return new String(record, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 记录都是ASCII，按字节比较与按字符串比较结果一致.
+     */
+    static int compare(byte[] a, byte[] b) {
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            int diff = a[i] - b[i];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 顺序读取定长记录，文件不存在时视为空文件.
+     */
+    static class RecordReader implements Closeable {
+        final byte[] record = new byte[RECORD_SIZE];
+        private final InputStream in;
+
+        RecordReader(File file) throws IOException {
+            this.in = file.exists() ? new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE) : null;
+        }
+
+        /**
+         * 读取下一条记录到{@link #record}，没有更多记录时返回false.
+         */
+        boolean next() throws IOException {
+            if (this.in == null) {
+                return false;
+            }
+            int read = 0;
+            while (read < RECORD_SIZE) {
+                int n = this.in.read(this.record, read, RECORD_SIZE - read);
+                if (n < 0) {
+                    if (read == 0) {
+                        return false;
+                    }
+                    throw new EOFException("truncated openid record");
+                }
+                read += n;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.in != null) {
+                this.in.close();
+            }
+        }
+    }
+
+    /**
+     * 顺序写出定长记录，关闭时刷盘.
+     */
+    static class RecordWriter implements Closeable {
+        private final FileOutputStream file;
+        private final OutputStream out;
+        private long count;
+
+        RecordWriter(File file) throws IOException {
+            this.file = new FileOutputStream(file);
+            this.out = new BufferedOutputStream(this.file, BUFFER_SIZE);
+        }
+
+        void write(byte[] record) throws IOException {
+            this.out.write(record, 0, RECORD_SIZE);
+            this.count++;
+        }
+
+        long getCount() {
+            return this.count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.out.flush();
+                this.file.getFD().sync();
+            }
+            finally {
+                this.out.close();
+            }
+        }
+    }
+}
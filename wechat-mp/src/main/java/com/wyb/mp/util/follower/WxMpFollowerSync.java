@@ -0,0 +1,291 @@
+package com.wyb.mp.util.follower;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.bean.result.WxMpUserList;
+
+/**
+ * <pre>
+ * 关注者列表全量同步.
+ * 逐页拉取关注者openid(每页最多10000个)，每页排序后写成一个定长记录的有序小文件，
+ * 写完一页即在检查点中记下next_openid，中断后再次调用{@link #sync}会从检查点继续拉取。
+ * 全部拉完后多路归并成新的{@link WxMpFollowerSnapshot}，再与上一次快照做归并比较得出关注/取关变化。
+ * 整个过程只按顺序读写文件，堆内存只需一页openid和归并时每路一条记录，与关注者总数无关。
+ *
+ * 工作目录下的文件：
+ * snapshot.dat   上一次完成的快照
+ * checkpoint     本次同步的进度，同步完成后删除
+ * run-*.dat      本次同步已拉取的页
+ * 每个公众号使用单独的工作目录，同一目录同一时间只能有一个同步在执行。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpFollowerSync {
+    private static final Logger log = LoggerFactory.getLogger(WxMpFollowerSync.class);
+
+    /**
+     * 一次归并最多同时打开的文件数，超过时先分组归并成中间文件.
+     */
+    private static final int MERGE_FAN_IN = 64;
+
+    private final WxMpService wxMpService;
+    private final File workDir;
+
+    public WxMpFollowerSync(WxMpService wxMpService, File workDir) {
+        this.wxMpService = wxMpService;
+        this.workDir = workDir;
+    }
+
+    /**
+     * 上一次同步完成的快照文件.
+     */
+    public File getSnapshotFile() {
+        return new File(this.workDir, "snapshot.dat");
+    }
+
+    /**
+     * 同步关注者列表，没有上一次快照时所有关注者都会回调onFollow.
+     *
+     * @param listener 关注/取关变化的回调，可为null
+     */
+    public synchronized WxMpFollowerSyncResult sync(WxMpFollowerChangeListener listener)
+            throws WxErrorException, IOException {
+        Files.createDirectories(this.workDir.toPath());
+        WxMpFollowerSyncResult result = new WxMpFollowerSyncResult();
+        Checkpoint checkpoint = this.readCheckpoint();
+        if (checkpoint != null) {
+            result.setResumed(true);
+            log.info("从检查点继续同步关注者，已拉取{}页，next_openid={}", checkpoint.runs, checkpoint.cursor);
+        }
+        else {
+            checkpoint = new Checkpoint();
+        }
+        this.deleteRuns(checkpoint.runs);
+
+        while (!checkpoint.complete) {
+            WxMpUserList page = this.wxMpService.getUserService().userList(checkpoint.cursor);
+            result.setPages(result.getPages() + 1);
+            if (page.getOpenids() != null && !page.getOpenids().isEmpty()) {
+                writeRun(this.runFile(checkpoint.runs), page.getOpenids());
+                checkpoint.runs++;
+            }
+            checkpoint.cursor = page.getNextOpenid();
+            checkpoint.complete = page.getCount() <= 0 || StringUtils.isBlank(page.getNextOpenid());
+            this.writeCheckpoint(checkpoint);
+        }
+
+        List<File> runs = new ArrayList<>(checkpoint.runs);
+        for (int i = 0; i < checkpoint.runs; i++) {
+            runs.add(this.runFile(i));
+        }
+        File newSnapshot = new File(this.workDir, "snapshot.new");
+        result.setTotal(this.mergeAll(runs, newSnapshot));
+        diff(this.getSnapshotFile(), newSnapshot, listener, result);
+
+        Files.move(newSnapshot.toPath(), this.getSnapshotFile().toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        for (File run : runs) {
+            Files.deleteIfExists(run.toPath());
+        }
+        Files.deleteIfExists(this.checkpointFile());
+        return result;
+    }
+
+    private static void writeRun(File file, List<String> openids) throws IOException {
+        List<String> sorted = new ArrayList<>(openids);
+        Collections.sort(sorted);
+        byte[] record = new byte[WxMpFollowerSnapshot.RECORD_SIZE];
+        try (WxMpFollowerSnapshot.RecordWriter writer = new WxMpFollowerSnapshot.RecordWriter(file)) {
+            for (String openid : sorted) {
+                WxMpFollowerSnapshot.encode(openid, record);
+                writer.write(record);
+            }
+        }
+    }
+
+    /**
+     * 多路归并所有页，去掉跨页重复的openid，返回记录数.
+     */
+    private long mergeAll(List<File> runs, File target) throws IOException {
+        List<File> inputs = runs;
+        List<File> intermediates = new ArrayList<>();
+        int pass = 0;
+        while (inputs.size() > MERGE_FAN_IN) {
+            List<File> outputs = new ArrayList<>();
+            for (int from = 0; from < inputs.size(); from += MERGE_FAN_IN) {
+                File output = new File(this.workDir, "merge-" + pass + "-" + outputs.size() + ".dat");
+                merge(inputs.subList(from, Math.min(from + MERGE_FAN_IN, inputs.size())), output);
+                outputs.add(output);
+            }
+            for (File file : intermediates) {
+                Files.deleteIfExists(file.toPath());
+            }
+            intermediates = outputs;
+            inputs = outputs;
+            pass++;
+        }
+        long count = merge(inputs, target);
+        for (File file : intermediates) {
+            Files.deleteIfExists(file.toPath());
+        }
+        return count;
+    }
+
+    private static long merge(List<File> inputs, File output) throws IOException {
+        PriorityQueue<WxMpFollowerSnapshot.RecordReader> queue = new PriorityQueue<>(Math.max(inputs.size(), 1),
+                (a, b) -> WxMpFollowerSnapshot.compare(a.record, b.record));
+        byte[] last = null;
+        try (WxMpFollowerSnapshot.RecordWriter writer = new WxMpFollowerSnapshot.RecordWriter(output)) {
+            for (File input : inputs) {
+                WxMpFollowerSnapshot.RecordReader reader = new WxMpFollowerSnapshot.RecordReader(input);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+                else {
+                    reader.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                WxMpFollowerSnapshot.RecordReader reader = queue.poll();
+                if (last == null || WxMpFollowerSnapshot.compare(last, reader.record) != 0) {
+                    writer.write(reader.record);
+                    last = last == null ? reader.record.clone() : copy(reader.record, last);
+                }
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+                else {
+                    reader.close();
+                }
+            }
+            return writer.getCount();
+        }
+        finally {
+            for (WxMpFollowerSnapshot.RecordReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * 同时顺序读取新旧两个有序快照，一次遍历得出差异.
+     */
+    private static void diff(File oldSnapshot, File newSnapshot, WxMpFollowerChangeListener listener,
+            WxMpFollowerSyncResult result) throws IOException {
+        long followed = 0;
+        long unfollowed = 0;
+        try (WxMpFollowerSnapshot.RecordReader before = new WxMpFollowerSnapshot.RecordReader(oldSnapshot);
+                WxMpFollowerSnapshot.RecordReader after = new WxMpFollowerSnapshot.RecordReader(newSnapshot)) {
+            boolean hasBefore = before.next();
+            boolean hasAfter = after.next();
+            while (hasBefore || hasAfter) {
+                int cmp = !hasBefore ? 1 : !hasAfter ? -1 : WxMpFollowerSnapshot.compare(before.record, after.record);
+                if (cmp < 0) {
+                    unfollowed++;
+                    if (listener != null) {
+                        listener.onUnfollow(WxMpFollowerSnapshot.decode(before.record));
+                    }
+                    hasBefore = before.next();
+                }
+                else if (cmp > 0) {
+                    followed++;
+                    if (listener != null) {
+                        listener.onFollow(WxMpFollowerSnapshot.decode(after.record));
+                    }
+                    hasAfter = after.next();
+                }
+                else {
+                    hasBefore = before.next();
+                    hasAfter = after.next();
+                }
+            }
+        }
+        result.setFollowed(followed);
+        result.setUnfollowed(unfollowed);
+    }
+
+    private static byte[] copy(byte[] from, byte[] to) {
+        System.arraycopy(from, 0, to, 0, from.length);
+        return to;
+    }
+
+    private File runFile(int index) {
+        return new File(this.workDir, String.format("run-%05d.dat", index));
+    }
+
+    /**
+     * 删除检查点之后写了一半的页，以及上一次同步遗留的中间文件.
+     */
+    private void deleteRuns(int keep) throws IOException {
+        File[] files = this.workDir.listFiles((dir, name) -> name.startsWith("run-") || name.startsWith("merge-"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith("run-") && name.endsWith(".dat")
+                    && Integer.parseInt(name.substring(4, name.length() - 4)) < keep) {
+                continue;
+            }
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private Path checkpointFile() {
+        return new File(this.workDir, "checkpoint").toPath();
+    }
+
+    /**
+     * 检查点格式：已写出的页数 \t 是否已拉取完毕(0/1) \t next_openid.
+     */
+    private Checkpoint readCheckpoint() throws IOException {
+        Path file = this.checkpointFile();
+        if (!Files.exists(file)) {
+            return null;
+        }
+        String[] fields = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split("\t", -1);
+        if (fields.length != 3) {
+            log.warn("关注者同步检查点格式错误，重新开始同步: {}", file);
+            return null;
+        }
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.runs = Integer.parseInt(fields[0]);
+        checkpoint.complete = "1".equals(fields[1]);
+        checkpoint.cursor = fields[2].isEmpty() ? null : fields[2];
+        return checkpoint;
+    }
+
+    /**
+     * 先写临时文件再原子替换，中断时检查点要么是旧的要么是新的.
+     */
+    private void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+        Path file = this.checkpointFile();
+        Path tmp = file.resolveSibling("checkpoint.tmp");
+        String content = checkpoint.runs + "\t" + (checkpoint.complete ? "1" : "0") + "\t"
+                + StringUtils.defaultString(checkpoint.cursor);
+        Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class Checkpoint {
+        private int runs;
+        private boolean complete;
+        private String cursor;
+    }
+}
@@ -0,0 +1,30 @@
+package com.wyb.mp.util.follower;
+
+import java.io.Serializable;
+
+import lombok.Data;
+
+/**
+ * 一次关注者同步的结果.
+ *
+ * @author Kunzite
+ */
+@Data
+public class WxMpFollowerSyncResult implements Serializable {
+    private static final long serialVersionUID = -6254910377316645928L;
+
+    /**
+     * 新快照中的openid个数.
+     */
+    private long total;
+    /**
+     * 本次调用实际拉取的页数，从检查点续传时不含之前已拉取的页.
+     */
+    private int pages;
+    /**
+     * 是否从上次中断的检查点继续.
+     */
+    private boolean resumed;
+    private long followed;
+    private long unfollowed;
+}
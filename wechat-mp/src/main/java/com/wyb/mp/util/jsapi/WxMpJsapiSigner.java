@@ -0,0 +1,115 @@
+package com.wyb.mp.util.jsapi;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.wyb.common.bean.WxJsapiSignature;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.util.RandomUtils;
+import com.wyb.common.util.crypto.SHA1;
+import com.wyb.mp.api.WxMpService;
+
+/**
+ * <pre>
+ * jsapi签名.
+ * 四个参数名jsapi_ticket、noncestr、timestamp、url的字典序是固定的，
+ * 所以直接按这个顺序拼接到一个StringBuilder中，不再对拼好的"key=value"排序。
+ * 可以开启按appId和url的短时缓存：同一公众号的同一页面在缓存期内重复打开时直接返回上次的签名，
+ * jsapi_ticket变化后缓存的签名不再使用。返回的对象与缓存共享，调用方不要修改。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpJsapiSigner {
+
+    private final WxMpService wxMpService;
+    private final Cache<String, Signed> cache;
+
+    /**
+     * 不缓存，每次生成新的签名.
+     */
+    public WxMpJsapiSigner(WxMpService wxMpService) {
+        this.wxMpService = wxMpService;
+        this.cache = null;
+    }
+
+    /**
+     * @param ttlMillis 同一url的签名复用时间，应远小于jsapi_ticket的有效期
+     * @param maxSize   最多缓存的url个数
+     */
+    public WxMpJsapiSigner(WxMpService wxMpService, long ttlMillis, long maxSize) {
+        this.wxMpService = wxMpService;
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    public WxJsapiSignature sign(String url) throws WxErrorException {
+        String appId = this.wxMpService.getWxMpConfigStorage().getAppId();
+        String ticket = this.wxMpService.getJsapiTicket(false);
+        if (this.cache == null) {
+            return newSignature(appId, ticket, url);
+        }
+        String key = appId + ':' + url;
+        Signed signed = this.cache.getIfPresent(key);
+        if (signed != null && signed.ticket.equals(ticket)) {
+            return signed.signature;
+        }
+        try {
+            if (signed != null) {
+                this.cache.invalidate(key);
+            }
+            signed = this.cache.get(key, () -> new Signed(ticket, newSignature(appId, ticket, url)));
+            if (!signed.ticket.equals(ticket)) {
+                // 失效后其他线程按另一个ticket写入的签名，换成本次的
+                signed = new Signed(ticket, newSignature(appId, ticket, url));
+                this.cache.put(key, signed);
+            }
+            return signed.signature;
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 签名字符串为jsapi_ticket=...&amp;noncestr=...&amp;timestamp=...&amp;url=...的sha1.
+     */
+    public static String sign(String jsapiTicket, String nonceStr, long timestamp, String url) {
+        StringBuilder sb = new StringBuilder(jsapiTicket.length() + nonceStr.length() + url.length() + 64);
+        sb.append("jsapi_ticket=").append(jsapiTicket)
+                .append("&noncestr=").append(nonceStr)
+                .append("&timestamp=").append(timestamp)
+                .append("&url=").append(url);
+        return SHA1.sha1Hex(sb);
+    }
+
+    private static WxJsapiSignature newSignature(String appId, String ticket, String url) {
+        long timestamp = System.currentTimeMillis() / 1000;
+        String nonceStr = RandomUtils.getRandomStr();
+        WxJsapiSignature signature = new WxJsapiSignature();
+        signature.setAppId(appId);
+        signature.setTimestamp(timestamp);
+        signature.setNonceStr(nonceStr);
+        signature.setUrl(url);
+        signature.setSignature(sign(ticket, nonceStr, timestamp, url));
+        return signature;
+    }
+
+    private static class Signed {
+        private final String ticket;
+        private final WxJsapiSignature signature;
+
+        Signed(String ticket, WxJsapiSignature signature) {
+            this.ticket = ticket;
+            this.signature = signature;
+        }
+    }
+}
@@ -3,7 +3,10 @@ package com.wyb.mp.util.json;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.wyb.mp.bean.material.WxMediaImgUploadResult;
+import com.wyb.mp.bean.material.WxMediaUploadResult;
+import com.wyb.mp.bean.material.WxMpMaterialFileBatchGetResult;
 import com.wyb.mp.bean.material.WxMpMaterialNews;
+import com.wyb.mp.bean.material.WxMpMaterialNewsBatchGetResult;
 import com.wyb.mp.bean.material.WxMpMaterialUploadResult;
 import com.wyb.mp.bean.message.WxMpMassOpenIdsMessage;
 import com.wyb.mp.bean.message.WxMpMassPreviewMessage;
@@ -12,6 +15,7 @@ import com.wyb.mp.bean.result.WxMpMassSendResult;
 import com.wyb.mp.bean.result.WxMpMassUploadResult;
 import com.wyb.mp.bean.result.WxMpOAuth2AccessToken;
 import com.wyb.mp.bean.result.WxMpUser;
+import com.wyb.mp.bean.result.WxMpUserList;
 import com.wyb.mp.util.json.adapter.*;
 
 public class WxMpGsonBuilder {
@@ -22,12 +26,18 @@ public class WxMpGsonBuilder {
         INSTANCE.disableHtmlEscaping();
         INSTANCE.registerTypeAdapter(WxMpOAuth2AccessToken.class, new WxMpOAuth2AccessTokenGsonAdapter());
         INSTANCE.registerTypeAdapter(WxMpUser.class, new WxMpUserGsonAdapter());
+        INSTANCE.registerTypeAdapter(WxMpUserList.class, new WxMpUserListGsonAdapter());
         INSTANCE.registerTypeAdapter(WxMpMassOpenIdsMessage.class, new WxMpMassOpenIdsMessageGsonAdapter());
 
         INSTANCE.registerTypeAdapter(WxMediaImgUploadResult.class, new WxMediaImgUploadResultGsonAdapter());
+        INSTANCE.registerTypeAdapter(WxMediaUploadResult.class, new WxMediaUploadResultGsonAdapter());
         INSTANCE.registerTypeAdapter(WxMpMaterialUploadResult.class, new WxMpMaterialUploadResultAdapter());
         INSTANCE.registerTypeAdapter(WxMpMaterialNews.WxMpMaterialNewsArticle.class,
                 new WxMpMaterialNewsArticleGsonAdapter());
+        INSTANCE.registerTypeAdapter(WxMpMaterialFileBatchGetResult.class,
+                new WxMpMaterialFileBatchGetGsonAdapter());
+        INSTANCE.registerTypeAdapter(WxMpMaterialNewsBatchGetResult.class,
+                new WxMpMaterialNewsBatchGetGsonAdapter());
         INSTANCE.registerTypeAdapter(WxMpMassUploadResult.class, new WxMpMassUploadResultAdapter());
         INSTANCE.registerTypeAdapter(WxMpMassSendResult.class, new WxMpMassSendResultAdapter());
         INSTANCE.registerTypeAdapter(WxMpMassPreviewMessage.class, new WxMpMassPreviewMessageGsonAdapter());
@@ -0,0 +1,38 @@
+package com.wyb.mp.util.json.adapter;
+
+import java.lang.reflect.Type;
+
+import com.google.gson.*;
+import com.wyb.common.util.json.GsonHelper;
+import com.wyb.mp.bean.material.WxMediaUploadResult;
+
+/**
+ * @author Kunzite
+ */
+public class WxMediaUploadResultGsonAdapter implements JsonDeserializer<WxMediaUploadResult> {
+
+    @Override
+    public WxMediaUploadResult deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
+            throws JsonParseException {
+        WxMediaUploadResult uploadResult = new WxMediaUploadResult();
+        JsonObject jsonObject = json.getAsJsonObject();
+
+        if (jsonObject.get("url") != null && !jsonObject.get("url").isJsonNull()) {
+            uploadResult.setUrl(GsonHelper.getAsString(jsonObject.get("url")));
+        }
+        if (jsonObject.get("type") != null && !jsonObject.get("type").isJsonNull()) {
+            uploadResult.setType(GsonHelper.getAsString(jsonObject.get("type")));
+        }
+        if (jsonObject.get("media_id") != null && !jsonObject.get("media_id").isJsonNull()) {
+            uploadResult.setMediaId(GsonHelper.getAsString(jsonObject.get("media_id")));
+        }
+        if (jsonObject.get("thumb_media_id") != null && !jsonObject.get("thumb_media_id").isJsonNull()) {
+            uploadResult.setThumbMediaId(GsonHelper.getAsString(jsonObject.get("thumb_media_id")));
+        }
+        if (jsonObject.get("created_at") != null && !jsonObject.get("created_at").isJsonNull()) {
+            uploadResult.setCreatedAt(GsonHelper.getAsPrimitiveLong(jsonObject.get("created_at")));
+        }
+        return uploadResult;
+    }
+
+}
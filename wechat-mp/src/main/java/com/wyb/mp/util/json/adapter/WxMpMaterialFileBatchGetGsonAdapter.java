@@ -0,0 +1,46 @@
+package com.wyb.mp.util.json.adapter;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.gson.*;
+import com.wyb.common.util.json.GsonHelper;
+import com.wyb.mp.bean.material.WxMpMaterialFileBatchGetResult;
+import com.wyb.mp.bean.material.WxMpMaterialFileBatchGetResult.WxMaterialFileBatchGetNewsItem;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpMaterialFileBatchGetGsonAdapter implements JsonDeserializer<WxMpMaterialFileBatchGetResult> {
+
+    @Override
+    public WxMpMaterialFileBatchGetResult deserialize(JsonElement json, Type typeOfT,
+            JsonDeserializationContext context) throws JsonParseException {
+        WxMpMaterialFileBatchGetResult result = new WxMpMaterialFileBatchGetResult();
+        JsonObject o = json.getAsJsonObject();
+        result.setTotalCount(GsonHelper.getPrimitiveInteger(o, "total_count"));
+        result.setItemCount(GsonHelper.getPrimitiveInteger(o, "item_count"));
+
+        List<WxMaterialFileBatchGetNewsItem> items = new ArrayList<>();
+        JsonArray array = GsonHelper.getAsJsonArray(o.get("item"));
+        if (array != null) {
+            for (JsonElement element : array) {
+                JsonObject itemJson = element.getAsJsonObject();
+                WxMaterialFileBatchGetNewsItem item = new WxMaterialFileBatchGetNewsItem();
+                item.setMediaId(GsonHelper.getString(itemJson, "media_id"));
+                item.setName(GsonHelper.getString(itemJson, "name"));
+                item.setUrl(GsonHelper.getString(itemJson, "url"));
+                Long updateTime = GsonHelper.getLong(itemJson, "update_time");
+                if (updateTime != null) {
+                    item.setUpdateTime(new Date(updateTime * 1000));
+                }
+                items.add(item);
+            }
+        }
+        result.setItems(items);
+        return result;
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.wyb.mp.util.json.adapter;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.gson.*;
+import com.wyb.common.util.json.GsonHelper;
+import com.wyb.mp.bean.material.WxMpMaterialNews;
+import com.wyb.mp.bean.material.WxMpMaterialNewsBatchGetResult;
+import com.wyb.mp.bean.material.WxMpMaterialNewsBatchGetResult.WxMaterialNewsBatchGetNewsItem;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpMaterialNewsBatchGetGsonAdapter implements JsonDeserializer<WxMpMaterialNewsBatchGetResult> {
+
+    @Override
+    public WxMpMaterialNewsBatchGetResult deserialize(JsonElement json, Type typeOfT,
+            JsonDeserializationContext context) throws JsonParseException {
+        WxMpMaterialNewsBatchGetResult result = new WxMpMaterialNewsBatchGetResult();
+        JsonObject o = json.getAsJsonObject();
+        result.setTotalCount(GsonHelper.getPrimitiveInteger(o, "total_count"));
+        result.setItemCount(GsonHelper.getPrimitiveInteger(o, "item_count"));
+
+        List<WxMaterialNewsBatchGetNewsItem> items = new ArrayList<>();
+        JsonArray array = GsonHelper.getAsJsonArray(o.get("item"));
+        if (array != null) {
+            for (JsonElement element : array) {
+                JsonObject itemJson = element.getAsJsonObject();
+                WxMaterialNewsBatchGetNewsItem item = new WxMaterialNewsBatchGetNewsItem();
+                item.setMediaId(GsonHelper.getString(itemJson, "media_id"));
+                Long updateTime = GsonHelper.getLong(itemJson, "update_time");
+                if (updateTime != null) {
+                    item.setUpdateTime(new Date(updateTime * 1000));
+                }
+                if (GsonHelper.isNotNull(itemJson.get("content"))) {
+                    item.setContent(this.parseNews(itemJson.get("content").getAsJsonObject(), context));
+                }
+                items.add(item);
+            }
+        }
+        result.setItems(items);
+        return result;
+    }
+
+    private WxMpMaterialNews parseNews(JsonObject content, JsonDeserializationContext context) {
+        WxMpMaterialNews news = new WxMpMaterialNews();
+        Long createTime = GsonHelper.getLong(content, "create_time");
+        if (createTime != null) {
+            news.setCreateTime(new Date(createTime * 1000));
+        }
+        Long updateTime = GsonHelper.getLong(content, "update_time");
+        if (updateTime != null) {
+            news.setUpdateTime(new Date(updateTime * 1000));
+        }
+        JsonArray articles = GsonHelper.getAsJsonArray(content.get("news_item"));
+        if (articles != null) {
+            for (JsonElement article : articles) {
+                news.addArticle(context.<WxMpMaterialNews.WxMpMaterialNewsArticle>deserialize(article,
+                        WxMpMaterialNews.WxMpMaterialNewsArticle.class));
+            }
+        }
+        return news;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.wyb.mp.util.json.adapter;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+import com.google.gson.*;
+import com.wyb.common.util.json.GsonHelper;
+import com.wyb.mp.bean.result.WxMpUserList;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpUserListGsonAdapter implements JsonDeserializer<WxMpUserList> {
+
+    @Override
+    public WxMpUserList deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
+            throws JsonParseException {
+        JsonObject o = json.getAsJsonObject();
+        WxMpUserList wxMpUserList = new WxMpUserList();
+        wxMpUserList.setTotal(GsonHelper.getPrimitiveLong(o, "total"));
+        wxMpUserList.setCount(GsonHelper.getPrimitiveInteger(o, "count"));
+        wxMpUserList.setNextOpenid(GsonHelper.getString(o, "next_openid"));
+        // 拉取完毕时没有data字段
+        JsonElement data = o.get("data");
+        if (GsonHelper.isNotNull(data)) {
+            String[] openids = GsonHelper.getStringArray(data.getAsJsonObject(), "openid");
+            if (openids != null) {
+                wxMpUserList.setOpenids(Arrays.asList(openids));
+            }
+        }
+        return wxMpUserList;
+    }
+
+}
@@ -0,0 +1,292 @@
+package com.wyb.mp.util.media;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <pre>
+ * 按文件内容寻址的素材缓存：appId + 素材种类 + 文件内容的SHA-256 -> media_id/url.
+ * 同一张图片重复上传时只需计算一次摘要并查表，不再发起上传请求。
+ * 临时素材3天后失效，缓存提前1小时过期；永久素材不过期，删除素材时需调用{@link #removeByValue}。
+ *
+ * 指定索引文件时，每次写入都追加一行到文件，启动时重放，重启后缓存仍然有效；
+ * 重放时发现失效记录超过一半会重写索引文件。
+ * 使用索引文件时，不再使用后应调用{@link #close()}关闭索引文件；关闭后的缓存只在内存中继续生效。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpMediaCache implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(WxMpMediaCache.class);
+
+    /**
+     * 临时素材的有效期.
+     */
+    public static final long TEMP_MEDIA_TTL_MILLIS = TimeUnit.DAYS.toMillis(3) - TimeUnit.HOURS.toMillis(1);
+
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Path indexFile;
+    private Writer indexWriter;
+
+    /**
+     * 只在内存中缓存.
+     */
+    public WxMpMediaCache() {
+        this.indexFile = null;
+    }
+
+    /**
+     * 使用索引文件持久化缓存，文件不存在时创建.
+     */
+    public WxMpMediaCache(File indexFile) throws IOException {
+        this.indexFile = indexFile.toPath();
+        this.load();
+    }
+
+    /**
+     * 查询缓存，未命中或已过期时返回null.
+     *
+     * @param kind 素材种类，如 media:image、material:voice、uploadimg
+     */
+    public Entry get(String appId, String kind, String digest) {
+        String key = keyOf(appId, kind, digest);
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            this.entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 写入缓存.
+     *
+     * @param expiresAt 过期时间戳(毫秒)，0表示永不过期
+     */
+    public void put(String appId, String kind, String digest, String value, String extra, long expiresAt) {
+        String key = keyOf(appId, kind, digest);
+        Entry entry = new Entry(value, extra, expiresAt);
+        this.entries.put(key, entry);
+        this.append(key, entry);
+    }
+
+    public void remove(String appId, String kind, String digest) {
+        String key = keyOf(appId, kind, digest);
+        if (this.entries.remove(key) != null) {
+            this.append(key, null);
+        }
+    }
+
+    /**
+     * 按media_id删除，用于删除永久素材后清理缓存.
+     */
+    public void removeByValue(String appId, String value) {
+        String prefix = appId + '|';
+        for (Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().startsWith(prefix) && e.getValue().getValue().equals(value)) {
+                it.remove();
+                this.append(e.getKey(), null);
+            }
+        }
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * 关闭索引文件，之后的写入不再持久化.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.indexWriter != null) {
+            try {
+                this.indexWriter.close();
+            }
+            finally {
+                this.indexWriter = null;
+            }
+        }
+    }
+
+    /**
+     * 流式计算文件内容的SHA-256，不把文件读入内存.
+     *
+     * @param extra 参与摘要的附加内容，如视频素材的描述，可为null
+     */
+    public static String digest(File file, String extra) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DIGEST_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        if (extra != null) {
+            digest.update(extra.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] bytes = digest.digest();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String keyOf(String appId, String kind, String digest) {
+        return appId + '|' + kind + '|' + digest;
+    }
+
+    /**
+     * 索引文件每行：key \t 过期时间 \t value \t extra，value为空表示删除.
+     */
+    private synchronized void append(String key, Entry entry) {
+        if (this.indexWriter == null) {
+            return;
+        }
+        try {
+            this.indexWriter.write(key);
+            this.indexWriter.write('\t');
+            if (entry != null) {
+                this.indexWriter.write(Long.toString(entry.getExpiresAt()));
+                this.indexWriter.write('\t');
+                this.indexWriter.write(entry.getValue());
+                this.indexWriter.write('\t');
+                this.indexWriter.write(entry.getExtra() == null ? "" : entry.getExtra());
+            }
+            else {
+                this.indexWriter.write("0\t\t");
+            }
+            this.indexWriter.write('\n');
+            this.indexWriter.flush();
+        }
+        catch (IOException e) {
+            log.warn("写入素材缓存索引失败: {}", this.indexFile, e);
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        int lines = 0;
+        long now = System.currentTimeMillis();
+        if (Files.exists(this.indexFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(this.indexFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines++;
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length != 4) {
+                        continue;
+                    }
+                    if (fields[2].isEmpty()) {
+                        this.entries.remove(fields[0]);
+                        continue;
+                    }
+                    Entry entry = new Entry(fields[2], fields[3].isEmpty() ? null : fields[3],
+                            Long.parseLong(fields[1]));
+                    if (entry.isExpired(now)) {
+                        this.entries.remove(fields[0]);
+                    }
+                    else {
+                        this.entries.put(fields[0], entry);
+                    }
+                }
+            }
+        }
+        if (lines > this.entries.size() * 2) {
+            this.compact();
+        }
+        this.indexWriter = Files.newBufferedWriter(this.indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    private void compact() throws IOException {
+        Path tmp = this.indexFile.resolveSibling(this.indexFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            this.indexWriter = writer;
+            for (Map.Entry<String, Entry> e : this.entries.entrySet()) {
+                this.append(e.getKey(), e.getValue());
+            }
+        }
+        finally {
+            this.indexWriter = null;
+        }
+        Files.move(tmp, this.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 缓存的上传结果.
+     */
+    public static class Entry {
+        private final String value;
+        private final String extra;
+        private final long expiresAt;
+
+        public Entry(String value, String extra, long expiresAt) {
+            this.value = value;
+            this.extra = extra;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * media_id或图片url.
+         */
+        public String getValue() {
+            return this.value;
+        }
+
+        /**
+         * 附加信息，如永久图片素材的url.
+         */
+        public String getExtra() {
+            return this.extra;
+        }
+
+        public long getExpiresAt() {
+            return this.expiresAt;
+        }
+
+        public boolean isExpired(long now) {
+            return this.expiresAt > 0 && this.expiresAt <= now;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.wyb.mp.util.menu;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.gson.stream.JsonWriter;
+import com.wyb.common.bean.menu.WxMenuButton;
+import com.wyb.common.bean.menu.WxMenuRule;
+
+/**
+ * <pre>
+ * 菜单的规范形式与结构哈希，用于比较本地菜单定义和自定义菜单查询接口返回的菜单是否相同.
+ * 规范形式是字段顺序固定的json：空串与null视为相同并省略，空的sub_button省略，首尾空白去掉；
+ * 按钮顺序有意义，保留原顺序。matchrule中的字段全为空时视为没有规则。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public final class WxMpMenuCanonicalizer {
+
+    private WxMpMenuCanonicalizer() {
+    }
+
+    public static String canonicalize(List<WxMenuButton> buttons, WxMenuRule rule) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("button");
+            writeButtons(writer, buttons);
+            if (!isEmpty(rule)) {
+                writer.name("matchrule").beginObject();
+                field(writer, "tag_id", rule.getTagId());
+                field(writer, "sex", rule.getSex());
+                field(writer, "country", rule.getCountry());
+                field(writer, "province", rule.getProvince());
+                field(writer, "city", rule.getCity());
+                field(writer, "client_platform_type", rule.getClientPlatformType());
+                field(writer, "language", rule.getLanguage());
+                writer.endObject();
+            }
+            writer.endObject();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * 规范形式的SHA-256，十六进制小写.
+     */
+    public static String hash(List<WxMenuButton> buttons, WxMenuRule rule) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonicalize(buttons, rule).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static boolean isEmpty(WxMenuRule rule) {
+        if (rule == null) {
+            return true;
+        }
+        for (String value : new String[]{rule.getTagId(), rule.getSex(), rule.getCountry(), rule.getProvince(),
+                rule.getCity(), rule.getClientPlatformType(), rule.getLanguage()}) {
+            if (StringUtils.isNotBlank(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeButtons(JsonWriter writer, List<WxMenuButton> buttons) throws IOException {
+        writer.beginArray();
+        if (buttons != null) {
+            for (WxMenuButton button : buttons) {
+                writer.beginObject();
+                field(writer, "type", button.getType());
+                field(writer, "name", button.getName());
+                field(writer, "key", button.getKey());
+                field(writer, "url", button.getUrl());
+                field(writer, "media_id", button.getMediaId());
+                field(writer, "appid", button.getAppId());
+                field(writer, "pagepath", button.getPagePath());
+                if (button.getSubButtons() != null && !button.getSubButtons().isEmpty()) {
+                    writer.name("sub_button");
+                    writeButtons(writer, button.getSubButtons());
+                }
+                writer.endObject();
+            }
+        }
+        writer.endArray();
+    }
+
+    private static void field(JsonWriter writer, String name, String value) throws IOException {
+        if (StringUtils.isNotBlank(value)) {
+            writer.name(name).value(value.trim());
+        }
+    }
+}
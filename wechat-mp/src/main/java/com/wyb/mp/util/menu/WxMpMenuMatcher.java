@@ -0,0 +1,219 @@
+package com.wyb.mp.util.menu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.wyb.common.bean.menu.WxMenuRule;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.api.WxMpMenuService;
+import com.wyb.mp.bean.menu.WxMpMenu;
+import com.wyb.mp.bean.result.WxMpUser;
+
+/**
+ * <pre>
+ * 本地计算个性化菜单的匹配结果，代替逐个用户调用测试个性化菜单匹配结果接口.
+ * 按微信的规则：matchrule中填写的字段都要满足，多个个性化菜单都匹配时以最新创建的为准，都不匹配时使用默认菜单。
+ *
+ * 编译时把所有规则按优先级编号，每个匹配字段建一张 取值 -> 接受该取值的规则位集 的表，
+ * 匹配一个用户只需按字段把位集逐个相与，取编号最小的规则，与个性化菜单的个数基本无关。
+ * 标签放在第一步，用户没有任何规则里的标签时，只剩不限标签的规则参与后续比较。
+ *
+ *  WxMpMenuMatcher matcher = WxMpMenuMatcher.load(wxMpService.getMenuService());
+ *  WxMpMenu.WxMpConditionalMenu menu = matcher.match(user, WxMpMenuMatcher.PLATFORM_IOS);
+ *
+ * 编译后的对象不可变，可多线程共用。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpMenuMatcher {
+
+    /**
+     * 客户端版本，对应matchrule中的client_platform_type.
+     */
+    public static final String PLATFORM_IOS = "1";
+    public static final String PLATFORM_ANDROID = "2";
+    public static final String PLATFORM_OTHERS = "3";
+
+    private static final int SEX = 0;
+    private static final int COUNTRY = 1;
+    private static final int PROVINCE = 2;
+    private static final int CITY = 3;
+    private static final int PLATFORM = 4;
+    private static final int LANGUAGE = 5;
+    private static final int FIELD_COUNT = 6;
+
+    private final WxMpMenu.WxMpConditionalMenu defaultMenu;
+    /**
+     * 按优先级排列的个性化菜单，下标即规则编号，0为最新创建的.
+     */
+    private final List<WxMpMenu.WxMpConditionalMenu> menus;
+    private final int words;
+    private final long[] noTag;
+    private final Map<Long, long[]> byTag = new HashMap<>();
+    private final Field[] fields = new Field[FIELD_COUNT];
+
+    private WxMpMenuMatcher(WxMpMenu.WxMpConditionalMenu defaultMenu, List<WxMpMenu.WxMpConditionalMenu> menus) {
+        this.defaultMenu = defaultMenu;
+        this.menus = menus;
+        this.words = Math.max((menus.size() + 63) >>> 6, 1);
+        this.noTag = new long[this.words];
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            this.fields[f] = new Field(this.words);
+        }
+        for (int i = 0; i < menus.size(); i++) {
+            WxMenuRule rule = menus.get(i).getRule();
+            this.compileTag(i, rule == null ? null : rule.getTagId());
+            this.fields[SEX].add(i, rule == null ? null : rule.getSex());
+            this.fields[COUNTRY].add(i, rule == null ? null : rule.getCountry());
+            this.fields[PROVINCE].add(i, rule == null ? null : rule.getProvince());
+            this.fields[CITY].add(i, rule == null ? null : rule.getCity());
+            this.fields[PLATFORM].add(i, rule == null ? null : rule.getClientPlatformType());
+            this.fields[LANGUAGE].add(i, rule == null ? null : rule.getLanguage());
+        }
+    }
+
+    /**
+     * 通过自定义菜单查询接口获取当前菜单并编译.
+     */
+    public static WxMpMenuMatcher load(WxMpMenuService menuService) throws WxErrorException {
+        return compile(menuService.menuGet());
+    }
+
+    /**
+     * 编译自定义菜单查询接口的结果.
+     * menuid都是数字时按menuid从大到小确定优先级，否则按列表倒序，即列表中靠后的视为较新创建的。
+     */
+    public static WxMpMenuMatcher compile(WxMpMenu menu) {
+        List<WxMpMenu.WxMpConditionalMenu> menus = new ArrayList<>();
+        if (menu.getConditionalMenu() != null) {
+            menus.addAll(menu.getConditionalMenu());
+        }
+        Collections.reverse(menus);
+        boolean numeric = true;
+        for (WxMpMenu.WxMpConditionalMenu conditionalMenu : menus) {
+            numeric &= StringUtils.isNumeric(conditionalMenu.getMenuId());
+        }
+        if (numeric) {
+            menus.sort((a, b) -> Long.compare(Long.parseLong(b.getMenuId()), Long.parseLong(a.getMenuId())));
+        }
+        return new WxMpMenuMatcher(menu.getMenu(), Collections.unmodifiableList(menus));
+    }
+
+    public WxMpMenu.WxMpConditionalMenu getDefaultMenu() {
+        return this.defaultMenu;
+    }
+
+    /**
+     * 按优先级从高到低排列的个性化菜单.
+     */
+    public List<WxMpMenu.WxMpConditionalMenu> getConditionalMenus() {
+        return this.menus;
+    }
+
+    /**
+     * 计算用户看到的菜单.
+     *
+     * @param user               需要tagid_list、sex、country、province、city、language，地区名称的语言应与菜单规则一致
+     * @param clientPlatformType 用户的客户端类型，见PLATFORM_*，未知时传null，限定了客户端的菜单不会匹配
+     * @return 匹配的个性化菜单，都不匹配时返回默认菜单
+     */
+    public WxMpMenu.WxMpConditionalMenu match(WxMpUser user, String clientPlatformType) {
+        int index = this.matchIndex(user, clientPlatformType);
+        return index < 0 ? this.defaultMenu : this.menus.get(index);
+    }
+
+    /**
+     * 同{@link #match}，返回匹配的个性化菜单在{@link #getConditionalMenus}中的下标，使用默认菜单时返回-1.
+     * 统计大量用户的匹配分布时用下标计数即可，不必比较菜单对象。
+     */
+    public int matchIndex(WxMpUser user, String clientPlatformType) {
+        if (this.menus.isEmpty()) {
+            return -1;
+        }
+        long[] candidates = this.noTag.clone();
+        Long[] tagIds = user.getTagIds();
+        if (tagIds != null) {
+            for (Long tagId : tagIds) {
+                long[] rules = tagId == null ? null : this.byTag.get(tagId);
+                if (rules != null) {
+                    or(candidates, rules);
+                }
+            }
+        }
+        if (this.fields[SEX].retain(candidates, user.getSex() == null ? null : String.valueOf(user.getSex()))
+                && this.fields[COUNTRY].retain(candidates, user.getCountry())
+                && this.fields[PROVINCE].retain(candidates, user.getProvince())
+                && this.fields[CITY].retain(candidates, user.getCity())
+                && this.fields[PLATFORM].retain(candidates, clientPlatformType)
+                && this.fields[LANGUAGE].retain(candidates, user.getLanguage())) {
+            for (int w = 0; w < this.words; w++) {
+                if (candidates[w] != 0) {
+                    return (w << 6) + Long.numberOfTrailingZeros(candidates[w]);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 标签id不是数字的规则不可能匹配，不放入任何位集.
+     */
+    private void compileTag(int rule, String tagId) {
+        if (StringUtils.isBlank(tagId)) {
+            set(this.noTag, rule);
+        }
+        else if (StringUtils.isNumeric(tagId.trim())) {
+            set(this.byTag.computeIfAbsent(Long.valueOf(tagId.trim()), k -> new long[this.words]), rule);
+        }
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private static void or(long[] target, long[] bits) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] |= bits[w];
+        }
+    }
+
+    /**
+     * 一个匹配字段：未限定该字段的规则，以及各取值对应的规则.
+     */
+    private static class Field {
+        private final long[] any;
+        private final Map<String, long[]> byValue = new HashMap<>();
+
+        Field(int words) {
+            this.any = new long[words];
+        }
+
+        void add(int rule, String value) {
+            if (StringUtils.isEmpty(value)) {
+                set(this.any, rule);
+            }
+            else {
+                set(this.byValue.computeIfAbsent(value, k -> new long[this.any.length]), rule);
+            }
+        }
+
+        /**
+         * candidates &= any | byValue[value]，返回是否还有候选规则.
+         */
+        boolean retain(long[] candidates, String value) {
+            long[] matched = StringUtils.isEmpty(value) ? null : this.byValue.get(value);
+            long remaining = 0;
+            for (int w = 0; w < candidates.length; w++) {
+                candidates[w] &= this.any[w] | (matched == null ? 0 : matched[w]);
+                remaining |= candidates[w];
+            }
+            return remaining != 0;
+        }
+    }
+}
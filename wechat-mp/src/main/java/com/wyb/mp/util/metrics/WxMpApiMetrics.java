@@ -0,0 +1,81 @@
+package com.wyb.mp.util.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.wyb.common.util.metrics.ApiCallSnapshot;
+import com.wyb.common.util.metrics.ApiCallStats;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * <pre>
+ * 公众号接口调用统计，按 appId + {@link WxMpApiUrl} 常量分别记录.
+ * 每个(appId, 接口)的统计对象只在第一次调用时创建，之后的记录都是两次无锁的get。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpApiMetrics {
+
+    private static final String UNKNOWN_APP_ID = "unknown";
+
+    private final ConcurrentMap<String, ConcurrentMap<WxMpApiUrl, ApiCallStats>> statsMap = new ConcurrentHashMap<>();
+
+    /**
+     * 获取(必要时创建)某个公众号某个接口的统计对象.
+     */
+    public ApiCallStats stats(String appId, WxMpApiUrl api) {
+        String key = appId == null ? UNKNOWN_APP_ID : appId;
+        ConcurrentMap<WxMpApiUrl, ApiCallStats> appStats = this.statsMap.get(key);
+        if (appStats == null) {
+            appStats = this.statsMap.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        }
+        ApiCallStats stats = appStats.get(api);
+        if (stats == null) {
+            stats = appStats.computeIfAbsent(api, k -> new ApiCallStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 记录一次拿到响应的调用，errcode直接从响应文本中扫描.
+     */
+    public void record(String appId, WxMpApiUrl api, long elapsedNanos, long requestBytes, String response) {
+        this.stats(appId, api).record(elapsedNanos, requestBytes, ApiCallStats.utf8Length(response),
+                ApiCallStats.errorCodeOf(response));
+    }
+
+    /**
+     * 记录一次没有拿到响应的调用.
+     */
+    public void recordFailure(String appId, WxMpApiUrl api, long elapsedNanos, long requestBytes) {
+        this.stats(appId, api).recordFailure(elapsedNanos, requestBytes);
+    }
+
+    /**
+     * 导出所有统计，结构为 appId -> 接口名(如 UserTag.TAGS_GET) -> 快照.
+     */
+    public Map<String, Map<String, ApiCallSnapshot>> snapshot() {
+        Map<String, Map<String, ApiCallSnapshot>> result = new TreeMap<>();
+        for (Map.Entry<String, ConcurrentMap<WxMpApiUrl, ApiCallStats>> appEntry : this.statsMap.entrySet()) {
+            Map<String, ApiCallSnapshot> appResult = new TreeMap<>();
+            for (Map.Entry<WxMpApiUrl, ApiCallStats> entry : appEntry.getValue().entrySet()) {
+                appResult.put(nameOf(entry.getKey()), entry.getValue().snapshot());
+            }
+            result.put(appEntry.getKey(), appResult);
+        }
+        return result;
+    }
+
+    /**
+     * 接口的可读名称，形如 UserTag.TAGS_GET.
+     */
+    public static String nameOf(WxMpApiUrl api) {
+        if (api instanceof Enum) {
+            return ((Enum<?>) api).getDeclaringClass().getSimpleName() + "." + ((Enum<?>) api).name();
+        }
+        return api.getClass().getSimpleName();
+    }
+}
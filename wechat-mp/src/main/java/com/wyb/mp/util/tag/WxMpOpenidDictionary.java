@@ -0,0 +1,182 @@
+package com.wyb.mp.util.tag;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.wyb.mp.util.follower.WxMpFollowerSnapshot;
+
+/**
+ * <pre>
+ * openid字典：把openid映射为从0开始的连续int ID，供{@link WxMpUserBitmap}使用.
+ * openid以32字节定长记录连续存放在堆外内存中，查找用开放寻址的int数组哈希表，
+ * 每个openid约占32字节堆外内存加8字节堆内存，没有String对象。
+ * ID一经分配不再改变，字典只增不减。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpOpenidDictionary {
+
+    private static final int RECORD_SIZE = WxMpFollowerSnapshot.RECORD_SIZE;
+
+    private ByteBuffer records;
+    /**
+     * 哈希表，存放ID+1，0表示空槽，容量为2的幂且负载不超过一半.
+     */
+    private int[] table;
+    private int size;
+
+    public WxMpOpenidDictionary() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedSize 预计的openid个数
+     */
+    public WxMpOpenidDictionary(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+        this.table = new int[tableSizeFor(capacity)];
+    }
+
+    /**
+     * 从关注者快照构建字典，ID与openid的字节序一致.
+     */
+    public static WxMpOpenidDictionary fromSnapshot(File snapshot) throws IOException {
+        WxMpOpenidDictionary dictionary = new WxMpOpenidDictionary((int) WxMpFollowerSnapshot.count(snapshot));
+        try (WxMpFollowerSnapshot openids = WxMpFollowerSnapshot.open(snapshot)) {
+            while (openids.hasNext()) {
+                dictionary.intern(openids.next());
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * 返回openid的ID，不存在时分配新ID.
+     */
+    public synchronized int intern(String openid) {
+        int slot = this.slotOf(openid);
+        if (this.table[slot] != 0) {
+            return this.table[slot] - 1;
+        }
+        int id = this.size;
+        if ((id + 1) * RECORD_SIZE > this.records.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(this.records.capacity() * 2);
+            this.records.clear().limit(id * RECORD_SIZE);
+            grown.put(this.records);
+            this.records = grown;
+        }
+        int offset = id * RECORD_SIZE;
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            this.records.put(offset + i, i < openid.length() ? (byte) openid.charAt(i) : 0);
+        }
+        this.table[slot] = id + 1;
+        this.size++;
+        if (this.size * 2 > this.table.length) {
+            this.rehash();
+        }
+        return id;
+    }
+
+    /**
+     * 返回openid的ID，不存在时返回-1.
+     */
+    public synchronized int idOf(String openid) {
+        return this.table[this.slotOf(openid)] - 1;
+    }
+
+    public synchronized String openidOf(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException("openid id " + id + " out of range " + this.size);
+        }
+        byte[] bytes = new byte[RECORD_SIZE];
+        int offset = id * RECORD_SIZE;
+        int length = 0;
+        while (length < RECORD_SIZE && (bytes[length] = this.records.get(offset + length)) != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * 占用的内存字节数，含堆外部分.
+     */
+    public synchronized long sizeInBytes() {
+        return this.records.capacity() + this.table.length * 4L;
+    }
+
+    /**
+     * 查找openid所在的槽，不存在时返回应插入的空槽.
+     */
+    private int slotOf(String openid) {
+        int length = openid.length();
+        if (length == 0 || length > RECORD_SIZE) {
+            throw new IllegalArgumentException("invalid openid: " + openid);
+        }
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            char c = openid.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                throw new IllegalArgumentException("openid is not ascii: " + openid);
+            }
+            hash = 31 * hash + c;
+        }
+        int mask = this.table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = this.table[slot];
+            if (entry == 0 || this.matches(entry - 1, openid)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean matches(int id, String openid) {
+        int offset = id * RECORD_SIZE;
+        int length = openid.length();
+        for (int i = 0; i < length; i++) {
+            if (this.records.get(offset + i) != openid.charAt(i)) {
+                return false;
+            }
+        }
+        return length == RECORD_SIZE || this.records.get(offset + length) == 0;
+    }
+
+    private void rehash() {
+        int[] grown = new int[this.table.length * 2];
+        int mask = grown.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int offset = id * RECORD_SIZE;
+            int hash = 0;
+            for (int i = 0; i < RECORD_SIZE; i++) {
+                byte b = this.records.get(offset + i);
+                if (b == 0) {
+                    break;
+                }
+                hash = 31 * hash + b;
+            }
+            int slot = mix(hash) & mask;
+            while (grown[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            grown[slot] = id + 1;
+        }
+        this.table = grown;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(expectedSize * 2 - 1) << 1;
+        return Math.max(capacity, 16);
+    }
+}
@@ -0,0 +1,206 @@
+package com.wyb.mp.util.tag;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.exception.WxRuntimeException;
+import com.wyb.common.util.page.WxPageIterator;
+import com.wyb.mp.api.WxMpMassMessageService;
+import com.wyb.mp.api.WxMpUserTagService;
+import com.wyb.mp.bean.message.WxMpMassOpenIdsMessage;
+import com.wyb.mp.bean.result.WxMpMassSendResult;
+
+/**
+ * <pre>
+ * 本地的标签成员索引：每个标签的粉丝保存为一个{@link WxMpUserBitmap}，openid统一经{@link WxMpOpenidDictionary}编号.
+ * 用于"有标签A和B、但没有标签C"这类圈人查询，结果可直接分批用于按openid列表群发。
+ *
+ *  WxMpTagIndex index = new WxMpTagIndex();
+ *  index.loadTag(userTagService, 100L);
+ *  ...
+ *  WxMpUserBitmap users = index.query(100L).and(101L).andNot(102L).result();
+ *  index.massSend(massMessageService, users, message);
+ *
+ * 每个标签的位图整体替换，查询拿到的是当时的快照，可与加载并发执行。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpTagIndex {
+
+    /**
+     * 按openid列表群发时每次最多的openid个数.
+     */
+    public static final int MASS_SEND_MAX_USERS = 10000;
+
+    private final WxMpOpenidDictionary dictionary;
+    private final ConcurrentMap<Long, WxMpUserBitmap> tags = new ConcurrentHashMap<>();
+
+    public WxMpTagIndex() {
+        this(new WxMpOpenidDictionary());
+    }
+
+    /**
+     * @param dictionary 可传入由关注者快照构建的字典，见{@link WxMpOpenidDictionary#fromSnapshot}
+     */
+    public WxMpTagIndex(WxMpOpenidDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public WxMpOpenidDictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    /**
+     * 通过获取标签下粉丝列表接口逐页加载某个标签的全部粉丝，替换原有内容.
+     */
+    public WxMpUserBitmap loadTag(WxMpUserTagService userTagService, Long tagId) throws WxErrorException {
+        try (WxPageIterator<String, String> openids = userTagService.tagListUserIterator(tagId, null)) {
+            return this.putTag(tagId, openids);
+        }
+        catch (WxRuntimeException e) {
+            throw e.getWxErrorException();
+        }
+    }
+
+    /**
+     * 用给定的openid替换某个标签的全部粉丝.
+     */
+    public WxMpUserBitmap putTag(Long tagId, Iterator<String> openids) {
+        WxMpUserBitmap bitmap = new WxMpUserBitmap();
+        while (openids.hasNext()) {
+            bitmap.add(this.dictionary.intern(openids.next()));
+        }
+        this.tags.put(tagId, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 按获取用户身上的标签列表接口的结果，把一个用户加入这些标签.
+     * 每次调用都会复制涉及的标签位图，大量用户请用{@link #putTag}整体加载。
+     */
+    public void addUserTags(String openid, List<Long> tagIds) {
+        int id = this.dictionary.intern(openid);
+        for (Long tagId : tagIds) {
+            this.tags.compute(tagId, (k, bitmap) -> {
+                WxMpUserBitmap copy = bitmap == null ? new WxMpUserBitmap() : bitmap.copy();
+                copy.add(id);
+                return copy;
+            });
+        }
+    }
+
+    public void removeTag(Long tagId) {
+        this.tags.remove(tagId);
+    }
+
+    /**
+     * 某个标签当前的粉丝位图，未加载时为空位图，不要修改返回的对象.
+     */
+    public WxMpUserBitmap tag(Long tagId) {
+        WxMpUserBitmap bitmap = this.tags.get(tagId);
+        return bitmap == null ? new WxMpUserBitmap() : bitmap;
+    }
+
+    /**
+     * 以某个标签的粉丝为起点开始组合查询.
+     */
+    public Query query(Long tagId) {
+        return new Query(this.tag(tagId).copy());
+    }
+
+    /**
+     * 把位图按ID顺序转换为openid，每批最多batchSize个.
+     * 总数超过batchSize时各批大小尽量均分，避免最后一批只剩一两个用户。
+     */
+    public Iterator<List<String>> openidBatches(WxMpUserBitmap users, int batchSize) {
+        long total = users.cardinality();
+        long batches = (total + batchSize - 1) / batchSize;
+        int size = batches <= 1 ? batchSize : (int) ((total + batches - 1) / batches);
+        PrimitiveIterator.OfInt ids = users.iterator();
+        return new Iterator<List<String>>() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public List<String> next() {
+                if (!ids.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<String> batch = new ArrayList<>(size);
+                while (batch.size() < size && ids.hasNext()) {
+                    batch.add(WxMpTagIndex.this.dictionary.openidOf(ids.nextInt()));
+                }
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * <pre>
+     * 按openid列表群发给位图中的全部用户，每批最多10000个.
+     * message中的toUsers会被忽略，其余字段复制到每一批；指定了clientMsgId时每批追加"-序号"以免被去重。
+     * 某一批失败时抛出异常，此前的批次已经发出，不会回滚。
+     * </pre>
+     */
+    public List<WxMpMassSendResult> massSend(WxMpMassMessageService massMessageService, WxMpUserBitmap users,
+            WxMpMassOpenIdsMessage message) throws WxErrorException {
+        List<WxMpMassSendResult> results = new ArrayList<>();
+        Iterator<List<String>> batches = this.openidBatches(users, MASS_SEND_MAX_USERS);
+        for (int i = 0; batches.hasNext(); i++) {
+            WxMpMassOpenIdsMessage batch = new WxMpMassOpenIdsMessage();
+            batch.setToUsers(batches.next());
+            batch.setMsgType(message.getMsgType());
+            batch.setContent(message.getContent());
+            batch.setMediaId(message.getMediaId());
+            batch.setSendIgnoreReprint(message.isSendIgnoreReprint());
+            if (message.getClientMsgId() != null) {
+                batch.setClientMsgId(message.getClientMsgId() + "-" + i);
+            }
+            results.add(massMessageService.massOpenIdsMessageSend(batch));
+        }
+        return results;
+    }
+
+    /**
+     * 标签组合查询，每一步都生成新的位图，不影响索引中的数据.
+     */
+    public class Query {
+        private WxMpUserBitmap result;
+
+        private Query(WxMpUserBitmap start) {
+            this.result = start;
+        }
+
+        public Query and(Long tagId) {
+            this.result = this.result.and(WxMpTagIndex.this.tag(tagId));
+            return this;
+        }
+
+        public Query or(Long tagId) {
+            this.result = this.result.or(WxMpTagIndex.this.tag(tagId));
+            return this;
+        }
+
+        public Query andNot(Long tagId) {
+            this.result = this.result.andNot(WxMpTagIndex.this.tag(tagId));
+            return this;
+        }
+
+        public WxMpUserBitmap result() {
+            return this.result;
+        }
+
+        public long count() {
+            return this.result.cardinality();
+        }
+    }
+}
@@ -0,0 +1,615 @@
+package com.wyb.mp.util.tag;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * <pre>
+ * 用户ID的压缩位图，结构参照Roaring Bitmap.
+ * int按高16位分桶，每桶一个容器：元素不超过4096个时用有序char数组(每个2字节)，
+ * 超过时用65536位的位图(固定8KB)，两种容器之间的交、并、差各自有专门的合并方式。
+ * 稠密的标签每个用户约1bit，稀疏的标签每个用户约2字节。
+ * {@link #and}、{@link #or}、{@link #andNot}总是返回新对象，不修改参与运算的位图。
+ * 非线程安全。
+ * </pre>
+ *
+ * @author Kunzite
+ */
+public class WxMpUserBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    public WxMpUserBitmap() {
+        this(4);
+    }
+
+    private WxMpUserBitmap(int capacity) {
+        this.keys = new char[capacity];
+        this.containers = new Container[capacity];
+    }
+
+    public static WxMpUserBitmap of(int... ids) {
+        WxMpUserBitmap bitmap = new WxMpUserBitmap();
+        for (int id : ids) {
+            bitmap.add(id);
+        }
+        return bitmap;
+    }
+
+    /**
+     * @param id 非负的用户ID
+     */
+    public void add(int id) {
+        char high = (char) (id >>> 16);
+        int index = Arrays.binarySearch(this.keys, 0, this.size, high);
+        if (index >= 0) {
+            this.containers[index] = this.containers[index].add((char) id);
+        }
+        else {
+            this.insert(-index - 1, high, new ArrayContainer().add((char) id));
+        }
+    }
+
+    public boolean contains(int id) {
+        int index = Arrays.binarySearch(this.keys, 0, this.size, (char) (id >>> 16));
+        return index >= 0 && this.containers[index].contains((char) id);
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < this.size; i++) {
+            cardinality += this.containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * 估算占用的堆内存字节数.
+     */
+    public long sizeInBytes() {
+        long bytes = 16 + this.keys.length * 2L + this.containers.length * 4L;
+        for (int i = 0; i < this.size; i++) {
+            bytes += this.containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    public WxMpUserBitmap and(WxMpUserBitmap other) {
+        WxMpUserBitmap result = new WxMpUserBitmap(Math.max(Math.min(this.size, other.size), 1));
+        int i = 0;
+        int j = 0;
+        while (i < this.size && j < other.size) {
+            if (this.keys[i] < other.keys[j]) {
+                i++;
+            }
+            else if (this.keys[i] > other.keys[j]) {
+                j++;
+            }
+            else {
+                result.append(this.keys[i], this.containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public WxMpUserBitmap or(WxMpUserBitmap other) {
+        WxMpUserBitmap result = new WxMpUserBitmap(Math.max(this.size + other.size, 1));
+        int i = 0;
+        int j = 0;
+        while (i < this.size || j < other.size) {
+            if (j == other.size || i < this.size && this.keys[i] < other.keys[j]) {
+                result.append(this.keys[i], this.containers[i].copy());
+                i++;
+            }
+            else if (i == this.size || this.keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            }
+            else {
+                result.append(this.keys[i], this.containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在本位图中、不在other中的用户.
+     */
+    public WxMpUserBitmap andNot(WxMpUserBitmap other) {
+        WxMpUserBitmap result = new WxMpUserBitmap(Math.max(this.size, 1));
+        int i = 0;
+        int j = 0;
+        while (i < this.size) {
+            if (j == other.size || this.keys[i] < other.keys[j]) {
+                result.append(this.keys[i], this.containers[i].copy());
+                i++;
+            }
+            else if (this.keys[i] > other.keys[j]) {
+                j++;
+            }
+            else {
+                result.append(this.keys[i], this.containers[i].andNot(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public WxMpUserBitmap copy() {
+        WxMpUserBitmap result = new WxMpUserBitmap(Math.max(this.size, 1));
+        for (int i = 0; i < this.size; i++) {
+            result.append(this.keys[i], this.containers[i].copy());
+        }
+        return result;
+    }
+
+    /**
+     * 按ID升序遍历.
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < this.size; i++) {
+            this.containers[i].forEach(this.keys[i] << 16, consumer);
+        }
+    }
+
+    /**
+     * 按ID升序迭代.
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index;
+            private int high;
+            private PrimitiveIterator.OfInt current = this.advance();
+
+            private PrimitiveIterator.OfInt advance() {
+                while (this.index < WxMpUserBitmap.this.size) {
+                    PrimitiveIterator.OfInt it = WxMpUserBitmap.this.containers[this.index].iterator();
+                    this.high = WxMpUserBitmap.this.keys[this.index] << 16;
+                    this.index++;
+                    if (it.hasNext()) {
+                        return it;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.current != null;
+            }
+
+            @Override
+            public int nextInt() {
+                if (this.current == null) {
+                    throw new NoSuchElementException();
+                }
+                int id = this.high | this.current.nextInt();
+                if (!this.current.hasNext()) {
+                    this.current = this.advance();
+                }
+                return id;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WxMpUserBitmap)) {
+            return false;
+        }
+        WxMpUserBitmap other = (WxMpUserBitmap) o;
+        if (this.size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (this.keys[i] != other.keys[i] || !this.containers[i].sameAs(other.containers[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int[] hash = {1};
+        this.forEach(id -> hash[0] = 31 * hash[0] + id);
+        return hash[0];
+    }
+
+    /**
+     * 在末尾追加一个桶，调用方保证key递增，空容器直接丢弃.
+     */
+    private void append(char key, Container container) {
+        if (container.cardinality > 0) {
+            this.insert(this.size, key, container);
+        }
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (this.size == this.keys.length) {
+            int capacity = Math.max(this.size * 2, 4);
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.containers = Arrays.copyOf(this.containers, capacity);
+        }
+        System.arraycopy(this.keys, index, this.keys, index + 1, this.size - index);
+        System.arraycopy(this.containers, index, this.containers, index + 1, this.size - index);
+        this.keys[index] = key;
+        this.containers[index] = container;
+        this.size++;
+    }
+
+    /**
+     * 一个桶内的低16位集合.
+     */
+    private abstract static class Container {
+        int cardinality;
+
+        abstract Container add(char low);
+
+        abstract boolean contains(char low);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container copy();
+
+        abstract long sizeInBytes();
+
+        abstract void forEach(int high, IntConsumer consumer);
+
+        abstract PrimitiveIterator.OfInt iterator();
+
+        boolean sameAs(Container other) {
+            if (this.cardinality != other.cardinality) {
+                return false;
+            }
+            PrimitiveIterator.OfInt a = this.iterator();
+            PrimitiveIterator.OfInt b = other.iterator();
+            while (a.hasNext()) {
+                if (a.nextInt() != b.nextInt()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 稀疏容器：有序的char数组.
+     */
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+
+        ArrayContainer() {
+            this.values = new char[4];
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char low) {
+            int index = Arrays.binarySearch(this.values, 0, this.cardinality, low);
+            if (index >= 0) {
+                return this;
+            }
+            if (this.cardinality == ARRAY_MAX) {
+                return this.toBitmap().add(low);
+            }
+            index = -index - 1;
+            if (this.cardinality == this.values.length) {
+                this.values = Arrays.copyOf(this.values, Math.min(this.cardinality * 2, ARRAY_MAX));
+            }
+            System.arraycopy(this.values, index, this.values, index + 1, this.cardinality - index);
+            this.values[index] = low;
+            this.cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(this.values, 0, this.cardinality, low) >= 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(this.cardinality, other.cardinality)];
+            int n = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer b = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < this.cardinality && j < b.cardinality) {
+                    if (this.values[i] < b.values[j]) {
+                        i++;
+                    }
+                    else if (this.values[i] > b.values[j]) {
+                        j++;
+                    }
+                    else {
+                        result[n++] = this.values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            else {
+                for (int i = 0; i < this.cardinality; i++) {
+                    if (other.contains(this.values[i])) {
+                        result[n++] = this.values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer b = (ArrayContainer) other;
+            if (this.cardinality + b.cardinality > ARRAY_MAX) {
+                BitmapContainer bitmap = this.toBitmap();
+                for (int j = 0; j < b.cardinality; j++) {
+                    bitmap.set(b.values[j]);
+                }
+                return bitmap.optimize();
+            }
+            char[] result = new char[this.cardinality + b.cardinality];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < this.cardinality || j < b.cardinality) {
+                if (j == b.cardinality || i < this.cardinality && this.values[i] < b.values[j]) {
+                    result[n++] = this.values[i++];
+                }
+                else if (i == this.cardinality || this.values[i] > b.values[j]) {
+                    result[n++] = b.values[j++];
+                }
+                else {
+                    result[n++] = this.values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] result = new char[this.cardinality];
+            int n = 0;
+            for (int i = 0; i < this.cardinality; i++) {
+                if (!other.contains(this.values[i])) {
+                    result[n++] = this.values[i];
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(this.values, Math.max(this.cardinality, 1)), this.cardinality);
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 32 + this.values.length * 2L;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < this.cardinality; i++) {
+                consumer.accept(high | this.values[i]);
+            }
+        }
+
+        @Override
+        PrimitiveIterator.OfInt iterator() {
+            return new PrimitiveIterator.OfInt() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return this.index < ArrayContainer.this.cardinality;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (!this.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return ArrayContainer.this.values[this.index++];
+                }
+            };
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer(new long[BITMAP_WORDS], 0);
+            for (int i = 0; i < this.cardinality; i++) {
+                bitmap.set(this.values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * 稠密容器：65536位的位图.
+     */
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char low) {
+            this.set(low);
+            return this;
+        }
+
+        void set(char low) {
+            long before = this.words[low >>> 6];
+            long after = before | (1L << low);
+            if (before != after) {
+                this.words[low >>> 6] = after;
+                this.cardinality++;
+            }
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (this.words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] b = ((BitmapContainer) other).words;
+            long[] result = new long[BITMAP_WORDS];
+            int cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = this.words[i] & b[i];
+                cardinality += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, cardinality).optimize();
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = (BitmapContainer) this.copy();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer b = (ArrayContainer) other;
+                for (int j = 0; j < b.cardinality; j++) {
+                    result.set(b.values[j]);
+                }
+                return result;
+            }
+            long[] b = ((BitmapContainer) other).words;
+            int cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result.words[i] |= b[i];
+                cardinality += Long.bitCount(result.words[i]);
+            }
+            result.cardinality = cardinality;
+            return result;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] result = this.words.clone();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer b = (ArrayContainer) other;
+                int cardinality = this.cardinality;
+                for (int j = 0; j < b.cardinality; j++) {
+                    char low = b.values[j];
+                    if ((result[low >>> 6] & (1L << low)) != 0) {
+                        result[low >>> 6] &= ~(1L << low);
+                        cardinality--;
+                    }
+                }
+                return new BitmapContainer(result, cardinality).optimize();
+            }
+            long[] b = ((BitmapContainer) other).words;
+            int cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] &= ~b[i];
+                cardinality += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, cardinality).optimize();
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(this.words.clone(), this.cardinality);
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 32 + BITMAP_WORDS * 8L;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = this.words[i];
+                while (word != 0) {
+                    consumer.accept(high | ((i << 6) + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        PrimitiveIterator.OfInt iterator() {
+            return new PrimitiveIterator.OfInt() {
+                private int index = -1;
+                private long word;
+
+                @Override
+                public boolean hasNext() {
+                    while (this.word == 0) {
+                        if (++this.index == BITMAP_WORDS) {
+                            this.index--;
+                            return false;
+                        }
+                        this.word = BitmapContainer.this.words[this.index];
+                    }
+                    return true;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (!this.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int low = (this.index << 6) + Long.numberOfTrailingZeros(this.word);
+                    this.word &= this.word - 1;
+                    return low;
+                }
+            };
+        }
+
+        /**
+         * 元素不多时转回数组容器.
+         */
+        private Container optimize() {
+            if (this.cardinality > ARRAY_MAX) {
+                return this;
+            }
+            char[] values = new char[Math.max(this.cardinality, 1)];
+            int[] n = {0};
+            this.forEach(0, low -> values[n[0]++] = (char) low);
+            return new ArrayContainer(values, this.cardinality);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.wyb.mp.api.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+/**
+ * 使用可控时钟和手动执行的刷新线程池.
+ *
+ * @author Kunzite
+ */
+public class WxMpApiCacheTest {
+    private static final long TTL = 1000;
+    private static final long REFRESH_AFTER = 100;
+
+    private final AtomicLong now = new AtomicLong(10_000);
+    private final List<Runnable> pending = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private WxMpApiCache cache;
+
+    @Before
+    public void setUp() {
+        this.cache = new WxMpApiCache(new ConcurrentMapCache("test"), TTL, REFRESH_AFTER, this.pending::add,
+                this.now::get);
+    }
+
+    private String get() throws Exception {
+        return this.cache.get("k", () -> "v" + this.loads.incrementAndGet());
+    }
+
+    private void runPending() {
+        List<Runnable> tasks = new ArrayList<>(this.pending);
+        this.pending.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    @Test
+    public void testHitBeforeRefreshAfter() throws Exception {
+        Assert.assertEquals("v1", this.get());
+        this.now.addAndGet(REFRESH_AFTER - 1);
+        Assert.assertEquals("v1", this.get());
+        Assert.assertTrue(this.pending.isEmpty());
+        Assert.assertEquals(1, this.loads.get());
+
+        WxMpCacheStats stats = this.cache.stats();
+        Assert.assertEquals(1, stats.getHits());
+        Assert.assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    public void testRefreshAfterReturnsStaleAndReloadsInBackground() throws Exception {
+        Assert.assertEquals("v1", this.get());
+        this.now.addAndGet(REFRESH_AFTER);
+        Assert.assertEquals("v1", this.get());
+        // 刷新进行中时不再提交第二个
+        Assert.assertEquals("v1", this.get());
+        Assert.assertEquals(1, this.pending.size());
+
+        this.runPending();
+        Assert.assertEquals("v2", this.get());
+        Assert.assertEquals(2, this.loads.get());
+        Assert.assertEquals(1, this.cache.stats().getRefreshes());
+    }
+
+    @Test
+    public void testExpiredAfterTtlLoadsSynchronously() throws Exception {
+        Assert.assertEquals("v1", this.get());
+        this.now.addAndGet(TTL - 1);
+        Assert.assertEquals("v1", this.get());
+        this.pending.clear();
+
+        this.now.addAndGet(1);
+        Assert.assertEquals("v2", this.get());
+        Assert.assertEquals(2, this.cache.stats().getMisses());
+    }
+
+    @Test
+    public void testRefreshStartedBeforeEvictIsDiscarded() throws Exception {
+        Assert.assertEquals("v1", this.get());
+        this.now.addAndGet(REFRESH_AFTER);
+        this.get();
+        Assert.assertEquals(1, this.pending.size());
+
+        this.cache.evict("k");
+        this.runPending();
+        Assert.assertEquals(2, this.loads.get());
+        // 后台加载的v2被丢弃，重新同步加载
+        Assert.assertEquals("v3", this.get());
+    }
+
+    @Test
+    public void testEvictDuringSynchronousLoadIsNotOverwritten() throws Exception {
+        String value = this.cache.get("k", () -> {
+            this.cache.evict("k");
+            return "stale";
+        });
+        Assert.assertEquals("stale", value);
+        Assert.assertEquals("v1", this.get());
+        Assert.assertEquals(1, this.cache.stats().getEvictions());
+    }
+}
@@ -0,0 +1,55 @@
+package com.wyb.mp.api.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpUserTagIdCacheTest {
+    private final WxMpUserTagIdCache cache = new WxMpUserTagIdCache();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private long[] get(String openid) throws Exception {
+        return this.cache.get("appid", openid, () -> new long[] { this.loads.incrementAndGet() });
+    }
+
+    @Test
+    public void testLoadedOnce() throws Exception {
+        Assert.assertArrayEquals(new long[] { 1 }, this.get("o1"));
+        Assert.assertArrayEquals(new long[] { 1 }, this.get("o1"));
+        Assert.assertEquals(1, this.loads.get());
+        Assert.assertArrayEquals(new long[0], this.cache.get("appid", "o2", () -> null));
+    }
+
+    @Test
+    public void testInvalidateDuringLoadIsNotOverwritten() throws Exception {
+        long[] stale = this.cache.get("appid", "o1", () -> {
+            this.cache.invalidate("appid", "o1");
+            return new long[] { 100 };
+        });
+        Assert.assertArrayEquals(new long[] { 100 }, stale);
+        Assert.assertEquals(0, this.cache.size());
+        Assert.assertArrayEquals(new long[] { 1 }, this.get("o1"));
+        Assert.assertArrayEquals(new long[] { 1 }, this.get("o1"));
+    }
+
+    @Test
+    public void testInvalidateAllDuringLoadIsNotOverwritten() throws Exception {
+        this.cache.get("appid", "o1", () -> {
+            this.cache.invalidateAll();
+            return new long[] { 100 };
+        });
+        Assert.assertEquals(0, this.cache.size());
+        Assert.assertArrayEquals(new long[] { 1 }, this.get("o1"));
+    }
+
+    @Test
+    public void testInvalidateAfterLoad() throws Exception {
+        this.get("o1");
+        this.cache.invalidate("appid", "o1");
+        Assert.assertArrayEquals(new long[] { 2 }, this.get("o1"));
+    }
+}
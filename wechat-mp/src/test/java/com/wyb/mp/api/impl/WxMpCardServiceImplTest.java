@@ -0,0 +1,187 @@
+package com.wyb.mp.api.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.api.WxMpCardService;
+import com.wyb.mp.bean.card.WxMpCardResult;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * 查询接口阻塞在latch上，使并发的核销和查询在它返回前都已提交.
+ *
+ * @author Kunzite
+ */
+public class WxMpCardServiceImplTest {
+    private static final int THREADS = 8;
+
+    private final CountDownLatch queryStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseQuery = new CountDownLatch(1);
+    private final AtomicInteger queries = new AtomicInteger();
+    private final AtomicInteger consumes = new AtomicInteger();
+    private final AtomicBoolean consumed = new AtomicBoolean();
+    /**
+     * 为true时核销接口模拟网络失败，返回空字符串.
+     */
+    private volatile boolean consumeNoResponse;
+    private ExecutorService callers;
+    private ExecutorService executor;
+    private WxMpCardServiceImpl cardService;
+
+    @Before
+    public void setUp() {
+        WxMpServiceImpl wxMpService = new WxMpServiceImpl() {
+            @Override
+            public String post(WxMpApiUrl url, String jsonString) throws WxErrorException {
+                WxMpCardServiceImplTest test = WxMpCardServiceImplTest.this;
+                if (url == WxMpApiUrl.Card.CARD_CODE_CONSUME) {
+                    test.consumes.incrementAndGet();
+                    if (test.consumeNoResponse) {
+                        return "";
+                    }
+                    test.consumed.set(true);
+                    return "{\"errcode\":0,\"errmsg\":\"ok\",\"openid\":\"o1\"}";
+                }
+                test.queries.incrementAndGet();
+                test.queryStarted.countDown();
+                try {
+                    test.releaseQuery.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return test.consumed.get()
+                        ? "{\"errcode\":0,\"errmsg\":\"ok\",\"can_consume\":false,\"user_card_status\":\"CONSUMED\"}"
+                        : "{\"errcode\":0,\"errmsg\":\"ok\",\"can_consume\":true,\"user_card_status\":\"NORMAL\"}";
+            }
+        };
+        wxMpService.setWxMpConfigStorage(new WxMpInMemoryConfigStorage("appid", "secret"));
+        this.callers = Executors.newFixedThreadPool(THREADS);
+        this.executor = Executors.newFixedThreadPool(4);
+        this.cardService = new WxMpCardServiceImpl(wxMpService, this.executor);
+    }
+
+    @After
+    public void tearDown() {
+        this.releaseQuery.countDown();
+        this.callers.shutdownNow();
+        this.executor.shutdownNow();
+    }
+
+    private static int errorCodeOf(CompletableFuture<WxMpCardResult> future) {
+        try {
+            future.join();
+            return 0;
+        }
+        catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof WxErrorException);
+            return ((WxErrorException) e.getCause()).getError().getErrorCode();
+        }
+    }
+
+    @Test
+    public void testConcurrentRedeemConsumesOnce() throws Exception {
+        CompletableFuture<WxMpCardResult> first = this.cardService.consumeCardCodeAsync("c1", "card1");
+        Assert.assertTrue(this.queryStarted.await(10, TimeUnit.SECONDS));
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<WxMpCardResult>>> others = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            others.add(this.callers.submit(() -> {
+                start.await();
+                return this.cardService.consumeCardCodeAsync("c1", "card1");
+            }));
+        }
+        start.countDown();
+        for (Future<CompletableFuture<WxMpCardResult>> other : others) {
+            // 核销进行中，立即失败，不等待查询返回
+            Assert.assertEquals(WxMpCardService.ERROR_CODE_NOT_CONSUMABLE,
+                    errorCodeOf(other.get(10, TimeUnit.SECONDS)));
+        }
+
+        this.releaseQuery.countDown();
+        Assert.assertEquals("o1", first.get(10, TimeUnit.SECONDS).getOpenId());
+        Assert.assertEquals(1, this.consumes.get());
+        Assert.assertEquals(1, this.queries.get());
+
+        // 锁已释放，再次核销时查询到已核销
+        Assert.assertEquals(WxMpCardService.ERROR_CODE_NOT_CONSUMABLE,
+                errorCodeOf(this.cardService.consumeCardCodeAsync("c1", "card1")));
+        Assert.assertEquals(1, this.consumes.get());
+        Assert.assertEquals(2, this.queries.get());
+    }
+
+    /**
+     * 等待线程阻塞，即已经在等待共享的查询结果或阻塞在查询接口中.
+     */
+    private static void awaitBlocked(List<Thread> threads, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            int blocked = 0;
+            synchronized (threads) {
+                for (Thread thread : threads) {
+                    Thread.State state = thread.getState();
+                    blocked += state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING ? 1 : 0;
+                }
+            }
+            if (blocked >= count) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+        Assert.fail("等待线程阻塞超时");
+    }
+
+    @Test
+    public void testConcurrentQueriesAreCoalesced() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        List<Future<WxMpCardResult>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS - 1; i++) {
+            results.add(this.callers.submit(() -> {
+                synchronized (threads) {
+                    threads.add(Thread.currentThread());
+                }
+                return this.cardService.queryCardCode("card1", "c1", true);
+            }));
+        }
+        // 不同参数的查询不共享
+        Future<WxMpCardResult> otherCode = this.callers.submit(() -> {
+            synchronized (threads) {
+                threads.add(Thread.currentThread());
+            }
+            return this.cardService.queryCardCode("card1", "c2", true);
+        });
+        awaitBlocked(threads, THREADS);
+
+        this.releaseQuery.countDown();
+        WxMpCardResult shared = results.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<WxMpCardResult> result : results) {
+            Assert.assertSame(shared, result.get(10, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue(otherCode.get(10, TimeUnit.SECONDS).getCanConsume());
+        Assert.assertEquals(2, this.queries.get());
+    }
+
+    @Test
+    public void testEmptyConsumeResponseIsWxError() {
+        this.consumeNoResponse = true;
+        this.releaseQuery.countDown();
+        Assert.assertEquals(-1, errorCodeOf(this.cardService.consumeCardCodeAsync("c1", "card1")));
+        Assert.assertEquals(1, this.consumes.get());
+    }
+}
@@ -0,0 +1,94 @@
+package com.wyb.mp.api.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wyb.mp.enums.TicketType;
+
+/**
+ * 用可控的时钟验证过期判断和过期策略.
+ *
+ * @author Kunzite
+ */
+public class WxMpInMemoryConfigStorageTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+
+    private WxMpInMemoryConfigStorage storage() {
+        WxMpInMemoryConfigStorage storage = new WxMpInMemoryConfigStorage("appid", "secret");
+        storage.setTimeSource(this.clock::get);
+        return storage;
+    }
+
+    @Test
+    public void testDefaultPolicyReserves200Seconds() {
+        WxMpInMemoryConfigStorage storage = this.storage();
+        storage.updateAccessToken("token", 7200);
+        storage.updateTicket(TicketType.JSAPI, "ticket", 7200);
+
+        this.clock.addAndGet(TimeUnit.SECONDS.toMillis(7000));
+        Assert.assertFalse(storage.isAccessTokenExpired());
+        Assert.assertFalse(storage.isTicketExpired(TicketType.JSAPI));
+
+        this.clock.incrementAndGet();
+        Assert.assertTrue(storage.isAccessTokenExpired());
+        Assert.assertTrue(storage.isTicketExpired(TicketType.JSAPI));
+    }
+
+    @Test
+    public void testEarlyRefreshFraction() {
+        WxMpInMemoryConfigStorage storage = this.storage();
+        storage.setExpiryPolicy(new WxMpDefaultExpiryPolicy(0, 0.1, 0));
+        storage.updateAccessToken("token", 7200);
+
+        // 7200秒提前10%，6480秒后过期
+        this.clock.addAndGet(TimeUnit.SECONDS.toMillis(6480));
+        Assert.assertFalse(storage.isAccessTokenExpired());
+        this.clock.incrementAndGet();
+        Assert.assertTrue(storage.isAccessTokenExpired());
+    }
+
+    @Test
+    public void testJitterIsFixedPerInstanceAndBounded() {
+        long maxJitter = TimeUnit.SECONDS.toMillis(60);
+        for (int i = 0; i < 100; i++) {
+            WxMpDefaultExpiryPolicy policy = new WxMpDefaultExpiryPolicy(200_000, 0, maxJitter);
+            long jitter = policy.getJitterMillis();
+            Assert.assertTrue(jitter >= 0 && jitter < maxJitter);
+            Assert.assertEquals(7_000_000 - jitter, policy.expiresAt(0, 7200));
+            Assert.assertEquals(policy.expiresAt(0, 7200), policy.expiresAt(0, 7200));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFraction() {
+        new WxMpDefaultExpiryPolicy(0, 1, 0);
+    }
+
+    @Test
+    public void testCachedClockIsMonotonic() {
+        AtomicLong wallClock = new AtomicLong(1_000_000);
+        // 后台线程一小时才更新一次，测试中由tick手动更新
+        try (WxMpCachedClock cachedClock = new WxMpCachedClock(TimeUnit.HOURS.toMillis(1), wallClock::get)) {
+            Assert.assertEquals(1_000_000, cachedClock.currentTimeMillis());
+
+            wallClock.set(1_000_500);
+            Assert.assertEquals(1_000_000, cachedClock.currentTimeMillis());
+            cachedClock.tick();
+            Assert.assertEquals(1_000_500, cachedClock.currentTimeMillis());
+
+            // 系统时间回拨时保持原值
+            wallClock.set(999_000);
+            cachedClock.tick();
+            Assert.assertEquals(1_000_500, cachedClock.currentTimeMillis());
+
+            // 追上后重新跟随系统时间
+            wallClock.set(1_002_000);
+            cachedClock.tick();
+            Assert.assertEquals(1_002_000, cachedClock.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.wyb.mp.api.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.bean.kefu.WxMpKefuMessage;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * 使用可控时钟，发送接口用重写的post代替.
+ *
+ * @author Kunzite
+ */
+public class WxMpKefuServiceImplTest {
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(1000));
+    private final AtomicInteger posts = new AtomicInteger();
+    private WxMpKefuServiceImpl kefuService;
+
+    @Before
+    public void setUp() {
+        WxMpServiceImpl wxMpService = new WxMpServiceImpl() {
+            @Override
+            public String post(WxMpApiUrl url, String jsonString) {
+                WxMpKefuServiceImplTest.this.posts.incrementAndGet();
+                return "{\"errcode\":0,\"errmsg\":\"ok\"}";
+            }
+        };
+        wxMpService.setWxMpConfigStorage(new WxMpInMemoryConfigStorage("appid", "secret"));
+        this.kefuService = new WxMpKefuServiceImpl(wxMpService, Runnable::run, 1000, this.now::get);
+    }
+
+    private boolean send(String openid) throws WxErrorException {
+        return this.kefuService.sendKefuMessage(WxMpKefuMessage.TEXT().toUser(openid).content("你好").build());
+    }
+
+    @Test
+    public void testSendWithinWindow() throws Exception {
+        this.kefuService.markInteraction("o1");
+        this.now.addAndGet(WxMpKefuServiceImpl.INTERACTION_WINDOW_MILLIS - 1);
+        Assert.assertFalse(this.kefuService.isOutsideWindow("o1"));
+        Assert.assertTrue(this.send("o1"));
+        Assert.assertEquals(1, this.posts.get());
+    }
+
+    @Test
+    public void testSendRejectedAfterWindow() throws Exception {
+        this.kefuService.markInteraction("o1");
+        this.now.addAndGet(WxMpKefuServiceImpl.INTERACTION_WINDOW_MILLIS);
+        Assert.assertTrue(this.kefuService.isOutsideWindow("o1"));
+        try {
+            this.send("o1");
+            Assert.fail("超过48小时应拒绝发送");
+        }
+        catch (WxErrorException e) {
+            Assert.assertEquals(45015, e.getError().getErrorCode());
+        }
+        Assert.assertEquals(0, this.posts.get());
+        Assert.assertEquals(1, this.kefuService.getStats().getOutsideWindow());
+
+        // 时限之后很久仍保留记录
+        this.now.addAndGet(TimeUnit.HOURS.toMillis(47));
+        Assert.assertTrue(this.kefuService.isOutsideWindow("o1"));
+    }
+
+    @Test
+    public void testInteractionReopensWindow() throws Exception {
+        this.kefuService.markInteraction("o1");
+        this.now.addAndGet(TimeUnit.HOURS.toMillis(50));
+        Assert.assertTrue(this.kefuService.isOutsideWindow("o1"));
+        this.kefuService.markInteraction("o1");
+        Assert.assertTrue(this.send("o1"));
+    }
+
+    @Test
+    public void testUnknownUserIsSent() throws Exception {
+        Assert.assertFalse(this.kefuService.isOutsideWindow("o2"));
+        Assert.assertTrue(this.send("o2"));
+    }
+
+    @Test
+    public void testSentLastMinuteFollowsTimeSource() throws Exception {
+        Assert.assertTrue(this.send("o1"));
+        this.now.addAndGet(TimeUnit.SECONDS.toMillis(30));
+        Assert.assertTrue(this.send("o2"));
+        Assert.assertEquals(2, this.kefuService.getStats().getSentLastMinute());
+
+        this.now.addAndGet(TimeUnit.SECONDS.toMillis(31));
+        Assert.assertEquals(1, this.kefuService.getStats().getSentLastMinute());
+        this.now.addAndGet(TimeUnit.SECONDS.toMillis(30));
+        Assert.assertEquals(0, this.kefuService.getStats().getSentLastMinute());
+    }
+}
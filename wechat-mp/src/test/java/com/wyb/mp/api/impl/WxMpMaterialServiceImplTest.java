@@ -0,0 +1,94 @@
+package com.wyb.mp.api.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpEntity;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.bean.material.WxMediaUploadResult;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * 上传接口用重写的upload代替，不访问微信.
+ *
+ * @author Kunzite
+ */
+public class WxMpMaterialServiceImplTest {
+
+    private HttpEntity uploaded;
+    private String uploadedBody;
+
+    private final WxMpServiceImpl wxService = new WxMpServiceImpl() {
+        @Override
+        public String upload(WxMpApiUrl url, HttpEntity entity, Object... urlArgs) throws WxErrorException {
+            WxMpMaterialServiceImplTest.this.uploaded = entity;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                entity.writeTo(out);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            WxMpMaterialServiceImplTest.this.uploadedBody = new String(out.toByteArray(), StandardCharsets.UTF_8);
+            return "{\"type\":\"image\",\"media_id\":\"MEDIA_ID\",\"created_at\":123456789}";
+        }
+    };
+
+    @Test
+    public void testMediaUploadWithUnknownLengthSendsContentLength() throws Exception {
+        byte[] image = "not-really-a-jpeg".getBytes(StandardCharsets.UTF_8);
+        WxMediaUploadResult result = this.wxService.getMaterialService().mediaUpload("image", "jpg",
+                new ByteArrayInputStream(image));
+
+        Assert.assertEquals("MEDIA_ID", result.getMediaId());
+        Assert.assertTrue(this.uploaded.getContentLength() > image.length);
+        Assert.assertEquals(this.uploadedBody.getBytes(StandardCharsets.UTF_8).length, this.uploaded.getContentLength());
+        Assert.assertTrue(this.uploadedBody.contains("filename=\"media.jpg\"\r\nContent-Type: image/jpeg"));
+        Assert.assertTrue(this.uploadedBody.contains("not-really-a-jpeg"));
+    }
+
+    @Test
+    public void testMediaUploadWithKnownLengthStreams() throws Exception {
+        byte[] voice = new byte[4096];
+        this.wxService.getMaterialService().mediaUpload("voice", "amr", new ByteArrayInputStream(voice),
+                voice.length);
+
+        Assert.assertFalse(this.uploaded.isRepeatable());
+        Assert.assertTrue(this.uploaded.getContentLength() > voice.length);
+    }
+
+    @Test
+    public void testSmallUploadWithUnknownLengthDoesNotUseTempFile() throws Exception {
+        WxMpMaterialServiceImpl materialService = (WxMpMaterialServiceImpl) this.wxService.getMaterialService();
+        // 目录不存在，写临时文件会失败
+        materialService.setTmpDirFile(new File("/nonexistent-wx-media-dir"));
+        byte[] image = new byte[100 * 1024];
+        materialService.mediaUpload("image", "jpg", new ByteArrayInputStream(image));
+
+        Assert.assertTrue(this.uploaded.getContentLength() > image.length);
+    }
+
+    @Test
+    public void testLargeUploadWithUnknownLengthIsSpooled() throws Exception {
+        WxMpMaterialServiceImpl materialService = (WxMpMaterialServiceImpl) this.wxService.getMaterialService();
+        File tmpDir = Files.createTempDirectory("wx-media").toFile();
+        materialService.setTmpDirFile(tmpDir);
+        byte[] video = new byte[3 * 1024 * 1024];
+        video[video.length - 1] = 'x';
+        materialService.mediaUpload("video", "mp4", new ByteArrayInputStream(video));
+
+        Assert.assertEquals(this.uploadedBody.getBytes(StandardCharsets.UTF_8).length, this.uploaded.getContentLength());
+        Assert.assertTrue(this.uploaded.getContentLength() > video.length);
+        Assert.assertTrue(this.uploadedBody.contains("x\r\n--"));
+        // 上传后临时文件被删除
+        Assert.assertEquals(0, tmpDir.list().length);
+        tmpDir.delete();
+    }
+}
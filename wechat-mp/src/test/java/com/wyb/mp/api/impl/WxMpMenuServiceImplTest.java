@@ -7,9 +7,19 @@ import com.wyb.common.exception.WxErrorException;
 import com.wyb.mp.api.WxMpService;
 import com.wyb.mp.bean.menu.WxMpGetSelfMenuInfoResult;
 import com.wyb.mp.bean.menu.WxMpMenu;
+import com.wyb.mp.bean.menu.WxMpMenuDeployResult;
+import com.wyb.mp.enums.WxMpApiUrl;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.wyb.mp.enums.WxMpApiUrl.Menu.*;
 import static org.junit.Assert.assertNotNull;
 
 /**
@@ -196,6 +206,106 @@ public class WxMpMenuServiceImplTest {
     this.wxService.getMenuService().menuDelete();
   }
 
+  private static final String CURRENT_MENU = "{\"menu\":{\"button\":[{\"type\":\"click\",\"name\":\"A\",\"key\":\"a\"}]},"
+    + "\"conditionalmenu\":["
+    + "{\"button\":[{\"type\":\"click\",\"name\":\"B\",\"key\":\"b\"}],\"matchrule\":{\"tag_id\":\"1\"},\"menuid\":100},"
+    + "{\"button\":[{\"type\":\"click\",\"name\":\"C\",\"key\":\"c\"}],\"matchrule\":{\"tag_id\":\"2\"},\"menuid\":101}]}";
+
+  /**
+   * 不访问微信，menuGet返回CURRENT_MENU，记录调用过的修改接口.
+   */
+  private static WxMpServiceImpl menuService(List<WxMpApiUrl> calls, String addConditionalResult) {
+    return new WxMpServiceImpl() {
+      @Override
+      public String get(WxMpApiUrl url, Map<String, String> params) {
+        if (url == MENU_GET) {
+          return CURRENT_MENU;
+        }
+        calls.add(url);
+        return "{\"errcode\":0,\"errmsg\":\"ok\"}";
+      }
+
+      @Override
+      public String post(WxMpApiUrl url, String jsonString) {
+        calls.add(url);
+        return url == MENU_ADDCONDITIONAL ? addConditionalResult : "{\"errcode\":0,\"errmsg\":\"ok\"}";
+      }
+    };
+  }
+
+  private static WxMpMenu target(String conditionalMenus) {
+    return WxMpMenu.fromJson("{\"menu\":{\"button\":[{\"type\":\"click\",\"name\":\"A\",\"key\":\"a\"}]},"
+      + "\"conditionalmenu\":[" + conditionalMenus + "]}");
+  }
+
+  @Test
+  public void testMenuDeployUnchanged() throws WxErrorException {
+    List<WxMpApiUrl> calls = new ArrayList<>();
+    WxMpMenuDeployResult result = menuService(calls, null).getMenuService().menuDeploy(WxMpMenu.fromJson(CURRENT_MENU));
+    Assert.assertFalse(result.isChanged());
+    Assert.assertEquals(Arrays.asList("100", "101"), result.getUnchangedMenuIds());
+    Assert.assertTrue(calls.isEmpty());
+  }
+
+  @Test
+  public void testMenuDeployReplacesChangedConditionalMenu() throws WxErrorException {
+    List<WxMpApiUrl> calls = new ArrayList<>();
+    WxMpMenuDeployResult result = menuService(calls, "{\"menuid\":\"102\"}").getMenuService().menuDeploy(target(
+      "{\"button\":[{\"type\":\"click\",\"name\":\"B\",\"key\":\"b\"}],\"matchrule\":{\"tag_id\":\"1\"}},"
+        + "{\"button\":[{\"type\":\"click\",\"name\":\"D\",\"key\":\"d\"}],\"matchrule\":{\"tag_id\":\"2\"}}"));
+    Assert.assertFalse(result.isDefaultMenuChanged());
+    Assert.assertEquals(Collections.singletonList("100"), result.getUnchangedMenuIds());
+    Assert.assertEquals(Collections.singletonList("101"), result.getDeletedMenuIds());
+    Assert.assertEquals(Collections.singletonList("102"), result.getCreatedMenuIds());
+    Assert.assertEquals(Arrays.asList(MENU_DELCONDITIONAL, MENU_ADDCONDITIONAL), calls);
+  }
+
+  @Test
+  public void testMenuDeployWithoutDefaultMenuDeletesAll() throws WxErrorException {
+    List<WxMpApiUrl> calls = new ArrayList<>();
+    WxMpMenuDeployResult result = menuService(calls, null).getMenuService().menuDeploy(new WxMpMenu());
+    Assert.assertTrue(result.isMenuDeleted());
+    Assert.assertEquals(Arrays.asList("100", "101"), result.getDeletedMenuIds());
+    Assert.assertEquals(Collections.singletonList(MENU_DELETE), calls);
+  }
+
+  @Test
+  public void testMenuDeployConditionalWithoutDefaultMenuIsRejected() throws WxErrorException {
+    List<WxMpApiUrl> calls = new ArrayList<>();
+    WxMpMenu target = WxMpMenu.fromJson("{\"conditionalmenu\":["
+      + "{\"button\":[{\"type\":\"click\",\"name\":\"E\",\"key\":\"e\"}],\"matchrule\":{\"tag_id\":\"3\"}}]}");
+    try {
+      menuService(calls, null).getMenuService().menuDeploy(target);
+      Assert.fail("没有默认菜单时应拒绝个性化菜单");
+    } catch (IllegalArgumentException e) {
+      // 不调用任何接口
+      Assert.assertTrue(calls.isEmpty());
+    }
+  }
+
+  @Test
+  public void testMenuDeployFailedAddConditional() {
+    List<WxMpApiUrl> calls = new ArrayList<>();
+    try {
+      menuService(calls, "{\"errcode\":65303,\"errmsg\":\"there is no selfmenu, please create selfmenu first\"}")
+        .getMenuService().menuDeploy(target(
+          "{\"button\":[{\"type\":\"click\",\"name\":\"E\",\"key\":\"e\"}],\"matchrule\":{\"tag_id\":\"3\"}}"));
+      Assert.fail("添加个性化菜单失败时应抛出异常");
+    } catch (WxErrorException e) {
+      Assert.assertEquals(65303, e.getError().getErrorCode());
+    }
+  }
+
+  @Test
+  public void testMenuCreateEmptyResponse() {
+    try {
+      menuService(new ArrayList<>(), "").getMenuService().menuCreate("{\"button\":[],\"matchrule\":{\"tag_id\":\"3\"}}");
+      Assert.fail("未获取到响应时应抛出异常");
+    } catch (WxErrorException e) {
+      Assert.assertEquals(-1, e.getError().getErrorCode());
+    }
+  }
+
   public WxMenu getMenu() {
     WxMenu menu = new WxMenu();
     WxMenuButton button1 = new WxMenuButton();
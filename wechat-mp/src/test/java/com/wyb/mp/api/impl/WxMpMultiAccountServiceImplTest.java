@@ -0,0 +1,178 @@
+package com.wyb.mp.api.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.bean.kefu.WxMpKefuMessage;
+import com.wyb.mp.bean.tag.WxMpBatchTaggingResult;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * 接口调用用重写的post代替，记录调用时当前公众号的access_token.
+ *
+ * @author Kunzite
+ */
+public class WxMpMultiAccountServiceImplTest {
+    private final Queue<String> tokens = new ConcurrentLinkedQueue<>();
+    private ExecutorService executor;
+    private WxMpMultiAccountServiceImpl service;
+
+    private static WxMpInMemoryConfigStorage storage(String appId) {
+        WxMpInMemoryConfigStorage storage = new WxMpInMemoryConfigStorage(appId, "secret");
+        storage.updateAccessToken("token-" + appId, 7200);
+        return storage;
+    }
+
+    @Before
+    public void setUp() {
+        this.executor = Executors.newFixedThreadPool(4);
+        this.service = new WxMpMultiAccountServiceImpl() {
+            @Override
+            public String post(WxMpApiUrl url, String jsonString) {
+                WxMpMultiAccountServiceImplTest.this.tokens.add(this.getWxMpConfigStorage().getAccessToken());
+                return "{\"errcode\":0,\"errmsg\":\"ok\"}";
+            }
+        };
+        this.service.setWxMpConfigStorage(storage("default"));
+        this.service.addConfigStorage("a", storage("a"));
+        this.service.addConfigStorage("b", storage("b"));
+    }
+
+    @After
+    public void tearDown() {
+        this.service.clearSwitchover();
+        this.executor.shutdownNow();
+        this.service.close();
+    }
+
+    private List<String> openids(int count) {
+        List<String> openids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            openids.add("o" + i);
+        }
+        return openids;
+    }
+
+    @Test
+    public void testBatchTaggingUsesSwitchedAccount() {
+        Assert.assertTrue(this.service.switchover("b"));
+        WxMpBatchTaggingResult result = this.service.getWxMpUserTagService()
+                .batchTagging(1L, this.openids(200).iterator(), this.executor, 4, 1000);
+        Assert.assertTrue(result.isSuccess());
+        Assert.assertEquals(4, this.tokens.size());
+        for (String token : this.tokens) {
+            Assert.assertEquals("token-b", token);
+        }
+    }
+
+    @Test
+    public void testAsyncKefuUsesSwitchedAccount() throws Exception {
+        this.service.switchover("a");
+        this.service.getKefuService().sendKefuMessageAsync(
+                WxMpKefuMessage.TEXT().toUser("o1").content("1").build()).get(10, TimeUnit.SECONDS);
+        this.service.switchover("b");
+        this.service.getKefuService().sendKefuMessageAsync(
+                WxMpKefuMessage.TEXT().toUser("o1").content("2").build()).get(10, TimeUnit.SECONDS);
+        this.service.clearSwitchover();
+        this.service.getKefuService().sendKefuMessageAsync(
+                WxMpKefuMessage.TEXT().toUser("o1").content("3").build()).get(10, TimeUnit.SECONDS);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("token-a");
+        expected.add("token-b");
+        expected.add("token-default");
+        Assert.assertEquals(expected, new ArrayList<>(this.tokens));
+    }
+
+    @Test
+    public void testBoundExecutorRestoresWorkerThread() throws Exception {
+        this.service.switchover("a");
+        AtomicReference<String> inTask = new AtomicReference<>();
+        this.service.bindCurrentAccount(this.executor)
+                .execute(() -> inTask.set(this.service.getWxMpConfigStorage().getAppId()));
+        this.service.clearSwitchover();
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            this.service.bindCurrentAccount(single).execute(() -> { });
+            Assert.assertSame(single, this.service.bindCurrentAccount(single));
+            this.service.switchover("b");
+            this.service.bindCurrentAccount(single).execute(() -> { });
+            // 任务结束后工作线程恢复默认配置
+            Assert.assertEquals("default", single.submit(() -> this.service.getWxMpConfigStorage().getAppId())
+                    .get(10, TimeUnit.SECONDS));
+        }
+        finally {
+            single.shutdownNow();
+        }
+        this.executor.shutdown();
+        Assert.assertTrue(this.executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals("a", inTask.get());
+    }
+
+    /**
+     * 连接池关闭后发送请求抛出IllegalStateException，未关闭时连接本机未监听的端口抛出IOException.
+     */
+    private static boolean isShutDown(CloseableHttpClient client) {
+        try {
+            client.execute(new HttpGet("http://127.0.0.1:1/")).close();
+            return false;
+        }
+        catch (IOException e) {
+            return false;
+        }
+        catch (IllegalStateException e) {
+            return true;
+        }
+    }
+
+    @Test
+    public void testRemoveWaitsForInFlightRequests() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<CloseableHttpClient> client = new AtomicReference<>();
+        Thread request = new Thread(() -> {
+            try {
+                this.service.withAccount("a", s -> this.service.execute(httpClient -> {
+                    client.set(httpClient);
+                    started.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }));
+            }
+            catch (WxErrorException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        request.start();
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertNotNull(client.get());
+
+        this.service.removeConfigStorage("a");
+        Assert.assertFalse(isShutDown(client.get()));
+
+        release.countDown();
+        request.join(10000);
+        Assert.assertTrue(isShutDown(client.get()));
+    }
+}
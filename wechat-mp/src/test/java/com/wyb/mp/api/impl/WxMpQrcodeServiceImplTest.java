@@ -0,0 +1,105 @@
+package com.wyb.mp.api.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.bean.result.WxMpQrCodeTicket;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * 使用可控时钟，创建接口用重写的post代替.
+ *
+ * @author Kunzite
+ */
+public class WxMpQrcodeServiceImplTest {
+    private final AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(1000));
+    private final AtomicInteger posts = new AtomicInteger();
+    /**
+     * 每次调用接口时钟前进的毫秒数，模拟接口往返耗时.
+     */
+    private long roundTripMillis;
+    /**
+     * 为true时模拟网络失败，返回空字符串.
+     */
+    private boolean noResponse;
+    private WxMpQrcodeServiceImpl qrcodeService;
+
+    @Before
+    public void setUp() {
+        WxMpServiceImpl wxMpService = new WxMpServiceImpl() {
+            @Override
+            public String post(WxMpApiUrl url, String jsonString) {
+                WxMpQrcodeServiceImplTest test = WxMpQrcodeServiceImplTest.this;
+                test.now.addAndGet(test.roundTripMillis);
+                if (test.noResponse) {
+                    return "";
+                }
+                JsonObject request = new JsonParser().parse(jsonString).getAsJsonObject();
+                JsonObject response = new JsonObject();
+                response.addProperty("ticket", "t" + test.posts.incrementAndGet());
+                if (request.has("expire_seconds")) {
+                    response.add("expire_seconds", request.get("expire_seconds"));
+                }
+                return response.toString();
+            }
+        };
+        wxMpService.setWxMpConfigStorage(new WxMpInMemoryConfigStorage("appid", "secret"));
+        this.qrcodeService = new WxMpQrcodeServiceImpl(wxMpService, this.now::get);
+    }
+
+    @Test
+    public void testTmpTicketReusedUntilHalfLifetime() throws Exception {
+        WxMpQrCodeTicket first = this.qrcodeService.qrCodeCreateTmpTicket("s1", 600);
+        this.now.addAndGet(TimeUnit.SECONDS.toMillis(300) - 1);
+        Assert.assertSame(first, this.qrcodeService.qrCodeCreateTmpTicket("s1", 600));
+        Assert.assertEquals(1, this.posts.get());
+
+        this.now.addAndGet(1);
+        WxMpQrCodeTicket second = this.qrcodeService.qrCodeCreateTmpTicket("s1", 600);
+        Assert.assertEquals("t2", second.getTicket());
+        Assert.assertEquals(2, this.posts.get());
+
+        // 有效期不同视为不同的二维码
+        this.qrcodeService.qrCodeCreateTmpTicket("s1", 601);
+        Assert.assertEquals(3, this.posts.get());
+    }
+
+    @Test
+    public void testShortLifetimeDoesNotLoop() throws Exception {
+        // 往返耗时超过有效期的一半，新建的ticket立即不可复用
+        this.roundTripMillis = 2000;
+        Assert.assertEquals("t1", this.qrcodeService.qrCodeCreateTmpTicket("s1", 1).getTicket());
+        Assert.assertEquals(1, this.posts.get());
+
+        Assert.assertEquals("t2", this.qrcodeService.qrCodeCreateTmpTicket("s1", 1).getTicket());
+        Assert.assertEquals(2, this.posts.get());
+    }
+
+    @Test
+    public void testLimitTicketAlwaysReused() throws Exception {
+        WxMpQrCodeTicket first = this.qrcodeService.qrCodeCreateLastTicket("s1");
+        this.now.addAndGet(TimeUnit.DAYS.toMillis(365));
+        Assert.assertSame(first, this.qrcodeService.qrCodeCreateLastTicket("s1"));
+        Assert.assertEquals(1, this.posts.get());
+    }
+
+    @Test
+    public void testEmptyResponseIsWxError() {
+        this.noResponse = true;
+        try {
+            this.qrcodeService.qrCodeCreateTmpTicket("s1", 600);
+            Assert.fail("未获取到响应时应抛出WxErrorException");
+        }
+        catch (WxErrorException e) {
+            Assert.assertEquals(-1, e.getError().getErrorCode());
+        }
+    }
+}
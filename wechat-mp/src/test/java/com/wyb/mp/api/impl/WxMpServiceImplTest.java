@@ -1,6 +1,11 @@
 package com.wyb.mp.api.impl;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
 import com.wyb.mp.api.WxMpConfigStorage;
+import com.wyb.mp.api.WxMpKeyValueStore;
 import com.wyb.mp.api.WxMpService;
 import org.junit.Assert;
 import org.junit.Test;
@@ -30,4 +35,82 @@ public class WxMpServiceImplTest {
         System.out.println(codeUrl);
     }
 
+    /**
+     * 不发请求，每次获取token返回fetched并计数.
+     */
+    private static WxMpServiceImpl countingService(WxMpConfigStorage storage, AtomicInteger fetches) {
+        WxMpServiceImpl service = new WxMpServiceImpl() {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected <T, E extends Exception> T execute(HttpCall<T, E> call) {
+                fetches.incrementAndGet();
+                return (T) "{\"access_token\":\"fetched\",\"expires_in\":7200}";
+            }
+        };
+        service.setWxMpConfigStorage(storage);
+        return service;
+    }
+
+    @Test
+    public void testValidTokenDoesNotTakeLock() throws Exception {
+        WxMpInMemoryConfigStorage storage = new WxMpInMemoryConfigStorage("appid", "secret");
+        storage.updateAccessToken("token1", 7200);
+        storage.setAccessTokenLock(new ReentrantLock() {
+            @Override
+            public void lock() {
+                throw new AssertionError("token未过期时不应加锁");
+            }
+        });
+        AtomicInteger fetches = new AtomicInteger();
+
+        Assert.assertEquals("token1", countingService(storage, fetches).getAccessToken());
+        Assert.assertEquals(0, fetches.get());
+    }
+
+    @Test
+    public void testForceRefreshSkipsTokenRefreshedWhileWaiting() throws Exception {
+        WxMpInMemoryConfigStorage storage = new WxMpInMemoryConfigStorage("appid", "secret");
+        storage.updateAccessToken("token1", 7200);
+        // 模拟等锁期间另一个线程已经刷新
+        storage.setAccessTokenLock(new ReentrantLock() {
+            @Override
+            public void lock() {
+                super.lock();
+                storage.updateAccessToken("token2", 7200);
+            }
+        });
+        AtomicInteger fetches = new AtomicInteger();
+
+        Assert.assertEquals("token2", countingService(storage, fetches).getAccessToken(true));
+        Assert.assertEquals(0, fetches.get());
+    }
+
+    @Test
+    public void testForceRefreshFetchesWhenTokenUnchanged() throws Exception {
+        WxMpInMemoryConfigStorage storage = new WxMpInMemoryConfigStorage("appid", "secret");
+        storage.updateAccessToken("token1", 7200);
+        AtomicInteger fetches = new AtomicInteger();
+        WxMpServiceImpl service = countingService(storage, fetches);
+
+        Assert.assertEquals("fetched", service.getAccessToken(true));
+        Assert.assertEquals(1, fetches.get());
+        Assert.assertEquals("fetched", service.getAccessToken());
+        Assert.assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void testForceRefreshSeesSharedTokenDespiteNearCache() throws Exception {
+        WxMpKeyValueStore store = new WxMpInMemoryKeyValueStore();
+        WxMpSharedConfigStorage storage = new WxMpSharedConfigStorage(store, "test:", TimeUnit.HOURS.toMillis(1), 5000);
+        storage.setAppId("appid");
+        storage.updateAccessToken("token1", 7200);
+        // 其他节点刷新，本节点近端缓存中仍是token1
+        store.set("test:appid:access_token", (System.currentTimeMillis() + 60000) + ":token2", 60000);
+        Assert.assertEquals("token1", storage.getAccessToken());
+        AtomicInteger fetches = new AtomicInteger();
+
+        Assert.assertEquals("token2", countingService(storage, fetches).getAccessToken(true));
+        Assert.assertEquals(0, fetches.get());
+    }
+
 }
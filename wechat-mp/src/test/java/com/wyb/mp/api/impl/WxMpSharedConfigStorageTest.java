@@ -0,0 +1,198 @@
+package com.wyb.mp.api.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wyb.mp.api.WxMpKeyValueStore;
+import com.wyb.mp.enums.TicketType;
+
+/**
+ * 两个storage共享一个{@link WxMpInMemoryKeyValueStore}，模拟两个节点.
+ *
+ * @author Kunzite
+ */
+public class WxMpSharedConfigStorageTest {
+
+    private static WxMpSharedConfigStorage node(WxMpKeyValueStore store, long checkIntervalMillis) {
+        WxMpSharedConfigStorage storage = new WxMpSharedConfigStorage(store, "test:", checkIntervalMillis, 5000);
+        storage.setAppId("appid");
+        return storage;
+    }
+
+    @Test
+    public void testTokenRefreshedOnOneNodeIsSeenByOthers() {
+        WxMpKeyValueStore store = new WxMpInMemoryKeyValueStore();
+        WxMpSharedConfigStorage a = node(store, 0);
+        WxMpSharedConfigStorage b = node(store, 0);
+        Assert.assertTrue(b.isAccessTokenExpired());
+
+        a.updateAccessToken("token1", 7200);
+        Assert.assertFalse(b.isAccessTokenExpired());
+        Assert.assertEquals("token1", b.getAccessToken());
+
+        a.updateTicket(TicketType.JSAPI, "ticket1", 7200);
+        Assert.assertEquals("ticket1", b.getTicket(TicketType.JSAPI));
+        Assert.assertTrue(b.isTicketExpired(TicketType.WX_CARD));
+
+        b.expireAccessToken();
+        Assert.assertTrue(a.isAccessTokenExpired());
+        Assert.assertNull(a.getAccessToken());
+    }
+
+    @Test
+    public void testNearCacheServesReadsWithinCheckInterval() {
+        WxMpKeyValueStore store = new WxMpInMemoryKeyValueStore();
+        WxMpSharedConfigStorage a = node(store, TimeUnit.HOURS.toMillis(1));
+        WxMpSharedConfigStorage b = node(store, 0);
+
+        a.updateAccessToken("token1", 7200);
+        b.updateAccessToken("token2", 7200);
+        // a在核对间隔内使用本地值
+        Assert.assertEquals("token1", a.getAccessToken());
+        Assert.assertEquals("token2", b.getAccessToken());
+
+        // 本地值过期时总是读取共享存储
+        a.updateAccessToken("token1", 100);
+        Assert.assertTrue(node(store, 0).isAccessTokenExpired());
+        store.set("test:appid:access_token", (System.currentTimeMillis() + 60000) + ":token3", 60000);
+        Assert.assertFalse(a.isAccessTokenExpired());
+        Assert.assertEquals("token3", a.getAccessToken());
+    }
+
+    @Test
+    public void testRefreshLockIsExclusiveAcrossNodes() throws Exception {
+        WxMpKeyValueStore store = new WxMpInMemoryKeyValueStore();
+        Lock lockA = node(store, 0).getAccessTokenLock();
+        Lock lockB = node(store, 0).getAccessTokenLock();
+
+        lockA.lock();
+        lockA.lock();
+        AtomicBoolean acquiredWhileHeld = new AtomicBoolean();
+        CountDownLatch tried = new CountDownLatch(1);
+        new Thread(() -> {
+            acquiredWhileHeld.set(lockB.tryLock());
+            tried.countDown();
+        }).start();
+        Assert.assertTrue(tried.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(acquiredWhileHeld.get());
+
+        lockA.unlock();
+        Assert.assertFalse(lockB.tryLock(50, TimeUnit.MILLISECONDS));
+        lockA.unlock();
+        Assert.assertTrue(lockB.tryLock(1, TimeUnit.SECONDS));
+        lockB.unlock();
+    }
+
+    @Test
+    public void testMalformedValueIsTreatedAsMissing() {
+        WxMpKeyValueStore store = new WxMpInMemoryKeyValueStore();
+        WxMpSharedConfigStorage a = node(store, 0);
+        store.set("test:appid:access_token", "token-without-version", 60000);
+        Assert.assertNull(a.getAccessToken());
+        Assert.assertTrue(a.isAccessTokenExpired());
+        store.set("test:appid:access_token", "abc:token", 60000);
+        Assert.assertNull(a.getAccessToken());
+
+        a.updateAccessToken("token1", 7200);
+        Assert.assertEquals("token1", a.getAccessToken());
+    }
+
+    @Test
+    public void testLeaseIsRenewedWhileHeld() throws Exception {
+        WxMpKeyValueStore store = new WxMpInMemoryKeyValueStore();
+        Lock lockA = new WxMpDistributedLock(store, "test:lock", 150);
+        Lock lockB = new WxMpDistributedLock(store, "test:lock", 150);
+
+        lockA.lock();
+        AtomicBoolean acquiredWhileHeld = new AtomicBoolean();
+        Thread other = new Thread(() -> {
+            try {
+                acquiredWhileHeld.set(lockB.tryLock(600, TimeUnit.MILLISECONDS));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.start();
+        other.join(5000);
+        // 持有时间超过租期的四倍，其他节点仍然拿不到锁
+        Assert.assertFalse(acquiredWhileHeld.get());
+        lockA.unlock();
+        Assert.assertTrue(lockB.tryLock());
+        lockB.unlock();
+    }
+
+    @Test
+    public void testConditionReleasesSharedLockWhileWaiting() throws Exception {
+        WxMpKeyValueStore store = new WxMpInMemoryKeyValueStore();
+        Lock lockA = new WxMpDistributedLock(store, "test:lock", 5000);
+        Lock lockB = new WxMpDistributedLock(store, "test:lock", 5000);
+        Condition condition = lockA.newCondition();
+
+        CountDownLatch waiting = new CountDownLatch(1);
+        AtomicBoolean signalled = new AtomicBoolean();
+        AtomicBoolean otherNodeAcquired = new AtomicBoolean(true);
+        Thread waiter = new Thread(() -> {
+            lockA.lock();
+            try {
+                waiting.countDown();
+                signalled.set(condition.await(5, TimeUnit.SECONDS));
+                // 返回前重新拿到共享锁
+                otherNodeAcquired.set(lockB.tryLock());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                lockA.unlock();
+            }
+        });
+        waiter.start();
+        Assert.assertTrue(waiting.await(5, TimeUnit.SECONDS));
+
+        Assert.assertTrue(lockB.tryLock(1, TimeUnit.SECONDS));
+        lockB.unlock();
+        lockA.lock();
+        try {
+            condition.signal();
+        }
+        finally {
+            lockA.unlock();
+        }
+        waiter.join(5000);
+        Assert.assertTrue(signalled.get());
+        Assert.assertFalse(otherNodeAcquired.get());
+        Assert.assertTrue(lockB.tryLock());
+        lockB.unlock();
+    }
+
+    @Test
+    public void testDeserializedStorageIsUsable() throws Exception {
+        WxMpSharedConfigStorage a = node(new WxMpInMemoryKeyValueStore(), 0);
+        a.updateAccessToken("token1", 7200);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(a);
+        }
+        WxMpSharedConfigStorage copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (WxMpSharedConfigStorage) in.readObject();
+        }
+        Assert.assertEquals("token1", copy.getAccessToken());
+        Assert.assertTrue(copy.getAccessTokenLock().tryLock());
+        copy.getAccessTokenLock().unlock();
+        copy.updateAccessToken("token2", 7200);
+        Assert.assertEquals("token2", copy.getAccessToken());
+    }
+}
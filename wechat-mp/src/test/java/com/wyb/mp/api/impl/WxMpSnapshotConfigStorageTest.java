@@ -0,0 +1,106 @@
+package com.wyb.mp.api.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wyb.mp.enums.TicketType;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpSnapshotConfigStorageTest {
+
+    private static WxMpInMemoryConfigStorage storage(String appId) {
+        WxMpInMemoryConfigStorage storage = new WxMpInMemoryConfigStorage();
+        storage.setAppId(appId);
+        return storage;
+    }
+
+    private static File snapshotFile() throws Exception {
+        File file = File.createTempFile("wx-token", ".snapshot");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testValidTokensSurviveRestart() throws Exception {
+        File file = snapshotFile();
+        try (WxMpSnapshotConfigStorage before = new WxMpSnapshotConfigStorage(storage("appid"), file)) {
+            before.updateAccessToken("token1", 7200);
+            before.updateTicket(TicketType.JSAPI, "ticket1", 7200);
+            before.updateTicket(TicketType.SDK, "ticket2", 7200);
+            before.expireTicket(TicketType.SDK);
+            // 剩余有效期不足预留的200秒，恢复后视为过期
+            before.updateTicket(TicketType.WX_CARD, "ticket3", 150);
+        }
+
+        try (WxMpSnapshotConfigStorage after = new WxMpSnapshotConfigStorage(storage("appid"), file)) {
+            Assert.assertFalse(after.isAccessTokenExpired());
+            Assert.assertEquals("token1", after.getAccessToken());
+            Assert.assertFalse(after.isTicketExpired(TicketType.JSAPI));
+            Assert.assertEquals("ticket1", after.getTicket(TicketType.JSAPI));
+            Assert.assertTrue(after.isTicketExpired(TicketType.SDK));
+            Assert.assertTrue(after.isTicketExpired(TicketType.WX_CARD));
+        }
+    }
+
+    @Test
+    public void testSnapshotOfOtherAppIsIgnored() throws Exception {
+        File file = snapshotFile();
+        try (WxMpSnapshotConfigStorage storage = new WxMpSnapshotConfigStorage(storage("appid1"), file)) {
+            storage.updateAccessToken("token1", 7200);
+        }
+
+        try (WxMpSnapshotConfigStorage other = new WxMpSnapshotConfigStorage(storage("appid2"), file)) {
+            Assert.assertTrue(other.isAccessTokenExpired());
+        }
+        try (WxMpSnapshotConfigStorage storage = new WxMpSnapshotConfigStorage(storage("appid1"), file)) {
+            Assert.assertTrue(storage.isAccessTokenExpired());
+        }
+    }
+
+    @Test
+    public void testCorruptedSlotIsIgnored() throws Exception {
+        File file = snapshotFile();
+        try (WxMpSnapshotConfigStorage storage = new WxMpSnapshotConfigStorage(storage("appid"), file)) {
+            storage.updateAccessToken("token1", 7200);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // 头部76字节，槽位0的内容从第10字节开始
+            raf.seek(76 + 10);
+            raf.write('x');
+        }
+
+        try (WxMpSnapshotConfigStorage storage = new WxMpSnapshotConfigStorage(storage("appid"), file)) {
+            Assert.assertTrue(storage.isAccessTokenExpired());
+        }
+    }
+
+    @Test
+    public void testFileCanOnlyBeOpenedOnce() throws Exception {
+        File file = snapshotFile();
+        WxMpSnapshotConfigStorage first = new WxMpSnapshotConfigStorage(storage("appid"), file);
+        try {
+            new WxMpSnapshotConfigStorage(storage("appid"), file);
+            Assert.fail("the second storage should not open a locked snapshot");
+        }
+        catch (IOException e) {
+            // 已被占用
+        }
+
+        first.updateAccessToken("token1", 7200);
+        first.close();
+        // close之后只更新被装饰的配置
+        first.updateAccessToken("token2", 7200);
+        Assert.assertEquals("token2", first.getAccessToken());
+        first.close();
+
+        try (WxMpSnapshotConfigStorage second = new WxMpSnapshotConfigStorage(storage("appid"), file)) {
+            Assert.assertEquals("token1", second.getAccessToken());
+        }
+    }
+}
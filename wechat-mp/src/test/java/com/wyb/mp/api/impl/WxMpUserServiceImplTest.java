@@ -0,0 +1,197 @@
+package com.wyb.mp.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.common.exception.WxRuntimeException;
+import com.wyb.mp.bean.result.WxMpUser;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * 接口调用用重写的get/post代替，不访问微信.
+ *
+ * @author Kunzite
+ */
+public class WxMpUserServiceImplTest {
+
+    private static String userListJson(int total, int from, int count) {
+        StringBuilder sb = new StringBuilder("{\"total\":").append(total).append(",\"count\":").append(count);
+        String last = "";
+        if (count > 0) {
+            sb.append(",\"data\":{\"openid\":[");
+            for (int i = from; i < from + count; i++) {
+                last = "o" + i;
+                sb.append(i == from ? "" : ",").append('"').append(last).append('"');
+            }
+            sb.append("]}");
+        }
+        return sb.append(",\"next_openid\":\"").append(last).append("\"}").toString();
+    }
+
+    /**
+     * 每页pageSize个，微信在最后一页之后再返回一个count为0的页.
+     */
+    private static WxMpServiceImpl followers(int total, int pageSize, List<String> cursors) {
+        return new WxMpServiceImpl() {
+            @Override
+            public String get(WxMpApiUrl url, Map<String, String> params) throws WxErrorException {
+                String cursor = params.get("next_openid");
+                cursors.add(cursor);
+                int from = cursor == null ? 0 : Integer.parseInt(cursor.substring(1)) + 1;
+                return userListJson(total, from, Math.min(pageSize, total - from));
+            }
+        };
+    }
+
+    private static List<String> openids(int from, int to) {
+        List<String> list = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            list.add("o" + i);
+        }
+        return list;
+    }
+
+    @Test
+    public void testUserListIteratorPaging() {
+        List<String> cursors = new ArrayList<>();
+        List<String> result = new ArrayList<>();
+        followers(25, 10, cursors).getUserService().userListIterator(null).forEachRemaining(result::add);
+        Assert.assertEquals(openids(0, 25), result);
+        Assert.assertEquals(4, cursors.size());
+        Assert.assertNull(cursors.get(0));
+        Assert.assertEquals("o9", cursors.get(1));
+    }
+
+    @Test
+    public void testUserListIteratorExactMultiple() {
+        List<String> cursors = new ArrayList<>();
+        List<String> result = new ArrayList<>();
+        followers(20, 10, cursors).getUserService().userListIterator(null).forEachRemaining(result::add);
+        Assert.assertEquals(openids(0, 20), result);
+        Assert.assertEquals(3, cursors.size());
+    }
+
+    @Test
+    public void testUserListIteratorWithoutFollowers() {
+        List<String> cursors = new ArrayList<>();
+        Assert.assertFalse(followers(0, 10, cursors).getUserService().userListIterator(null).hasNext());
+        Assert.assertEquals(1, cursors.size());
+    }
+
+    /**
+     * 按请求中的openid原样返回用户，记录每批的大小；failOpenid所在的批次返回错误.
+     */
+    private static WxMpServiceImpl userInfo(List<Integer> batchSizes, String failOpenid) {
+        Pattern openidPattern = Pattern.compile("\"openid\":\"([^\"]+)\"");
+        return new WxMpServiceImpl() {
+            @Override
+            public String post(WxMpApiUrl url, String jsonString) throws WxErrorException {
+                Matcher matcher = openidPattern.matcher(jsonString);
+                StringBuilder sb = new StringBuilder("{\"user_info_list\":[");
+                int count = 0;
+                while (matcher.find()) {
+                    if (matcher.group(1).equals(failOpenid)) {
+                        return "{\"errcode\":40003,\"errmsg\":\"invalid openid\"}";
+                    }
+                    sb.append(count++ == 0 ? "" : ",")
+                            .append("{\"subscribe\":1,\"openid\":\"").append(matcher.group(1)).append("\"}");
+                }
+                batchSizes.add(count);
+                return sb.append("]}").toString();
+            }
+        };
+    }
+
+    private static List<String> streamOpenids(WxMpServiceImpl service, List<String> openids, ExecutorService executor) {
+        try (Stream<WxMpUser> users = service.getUserService().userInfoStream(openids.iterator(), executor, 3, 1000)) {
+            return users.map(WxMpUser::getOpenId).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testUserInfoStreamBatchBoundaries() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int total : new int[] {0, 1, 100, 101, 300, 350}) {
+                List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+                List<String> result = streamOpenids(userInfo(batchSizes, null), openids(0, total), executor);
+
+                Assert.assertEquals(openids(0, total), result);
+                Assert.assertEquals((total + 99) / 100, batchSizes.size());
+                for (int size : batchSizes) {
+                    Assert.assertTrue(size > 0 && size <= WxMpUserInfoBatchIterator.BATCH_SIZE);
+                }
+                Assert.assertEquals(total, batchSizes.stream().mapToInt(Integer::intValue).sum());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchIteratorFinishesOnceWhenExhausted() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            AtomicInteger finished = new AtomicInteger();
+            WxMpUserInfoBatchIterator batches = new WxMpUserInfoBatchIterator(
+                    userInfo(Collections.synchronizedList(new ArrayList<>()), null).getUserService(),
+                    openids(0, 250).iterator(), executor, 2, 1000, finished::incrementAndGet);
+            int count = 0;
+            while (batches.hasNext()) {
+                Assert.assertEquals(0, finished.get());
+                count += batches.next().size();
+            }
+            Assert.assertEquals(250, count);
+            // 遍历到末尾时不需要close就已释放
+            Assert.assertEquals(1, finished.get());
+            batches.close();
+            Assert.assertFalse(batches.hasNext());
+            Assert.assertEquals(1, finished.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUserInfoStreamError() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            streamOpenids(userInfo(Collections.synchronizedList(new ArrayList<>()), "o150"), openids(0, 300),
+                    executor);
+            Assert.fail("expected WxRuntimeException");
+        }
+        catch (WxRuntimeException e) {
+            Assert.assertEquals(40003, e.getError().getErrorCode());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUserInfoBatchGetRejectsOversizedBatch() throws WxErrorException {
+        userInfo(new ArrayList<>(), null).getUserService().userInfoBatchGet(openids(0, 101));
+    }
+
+    @Test
+    public void testUserInfoBatchGetEmpty() throws WxErrorException {
+        List<Integer> batchSizes = new ArrayList<>();
+        Assert.assertTrue(userInfo(batchSizes, null).getUserService().userInfoBatchGet(openids(0, 0)).isEmpty());
+        Assert.assertTrue(batchSizes.isEmpty());
+    }
+}
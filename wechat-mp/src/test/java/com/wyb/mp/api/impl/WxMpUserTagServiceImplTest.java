@@ -1,14 +1,28 @@
 package com.wyb.mp.api.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.wyb.common.exception.WxErrorException;
 import com.wyb.mp.api.WxMpService;
+import com.wyb.mp.bean.tag.WxMpBatchTaggingResult;
 import com.wyb.mp.bean.tag.WxTagListUser;
 import com.wyb.mp.bean.tag.WxUserTag;
+import com.wyb.mp.enums.WxMpApiUrl;
 
 /**
  * Created by Binary Wang on 2016/9/2.
@@ -91,4 +105,123 @@ public class WxMpUserTagServiceImplTest {
 //        System.out.println(res);
 //        Assert.assertNotNull(res);
 //    }
+
+    private static List<String> openids(int count) {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add("o" + i);
+        }
+        return list;
+    }
+
+    /**
+     * 不访问微信，按每组第一个openid决定返回内容，记录每次请求的openid列表.
+     */
+    private static WxMpServiceImpl batchService(List<List<String>> requests, Function<String, String> responder) {
+        return new WxMpServiceImpl() {
+            @Override
+            public String post(WxMpApiUrl url, String jsonString) throws WxErrorException {
+                JsonArray array = new JsonParser().parse(jsonString).getAsJsonObject().getAsJsonArray("openid_list");
+                List<String> chunk = new ArrayList<>();
+                array.forEach(e -> chunk.add(e.getAsString()));
+                requests.add(chunk);
+                return responder.apply(chunk.get(0));
+            }
+        };
+    }
+
+    private static WxMpBatchTaggingResult batchTagging(WxMpServiceImpl service, List<String> openids) {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            return service.getWxMpUserTagService().batchTagging(1L, openids.iterator(), executor, 2, 1000);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchTaggingChunks() {
+        List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        WxMpBatchTaggingResult result = batchTagging(
+                batchService(requests, openid -> "{\"errcode\":0,\"errmsg\":\"ok\"}"), openids(120));
+
+        Assert.assertTrue(result.isSuccess());
+        Assert.assertEquals(120, result.getTotal());
+        Assert.assertEquals(120, result.getSucceeded());
+        Assert.assertEquals(3, result.getRequests());
+        List<String> sent = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        synchronized (requests) {
+            for (List<String> chunk : requests) {
+                sizes.add(chunk.size());
+                sent.addAll(chunk);
+            }
+        }
+        Collections.sort(sizes);
+        Assert.assertEquals(Arrays.asList(20, 50, 50), sizes);
+        Collections.sort(sent);
+        List<String> expected = openids(120);
+        Collections.sort(expected);
+        Assert.assertEquals(expected, sent);
+    }
+
+    @Test
+    public void testBatchTaggingRetriesRetryableErrors() {
+        Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        WxMpBatchTaggingResult result = batchTagging(batchService(requests, openid -> {
+            int attempt = attempts.computeIfAbsent(openid, k -> new AtomicInteger()).getAndIncrement();
+            if (attempt == 0 && "o0".equals(openid)) {
+                // 网络异常时HttpClientUtil返回空串
+                return "";
+            }
+            if (attempt == 0 && "o50".equals(openid)) {
+                return "{\"errcode\":45011,\"errmsg\":\"api minute-quota reach limit\"}";
+            }
+            return "{\"errcode\":0,\"errmsg\":\"ok\"}";
+        }), openids(100));
+
+        Assert.assertTrue(result.isSuccess());
+        Assert.assertEquals(100, result.getSucceeded());
+        Assert.assertEquals(4, result.getRequests());
+        Assert.assertEquals(2, attempts.get("o0").get());
+        Assert.assertEquals(2, attempts.get("o50").get());
+    }
+
+    @Test
+    public void testBatchTaggingReportsFailedChunks() {
+        Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        WxMpBatchTaggingResult result = batchTagging(batchService(requests, openid -> {
+            attempts.computeIfAbsent(openid, k -> new AtomicInteger()).incrementAndGet();
+            if ("o50".equals(openid)) {
+                // 不可重试的错误
+                return "{\"errcode\":40003,\"errmsg\":\"invalid openid\"}";
+            }
+            if ("o100".equals(openid)) {
+                // 一直没有响应，重试耗尽
+                return "";
+            }
+            return "{\"errcode\":0,\"errmsg\":\"ok\"}";
+        }), openids(130));
+
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals(130, result.getTotal());
+        Assert.assertEquals(50, result.getSucceeded());
+        Assert.assertEquals(1, attempts.get("o50").get());
+        Assert.assertEquals(4, attempts.get("o100").get());
+        Assert.assertEquals(2, result.getFailures().size());
+        for (WxMpBatchTaggingResult.FailedChunk failure : result.getFailures()) {
+            if ("o50".equals(failure.getOpenids().get(0))) {
+                Assert.assertEquals(50, failure.getOpenids().size());
+                Assert.assertEquals(40003, failure.getError().getErrorCode());
+            }
+            else {
+                Assert.assertEquals("o100", failure.getOpenids().get(0));
+                Assert.assertEquals(30, failure.getOpenids().size());
+                Assert.assertEquals(-1, failure.getError().getErrorCode());
+            }
+        }
+    }
 }
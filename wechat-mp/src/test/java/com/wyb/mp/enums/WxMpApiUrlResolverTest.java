@@ -0,0 +1,70 @@
+package com.wyb.mp.enums;
+
+import static com.wyb.mp.enums.WxMpApiUrl.Menu.MENU_GET;
+import static com.wyb.mp.enums.WxMpApiUrl.Qrcode.SHOW_QRCODE;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wyb.mp.api.WxMpConfigStorage;
+import com.wyb.mp.api.impl.WxMpInMemoryConfigStorage;
+import com.wyb.mp.bean.WxMpHostConfig;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpApiUrlResolverTest {
+
+    private static WxMpConfigStorage storage(WxMpHostConfig hostConfig) {
+        return new WxMpInMemoryConfigStorage() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public WxMpHostConfig getHostConfig() {
+                return hostConfig;
+            }
+        };
+    }
+
+    @Test
+    public void testDefaultHost() {
+        Assert.assertEquals("https://api.weixin.qq.com/cgi-bin/menu/get", MENU_GET.getUrl(storage(null)));
+        Assert.assertEquals("https://mp.weixin.qq.com/cgi-bin/showqrcode", SHOW_QRCODE.getUrl(storage(null)));
+    }
+
+    @Test
+    public void testAccountsWithDifferentHostConfigs() {
+        WxMpConfigStorage a = storage(WxMpHostConfig.builder().apiHost("http://a.example.com").build());
+        WxMpConfigStorage b = storage(WxMpHostConfig.builder().apiHost("http://b.example.com").build());
+        WxMpConfigStorage none = storage(null);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("http://a.example.com/cgi-bin/menu/get", MENU_GET.getUrl(a));
+            Assert.assertEquals("http://b.example.com/cgi-bin/menu/get", MENU_GET.getUrl(b));
+            Assert.assertEquals("https://api.weixin.qq.com/cgi-bin/menu/get", MENU_GET.getUrl(none));
+        }
+        // 只设置了api域名，mp域名的接口不受影响
+        Assert.assertEquals("https://mp.weixin.qq.com/cgi-bin/showqrcode", SHOW_QRCODE.getUrl(a));
+    }
+
+    @Test
+    public void testHostChangeIsResolvedAgain() {
+        WxMpHostConfig hostConfig = WxMpHostConfig.builder().apiHost("http://a.example.com").build();
+        WxMpConfigStorage storage = storage(hostConfig);
+        Assert.assertEquals("http://a.example.com/cgi-bin/menu/get", MENU_GET.getUrl(storage));
+        hostConfig.setApiHost("http://c.example.com");
+        Assert.assertEquals("http://c.example.com/cgi-bin/menu/get", MENU_GET.getUrl(storage));
+        hostConfig.setMpHost("http://mp.example.com");
+        Assert.assertEquals("http://mp.example.com/cgi-bin/showqrcode", SHOW_QRCODE.getUrl(storage));
+    }
+
+    @Test
+    public void testEqualHostConfigsAreCachedSeparately() {
+        WxMpHostConfig first = WxMpHostConfig.builder().apiHost("http://a.example.com").build();
+        WxMpHostConfig second = WxMpHostConfig.builder().apiHost("http://a.example.com").build();
+        Assert.assertEquals("http://a.example.com/cgi-bin/menu/get", MENU_GET.getUrl(storage(first)));
+        Assert.assertEquals("http://a.example.com/cgi-bin/menu/get", MENU_GET.getUrl(storage(second)));
+        first.setApiHost("http://d.example.com");
+        Assert.assertEquals("http://a.example.com/cgi-bin/menu/get", MENU_GET.getUrl(storage(second)));
+        Assert.assertEquals("http://d.example.com/cgi-bin/menu/get", MENU_GET.getUrl(storage(first)));
+    }
+}
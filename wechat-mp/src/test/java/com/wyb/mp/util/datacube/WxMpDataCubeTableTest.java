@@ -0,0 +1,89 @@
+package com.wyb.mp.util.datacube;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpDataCubeTableTest {
+
+    private static final LocalDate DAY1 = LocalDate.of(2014, 12, 1);
+
+    @Test
+    public void testRowsArePivotedByDimension() {
+        WxMpDataCubeTable table = WxMpDataCubeTable.fromRows(rows(
+                "{\"ref_date\":\"2014-12-01\",\"user_source\":0,\"new_user\":5,\"cancel_user\":1}",
+                "{\"ref_date\":\"2014-12-01\",\"user_source\":30,\"new_user\":2,\"cancel_user\":0}",
+                "{\"ref_date\":\"2014-12-03\",\"user_source\":0,\"new_user\":0,\"cancel_user\":3}",
+                "{\"ref_date\":\"2014-12-09\",\"user_source\":0,\"new_user\":100,\"cancel_user\":0}"),
+                DAY1, DAY1.plusDays(2));
+
+        Assert.assertEquals(3, table.getDays());
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("cancel_user|user_source=0",
+                "cancel_user|user_source=30", "new_user|user_source=0", "new_user|user_source=30")),
+                table.getColumns());
+        Assert.assertEquals(5, table.get("new_user|user_source=0", DAY1));
+        Assert.assertEquals(0, table.get("new_user|user_source=0", DAY1.plusDays(2)));
+        Assert.assertEquals(WxMpDataCubeTable.ABSENT, table.get("new_user|user_source=0", DAY1.plusDays(1)));
+        // 超出范围的行被忽略
+        Assert.assertEquals(5, table.sum("new_user|user_source=0", DAY1.minusDays(10), DAY1.plusDays(30)));
+        Assert.assertEquals(3, table.sum("cancel_user|user_source=0", DAY1.plusDays(1), DAY1.plusDays(2)));
+    }
+
+    @Test
+    public void testMergeAndFileRoundTrip() throws IOException {
+        WxMpDataCubeTable first = WxMpDataCubeTable.fromRows(rows(
+                "{\"ref_date\":\"2014-12-01\",\"cumulate_user\":100}",
+                "{\"ref_date\":\"2014-12-02\",\"cumulate_user\":101}"), DAY1, DAY1.plusDays(1));
+        WxMpDataCubeTable second = WxMpDataCubeTable.fromRows(rows(
+                "{\"ref_date\":\"2014-12-02\",\"cumulate_user\":102}",
+                "{\"ref_date\":\"2014-12-03\",\"cumulate_user\":103,\"new_metric\":7}"), DAY1.plusDays(1),
+                DAY1.plusDays(2));
+        WxMpDataCubeTable merged = first.merge(second);
+
+        Assert.assertEquals(DAY1, merged.getStartDate());
+        Assert.assertEquals(DAY1.plusDays(2), merged.getEndDate());
+        Assert.assertArrayEquals(new long[]{100, 102, 103}, merged.column("cumulate_user"));
+        Assert.assertEquals(WxMpDataCubeTable.ABSENT, merged.get("new_metric", DAY1));
+        Assert.assertEquals(7, merged.get("new_metric", DAY1.plusDays(2)));
+
+        File file = File.createTempFile("datacube", ".dat");
+        try {
+            merged.writeTo(file);
+            WxMpDataCubeTable read = WxMpDataCubeTable.readFrom(file);
+            Assert.assertEquals(merged.getStartDate(), read.getStartDate());
+            Assert.assertEquals(merged.getColumns(), read.getColumns());
+            for (String column : merged.getColumns()) {
+                Assert.assertArrayEquals(merged.column(column), read.column(column));
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeRejectsGap() {
+        WxMpDataCubeTable.empty(DAY1, DAY1).merge(WxMpDataCubeTable.empty(DAY1.plusDays(2), DAY1.plusDays(3)));
+    }
+
+    private static List<JsonObject> rows(String... json) {
+        List<JsonObject> rows = new ArrayList<>();
+        for (String row : json) {
+            rows.add(new JsonParser().parse(row).getAsJsonObject());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,195 @@
+package com.wyb.mp.util.follower;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wyb.common.exception.WxError;
+import com.wyb.common.exception.WxErrorException;
+import com.wyb.mp.api.impl.WxMpServiceImpl;
+import com.wyb.mp.enums.WxMpApiUrl;
+
+/**
+ * 用重写get的WxMpServiceImpl模拟关注者列表接口，游标为"#下标".
+ *
+ * @author Kunzite
+ */
+public class WxMpFollowerSyncTest {
+
+    private File workDir;
+    private List<String> followers = new ArrayList<>();
+    private int pageSize = 10;
+    /**
+     * 第几次请求时失败，-1表示不失败.
+     */
+    private int failAtRequest = -1;
+    private final List<String> requestedCursors = new ArrayList<>();
+
+    private final WxMpServiceImpl wxService = new WxMpServiceImpl() {
+        @Override
+        public String get(WxMpApiUrl url, Map<String, String> params) throws WxErrorException {
+            WxMpFollowerSyncTest test = WxMpFollowerSyncTest.this;
+            String cursor = params.get("next_openid");
+            test.requestedCursors.add(cursor);
+            if (test.requestedCursors.size() == test.failAtRequest) {
+                throw new WxErrorException(WxError.builder().errorCode(-1).errorMsg("system error").build());
+            }
+            int from = cursor == null ? 0 : Integer.parseInt(cursor.substring(1));
+            int to = Math.min(from + test.pageSize, test.followers.size());
+            StringBuilder sb = new StringBuilder("{\"total\":").append(test.followers.size())
+                    .append(",\"count\":").append(to - from).append(",\"data\":{\"openid\":[");
+            for (int i = from; i < to; i++) {
+                sb.append(i == from ? "" : ",").append('"').append(test.followers.get(i)).append('"');
+            }
+            return sb.append("]},\"next_openid\":\"").append(to > from ? "#" + to : "").append("\"}").toString();
+        }
+    };
+
+    private final List<String> followed = new ArrayList<>();
+    private final List<String> unfollowed = new ArrayList<>();
+    private final WxMpFollowerChangeListener listener = new WxMpFollowerChangeListener() {
+        @Override
+        public void onFollow(String openid) {
+            WxMpFollowerSyncTest.this.followed.add(openid);
+        }
+
+        @Override
+        public void onUnfollow(String openid) {
+            WxMpFollowerSyncTest.this.unfollowed.add(openid);
+        }
+    };
+
+    @Before
+    public void createWorkDir() throws IOException {
+        this.workDir = Files.createTempDirectory("wx-follower-sync").toFile();
+    }
+
+    @After
+    public void deleteWorkDir() {
+        File[] files = this.workDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.workDir.delete();
+    }
+
+    /**
+     * 28位openid，按下标打乱顺序，模拟接口返回的无序列表.
+     */
+    private static List<String> openids(int from, int to) {
+        List<String> list = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            list.add(String.format("oAbC%024d", (i * 7919L) % 1_000_003));
+        }
+        return list;
+    }
+
+    private List<String> snapshot() throws IOException {
+        List<String> result = new ArrayList<>();
+        try (WxMpFollowerSnapshot snapshot = WxMpFollowerSnapshot.open(new File(this.workDir, "snapshot.dat"))) {
+            snapshot.forEachRemaining(result::add);
+        }
+        return result;
+    }
+
+    private List<String> leftoverFiles() {
+        List<String> names = new ArrayList<>(Arrays.asList(this.workDir.list()));
+        names.remove("snapshot.dat");
+        return names;
+    }
+
+    @Test
+    public void testFirstSyncReportsEveryoneAsFollowed() throws Exception {
+        this.followers = openids(0, 35);
+        WxMpFollowerSyncResult result = new WxMpFollowerSync(this.wxService, this.workDir).sync(this.listener);
+
+        List<String> sorted = new ArrayList<>(new TreeSet<>(this.followers));
+        Assert.assertEquals(35, result.getTotal());
+        Assert.assertEquals(5, result.getPages());
+        Assert.assertFalse(result.isResumed());
+        Assert.assertEquals(35, result.getFollowed());
+        Assert.assertEquals(sorted, this.followed);
+        Assert.assertEquals(sorted, this.snapshot());
+        Assert.assertEquals(Collections.emptyList(), this.leftoverFiles());
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        this.followers = openids(0, 35);
+        this.failAtRequest = 3;
+        WxMpFollowerSync sync = new WxMpFollowerSync(this.wxService, this.workDir);
+        try {
+            sync.sync(this.listener);
+            Assert.fail("expected WxErrorException");
+        }
+        catch (WxErrorException e) {
+            Assert.assertEquals(-1, e.getError().getErrorCode());
+        }
+        Assert.assertTrue(new File(this.workDir, "checkpoint").exists());
+        Assert.assertTrue(this.followed.isEmpty());
+
+        this.failAtRequest = -1;
+        this.requestedCursors.clear();
+        WxMpFollowerSyncResult result = sync.sync(this.listener);
+
+        // 前两页已写出，从第三页继续
+        Assert.assertTrue(result.isResumed());
+        Assert.assertEquals("#20", this.requestedCursors.get(0));
+        Assert.assertEquals(3, result.getPages());
+        Assert.assertEquals(35, result.getTotal());
+        Assert.assertEquals(new ArrayList<>(new TreeSet<>(this.followers)), this.snapshot());
+        Assert.assertEquals(Collections.emptyList(), this.leftoverFiles());
+    }
+
+    @Test
+    public void testMergeAcrossManySpillFilesRemovesDuplicates() throws Exception {
+        // 每页2个共150页，超过一次归并的文件数，需要先分组归并
+        this.pageSize = 2;
+        this.followers = openids(0, 300);
+        // 关注者在拉取期间变动时同一openid可能出现在多页中
+        this.followers.set(299, this.followers.get(0));
+        this.followers.set(150, this.followers.get(1));
+        WxMpFollowerSyncResult result = new WxMpFollowerSync(this.wxService, this.workDir).sync(null);
+
+        List<String> sorted = new ArrayList<>(new TreeSet<>(this.followers));
+        Assert.assertEquals(298, sorted.size());
+        Assert.assertEquals(298, result.getTotal());
+        Assert.assertEquals(sorted, this.snapshot());
+        Assert.assertEquals(Collections.emptyList(), this.leftoverFiles());
+    }
+
+    @Test
+    public void testDiffAgainstPreviousSnapshot() throws Exception {
+        WxMpFollowerSync sync = new WxMpFollowerSync(this.wxService, this.workDir);
+        this.followers = openids(0, 30);
+        sync.sync(null);
+
+        List<String> removed = new ArrayList<>(this.followers.subList(0, 5));
+        List<String> added = openids(100, 108);
+        this.followers = new ArrayList<>(this.followers.subList(5, 30));
+        this.followers.addAll(added);
+        WxMpFollowerSyncResult result = sync.sync(this.listener);
+
+        Collections.sort(removed);
+        Collections.sort(added);
+        Assert.assertEquals(33, result.getTotal());
+        Assert.assertEquals(8, result.getFollowed());
+        Assert.assertEquals(5, result.getUnfollowed());
+        Assert.assertEquals(added, this.followed);
+        Assert.assertEquals(removed, this.unfollowed);
+        Assert.assertEquals(new ArrayList<>(new TreeSet<>(this.followers)), this.snapshot());
+    }
+}
@@ -0,0 +1,74 @@
+package com.wyb.mp.util.jsapi;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wyb.common.bean.WxJsapiSignature;
+import com.wyb.common.util.crypto.SHA1;
+import com.wyb.mp.api.impl.WxMpInMemoryConfigStorage;
+import com.wyb.mp.api.impl.WxMpServiceImpl;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpJsapiSignerTest {
+
+    private static final String TICKET =
+            "sM4AOVdWfPE4DxkXGEs8VMCPGGVi4C3VM0P37wVUCFvkVAy_90u5h9nbSlYy3-Sl-HhTdfl2fzFy1AOcHKP7qg";
+
+    /**
+     * 微信JS-SDK文档附录1中的示例.
+     */
+    @Test
+    public void testSignMatchesOfficialExample() {
+        Assert.assertEquals("0f9de62fce790f9a083d5c99e95740ceb90c27ed",
+                WxMpJsapiSigner.sign(TICKET, "Wm3WZYTPz0wzccnW", 1414587457L, "http://mp.weixin.qq.com?params=value"));
+    }
+
+    @Test
+    public void testSignMatchesSortedSignature() {
+        String url = "http://example.com/share?a=1&b=中文";
+        Assert.assertEquals(
+                SHA1.genWithAmple("url=" + url, "timestamp=1500000000", "noncestr=abc", "jsapi_ticket=" + TICKET),
+                WxMpJsapiSigner.sign(TICKET, "abc", 1500000000L, url));
+    }
+
+    private String currentTicket = TICKET;
+
+    @Test
+    public void testCacheIsKeyedByAppId() throws Exception {
+        WxMpServiceImpl wxMpService = new WxMpServiceImpl() {
+            @Override
+            public String getJsapiTicket(boolean forceRefresh) {
+                return WxMpJsapiSignerTest.this.currentTicket;
+            }
+        };
+        WxMpInMemoryConfigStorage a = new WxMpInMemoryConfigStorage("appidA", "secret");
+        WxMpInMemoryConfigStorage b = new WxMpInMemoryConfigStorage("appidB", "secret");
+        WxMpJsapiSigner signer = new WxMpJsapiSigner(wxMpService, 60000, 100);
+        String url = "http://example.com/share";
+
+        wxMpService.setWxMpConfigStorage(a);
+        WxJsapiSignature signedA = signer.sign(url);
+        wxMpService.setWxMpConfigStorage(b);
+        this.currentTicket = TICKET + "B";
+        WxJsapiSignature signedB = signer.sign(url);
+        Assert.assertEquals("appidA", signedA.getAppId());
+        Assert.assertEquals("appidB", signedB.getAppId());
+
+        // 两个公众号的记录互不覆盖
+        wxMpService.setWxMpConfigStorage(a);
+        this.currentTicket = TICKET;
+        Assert.assertSame(signedA, signer.sign(url));
+        wxMpService.setWxMpConfigStorage(b);
+        this.currentTicket = TICKET + "B";
+        Assert.assertSame(signedB, signer.sign(url));
+
+        // ticket变化后重新签名
+        this.currentTicket = TICKET + "B2";
+        WxJsapiSignature resigned = signer.sign(url);
+        Assert.assertNotSame(signedB, resigned);
+        Assert.assertEquals(WxMpJsapiSigner.sign(TICKET + "B2", resigned.getNonceStr(), resigned.getTimestamp(), url),
+                resigned.getSignature());
+    }
+}
@@ -0,0 +1,67 @@
+package com.wyb.mp.util.media;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpMediaCacheTest {
+
+    @Test
+    public void testDigest() throws Exception {
+        File file = File.createTempFile("wx-media-cache", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "abc".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                WxMpMediaCache.digest(file, null));
+        Assert.assertNotEquals(WxMpMediaCache.digest(file, null), WxMpMediaCache.digest(file, "{}"));
+    }
+
+    @Test
+    public void testIndexSurvivesRestart() throws Exception {
+        File index = File.createTempFile("wx-media-cache", ".idx");
+        index.deleteOnExit();
+        WxMpMediaCache cache = new WxMpMediaCache(index);
+        cache.put("app", "material:image", "d1", "mediaId1", "http://mmbiz/1", 0);
+        cache.put("app", "media:image", "d2", "mediaId2", null, System.currentTimeMillis() + 60000);
+        cache.put("app", "media:image", "d3", "mediaId3", null, System.currentTimeMillis() - 1);
+        cache.put("app", "material:voice", "d4", "mediaId4", null, 0);
+        cache.removeByValue("app", "mediaId4");
+
+        WxMpMediaCache reloaded = new WxMpMediaCache(index);
+        Assert.assertEquals("mediaId1", reloaded.get("app", "material:image", "d1").getValue());
+        Assert.assertEquals("http://mmbiz/1", reloaded.get("app", "material:image", "d1").getExtra());
+        Assert.assertEquals("mediaId2", reloaded.get("app", "media:image", "d2").getValue());
+        Assert.assertNull(reloaded.get("app", "media:image", "d3"));
+        Assert.assertNull(reloaded.get("app", "material:voice", "d4"));
+        Assert.assertNull(reloaded.get("other", "material:image", "d1"));
+        Assert.assertEquals(2, reloaded.size());
+    }
+
+    @Test
+    public void testCloseReleasesIndexFile() throws Exception {
+        File index = File.createTempFile("wx-media-cache", ".idx");
+        index.deleteOnExit();
+        WxMpMediaCache cache = new WxMpMediaCache(index);
+        cache.put("app", "material:image", "d1", "mediaId1", null, 0);
+        cache.close();
+        long length = index.length();
+
+        // 关闭后只写内存
+        cache.put("app", "material:image", "d2", "mediaId2", null, 0);
+        Assert.assertEquals("mediaId2", cache.get("app", "material:image", "d2").getValue());
+        Assert.assertEquals(length, index.length());
+        cache.close();
+
+        try (WxMpMediaCache reloaded = new WxMpMediaCache(index)) {
+            Assert.assertEquals("mediaId1", reloaded.get("app", "material:image", "d1").getValue());
+            Assert.assertNull(reloaded.get("app", "material:image", "d2"));
+        }
+        Assert.assertTrue(index.delete());
+    }
+}
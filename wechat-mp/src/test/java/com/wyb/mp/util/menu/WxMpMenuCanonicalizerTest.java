@@ -0,0 +1,57 @@
+package com.wyb.mp.util.menu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wyb.common.bean.menu.WxMenuButton;
+import com.wyb.common.bean.menu.WxMenuRule;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpMenuCanonicalizerTest {
+
+    @Test
+    public void testBlankFieldsAndEmptySubButtonsAreIgnored() {
+        WxMenuButton local = button("click", "今日歌曲", "V1001_TODAY_MUSIC");
+        WxMenuButton remote = button("click", " 今日歌曲", "V1001_TODAY_MUSIC");
+        remote.setUrl("");
+        remote.setSubButtons(new ArrayList<>());
+
+        Assert.assertEquals(WxMpMenuCanonicalizer.hash(Arrays.asList(local), null),
+                WxMpMenuCanonicalizer.hash(Arrays.asList(remote), new WxMenuRule()));
+    }
+
+    @Test
+    public void testStructureChangesHash() {
+        WxMenuButton a = button("click", "A", "KEY_A");
+        WxMenuButton b = button("view", "B", null);
+        b.setUrl("http://v.qq.com");
+        WxMenuButton parent = button(null, "P", null);
+        parent.setSubButtons(new ArrayList<>(Arrays.asList(a, b)));
+        String hash = WxMpMenuCanonicalizer.hash(Arrays.asList(parent), null);
+
+        WxMenuButton reordered = button(null, "P", null);
+        reordered.setSubButtons(new ArrayList<>(Arrays.asList(b, a)));
+        Assert.assertNotEquals(hash, WxMpMenuCanonicalizer.hash(Arrays.asList(reordered), null));
+
+        WxMenuRule rule = new WxMenuRule();
+        rule.setTagId("100");
+        Assert.assertNotEquals(hash, WxMpMenuCanonicalizer.hash(Arrays.asList(parent), rule));
+
+        List<WxMenuButton> flat = Arrays.asList(a, b);
+        Assert.assertNotEquals(hash, WxMpMenuCanonicalizer.hash(flat, null));
+    }
+
+    private static WxMenuButton button(String type, String name, String key) {
+        WxMenuButton button = new WxMenuButton();
+        button.setType(type);
+        button.setName(name);
+        button.setKey(key);
+        return button;
+    }
+}
@@ -0,0 +1,148 @@
+package com.wyb.mp.util.menu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wyb.common.bean.menu.WxMenuRule;
+import com.wyb.mp.bean.menu.WxMpMenu;
+import com.wyb.mp.bean.result.WxMpUser;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpMenuMatcherTest {
+
+    @Test
+    public void testNewestMatchingMenuWins() {
+        WxMpMenu menu = menu(
+                conditional("101", rule("100", null, null, null, null)),
+                conditional("103", rule(null, "2", null, null, null)),
+                conditional("102", rule("100", "2", null, null, null)));
+        WxMpMenuMatcher matcher = WxMpMenuMatcher.compile(menu);
+
+        Assert.assertEquals("103", matcher.match(user(2, "广州", 100L), null).getMenuId());
+        Assert.assertEquals("101", matcher.match(user(1, "广州", 100L), null).getMenuId());
+        Assert.assertEquals("103", matcher.match(user(2, "广州"), null).getMenuId());
+        Assert.assertSame(menu.getMenu(), matcher.match(user(1, "广州", 200L), null));
+    }
+
+    @Test
+    public void testEveryFilledFieldMustMatch() {
+        WxMpMenu menu = menu(
+                conditional("1", rule("100", null, "广州", WxMpMenuMatcher.PLATFORM_IOS, null)),
+                conditional("2", rule(null, null, null, null, "en")));
+        WxMpMenuMatcher matcher = WxMpMenuMatcher.compile(menu);
+
+        Assert.assertEquals(1, matcher.matchIndex(user(1, "广州", 100L), WxMpMenuMatcher.PLATFORM_IOS));
+        Assert.assertEquals(-1, matcher.matchIndex(user(1, "深圳", 100L), WxMpMenuMatcher.PLATFORM_IOS));
+        Assert.assertEquals(-1, matcher.matchIndex(user(1, "广州", 100L), WxMpMenuMatcher.PLATFORM_ANDROID));
+        // 不知道客户端类型时，限定了客户端的菜单不匹配
+        Assert.assertEquals(-1, matcher.matchIndex(user(1, "广州", 100L), null));
+
+        WxMpUser english = user(1, "广州", 100L);
+        english.setLanguage("en");
+        Assert.assertEquals("2", matcher.match(english, WxMpMenuMatcher.PLATFORM_IOS).getMenuId());
+    }
+
+    @Test
+    public void testWithoutConditionalMenus() {
+        WxMpMenu menu = new WxMpMenu();
+        menu.setMenu(conditional(null, null));
+        WxMpMenuMatcher matcher = WxMpMenuMatcher.compile(menu);
+        Assert.assertSame(menu.getMenu(), matcher.match(user(1, "广州", 100L), WxMpMenuMatcher.PLATFORM_IOS));
+    }
+
+    @Test
+    public void testMatchesLinearScanAcrossManyMenus() {
+        Random random = new Random(7);
+        String[] tags = {null, "100", "101", "102"};
+        String[] sexes = {null, "1", "2"};
+        String[] cities = {null, "广州", "深圳"};
+        String[] platforms = {null, "1", "2", "3"};
+        String[] languages = {null, "zh_CN", "en"};
+
+        List<WxMpMenu.WxMpConditionalMenu> conditionalMenus = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            conditionalMenus.add(conditional(String.valueOf(1000 + random.nextInt(100000)),
+                    rule(pick(random, tags), pick(random, sexes), pick(random, cities), pick(random, platforms),
+                            pick(random, languages))));
+        }
+        WxMpMenu menu = menu(conditionalMenus.toArray(new WxMpMenu.WxMpConditionalMenu[0]));
+        WxMpMenuMatcher matcher = WxMpMenuMatcher.compile(menu);
+
+        for (int n = 0; n < 5000; n++) {
+            List<Long> tagIds = new ArrayList<>();
+            for (int t = 100; t <= 103; t++) {
+                if (random.nextBoolean()) {
+                    tagIds.add((long) t);
+                }
+            }
+            WxMpUser user = user(1 + random.nextInt(2), random.nextBoolean() ? "广州" : "深圳",
+                    tagIds.toArray(new Long[0]));
+            user.setLanguage(random.nextBoolean() ? "zh_CN" : "en");
+            String platform = pick(random, platforms);
+
+            WxMpMenu.WxMpConditionalMenu expected = menu.getMenu();
+            long newest = -1;
+            for (WxMpMenu.WxMpConditionalMenu candidate : conditionalMenus) {
+                long menuId = Long.parseLong(candidate.getMenuId());
+                if (menuId > newest && matches(candidate.getRule(), user, platform)) {
+                    expected = candidate;
+                    newest = menuId;
+                }
+            }
+            Assert.assertSame(expected, matcher.match(user, platform));
+        }
+    }
+
+    private static boolean matches(WxMenuRule rule, WxMpUser user, String platform) {
+        return (rule.getTagId() == null
+                || Arrays.asList(user.getTagIds()).contains(Long.valueOf(rule.getTagId())))
+                && (rule.getSex() == null || rule.getSex().equals(String.valueOf(user.getSex())))
+                && (rule.getCity() == null || rule.getCity().equals(user.getCity()))
+                && (rule.getClientPlatformType() == null || rule.getClientPlatformType().equals(platform))
+                && (rule.getLanguage() == null || rule.getLanguage().equals(user.getLanguage()));
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static WxMpMenu menu(WxMpMenu.WxMpConditionalMenu... conditionalMenus) {
+        WxMpMenu menu = new WxMpMenu();
+        menu.setMenu(conditional(null, null));
+        menu.setConditionalMenu(Arrays.asList(conditionalMenus));
+        return menu;
+    }
+
+    private static WxMpMenu.WxMpConditionalMenu conditional(String menuId, WxMenuRule rule) {
+        WxMpMenu.WxMpConditionalMenu menu = new WxMpMenu.WxMpConditionalMenu();
+        menu.setMenuId(menuId);
+        menu.setRule(rule);
+        return menu;
+    }
+
+    private static WxMenuRule rule(String tagId, String sex, String city, String platform, String language) {
+        WxMenuRule rule = new WxMenuRule();
+        rule.setTagId(tagId);
+        rule.setSex(sex);
+        rule.setCity(city);
+        rule.setClientPlatformType(platform);
+        rule.setLanguage(language);
+        return rule;
+    }
+
+    private static WxMpUser user(int sex, String city, Long... tagIds) {
+        WxMpUser user = new WxMpUser();
+        user.setSex(sex);
+        user.setCity(city);
+        user.setLanguage("zh_CN");
+        user.setTagIds(tagIds);
+        return user;
+    }
+}
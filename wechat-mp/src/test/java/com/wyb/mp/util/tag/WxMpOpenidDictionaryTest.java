@@ -0,0 +1,45 @@
+package com.wyb.mp.util.tag;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpOpenidDictionaryTest {
+
+    @Test
+    public void testInternAssignsDenseIds() {
+        WxMpOpenidDictionary dictionary = new WxMpOpenidDictionary(4);
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertEquals(i, dictionary.intern(openid(i)));
+        }
+        Assert.assertEquals(5000, dictionary.size());
+        Assert.assertEquals(1234, dictionary.intern(openid(1234)));
+        Assert.assertEquals(4999, dictionary.idOf(openid(4999)));
+        Assert.assertEquals(-1, dictionary.idOf(openid(5000)));
+        Assert.assertEquals(openid(42), dictionary.openidOf(42));
+        // 前缀相同、长度不同的openid互不混淆
+        int shortId = dictionary.intern("oABC");
+        Assert.assertNotEquals(shortId, dictionary.intern("oABCD"));
+        Assert.assertEquals("oABC", dictionary.openidOf(shortId));
+    }
+
+    @Test
+    public void testTagQuery() {
+        WxMpTagIndex index = new WxMpTagIndex();
+        index.putTag(1L, Arrays.asList("oA", "oB", "oC", "oD").iterator());
+        index.putTag(2L, Arrays.asList("oB", "oC", "oE").iterator());
+        index.putTag(3L, Arrays.asList("oC").iterator());
+        WxMpUserBitmap users = index.query(1L).and(2L).andNot(3L).result();
+        Assert.assertEquals(Collections.singletonList("oB"), index.openidBatches(users, 10000).next());
+        Assert.assertEquals(5, index.query(1L).or(2L).count());
+    }
+
+    private static String openid(int i) {
+        return String.format("o6_bmjrPTlm6_2sgVt7hMZ%06d", i);
+    }
+}
@@ -0,0 +1,98 @@
+package com.wyb.mp.util.tag;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Kunzite
+ */
+public class WxMpUserBitmapTest {
+
+    @Test
+    public void testAddAndContains() {
+        WxMpUserBitmap bitmap = WxMpUserBitmap.of(3, 1, 70000, 3);
+        Assert.assertEquals(3, bitmap.cardinality());
+        Assert.assertTrue(bitmap.contains(1));
+        Assert.assertTrue(bitmap.contains(70000));
+        Assert.assertFalse(bitmap.contains(2));
+        int[] ids = new int[3];
+        int[] n = {0};
+        bitmap.forEach(id -> ids[n[0]++] = id);
+        Assert.assertArrayEquals(new int[]{1, 3, 70000}, ids);
+    }
+
+    @Test
+    public void testSetOperationsMatchBitSet() {
+        Random random = new Random(42);
+        // 每个桶随机取稀疏或稠密，覆盖数组容器与位图容器的所有组合
+        BitSet a = randomSet(random);
+        BitSet b = randomSet(random);
+        WxMpUserBitmap x = toBitmap(a);
+        WxMpUserBitmap y = toBitmap(b);
+
+        assertSame(op(a, b, (s, t) -> {
+            s.and(t);
+            return s;
+        }), x.and(y));
+        assertSame(op(a, b, (s, t) -> {
+            s.or(t);
+            return s;
+        }), x.or(y));
+        assertSame(op(a, b, (s, t) -> {
+            s.andNot(t);
+            return s;
+        }), x.andNot(y));
+        // 运算不修改参与的位图
+        assertSame(a, x);
+        assertSame(b, y);
+    }
+
+    @Test
+    public void testDenseContainerShrinksBackToArray() {
+        WxMpUserBitmap dense = new WxMpUserBitmap();
+        for (int i = 0; i < 10000; i++) {
+            dense.add(i);
+        }
+        WxMpUserBitmap sparse = WxMpUserBitmap.of(5, 9999, 20000);
+        WxMpUserBitmap result = dense.and(sparse);
+        Assert.assertEquals(WxMpUserBitmap.of(5, 9999), result);
+        Assert.assertTrue(result.sizeInBytes() < dense.sizeInBytes());
+        Assert.assertEquals(9998, dense.andNot(sparse).cardinality());
+    }
+
+    private static BitSet randomSet(Random random) {
+        BitSet set = new BitSet();
+        for (int bucket = 0; bucket < 8; bucket++) {
+            int count = random.nextBoolean() ? random.nextInt(3000) : 5000 + random.nextInt(40000);
+            for (int i = 0; i < count; i++) {
+                set.set((bucket << 16) | random.nextInt(1 << 16));
+            }
+        }
+        return set;
+    }
+
+    private static WxMpUserBitmap toBitmap(BitSet set) {
+        WxMpUserBitmap bitmap = new WxMpUserBitmap();
+        set.stream().forEach(bitmap::add);
+        return bitmap;
+    }
+
+    private static BitSet op(BitSet a, BitSet b, BiFunction<BitSet, BitSet, BitSet> function) {
+        return function.apply((BitSet) a.clone(), b);
+    }
+
+    private static void assertSame(BitSet expected, WxMpUserBitmap actual) {
+        Assert.assertEquals(expected.cardinality(), actual.cardinality());
+        Assert.assertEquals(toBitmap(expected), actual);
+        int[] previous = {-1};
+        actual.iterator().forEachRemaining((int id) -> {
+            Assert.assertTrue(expected.get(id));
+            Assert.assertTrue(id > previous[0]);
+            previous[0] = id;
+        });
+    }
+}